@@ -0,0 +1,56 @@
+package benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the JMH benchmarks of the hot paths, and writes their results as
+ * JSON to jmh-result-<version>.json in the working directory, so that the
+ * results of each release can be compared with those of the last.
+ *
+ * Usage: java -jar benchmark/target/benchmarks.jar [JMH options]
+ *
+ * Any of JMH's options may be given, such as a regular expression of the
+ * benchmarks to run, or -rf and -rff to write the results elsewhere.
+ *
+ * The settings are read from the config.json file in the working
+ * directory.
+ */
+public class BenchmarkRunner {
+    public static void main(final String[] args) throws IOException, RunnerException {
+        final CommandLineOptions commandLineOptions;
+
+        try {
+            commandLineOptions = new CommandLineOptions(args);
+        } catch(final CommandLineOptionException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        if(commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+
+        final ChainedOptionsBuilder optionsBuilder = new OptionsBuilder().parent(commandLineOptions);
+
+        if(! commandLineOptions.getResultFormat().hasValue()) {
+            optionsBuilder.resultFormat(ResultFormatType.JSON);
+        }
+
+        if(! commandLineOptions.getResult().hasValue()) {
+            final String version = BenchmarkRunner.class.getPackage().getImplementationVersion();
+            optionsBuilder.result("jmh-result-" + (version == null ? "snapshot" : version) + ".json");
+        }
+
+        new Runner(optionsBuilder.build()).run();
+    }
+}
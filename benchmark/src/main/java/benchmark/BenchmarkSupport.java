@@ -0,0 +1,126 @@
+package benchmark;
+
+import handler.CommandHandler;
+import handler.ConfigHandler;
+import handler.FFMPEGHandler;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/** The helpers shared by the benchmarks. */
+class BenchmarkSupport {
+    /**
+     * Constructs a command runner which waits for each command to exit and
+     * appends its output to the specified log file.
+     *
+     * A command which can't be started throws an UncheckedIOException, so
+     * the benchmark fails rather than timing a run that did nothing.
+     *
+     * @param logFile
+     *         The file to append the output of each command to.
+     *
+     * @return
+     *         The command runner.
+     */
+    static Predicate<String> createCommandRunner(final File logFile) {
+        return command -> {
+            try {
+                final ProcessBuilder builder = new ProcessBuilder(CommandHandler.splitCommand(command));
+                builder.redirectErrorStream(true);
+                builder.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile));
+                return builder.start().waitFor() == 0;
+            } catch(final IOException e) {
+                // A command which can't be started is a broken benchmark, not a failed run:
+                throw new UncheckedIOException(e);
+            } catch(final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Decodes the encoded payload within the specified directory, then
+     * computes the SHA-256 digest of the decoded file.
+     *
+     * @param configHandler
+     *         The settings to use when decoding.
+     *
+     * @param directory
+     *         The directory containing the encoded payload.
+     *
+     * @param payload
+     *         The payload that was encoded.
+     *
+     * @param commandRunner
+     *         Runs a command, returning whether or not it completed.
+     *
+     * @return
+     *         The hex-encoded SHA-256 digest of the decoded file.
+     */
+    static String decodeAndDigest(final ConfigHandler configHandler, final File directory, final File payload, final Predicate<String> commandRunner) throws IOException, NoSuchAlgorithmException {
+        final String baseName = FilenameUtils.getBaseName(payload.getName());
+        final File encodedFile = new File(directory, baseName + "." + configHandler.getEncodeFormat());
+        final File decodedDirectory = createDirectory(directory, "decoded");
+
+        commandRunner.test(FFMPEGHandler.createDecodeCommand(configHandler, encodedFile, decodedDirectory.getAbsolutePath() + "/"));
+
+        return digest(new File(decodedDirectory, baseName + "." + configHandler.getDecodeFormat()));
+    }
+
+    /**
+     * Computes the SHA-256 digest of the specified file.
+     *
+     * @param file
+     *         The file.
+     *
+     * @return
+     *         The hex-encoded SHA-256 digest of the file.
+     */
+    static String digest(final File file) throws IOException, NoSuchAlgorithmException {
+        final MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+
+        try (
+            final InputStream inputStream = new DigestInputStream(new FileInputStream(file), messageDigest);
+        ) {
+            final byte[] buffer = new byte[1 << 16];
+
+            while(inputStream.read(buffer) != -1) {
+                // The digest is updated as the file is read.
+            }
+        }
+
+        final StringBuilder stringBuilder = new StringBuilder();
+
+        for(final byte b : messageDigest.digest()) {
+            stringBuilder.append(String.format("%02x", b));
+        }
+
+        return stringBuilder.toString();
+    }
+
+    static File createDirectory(final File parent, final String name) throws IOException {
+        final File directory = new File(parent, name);
+
+        if(! directory.mkdirs() && ! directory.isDirectory()) {
+            throw new IOException("Unable to create " + directory.getAbsolutePath() + ".");
+        }
+
+        return directory;
+    }
+
+    static void printResult(final String mode, final long elapsedNanos, final long bytes, final boolean isIdentical) {
+        final double seconds = elapsedNanos / 1_000_000_000.0;
+        final double megabytesPerSecond = (bytes / (1024.0 * 1024.0)) / seconds;
+        System.out.printf(Locale.US, "%-16s %12.3f %12.3f %10s%n", mode, seconds, megabytesPerSecond, isIdentical);
+    }
+}
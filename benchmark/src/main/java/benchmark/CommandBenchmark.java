@@ -0,0 +1,82 @@
+package benchmark;
+
+import handler.ArchiveHandler;
+import handler.ConfigHandler;
+import handler.FFMPEGHandler;
+import misc.Job;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the construction of the ffmpeg and archiver commands.
+ *
+ * The archive commands are measured with a Job of a few, and of many,
+ * files, as every file's path is added to the command.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CommandBenchmark {
+    /** The number of files to archive. */
+    @Param({"10", "1000"})
+    public int fileCount;
+
+    private ConfigHandler configHandler;
+    private Job job;
+    private File file;
+    private List<File> files;
+
+    @Setup(Level.Trial)
+    public void createJob() {
+        configHandler = new ConfigHandler();
+        configHandler.loadConfigSettings();
+
+        final File directory = new File(System.getProperty("java.io.tmpdir"), "schillsaver-benchmark");
+        job = new Job("Benchmark", "", directory.getAbsolutePath(), Collections.emptyList(), true, true);
+        file = new File(directory, "payload.bin");
+        files = new ArrayList<>(fileCount);
+
+        for(int i = 0 ; i < fileCount ; i++) {
+            files.add(new File(directory, "file-" + i + ".bin"));
+        }
+    }
+
+    @Benchmark
+    public String encodeCommand() {
+        return FFMPEGHandler.createEncodeCommand(configHandler, file, job.getOutputDirectory());
+    }
+
+    @Benchmark
+    public String decodeCommand() {
+        return FFMPEGHandler.createDecodeCommand(configHandler, file, job.getOutputDirectory());
+    }
+
+    @Benchmark
+    public String packFilesCommand() {
+        return ArchiveHandler.createPackFilesCommand(configHandler, job, files);
+    }
+
+    @Benchmark
+    public String packStreamCommand() {
+        return ArchiveHandler.createPackStreamCommand(configHandler, files);
+    }
+}
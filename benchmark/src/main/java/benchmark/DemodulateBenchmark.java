@@ -0,0 +1,111 @@
+package benchmark;
+
+import handler.CommandHandler;
+import handler.ConfigHandler;
+import handler.DemodulatorInputStream;
+import handler.FFMPEGHandler;
+import handler.StreamHandler;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Compares decoding with ffmpeg's downscale and threshold filter chain with
+ * decoding full-resolution gray frames through a DemodulatorInputStream,
+ * then confirms that both decoded payloads match the padded original.
+ *
+ * Usage: DemodulateBenchmark <ffmpeg path> [payload size in MB]
+ *
+ * The remaining settings are read from the config.json file in the
+ * working directory.
+ */
+public class DemodulateBenchmark {
+    public static void main(final String[] args) throws Exception {
+        if(args.length < 1) {
+            System.err.println("Usage: DemodulateBenchmark <ffmpeg path> [payload size in MB]");
+            System.exit(1);
+        }
+
+        final ConfigHandler configHandler = new ConfigHandler();
+        configHandler.loadConfigSettings();
+        configHandler.setFfmpegPath(args[0]);
+
+        final int payloadMegabytes = (args.length > 1 ? Integer.parseInt(args[1]) : 16);
+
+        final File workDirectory = Files.createTempDirectory("schillsaver-benchmark").toFile();
+        final File payload = new File(workDirectory, "payload.bin");
+        final long paddedLength;
+
+        // Write the padded payload, so its digest matches the decoded files:
+        try (
+            final OutputStream outputStream = new FileOutputStream(payload);
+        ) {
+            final Random random = new Random(0);
+            final byte[] buffer = new byte[1 << 20];
+
+            for(int i = 0 ; i < payloadMegabytes ; i++) {
+                random.nextBytes(buffer);
+                outputStream.write(buffer);
+            }
+
+            final long payloadLength = payloadMegabytes * (1L << 20);
+            paddedLength = StreamHandler.calculatePaddedLength(payloadLength, configHandler.getFrameSize());
+            outputStream.write(new byte[(int) (paddedLength - payloadLength)]);
+        }
+
+        final String expectedDigest = BenchmarkSupport.digest(payload);
+        final Predicate<String> commandRunner = BenchmarkSupport.createCommandRunner(new File(workDirectory, "ffmpeg.log"));
+        final Consumer<String> outputConsumer = line -> {};
+
+        // Encode the payload once, for both decoders to share:
+        final File encodedDirectory = BenchmarkSupport.createDirectory(workDirectory, "encoded");
+        commandRunner.test(FFMPEGHandler.createEncodeCommand(configHandler, payload, encodedDirectory.getAbsolutePath() + "/"));
+
+        final File encodedFile = new File(encodedDirectory, "payload." + configHandler.getEncodeFormat());
+
+        System.out.printf(Locale.US, "%-16s %12s %12s %10s%n", "Mode", "Seconds", "MB/s", "Identical");
+
+        // Filter chain:
+        final File filteredDirectory = BenchmarkSupport.createDirectory(workDirectory, "filter-chain");
+
+        long startTime = System.nanoTime();
+        commandRunner.test(FFMPEGHandler.createDecodeCommand(configHandler, encodedFile, filteredDirectory.getAbsolutePath() + "/"));
+        long elapsedTime = System.nanoTime() - startTime;
+
+        final File filteredFile = new File(filteredDirectory, "payload." + configHandler.getDecodeFormat());
+        BenchmarkSupport.printResult("filter chain", elapsedTime, paddedLength, expectedDigest.equals(BenchmarkSupport.digest(filteredFile)));
+
+        // Demodulated:
+        configHandler.setDemodulateFrames(true);
+
+        final File demodulatedFile = new File(BenchmarkSupport.createDirectory(workDirectory, "demodulated"), "payload." + configHandler.getDecodeFormat());
+
+        startTime = System.nanoTime();
+
+        final Process process = CommandHandler.startProgram(FFMPEGHandler.createStreamedDecodeCommand(configHandler, encodedFile), outputConsumer);
+        process.getOutputStream().close();
+
+        try (
+            final InputStream inputStream = new DemodulatorInputStream(process.getInputStream(), configHandler);
+            final OutputStream outputStream = new FileOutputStream(demodulatedFile);
+        ) {
+            IOUtils.copyLarge(inputStream, outputStream, new byte[StreamHandler.BUFFER_SIZE]);
+        }
+
+        process.waitFor();
+        elapsedTime = System.nanoTime() - startTime;
+
+        BenchmarkSupport.printResult("demodulated", elapsedTime, paddedLength, expectedDigest.equals(BenchmarkSupport.digest(demodulatedFile)));
+
+        FileUtils.deleteDirectory(workDirectory);
+    }
+}
@@ -0,0 +1,89 @@
+package benchmark;
+
+import misc.Job;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures constructing a Job from a large list of files, which reads the
+ * length of each file once and sorts the files from smallest to largest,
+ * against sorting the same list by File.length, which reads the lengths
+ * on every comparison.
+ *
+ * The files are sparse, so they take little space however large they are.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JobBenchmark {
+    /** The number of files in the Job. */
+    @Param({"100", "10000"})
+    public int fileCount;
+
+    private File directory;
+    private List<File> files;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        directory = Files.createTempDirectory("schillsaver-benchmark").toFile();
+        files = new ArrayList<>(fileCount);
+
+        final Random random = new Random(0);
+
+        for(int i = 0 ; i < fileCount ; i++) {
+            final File file = new File(directory, "file-" + i + ".bin");
+
+            try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(random.nextInt(1 << 30));
+            }
+
+            files.add(file);
+        }
+
+        // The files are chosen in no particular order:
+        Collections.shuffle(files, random);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public Job construct() {
+        return new Job("Benchmark", "", directory.getAbsolutePath(), files, true, false);
+    }
+
+    @Benchmark
+    public List<File> listSortByLength() {
+        final List<File> sortedFiles = new ArrayList<>(files);
+        sortedFiles.sort(Comparator.comparingLong(File::length));
+        return sortedFiles;
+    }
+}
@@ -0,0 +1,373 @@
+package benchmark;
+
+import handler.ConfigHandler;
+import handler.EncodeCacheHandler;
+import handler.FFMPEGHandler;
+import handler.JobHandler;
+import handler.JobListener;
+import handler.JournalHandler;
+import handler.ManagementHandler;
+import handler.MetricsHandler;
+import handler.OutputBufferHandler;
+import handler.StatisticsHandler;
+import misc.Job;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how much of a batch's wall time is spent by Schillsaver, rather
+ * than by the tools it runs, by running batches of encode Jobs through a
+ * JobHandler and its FFMPEGHandlers against stand-in ffmpeg and 7z scripts.
+ *
+ * The stand-ins read their whole input, write a set number of lines of
+ * output, then sleep for as long as the input would take to process at a
+ * set rate, and record how long they slept. Everything else is the
+ * orchestration overhead: starting processes, padding and streaming the
+ * input, pumping and parsing the output, journaling, recording statistics,
+ * and buffering the output lines for display, as the main screen does.
+ *
+ * The overhead of a batch is the time that its Job runners were busy, that
+ * is the wall time multiplied by the number of runners in use, less the
+ * time that the stand-ins slept. It's reported per Job and per GB.
+ *
+ * Usage: OrchestrationBenchmark [--batches 1,100,10000] [--file-size-kb 1024]
+ *                               [--rate-mb 0] [--log-lines 100] [--concurrency N]
+ *                               [--padded] [--archive]
+ *
+ * --rate-mb is the rate, in MB/s, at which each stand-in processes its
+ * input, or 0 for no delay. --padded pads each file on disk, rather than
+ * streaming it into ffmpeg, and --archive packs each Job's file with the
+ * 7z stand-in before it's encoded.
+ *
+ * The stand-ins only need sh, awk, cat, wc, and sleep, so the benchmark
+ * runs offline on any Linux machine. The input files are sparse, so they
+ * take little space. The remaining settings are read from the config.json
+ * file in the working directory.
+ */
+public class OrchestrationBenchmark {
+    /** The rate, in Hz, at which the buffered output is drained, as the main screen does. */
+    private static final int DRAINS_PER_SECOND = 30;
+
+    /**
+     * The body of the ffmpeg stand-in, which reads the input given by -i,
+     * either from standard input or from a file, then outputs its log lines
+     * followed by the progress of the whole input, and creates the output,
+     * which is the last argument.
+     */
+    private static final String FFMPEG_STAND_IN =
+        "input=''\n" +
+        "output=''\n" +
+        "previous=''\n" +
+        "for argument in \"$@\"; do\n" +
+        "    if [ \"$previous\" = '-i' ]; then input=\"$argument\"; fi\n" +
+        "    previous=\"$argument\"\n" +
+        "    output=\"$argument\"\n" +
+        "done\n" +
+        "if [ \"$input\" = '-' ]; then\n" +
+        "    bytes=$(wc -c | tr -d ' ')\n" +
+        "else\n" +
+        "    bytes=$(cat \"$input\" | wc -c | tr -d ' ')\n" +
+        "fi\n" +
+        "awk -v n=\"$LOG_LINES\" 'BEGIN { for(i = 0 ; i < n ; i++) printf \"[stand-in @ 0x0] frame %d fps=30.0 q=0.0 size=%dkB\\n\", i, i }' >&2\n" +
+        "printf 'frame=%d\\nprogress=end\\n' $((bytes / FRAME_SIZE)) >&2\n" +
+        ": > \"$output\"\n";
+
+    /**
+     * The body of the 7z stand-in, which packs the files given after the
+     * options into the archive given before them, by concatenating them,
+     * then outputs its log lines.
+     */
+    private static final String ARCHIVER_STAND_IN =
+        "shift\n" +
+        "archive=''\n" +
+        "for argument in \"$@\"; do\n" +
+        "    case \"$argument\" in -*) continue ;; esac\n" +
+        "    if [ -z \"$archive\" ]; then\n" +
+        "        archive=\"$argument\"\n" +
+        "        : > \"$archive\"\n" +
+        "    else\n" +
+        "        cat \"$argument\" >> \"$archive\"\n" +
+        "    fi\n" +
+        "done\n" +
+        "bytes=$(wc -c < \"$archive\" | tr -d ' ')\n" +
+        "awk -v n=\"$LOG_LINES\" 'BEGIN { for(i = 0 ; i < n ; i++) printf \"Compressing  file %d\\n\", i }'\n";
+
+    /** The end of each stand-in, which sleeps for as long as its input would take to process, and records how long that was. */
+    private static final String STAND_IN_PROCESSING =
+        "if [ \"$RATE\" -gt 0 ]; then\n" +
+        "    seconds=$(awk -v b=\"$bytes\" -v r=\"$RATE\" 'BEGIN { printf \"%.6f\", b / r }')\n" +
+        "    sleep \"$seconds\"\n" +
+        "    echo \"$seconds\" >> \"$TOOL_LOG\"\n" +
+        "fi\n" +
+        "exit 0\n";
+
+    public static void main(final String[] args) throws Exception {
+        String batches = "1,100,10000";
+        long fileSizeKilobytes = 1024;
+        double rateMegabytes = 0;
+        int logLines = 100;
+        int concurrency = 0;
+        boolean isPadded = false;
+        boolean isArchived = false;
+
+        for(int i = 0 ; i < args.length ; i++) {
+            switch(args[i]) {
+                case "--batches": batches = args[++i]; break;
+                case "--file-size-kb": fileSizeKilobytes = Long.parseLong(args[++i]); break;
+                case "--rate-mb": rateMegabytes = Double.parseDouble(args[++i]); break;
+                case "--log-lines": logLines = Integer.parseInt(args[++i]); break;
+                case "--concurrency": concurrency = Integer.parseInt(args[++i]); break;
+                case "--padded": isPadded = true; break;
+                case "--archive": isArchived = true; break;
+                default: {
+                    System.err.println("Usage: OrchestrationBenchmark [--batches 1,100,10000] [--file-size-kb 1024] [--rate-mb 0] [--log-lines 100] [--concurrency N] [--padded] [--archive]");
+                    System.exit(1);
+                }
+            }
+        }
+
+        final File workDirectory = Files.createTempDirectory("schillsaver-orchestration").toFile();
+        final File toolLog = new File(workDirectory, "tool-seconds.log");
+        final long rate = (long) (rateMegabytes * 1024 * 1024);
+
+        final ConfigHandler configHandler = new ConfigHandler();
+        configHandler.loadConfigSettings();
+        configHandler.setFfmpegPath(createStandIn(workDirectory, "ffmpeg", FFMPEG_STAND_IN, rate, logLines, configHandler.getFrameSize(), toolLog).getAbsolutePath());
+        configHandler.setCompressionProgramPath(createStandIn(workDirectory, "7z", ARCHIVER_STAND_IN, rate, logLines, configHandler.getFrameSize(), toolLog).getAbsolutePath());
+        configHandler.setStreamEncodeInput(! isPadded);
+        configHandler.setUseFullyCustomFfmpegOptions(false);
+        configHandler.setStreamArchives(false);
+        configHandler.setEncodeSegments(1);
+        configHandler.setCheckpointChunkFrames(0);
+        configHandler.setRasterizeFrames(false);
+        configHandler.setEncodeCacheSizeMegabytes(0);
+
+        final StatisticsHandler statisticsHandler = new StatisticsHandler(configHandler, workDirectory);
+        final JournalHandler journalHandler = new JournalHandler(new File(workDirectory, "jobs.journal"));
+        final EncodeCacheHandler encodeCacheHandler = new EncodeCacheHandler(configHandler);
+        final ManagementHandler managementHandler = new ManagementHandler(configHandler);
+
+        if(concurrency > 0) {
+            managementHandler.setConcurrencyLimit(concurrency);
+        }
+
+        System.out.printf(Locale.US, "%-8s %10s %10s %10s %14s %12s %10s %12s %10s%n",
+                          "Jobs", "GB", "Wall s", "Tool s", "Overhead ms/job", "Overhead s/GB", "Processes", "Lines", "Dropped");
+
+        for(final String batch : batches.split(",")) {
+            final int jobCount = Integer.parseInt(batch.trim());
+            final File inputDirectory = BenchmarkSupport.createDirectory(workDirectory, "input-" + jobCount);
+            final File outputDirectory = BenchmarkSupport.createDirectory(workDirectory, "output-" + jobCount);
+
+            final BatchListener batchListener = new BatchListener(configHandler.getOutputBufferLines());
+            final List<FFMPEGHandler> tasks = new ArrayList<>(jobCount);
+
+            for(int i = 0 ; i < jobCount ; i++) {
+                final File file = new File(inputDirectory, "job-" + i + ".bin");
+
+                try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                    randomAccessFile.setLength(fileSizeKilobytes * 1024);
+                }
+
+                final Job job = new Job("job-" + i, "", outputDirectory.getAbsolutePath(), Collections.singletonList(file), true, isArchived);
+                job.setId(i);
+                journalHandler.recordQueued(job);
+
+                tasks.add(new FFMPEGHandler(job, batchListener, configHandler, statisticsHandler, journalHandler, encodeCacheHandler));
+            }
+
+            Files.deleteIfExists(toolLog.toPath());
+
+            final long processesStarted = MetricsHandler.getProcessesStarted();
+            final JobHandler jobHandler = new JobHandler(batchListener, configHandler, managementHandler, tasks);
+
+            final ScheduledExecutorService drainer = Executors.newSingleThreadScheduledExecutor();
+            drainer.scheduleAtFixedRate(batchListener::drain, 0, 1000 / DRAINS_PER_SECOND, TimeUnit.MILLISECONDS);
+
+            final long startTime = System.nanoTime();
+            jobHandler.run();
+            final long elapsedNanos = System.nanoTime() - startTime;
+
+            drainer.shutdown();
+            drainer.awaitTermination(1, TimeUnit.MINUTES);
+            batchListener.drain();
+
+            final double wallSeconds = elapsedNanos / 1_000_000_000.0;
+            final double toolSeconds = sumToolSeconds(toolLog);
+            final double gigabytes = (jobCount * fileSizeKilobytes * 1024) / (1024.0 * 1024 * 1024);
+
+            // The time that the Job runners were busy, less the time that the tools were busy:
+            final int runners = Math.min(managementHandler.getConcurrencyLimit(), jobCount);
+            final double overheadSeconds = Math.max(0, (wallSeconds * runners) - toolSeconds);
+
+            System.out.printf(Locale.US, "%-8d %10.3f %10.3f %10.3f %14.3f %12.3f %10d %12d %10d%n",
+                              jobCount,
+                              gigabytes,
+                              wallSeconds,
+                              toolSeconds,
+                              (overheadSeconds * 1000) / jobCount,
+                              (gigabytes > 0 ? overheadSeconds / gigabytes : 0),
+                              MetricsHandler.getProcessesStarted() - processesStarted,
+                              batchListener.getDrainedLines(),
+                              batchListener.getDroppedLines());
+
+            if(batchListener.getFinishedJobs() != jobCount) {
+                System.err.println("Only " + batchListener.getFinishedJobs() + " of " + jobCount + " Jobs finished.");
+            }
+
+            FileUtils.deleteDirectory(inputDirectory);
+            FileUtils.deleteDirectory(outputDirectory);
+        }
+
+        statisticsHandler.close();
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    /**
+     * Writes a stand-in script.
+     *
+     * @param directory
+     *         The directory in which to write the script.
+     *
+     * @param name
+     *         The name of the script.
+     *
+     * @param body
+     *         The body of the script.
+     *
+     * @param rate
+     *         The rate, in bytes per second, at which the stand-in processes
+     *         its input, or 0 for no delay.
+     *
+     * @param logLines
+     *         The number of lines that the stand-in outputs.
+     *
+     * @param frameSize
+     *         The number of bytes in each frame.
+     *
+     * @param toolLog
+     *         The file to which the stand-in appends the number of seconds
+     *         it spent processing.
+     *
+     * @return
+     *         The script.
+     *
+     * @throws IOException
+     *         If the script cannot be written.
+     */
+    private static File createStandIn(final File directory, final String name, final String body, final long rate, final int logLines, final int frameSize, final File toolLog) throws IOException {
+        final File script = new File(directory, name);
+
+        try (
+            final PrintWriter printWriter = new PrintWriter(script, StandardCharsets.UTF_8.name());
+        ) {
+            printWriter.print("#!/bin/sh\n");
+            printWriter.print("RATE=" + rate + "\n");
+            printWriter.print("LOG_LINES=" + logLines + "\n");
+            printWriter.print("FRAME_SIZE=" + frameSize + "\n");
+            printWriter.print("TOOL_LOG='" + toolLog.getAbsolutePath() + "'\n");
+            printWriter.print(body);
+            printWriter.print(STAND_IN_PROCESSING);
+        }
+
+        if(! script.setExecutable(true)) {
+            throw new IOException("Unable to make " + script.getAbsolutePath() + " executable.");
+        }
+
+        return script;
+    }
+
+    /**
+     * Sums the number of seconds that the stand-ins spent processing.
+     *
+     * @param toolLog
+     *         The file to which the stand-ins appended their times.
+     *
+     * @return
+     *         The number of seconds.
+     *
+     * @throws IOException
+     *         If the file cannot be read.
+     */
+    private static double sumToolSeconds(final File toolLog) throws IOException {
+        if(! toolLog.exists()) {
+            return 0;
+        }
+
+        double seconds = 0;
+
+        for(final String line : Files.readAllLines(toolLog.toPath(), StandardCharsets.UTF_8)) {
+            if(! line.trim().isEmpty()) {
+                seconds += Double.parseDouble(line.trim());
+            }
+        }
+
+        return seconds;
+    }
+
+    /** Buffers the output of the Jobs, as the main screen does, and counts the lines and finished Jobs. */
+    private static class BatchListener implements JobListener {
+        /** The buffer of output lines which are waiting to be drained. */
+        private final OutputBufferHandler outputBufferHandler;
+
+        /** The number of lines which have been drained. */
+        private final AtomicLong drainedLines = new AtomicLong();
+        /** The number of Jobs which have finished. */
+        private final AtomicLong finishedJobs = new AtomicLong();
+
+        private BatchListener(final int bufferLines) {
+            outputBufferHandler = new OutputBufferHandler(bufferLines);
+        }
+
+        @Override
+        public void jobsStarted() {
+            // The main screen disables its buttons.
+        }
+
+        @Override
+        public void jobsFinished() {
+            // The main screen enables its buttons.
+        }
+
+        @Override
+        public void jobFinished(final Job job) {
+            finishedJobs.incrementAndGet();
+        }
+
+        @Override
+        public void appendOutput(final String line, final Job job) {
+            outputBufferHandler.append(line, job.getId());
+        }
+
+        /** Drains the buffered lines, as the main screen does at each refresh. */
+        private synchronized void drain() {
+            drainedLines.addAndGet(outputBufferHandler.drainTo((line, jobTag) -> {}, Integer.MAX_VALUE));
+        }
+
+        private long getDrainedLines() {
+            return drainedLines.get();
+        }
+
+        private long getDroppedLines() {
+            return outputBufferHandler.getTotalDroppedLines();
+        }
+
+        private long getFinishedJobs() {
+            return finishedJobs.get();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package benchmark;
+
+import handler.ConfigHandler;
+import handler.FileHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures FileHandler.padFile, which appends the padding that a file needs
+ * to fill its last frame.
+ *
+ * Each file is one byte past a whole number of frames, which is the worst
+ * case, as nearly a full frame of padding is written. The file is cut back
+ * to its original length before every invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PadFileBenchmark {
+    /** The number of whole frames in the file. */
+    @Param({"1", "1024"})
+    public int frames;
+
+    private ConfigHandler configHandler;
+    private File file;
+    private long length;
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        configHandler = new ConfigHandler();
+        configHandler.loadConfigSettings();
+        file = File.createTempFile("schillsaver-benchmark", ".bin");
+        length = ((long) frames * configHandler.getFrameSize()) + 1;
+    }
+
+    @Setup(Level.Invocation)
+    public void resetFile() throws IOException {
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(length);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() {
+        if(! file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public long padFile() {
+        FileHandler.padFile(file, configHandler);
+        return file.length();
+    }
+}
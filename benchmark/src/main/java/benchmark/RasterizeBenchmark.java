@@ -0,0 +1,117 @@
+package benchmark;
+
+import handler.ConfigHandler;
+import handler.FFMPEGHandler;
+import handler.RasterOutputStream;
+import handler.StreamHandler;
+import module.PipeStatisticsModule;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Compares streaming the monob payload into ffmpeg, where the scale filter
+ * blows up every frame, with streaming frames that have already been
+ * rasterized to full resolution by a RasterOutputStream. Both results are
+ * decoded to confirm that the decoded payloads are byte-identical.
+ *
+ * The throughput of the rasterizer on its own is also measured, to show
+ * how much of the encode it accounts for.
+ *
+ * Usage: RasterizeBenchmark <ffmpeg path> [payload size in MB]
+ *
+ * The remaining settings are read from the config.json file in the
+ * working directory.
+ */
+public class RasterizeBenchmark {
+    public static void main(final String[] args) throws Exception {
+        if(args.length < 1) {
+            System.err.println("Usage: RasterizeBenchmark <ffmpeg path> [payload size in MB]");
+            System.exit(1);
+        }
+
+        final ConfigHandler configHandler = new ConfigHandler();
+        configHandler.loadConfigSettings();
+        configHandler.setFfmpegPath(args[0]);
+
+        final int payloadMegabytes = (args.length > 1 ? Integer.parseInt(args[1]) : 16);
+
+        // Random data is the worst case for the codec, and the usual case for an archive:
+        final File workDirectory = Files.createTempDirectory("schillsaver-benchmark").toFile();
+        final File payload = new File(workDirectory, "payload.bin");
+
+        try (
+            final OutputStream outputStream = new FileOutputStream(payload);
+        ) {
+            final Random random = new Random(0);
+            final byte[] buffer = new byte[1 << 20];
+
+            for(int i = 0 ; i < payloadMegabytes ; i++) {
+                random.nextBytes(buffer);
+                outputStream.write(buffer);
+            }
+        }
+
+        final long paddedLength = StreamHandler.calculatePaddedLength(payload.length(), configHandler.getFrameSize());
+        final Predicate<String> commandRunner = BenchmarkSupport.createCommandRunner(new File(workDirectory, "ffmpeg.log"));
+
+        System.out.printf(Locale.US, "%-16s %12s %12s %10s%n", "Mode", "Seconds", "MB/s", "Identical");
+
+        // The rasterizer on its own:
+        try (
+            final InputStream inputStream = new FileInputStream(payload);
+            final OutputStream outputStream = new RasterOutputStream(new NullOutputStream(), configHandler);
+        ) {
+            final long startTime = System.nanoTime();
+            StreamHandler.pipe(inputStream, outputStream, paddedLength, 0, new PipeStatisticsModule());
+            BenchmarkSupport.printResult("rasterizer only", System.nanoTime() - startTime, payload.length(), true);
+        }
+
+        try (
+            final PrintWriter streamLog = new PrintWriter(new File(workDirectory, "stream.log"), StandardCharsets.UTF_8.name());
+        ) {
+            final Consumer<String> outputConsumer = line -> {
+                synchronized(streamLog) {
+                    streamLog.println(line);
+                }
+            };
+
+            String expectedDigest = null;
+
+            for(final boolean isRasterized : new boolean[] {false, true}) {
+                configHandler.setRasterizeFrames(isRasterized);
+
+                final String mode = (isRasterized ? "rasterized" : "scale filter");
+                final File directory = BenchmarkSupport.createDirectory(workDirectory, mode.replace(' ', '-'));
+                final String command = FFMPEGHandler.createEncodeCommand(configHandler, "-", directory.getAbsolutePath() + "/" + FilenameUtils.getBaseName(payload.getName()));
+
+                final long startTime = System.nanoTime();
+                StreamHandler.streamFileToProgram(configHandler, command, payload, 0, paddedLength, new PipeStatisticsModule(), outputConsumer);
+                final long elapsedTime = System.nanoTime() - startTime;
+
+                final String digest = BenchmarkSupport.decodeAndDigest(configHandler, directory, payload, commandRunner);
+
+                if(expectedDigest == null) {
+                    expectedDigest = digest;
+                }
+
+                BenchmarkSupport.printResult(mode, elapsedTime, payload.length(), expectedDigest.equals(digest));
+            }
+        }
+
+        FileUtils.deleteDirectory(workDirectory);
+    }
+}
@@ -0,0 +1,96 @@
+package benchmark;
+
+import handler.ConfigHandler;
+import handler.StatisticsHandler;
+import misc.SchedulingPolicy;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Compares ordering Jobs with SchedulingPolicy.order, which estimates the
+ * duration of each Job once, with a plain List.sort, which estimates the
+ * durations of both Jobs on every comparison.
+ *
+ * The durations are estimated by a StatisticsHandler with a few hundred
+ * records, as they are when Jobs are run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SchedulingBenchmark {
+    /** The number of Jobs to order. */
+    @Param({"10", "1000", "100000"})
+    public int jobCount;
+
+    private File directory;
+    private StatisticsHandler statisticsHandler;
+
+    /** The size, in bytes, of each Job. */
+    private List<Long> jobSizes;
+    /** Estimates the duration of a Job from its size. */
+    private ToDoubleFunction<Long> costFunction;
+
+    @Setup(Level.Trial)
+    public void createJobs() throws IOException {
+        directory = Files.createTempDirectory("schillsaver-benchmark").toFile();
+        statisticsHandler = new StatisticsHandler(new ConfigHandler(), directory);
+
+        final Random random = new Random(0);
+
+        for(int i = 0 ; i < 256 ; i++) {
+            final long bytes = 1 + random.nextInt(1 << 30);
+            statisticsHandler.recordData(true, bytes, bytes * (90 + random.nextInt(20)), false);
+        }
+
+        jobSizes = new ArrayList<>(jobCount);
+
+        for(int i = 0 ; i < jobCount ; i++) {
+            jobSizes.add((long) random.nextInt(Integer.MAX_VALUE));
+        }
+
+        costFunction = bytes -> statisticsHandler.estimateProcessingDuration(true, bytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStatistics() throws IOException {
+        statisticsHandler.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public List<Long> schedulingPolicy() {
+        return SchedulingPolicy.SHORTEST_FIRST.order(jobSizes, costFunction);
+    }
+
+    @Benchmark
+    public List<Long> listSort() {
+        final List<Long> orderedSizes = new ArrayList<>(jobSizes);
+        orderedSizes.sort(Comparator.comparingDouble(costFunction));
+        return orderedSizes;
+    }
+}
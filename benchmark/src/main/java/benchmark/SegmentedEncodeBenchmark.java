@@ -0,0 +1,95 @@
+package benchmark;
+
+import handler.ConfigHandler;
+import handler.FFMPEGHandler;
+import handler.FileHandler;
+import handler.SegmentHandler;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Compares the single-process encode of FFMPEGHandler with the
+ * segment-parallel encode of SegmentHandler, then decodes both results
+ * to confirm that the decoded payloads are byte-identical.
+ *
+ * Usage: SegmentedEncodeBenchmark <ffmpeg path> <input file> [segment counts...]
+ *
+ * The remaining settings are read from the config.json file in the
+ * working directory.
+ */
+public class SegmentedEncodeBenchmark {
+    public static void main(final String[] args) throws Exception {
+        if(args.length < 2) {
+            System.err.println("Usage: SegmentedEncodeBenchmark <ffmpeg path> <input file> [segment counts...]");
+            System.exit(1);
+        }
+
+        final ConfigHandler configHandler = new ConfigHandler();
+        configHandler.loadConfigSettings();
+        configHandler.setFfmpegPath(args[0]);
+
+        final List<Integer> segmentCounts = new ArrayList<>();
+
+        for(int i = 2 ; i < args.length ; i++) {
+            segmentCounts.add(Integer.valueOf(args[i]));
+        }
+
+        if(segmentCounts.isEmpty()) {
+            segmentCounts.addAll(Arrays.asList(2, 4, 8));
+        }
+
+        // Pad a copy of the input, so the original is left untouched:
+        final File workDirectory = Files.createTempDirectory("schillsaver-benchmark").toFile();
+        final File payload = new File(workDirectory, new File(args[1]).getName());
+        FileUtils.copyFile(new File(args[1]), payload);
+        FileHandler.padFile(payload, configHandler);
+
+        final Predicate<String> commandRunner = BenchmarkSupport.createCommandRunner(new File(workDirectory, "ffmpeg.log"));
+
+        System.out.printf(Locale.US, "%-16s %12s %12s %10s%n", "Mode", "Seconds", "MB/s", "Identical");
+
+        // Single process:
+        final File singleDirectory = BenchmarkSupport.createDirectory(workDirectory, "single");
+
+        long startTime = System.nanoTime();
+        commandRunner.test(FFMPEGHandler.createEncodeCommand(configHandler, payload, singleDirectory.getAbsolutePath() + "/"));
+        long elapsedTime = System.nanoTime() - startTime;
+
+        final String expectedDigest = BenchmarkSupport.decodeAndDigest(configHandler, singleDirectory, payload, commandRunner);
+        BenchmarkSupport.printResult("single", elapsedTime, payload.length(), true);
+
+        // Segmented:
+        try (
+            final PrintWriter segmentLog = new PrintWriter(new File(workDirectory, "segmented.log"), StandardCharsets.UTF_8.name());
+        ) {
+            final Consumer<String> outputConsumer = line -> {
+                synchronized(segmentLog) {
+                    segmentLog.println(line);
+                }
+            };
+
+            for(final int segmentCount : segmentCounts) {
+                final File segmentedDirectory = BenchmarkSupport.createDirectory(workDirectory, "segmented-" + segmentCount);
+
+                startTime = System.nanoTime();
+                SegmentHandler.encode(configHandler, payload, segmentedDirectory.getAbsolutePath() + "/", segmentCount, false, outputConsumer);
+                elapsedTime = System.nanoTime() - startTime;
+
+                final String digest = BenchmarkSupport.decodeAndDigest(configHandler, segmentedDirectory, payload, commandRunner);
+                BenchmarkSupport.printResult("segmented x" + segmentCount, elapsedTime, payload.length(), expectedDigest.equals(digest));
+            }
+        }
+
+        FileUtils.deleteDirectory(workDirectory);
+    }
+}
@@ -0,0 +1,124 @@
+package benchmark;
+
+import handler.ConfigHandler;
+import handler.StatisticsHandler;
+import handler.StatisticsStoreHandler;
+import misc.StatisticsRecord;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a large statistics history:
+ *
+ * - open, which opens the store, and only reads its header.
+ * - openAndEstimate, which also makes the first estimate, and so reads every record to build the models.
+ * - importLegacy, which imports a statistics file from an older version into an empty store.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class StatisticsBenchmark {
+    /** The number of records in the history. */
+    @Param({"10000", "1000000"})
+    public int recordCount;
+
+    private ConfigHandler configHandler;
+
+    /** The directory holding a store with every record. */
+    private File storeDirectory;
+    /** The directory into which the older statistics file is imported. */
+    private File importDirectory;
+    /** The older statistics file, with every record, which is copied into the import directory before each import. */
+    private File legacyFile;
+
+    @Setup(Level.Trial)
+    public void createHistory() throws IOException {
+        configHandler = new ConfigHandler();
+
+        storeDirectory = Files.createTempDirectory("schillsaver-benchmark").toFile();
+        importDirectory = Files.createTempDirectory("schillsaver-benchmark").toFile();
+        legacyFile = new File(storeDirectory, "legacy.txt");
+
+        final Random random = new Random(0);
+        final List<StatisticsRecord> records = new ArrayList<>(recordCount);
+
+        try (
+            final PrintWriter printWriter = new PrintWriter(legacyFile, StandardCharsets.UTF_8.name());
+        ) {
+            for(int i = 0 ; i < recordCount ; i++) {
+                final long bytes = 1 + random.nextInt(1 << 30);
+                final long durationNanos = bytes * (90 + random.nextInt(20));
+                final boolean isEncode = random.nextBoolean();
+
+                records.add(new StatisticsRecord(i, isEncode, bytes, durationNanos, false, "libx264", 1280, 720, 8));
+                printWriter.println(bytes);
+            }
+        }
+
+        final StatisticsStoreHandler storeHandler = new StatisticsStoreHandler(new File(storeDirectory, "statistics.dat"));
+        storeHandler.appendAll(records);
+        storeHandler.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetImport() throws IOException {
+        FileUtils.cleanDirectory(importDirectory);
+        Files.copy(legacyFile.toPath(), new File(importDirectory, "statistics_encode.txt").toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteHistory() throws IOException {
+        FileUtils.deleteDirectory(storeDirectory);
+        FileUtils.deleteDirectory(importDirectory);
+    }
+
+    @Benchmark
+    public long open() {
+        final StatisticsHandler statisticsHandler = new StatisticsHandler(configHandler, storeDirectory);
+        final long bytesPerSecond = statisticsHandler.getBytesEncodedPerSecond();
+        statisticsHandler.close();
+        return bytesPerSecond;
+    }
+
+    @Benchmark
+    public double openAndEstimate() {
+        final StatisticsHandler statisticsHandler = new StatisticsHandler(configHandler, storeDirectory);
+        final double seconds = statisticsHandler.estimateProcessingDuration(true, 1L << 30);
+        statisticsHandler.close();
+        return seconds;
+    }
+
+    @Benchmark
+    public long importLegacy() {
+        final StatisticsHandler statisticsHandler = new StatisticsHandler(configHandler, importDirectory);
+        final long recordCount = statisticsHandler.getEncodeRecordCount();
+        statisticsHandler.close();
+        return recordCount;
+    }
+}
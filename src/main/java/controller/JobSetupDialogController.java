@@ -16,6 +16,7 @@ import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import lombok.Getter;
+import misc.DurationEstimate;
 import misc.Job;
 import model.JobSetupDialogModel;
 import org.apache.logging.log4j.LogManager;
@@ -29,6 +30,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 
 public class JobSetupDialogController extends Stage implements EventHandler {
     // todo JavaDoc
@@ -250,17 +252,23 @@ public class JobSetupDialogController extends Stage implements EventHandler {
 
     /**
      * Either updates the estimated duration label with the estimated duration, in minutes,
-     * that the Job will take, or "unknown" if there is insufficent data to estimate.
+     * that the Job will take, along with the range that it's likely to fall in, or "unknown"
+     * if there is insufficent data to estimate.
      */
     public void updateEstimatedDurationLabel() {
+        final DurationEstimate estimate = statisticsHandler.estimateProcessingDuration(view.getIsEncodeJob(), model.getList_files());
+
         // Determine if the time can be estimated.
         boolean canTimeBeEstimated = true;
         canTimeBeEstimated &= model.getList_files().size() > 0;
-        canTimeBeEstimated &= (view.getIsEncodeJob() ? statisticsHandler.getBytesEncodedPerSecond() > 0 : statisticsHandler.getBytesDecodedPerSecond() > 0);
+        canTimeBeEstimated &= estimate.isKnown();
 
         // If the time can be estimated, then do so, else show unknown.
         if(canTimeBeEstimated) {
-            view.getLabel_job_estimatedDurationInMinutes().setText("Estimated Time - " + statisticsHandler.estimateProcessingDuration(view.getIsEncodeJob(), model.getList_files())/60 + " Minutes");
+            view.getLabel_job_estimatedDurationInMinutes().setText(String.format(Locale.US, "Estimated Time - %d Minutes (%d - %d)",
+                                                                                 Math.round(estimate.getSeconds() / 60),
+                                                                                 Math.round(estimate.getLowerSeconds() / 60),
+                                                                                 Math.round(estimate.getUpperSeconds() / 60)));
         } else {
             view.getLabel_job_estimatedDurationInMinutes().setText("Estimated Time - Unknown");
         }
@@ -1,27 +1,58 @@
 package controller;
 
+import eu.hansolo.enzo.notification.Notification;
 import handler.ConfigHandler;
+import handler.EncodeCacheHandler;
 import handler.FFMPEGHandler;
 import handler.JobHandler;
+import handler.JobListener;
+import handler.JournalHandler;
+import handler.LogStoreHandler;
+import handler.ManagementHandler;
+import handler.MetricsHandler;
+import handler.OutputBufferHandler;
 import handler.StatisticsHandler;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.scene.control.Alert;
+import javafx.scene.control.ListCell;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import lombok.Getter;
 import misc.Job;
 import model.MainScreenModel;
+import model.OutputLinesModel;
+import module.ProgressStatisticsModule;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import view.MainScreenView;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 
-public class MainScreenController implements EventHandler {
+public class MainScreenController implements EventHandler, JobListener {
+    /** The number of times per second that the buffered output is displayed. */
+    private static final int OUTPUT_DRAINS_PER_SECOND = 30;
+    /** The maximum size, in bytes, of each segment of the output log. */
+    private static final int OUTPUT_LOG_SEGMENT_SIZE = 64 * 1024 * 1024;
+    /** The number of times per second that the progress of the running Jobs is displayed. */
+    private static final int PROGRESS_REFRESHES_PER_SECOND = 2;
+
     // todo JavaDoc
     private final Stage primaryStage;
 
@@ -36,19 +67,420 @@ public class MainScreenController implements EventHandler {
     // todo JavaDoc
     private final StatisticsHandler statisticsHandler;
 
+    /** The journal in which the queue, and the progress of each Job, is recorded. */
+    private final JournalHandler journalHandler;
+
+    /** The cache of previously encoded files. */
+    private final EncodeCacheHandler encodeCacheHandler;
+
+    /** The handler through which the Jobs can be inspected and steered while they run. */
+    private final ManagementHandler managementHandler;
+
+    /** The buffer of output lines which are waiting to be displayed. */
+    @Getter private final OutputBufferHandler outputBufferHandler;
+    /** The log in which every displayed line of output is kept. */
+    private final LogStoreHandler logStoreHandler;
+    /** The lines of the output log which are currently shown. */
+    private OutputLinesModel outputLinesModel;
+    /** The search or filter of the output log which is running in the background, or null if there is none. */
+    private Task<Void> outputScan;
+
+    /** The tag of each Job, by its journal id, which marks the lines that the Job outputs. */
+    private final Map<String, Integer> outputJobTags = new ConcurrentHashMap<>();
+    /** The tag to give to the next Job that outputs a line. */
+    private final AtomicInteger nextOutputJobTag = new AtomicInteger();
+
+    /** The live progress of each Job which has been run, and not yet removed from the list. */
+    @Getter private final Map<Job, ProgressStatisticsModule> jobProgress = new ConcurrentHashMap<>();
+
     /**
      * Construct a new main screen controller.
      * @param primaryStage todo JavaDoc
      * @param configHandler The object that handles settings for encoding, decoding, compression, and a number of other features.
      * @param statisticsHandler todo JavaDoc
+     * @param journalHandler The journal in which the queue, and the progress of each Job, is recorded.
+     * @param encodeCacheHandler The cache of previously encoded files.
+     * @param managementHandler The handler through which the Jobs can be inspected and steered while they run.
      */
-    public MainScreenController(final Stage primaryStage, final ConfigHandler configHandler, final StatisticsHandler statisticsHandler) {
+    public MainScreenController(final Stage primaryStage, final ConfigHandler configHandler, final StatisticsHandler statisticsHandler, final JournalHandler journalHandler, final EncodeCacheHandler encodeCacheHandler, final ManagementHandler managementHandler) {
         this.primaryStage = primaryStage;
         this.configHandler = configHandler;
         this.statisticsHandler = statisticsHandler;
+        this.journalHandler = journalHandler;
+        this.encodeCacheHandler = encodeCacheHandler;
+        this.managementHandler = managementHandler;
 
         view = new MainScreenView(this);
         model = new MainScreenModel();
+
+        // Keep the output on disk, so only the lines being shown are held in memory:
+        logStoreHandler = createLogStore(new File(configHandler.getOutputLogDirectory()));
+
+        // Display the buffered output in batches, at a fixed rate, rather than line by line:
+        outputBufferHandler = new OutputBufferHandler(configHandler.getOutputBufferLines());
+
+        final Timeline outputDrainer = new Timeline(new KeyFrame(Duration.millis(1000.0 / OUTPUT_DRAINS_PER_SECOND), event -> drainOutput()));
+        outputDrainer.setCycleCount(Animation.INDEFINITE);
+        outputDrainer.play();
+
+        MetricsHandler.registerGauge("output_backlog_lines", "gauge", "The number of lines of output waiting to be displayed.", outputBufferHandler::getBacklog);
+        MetricsHandler.registerGauge("output_dropped_lines_total", "counter", "The number of lines of output dropped, as they were output faster than they could be displayed.", outputBufferHandler::getTotalDroppedLines);
+        MetricsHandler.registerGauge("output_log_lines", "gauge", "The number of lines in the output log.", logStoreHandler::getLineCount);
+
+        // Show the progress of each running Job beside it, without changing the Job's item in the list:
+        view.getListView_jobs().setCellFactory(listView -> new ListCell<String>() {
+            @Override
+            protected void updateItem(final String item, final boolean empty) {
+                super.updateItem(item, empty);
+
+                if(empty || item == null) {
+                    setText(null);
+                    return;
+                }
+
+                final ProgressStatisticsModule progressModule = findJobProgress(item);
+                setText(progressModule == null ? item : item + " - " + progressModule);
+            }
+        });
+
+        final Timeline progressRefresher = new Timeline(new KeyFrame(Duration.millis(1000.0 / PROGRESS_REFRESHES_PER_SECOND), event -> {
+            if(! jobProgress.isEmpty()) {
+                view.getListView_jobs().refresh();
+            }
+        }));
+        progressRefresher.setCycleCount(Animation.INDEFINITE);
+        progressRefresher.play();
+
+        // Recover the Jobs that were queued, or running, when the program last closed:
+        final List<Job> recoveredJobs = journalHandler.recoverJobs(line -> logStoreHandler.append(line, -1));
+
+        for(final Job job : recoveredJobs) {
+            job.setId(view.getListView_jobs().getItems().size());
+            view.getListView_jobs().getItems().add(job.getFullDesignation());
+
+            model.getList_jobs().add(job);
+        }
+
+        outputLinesModel = new OutputLinesModel(logStoreHandler, -1);
+        view.getListView_output().setItems(outputLinesModel);
+    }
+
+    /**
+     * Appends the specified line to the output screen.
+     *
+     * This can be called from any thread, and never blocks. The line is
+     * displayed with the next batch of output.
+     *
+     * @param line
+     *         The line to append.
+     */
+    public void appendOutput(final String line) {
+        outputBufferHandler.append(line, -1);
+    }
+
+    /**
+     * Appends the specified line, which was output by the specified Job, to
+     * the output screen.
+     *
+     * This can be called from any thread, and never blocks. The line is
+     * displayed with the next batch of output.
+     *
+     * @param line
+     *         The line to append.
+     *
+     * @param job
+     *         The Job that output the line.
+     */
+    @Override
+    public void appendOutput(final String line, final Job job) {
+        outputBufferHandler.append(line, getOutputJobTag(job));
+    }
+
+    @Override
+    public void jobsStarted() {
+        Platform.runLater(() -> setJobControlsDisabled(true));
+    }
+
+    @Override
+    public void jobsFinished() {
+        Platform.runLater(() -> setJobControlsDisabled(false));
+    }
+
+    @Override
+    public void jobFinished(final Job job) {
+        Platform.runLater(() -> {
+            model.getList_jobs().remove(job);
+            view.getListView_jobs().getItems().remove(job.getFullDesignation());
+            jobProgress.remove(job);
+            view.getListView_jobs().getSelectionModel().clearSelection();
+        });
+    }
+
+    /**
+     * Disables, or enables, the interface components which mustn't be used
+     * while Jobs are running.
+     *
+     * @param isDisabled
+     *         Whether to disable, or enable, the components.
+     */
+    private void setJobControlsDisabled(final boolean isDisabled) {
+        view.getButton_createJob().setDisable(isDisabled);
+        view.getButton_deleteSelectedJobs().setDisable(isDisabled);
+        view.getButton_deleteAllJobs().setDisable(isDisabled);
+        view.getButton_clearOutput().setDisable(isDisabled);
+        view.getButton_editSettings().setDisable(isDisabled);
+        view.getButton_encode().setDisable(isDisabled);
+        view.getButton_decode().setDisable(isDisabled);
+    }
+
+    /**
+     * Moves every line of output that's waiting in the buffer into the
+     * output log, then shows the new lines with a single update of the
+     * output screen.
+     *
+     * Unless a line of output is selected, the output screen is scrolled to
+     * the newest line.
+     */
+    private void drainOutput() {
+        if(outputBufferHandler.drainTo(logStoreHandler::append, Integer.MAX_VALUE) == 0 && logStoreHandler.getLineCount() == outputLinesModel.getScannedLineCount()) {
+            return;
+        }
+
+        try {
+            logStoreHandler.flush();
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+        }
+
+        outputLinesModel.update();
+
+        if(view.getListView_output().getSelectionModel().isEmpty() && outputLinesModel.size() > 0) {
+            view.getListView_output().scrollTo(outputLinesModel.size() - 1);
+        }
+    }
+
+    /**
+     * Finds the progress of the Job with the specified designation.
+     *
+     * @param designation
+     *         The designation of the Job, as shown in the list of Jobs.
+     *
+     * @return
+     *         The progress of the Job, or null if it hasn't been run.
+     */
+    private ProgressStatisticsModule findJobProgress(final String designation) {
+        for(final Map.Entry<Job, ProgressStatisticsModule> entry : jobProgress.entrySet()) {
+            if(entry.getKey().getFullDesignation().equals(designation)) {
+                return entry.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Selects the next line of output which contains the text in the search
+     * field, wrapping around to the first line if necessary.
+     *
+     * The log is searched on another thread, so that a long log doesn't
+     * freeze the screen, and any search or filter which is still running is
+     * cancelled.
+     */
+    private void searchOutput() {
+        final String text = view.getField_searchOutput().getText();
+
+        if(text.isEmpty() || outputLinesModel.isEmpty()) {
+            return;
+        }
+
+        final OutputLinesModel searchedModel = outputLinesModel;
+        final int jobTag = searchedModel.getJobTag();
+
+        final int selectedIndex = view.getListView_output().getSelectionModel().getSelectedIndex();
+        final int fromLine = (selectedIndex < 0 ? 0 : searchedModel.getLineIndex(selectedIndex) + 1);
+
+        startOutputScan(new Task<Void>() {
+            @Override
+            protected Void call() throws IOException {
+                int lineIndex = logStoreHandler.search(text, fromLine, jobTag, this::isCancelled);
+
+                if(lineIndex == -1 && fromLine > 0 && ! isCancelled()) {
+                    lineIndex = logStoreHandler.search(text, 0, jobTag, this::isCancelled);
+                }
+
+                final int foundLineIndex = lineIndex;
+
+                Platform.runLater(() -> {
+                    // A newer search or filter may have replaced this one while it ran:
+                    if(! finishOutputScan(this) || searchedModel != outputLinesModel) {
+                        return;
+                    }
+
+                    final int index = (foundLineIndex == -1 ? -1 : outputLinesModel.indexOfLine(foundLineIndex));
+
+                    if(index != -1) {
+                        view.getListView_output().getSelectionModel().clearAndSelect(index);
+                        view.getListView_output().scrollTo(index);
+                    }
+                });
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Shows either every line of output, or only the lines of the first of
+     * the currently selected Jobs.
+     *
+     * A Job's lines are found on another thread, so that a long log doesn't
+     * freeze the screen, and any search or filter which is still running is
+     * cancelled.
+     */
+    private void filterOutput() {
+        int jobTag = -1;
+
+        final int selectedIndex = view.getListView_jobs().getSelectionModel().getSelectedIndex();
+
+        if(view.getCheckBox_filterOutputBySelectedJob().isSelected() && selectedIndex >= 0) {
+            jobTag = getOutputJobTag(model.getList_jobs().get(selectedIndex));
+        }
+
+        // Showing every line needs no scan:
+        if(jobTag == -1) {
+            cancelOutputScan();
+            showOutputLines(new OutputLinesModel(logStoreHandler, -1));
+            return;
+        }
+
+        final int filteredJobTag = jobTag;
+        final int lineCount = logStoreHandler.getLineCount();
+
+        startOutputScan(new Task<Void>() {
+            @Override
+            protected Void call() throws IOException {
+                final int[] lineIndices = logStoreHandler.filterByJob(filteredJobTag, 0, lineCount, this::isCancelled);
+
+                Platform.runLater(() -> {
+                    // A newer search or filter may have replaced this one while it ran:
+                    if(finishOutputScan(this)) {
+                        showOutputLines(new OutputLinesModel(logStoreHandler, filteredJobTag, lineIndices, lineCount));
+                    }
+                });
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Shows the specified lines of output, scrolled to the last line.
+     *
+     * @param linesModel
+     *         The lines.
+     */
+    private void showOutputLines(final OutputLinesModel linesModel) {
+        outputLinesModel = linesModel;
+        view.getListView_output().setItems(outputLinesModel);
+        view.getListView_output().scrollTo(Math.max(0, outputLinesModel.size() - 1));
+    }
+
+    /**
+     * Cancels any running search or filter of the output log, then runs the
+     * specified one on a new thread.
+     *
+     * @param scan
+     *         The search or filter.
+     */
+    private void startOutputScan(final Task<Void> scan) {
+        cancelOutputScan();
+        outputScan = scan;
+
+        scan.setOnFailed(event -> {
+            finishOutputScan(scan);
+
+            final Logger logger = LogManager.getLogger();
+            logger.error(scan.getException());
+
+            Notification.Notifier.INSTANCE.notifyError("IOException", "Please view the log file.");
+        });
+
+        final Thread thread = new Thread(scan, "Output Scanner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Cancels any running search or filter of the output log. */
+    private void cancelOutputScan() {
+        if(outputScan != null) {
+            // The scan checks whether it's cancelled between batches; interrupting it would close the log's files:
+            outputScan.cancel(false);
+            outputScan = null;
+        }
+    }
+
+    /**
+     * Marks the specified search or filter of the output log as finished.
+     *
+     * @param scan
+     *         The search or filter.
+     *
+     * @return
+     *         Whether it was still the current one, so its result should be
+     *         shown.
+     */
+    private boolean finishOutputScan(final Task<Void> scan) {
+        if(outputScan != scan) {
+            return false;
+        }
+
+        outputScan = null;
+        return true;
+    }
+
+    /**
+     * Retrieves the tag which marks the lines that the specified Job outputs.
+     *
+     * @param job
+     *         The Job.
+     *
+     * @return
+     *         The tag.
+     */
+    private int getOutputJobTag(final Job job) {
+        if(job.getJournalId() == null) {
+            return -1;
+        }
+
+        return outputJobTags.computeIfAbsent(job.getJournalId(), key -> nextOutputJobTag.getAndIncrement());
+    }
+
+    /**
+     * Creates the output log in the specified directory, or in a temporary
+     * directory if that fails.
+     *
+     * @param directory
+     *         The directory.
+     *
+     * @return
+     *         The output log.
+     */
+    private static LogStoreHandler createLogStore(final File directory) {
+        try {
+            return new LogStoreHandler(directory, OUTPUT_LOG_SEGMENT_SIZE);
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+
+            Notification.Notifier.INSTANCE.notifyError("IOException", "Please view the log file.");
+        }
+
+        try {
+            return new LogStoreHandler(Files.createTempDirectory("schillsaver-output").toFile(), OUTPUT_LOG_SEGMENT_SIZE);
+        } catch(final IOException e) {
+            throw new IllegalStateException("Unable to create the output log.", e);
+        }
     }
 
     @Override
@@ -69,6 +501,7 @@ public class MainScreenController implements EventHandler {
                     view.getListView_jobs().getItems().add(job.getFullDesignation());
 
                     model.getList_jobs().add(job);
+                    journalHandler.recordQueued(job);
                 }
 
                 jobSetupDialogController.close();
@@ -97,6 +530,9 @@ public class MainScreenController implements EventHandler {
                         editedJob.setId(firstSelectedIndex);
                         view.getListView_jobs().getItems().set(firstSelectedIndex, editedJob.getFullDesignation());
                         model.getList_jobs().set(firstSelectedIndex, editedJob);
+
+                        journalHandler.recordRemoved(job);
+                        journalHandler.recordQueued(editedJob);
                     }
                 });
             } catch(final ArrayIndexOutOfBoundsException e) {
@@ -115,20 +551,19 @@ public class MainScreenController implements EventHandler {
             // Only allow files to be encoded if there are actually
             // files in the list of files.
             if(view.getListView_jobs().getItems().size() > 0) {
-                final List<FFMPEGHandler> preparedJobs = new ArrayList<>();
-
                 // Only prepare Encode Jobs:
-                model.getList_jobs()
-                     .parallelStream()
-                     .filter(Job::isEncodeJob)
-                     .forEach(job -> {
-                         final FFMPEGHandler ffmpegHandler = new FFMPEGHandler(job, this, configHandler, statisticsHandler);
-                         ffmpegHandler.setOnSucceeded(ffmpegHandler);
-                         preparedJobs.add(ffmpegHandler);
-                     });
+                final List<FFMPEGHandler> preparedJobs = model.getList_jobs()
+                                                              .stream()
+                                                              .filter(Job::isEncodeJob)
+                                                              .map(job -> {
+                                                                  final FFMPEGHandler ffmpegHandler = new FFMPEGHandler(job, this, configHandler, statisticsHandler, journalHandler, encodeCacheHandler);
+                                                                  jobProgress.put(job, ffmpegHandler.getProgressModule());
+                                                                  return ffmpegHandler;
+                                                              })
+                                                              .collect(Collectors.toList());
 
                 // Run Jobs:
-                final JobHandler handler = new JobHandler(this, preparedJobs);
+                final JobHandler handler = new JobHandler(this, configHandler, managementHandler, preparedJobs);
                 final Thread thread = new Thread(handler);
                 thread.setDaemon(true);
                 thread.start();
@@ -145,20 +580,19 @@ public class MainScreenController implements EventHandler {
             // Only allow files to be decoded if there are actually
             // files in the list of files.
             if(view.getListView_jobs().getItems().size() > 0) {
-                final List<FFMPEGHandler> preparedJobs = new ArrayList<>();
-
                 // Only prepare Decode Jobs:
-                model.getList_jobs()
-                     .parallelStream()
-                     .filter(job -> ! job.isEncodeJob())
-                     .forEach(job -> {
-                         final FFMPEGHandler ffmpegHandler = new FFMPEGHandler(job, this, configHandler, statisticsHandler);
-                         ffmpegHandler.setOnSucceeded(ffmpegHandler);
-                         preparedJobs.add(ffmpegHandler);
-                     });
+                final List<FFMPEGHandler> preparedJobs = model.getList_jobs()
+                                                              .stream()
+                                                              .filter(job -> ! job.isEncodeJob())
+                                                              .map(job -> {
+                                                                  final FFMPEGHandler ffmpegHandler = new FFMPEGHandler(job, this, configHandler, statisticsHandler, journalHandler, encodeCacheHandler);
+                                                                  jobProgress.put(job, ffmpegHandler.getProgressModule());
+                                                                  return ffmpegHandler;
+                                                              })
+                                                              .collect(Collectors.toList());
 
                 // Run Jobs:
-                final JobHandler handler = new JobHandler(this, preparedJobs);
+                final JobHandler handler = new JobHandler(this, configHandler, managementHandler, preparedJobs);
                 final Thread thread = new Thread(handler);
                 thread.setDaemon(true);
                 thread.start();
@@ -186,6 +620,8 @@ public class MainScreenController implements EventHandler {
                     view.getListView_jobs().getItems().set(index, job.getFullDesignation());
                 } else {
                     it.remove();
+                    jobProgress.remove(job);
+                    journalHandler.recordRemoved(job);
                 }
             }
 
@@ -196,6 +632,8 @@ public class MainScreenController implements EventHandler {
         if(source.equals(view.getButton_deleteAllJobs())) {
             view.getListView_jobs().getItems().clear();
 
+            model.getList_jobs().forEach(journalHandler::recordRemoved);
+            jobProgress.clear();
             model.getList_jobs().clear();
 
             view.getListView_jobs().getSelectionModel().clearSelection();
@@ -204,7 +642,30 @@ public class MainScreenController implements EventHandler {
 
         // The button to clear the output screen.
         if(source.equals(view.getButton_clearOutput())) {
-            view.getTextArea_output().clear();
+            try {
+                logStoreHandler.clear();
+            } catch(final IOException e) {
+                final Logger logger = LogManager.getLogger();
+                logger.error(e);
+
+                Notification.Notifier.INSTANCE.notifyError("IOException", "Please view the log file.");
+            }
+
+            view.getListView_output().getSelectionModel().clearSelection();
+            filterOutput();
+        }
+
+
+        // The field to find text within the output.
+        if(source.equals(view.getField_searchOutput())) {
+            searchOutput();
+        }
+
+
+        // The checkbox to only show the output of the selected Job.
+        if(source.equals(view.getCheckBox_filterOutputBySelectedJob())) {
+            view.getListView_output().getSelectionModel().clearSelection();
+            filterOutput();
         }
 
 
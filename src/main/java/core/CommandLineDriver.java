@@ -0,0 +1,421 @@
+package core;
+
+import handler.ConfigHandler;
+import handler.DaemonHandler;
+import handler.EncodeCacheHandler;
+import handler.FFMPEGHandler;
+import handler.JobHandler;
+import handler.JobListener;
+import handler.JournalHandler;
+import handler.ManagementHandler;
+import handler.MetricsHandler;
+import handler.NotificationHandler;
+import handler.StatisticsHandler;
+import misc.Job;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs Jobs from the command line, through the same handlers as the main
+ * screen, without starting the JavaFX toolkit.
+ *
+ * Usage: java -cp Schillsaver.jar core.CommandLineDriver [--config <file>] [--log <file>]
+ *            (--encode | --decode) [--archive] [--name <name>] --output <directory> <file>...
+ *            [(--encode | --decode) ...]
+ *
+ *        java -cp Schillsaver.jar core.CommandLineDriver [--config <file>] [--log <file>] --daemon
+ *
+ * Each --encode or --decode begins a Job, and the options and files which
+ * follow it belong to that Job. The output of every Job is written to
+ * standard output, or appended to the log file, with each line prefixed by
+ * the name of its Job.
+ *
+ * With --daemon, no Jobs are given. Instead, the handlers stay resident and
+ * accept Jobs from other processes, on the "Daemon Port" of the settings,
+ * until the process is stopped.
+ *
+ * The exit code is 0 if every Job completed, 1 if any Job has files which
+ * weren't en/decoded, 2 if the arguments are invalid, and 3 if the
+ * settings can't be used.
+ */
+public class CommandLineDriver implements JobListener {
+    /** The exit code when every Job completed. */
+    public static final int EXIT_COMPLETED = 0;
+    /** The exit code when any Job has files which weren't en/decoded. */
+    public static final int EXIT_FAILED = 1;
+    /** The exit code when the arguments are invalid. */
+    public static final int EXIT_INVALID_ARGUMENTS = 2;
+    /** The exit code when the settings can't be used. */
+    public static final int EXIT_INVALID_SETTINGS = 3;
+
+    /** The usage of the command line. */
+    private static final String USAGE = "Usage: CommandLineDriver [--config <file>] [--log <file>] " +
+                                        "(--encode | --decode) [--archive] [--name <name>] --output <directory> <file>... " +
+                                        "[(--encode | --decode) ...]" + System.lineSeparator() +
+                                        "       CommandLineDriver [--config <file>] [--log <file>] --daemon";
+
+    /** The stream to which the output of every Job is written. */
+    private final PrintStream output;
+    /** The number of Jobs to run. */
+    private int jobCount;
+
+    /**
+     * Constructs a new CommandLineDriver.
+     *
+     * @param output
+     *         The stream to which the output of every Job is written.
+     */
+    private CommandLineDriver(final PrintStream output) {
+        this.output = output;
+    }
+
+    public static void main(final String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs the Jobs described by the specified arguments.
+     *
+     * @param args
+     *         The arguments.
+     *
+     * @return
+     *         The exit code.
+     */
+    public static int run(final String[] args) {
+        File settingsFile = null;
+        File logFile = null;
+        boolean isDaemon = false;
+
+        final List<JobSpec> jobSpecs = new ArrayList<>();
+        JobSpec jobSpec = null;
+
+        for(int i = 0 ; i < args.length ; i++) {
+            final String argument = args[i];
+
+            switch(argument) {
+                case "--help": {
+                    System.out.println(USAGE);
+                    return EXIT_COMPLETED;
+                }
+                case "--daemon": {
+                    isDaemon = true;
+                    continue;
+                }
+                case "--encode":
+                case "--decode": {
+                    jobSpec = new JobSpec(argument.equals("--encode"));
+                    jobSpecs.add(jobSpec);
+                    continue;
+                }
+                case "--config":
+                case "--log":
+                case "--name":
+                case "--output": {
+                    if(i + 1 == args.length) {
+                        return printUsageError(argument + " needs a value.");
+                    }
+
+                    final String value = args[++i];
+
+                    if(argument.equals("--config")) {
+                        settingsFile = new File(value);
+                    } else if(argument.equals("--log")) {
+                        logFile = new File(value);
+                    } else if(jobSpec == null) {
+                        return printUsageError(argument + " must follow --encode or --decode.");
+                    } else if(argument.equals("--name")) {
+                        jobSpec.name = value;
+                    } else {
+                        jobSpec.outputDirectory = value;
+                    }
+
+                    continue;
+                }
+                case "--archive": {
+                    if(jobSpec == null || ! jobSpec.isEncodeJob) {
+                        return printUsageError("--archive must follow --encode.");
+                    }
+
+                    jobSpec.isArchiveFiles = true;
+                    continue;
+                }
+            }
+
+            if(argument.startsWith("--")) {
+                return printUsageError("Unknown option " + argument + ".");
+            }
+
+            if(jobSpec == null) {
+                return printUsageError("The file " + argument + " must follow --encode or --decode.");
+            }
+
+            jobSpec.files.add(new File(argument));
+        }
+
+        if(isDaemon && ! jobSpecs.isEmpty()) {
+            return printUsageError("Jobs can't be given with --daemon.");
+        }
+
+        if(! isDaemon && jobSpecs.isEmpty()) {
+            return printUsageError("No Jobs were given.");
+        }
+
+        for(final JobSpec spec : jobSpecs) {
+            if(spec.files.isEmpty()) {
+                return printUsageError("Every Job needs at least one file.");
+            }
+
+            if(spec.outputDirectory == null || ! new File(spec.outputDirectory).isDirectory()) {
+                return printUsageError("Every Job needs an existing --output directory.");
+            }
+
+            for(final File file : spec.files) {
+                if(! file.isFile()) {
+                    return printUsageError("The file " + file.getPath() + " doesn't exist.");
+                }
+            }
+        }
+
+        if(settingsFile != null && ! settingsFile.isFile()) {
+            return printUsageError("The configuration file " + settingsFile.getPath() + " doesn't exist.");
+        }
+
+        try (
+            final PrintStream output = new PrintStream(new BufferedOutputStream(logFile == null ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(logFile, true), 1 << 16), false, "UTF-8");
+        ) {
+            final CommandLineDriver driver = new CommandLineDriver(output);
+            return (isDaemon ? driver.runDaemon(settingsFile) : driver.runJobs(settingsFile, jobSpecs));
+        } catch(final IOException e) {
+            System.err.println("Unable to open the log file " + logFile + ": " + e.getMessage());
+            return EXIT_INVALID_ARGUMENTS;
+        }
+    }
+
+    /**
+     * Runs the specified Jobs, and waits until they've finished.
+     *
+     * @param settingsFile
+     *         The configuration file, or null to use the one in the working directory.
+     *
+     * @param jobSpecs
+     *         The Jobs.
+     *
+     * @return
+     *         The exit code.
+     */
+    private int runJobs(final File settingsFile, final List<JobSpec> jobSpecs) {
+        final ConfigHandler configHandler = loadSettings(settingsFile);
+
+        if(configHandler == null) {
+            return EXIT_INVALID_SETTINGS;
+        }
+
+        MetricsHandler.startServer(configHandler.getMetricsPort());
+
+        final StatisticsHandler statisticsHandler = new StatisticsHandler(configHandler);
+        final JournalHandler journalHandler = new JournalHandler();
+        final EncodeCacheHandler encodeCacheHandler = new EncodeCacheHandler(configHandler);
+        final ManagementHandler managementHandler = new ManagementHandler(configHandler);
+
+        // Stop other instances from recovering these Jobs while they run:
+        journalHandler.lock();
+
+        final List<FFMPEGHandler> tasks = new ArrayList<>(jobSpecs.size());
+        jobCount = jobSpecs.size();
+
+        for(final JobSpec jobSpec : jobSpecs) {
+            final String name = (jobSpec.name == null ? FilenameUtils.getBaseName(jobSpec.files.get(0).getName()) : jobSpec.name);
+            final Job job = new Job(name, "", jobSpec.outputDirectory, jobSpec.files, jobSpec.isEncodeJob, jobSpec.isArchiveFiles);
+            job.setId(tasks.size());
+
+            // Like the Jobs of the main screen, Jobs which don't finish are recovered by the main screen:
+            journalHandler.recordQueued(job);
+
+            tasks.add(new FFMPEGHandler(job, this, configHandler, statisticsHandler, journalHandler, encodeCacheHandler));
+        }
+
+        new JobHandler(this, configHandler, managementHandler, tasks).run();
+
+        final long firstProcessStartTime = MetricsHandler.getFirstProcessStartTime();
+
+        if(firstProcessStartTime > 0) {
+            output.println("Started the first process " + (firstProcessStartTime - ManagementFactory.getRuntimeMXBean().getStartTime()) + " ms after the JVM started.");
+        }
+
+        MetricsHandler.stopServer();
+        statisticsHandler.close();
+        journalHandler.close();
+
+        for(final FFMPEGHandler task : tasks) {
+            if(! task.isJobCompleted()) {
+                return EXIT_FAILED;
+            }
+        }
+
+        return EXIT_COMPLETED;
+    }
+
+    /**
+     * Accepts Jobs from other processes, until the process is stopped.
+     *
+     * @param settingsFile
+     *         The configuration file, or null to use the one in the working directory.
+     *
+     * @return
+     *         The exit code, if the Jobs can't be accepted.
+     */
+    private int runDaemon(final File settingsFile) {
+        final ConfigHandler configHandler = loadSettings(settingsFile);
+
+        if(configHandler == null) {
+            return EXIT_INVALID_SETTINGS;
+        }
+
+        final int port = configHandler.getDaemonPort();
+
+        if(port <= 0) {
+            output.println("ERROR - The Daemon Port must be set to accept Jobs.");
+            return EXIT_INVALID_SETTINGS;
+        }
+
+        MetricsHandler.startServer(configHandler.getMetricsPort());
+
+        final StatisticsHandler statisticsHandler = new StatisticsHandler(configHandler);
+        final JournalHandler journalHandler = new JournalHandler();
+        final EncodeCacheHandler encodeCacheHandler = new EncodeCacheHandler(configHandler);
+        final ManagementHandler managementHandler = new ManagementHandler(configHandler);
+        final DaemonHandler daemonHandler = new DaemonHandler(configHandler, statisticsHandler, journalHandler, encodeCacheHandler, managementHandler);
+
+        // Stop other instances from recovering these Jobs while they run:
+        journalHandler.lock();
+
+        // The daemon is long-lived, so it can also be steered over JMX:
+        managementHandler.register(statisticsHandler);
+
+        if(! daemonHandler.startServer(port)) {
+            output.println("ERROR - Unable to accept Jobs on port " + port + ".");
+            return EXIT_INVALID_SETTINGS;
+        }
+
+        output.println("Accepting Jobs at http://localhost:" + port + "/jobs.");
+        output.flush();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            daemonHandler.stopServer();
+            MetricsHandler.stopServer();
+            statisticsHandler.close();
+            journalHandler.close();
+            output.flush();
+        }));
+
+        // The server runs on its own threads, so this thread only waits
+        // until the process is stopped:
+        try {
+            new CountDownLatch(1).await();
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return EXIT_COMPLETED;
+    }
+
+    /**
+     * Loads the settings, and checks that ffmpeg can be found.
+     *
+     * @param settingsFile
+     *         The configuration file, or null to use the one in the working directory.
+     *
+     * @return
+     *         The settings, or null if they can't be used.
+     */
+    private ConfigHandler loadSettings(final File settingsFile) {
+        // There's no screen to show errors on:
+        NotificationHandler.setErrorConsumer((title, message) -> {
+            output.println("ERROR - " + title + " - " + message);
+            output.flush();
+        });
+
+        final ConfigHandler configHandler = (settingsFile == null ? new ConfigHandler() : new ConfigHandler(settingsFile));
+        configHandler.loadConfigSettings();
+
+        if(! new File(configHandler.getFfmpegPath()).exists()) {
+            output.println("ERROR - The FFMPEG path, " + configHandler.getFfmpegPath() + ", doesn't exist.");
+            return null;
+        }
+
+        return configHandler;
+    }
+
+    @Override
+    public void jobsStarted() {
+        output.println("Running " + jobCount + " Job(s).");
+    }
+
+    @Override
+    public void jobsFinished() {
+        output.flush();
+    }
+
+    @Override
+    public void jobFinished(final Job job) {
+        output.println("[" + job.getName() + "] FINISHED");
+        output.flush();
+    }
+
+    @Override
+    public void appendOutput(final String line, final Job job) {
+        int end = line.length();
+
+        while(end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+
+        if(end > 0) {
+            output.println("[" + job.getName() + "] " + line.substring(0, end));
+        }
+    }
+
+    /**
+     * Prints the specified error, followed by the usage, to standard error.
+     *
+     * @param error
+     *         The error.
+     *
+     * @return
+     *         The exit code for invalid arguments.
+     */
+    private static int printUsageError(final String error) {
+        System.err.println(error);
+        System.err.println(USAGE);
+        return EXIT_INVALID_ARGUMENTS;
+    }
+
+    /** The description of a Job, as it was given on the command line. */
+    private static class JobSpec {
+        /** Whether or not the Job is an Encode Job. If not, then it's a Decode Job. */
+        private final boolean isEncodeJob;
+        /** Whether or not to pack all of the files into a single archive before encoding. */
+        private boolean isArchiveFiles = false;
+        /** The name of the Job, or null to name it after its first file. */
+        private String name;
+        /** The directory in which to place the output file(s). */
+        private String outputDirectory;
+        /** The file(s) belonging to the Job. */
+        private final List<File> files = new ArrayList<>();
+
+        private JobSpec(final boolean isEncodeJob) {
+            this.isEncodeJob = isEncodeJob;
+        }
+    }
+}
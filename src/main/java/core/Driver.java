@@ -3,6 +3,11 @@ package core;
 import controller.MainScreenController;
 import eu.hansolo.enzo.notification.Notification;
 import handler.ConfigHandler;
+import handler.DaemonHandler;
+import handler.EncodeCacheHandler;
+import handler.JournalHandler;
+import handler.ManagementHandler;
+import handler.MetricsHandler;
 import handler.StatisticsHandler;
 import javafx.application.Application;
 import javafx.geometry.Pos;
@@ -11,6 +16,11 @@ import javafx.scene.image.Image;
 import javafx.stage.Stage;
 
 public class Driver extends Application {
+    /** The handler which accepts Jobs from other processes, or null if it isn't enabled. */
+    private DaemonHandler daemonHandler;
+    /** The journal of the queue, which is locked while the program is open. */
+    private JournalHandler journalHandler;
+
     public static void main(final String[] args) {
         launch();
     }
@@ -23,11 +33,29 @@ public class Driver extends Application {
     @Override
     public void start(Stage primaryStage) throws Exception {
         final ConfigHandler configHandler = new ConfigHandler();
-        final StatisticsHandler statisticsHandler = new StatisticsHandler();
+        final StatisticsHandler statisticsHandler = new StatisticsHandler(configHandler);
+        journalHandler = new JournalHandler();
+        final EncodeCacheHandler encodeCacheHandler = new EncodeCacheHandler(configHandler);
+        final ManagementHandler managementHandler = new ManagementHandler(configHandler);
 
         // Load Config File:
         configHandler.loadConfigSettings();
 
+        // Stop other instances from recovering the Jobs of this one:
+        journalHandler.lock();
+
+        // Serve the metrics, if they're enabled:
+        MetricsHandler.startServer(configHandler.getMetricsPort());
+
+        // Expose the job engine and statistics over JMX:
+        managementHandler.register(statisticsHandler);
+
+        // Accept Jobs from other processes, if it's enabled:
+        if(configHandler.getDaemonPort() > 0) {
+            daemonHandler = new DaemonHandler(configHandler, statisticsHandler, journalHandler, encodeCacheHandler, managementHandler);
+            daemonHandler.startServer(configHandler.getDaemonPort());
+        }
+
         // Setup the primary stage:
         primaryStage.getIcons().add(new Image("icon.png"));
 
@@ -35,7 +63,7 @@ public class Driver extends Application {
         Notification.Notifier.setPopupLocation(primaryStage, Pos.BOTTOM_CENTER);
 
         // Add the frst scene to the primary stage:
-        final Scene scene = new Scene(new MainScreenController(primaryStage, configHandler, statisticsHandler).getView());
+        final Scene scene = new Scene(new MainScreenController(primaryStage, configHandler, statisticsHandler, journalHandler, encodeCacheHandler, managementHandler).getView());
 
         scene.getStylesheets().add("global.css");
         scene.getRoot().getStyleClass().add("main-root");
@@ -44,4 +72,15 @@ public class Driver extends Application {
         primaryStage.setScene(scene);
         primaryStage.show();
     }
+
+    @Override
+    public void stop() {
+        MetricsHandler.stopServer();
+
+        if(daemonHandler != null) {
+            daemonHandler.stopServer();
+        }
+
+        journalHandler.close();
+    }
 }
@@ -1,17 +1,17 @@
 package handler;
 
 
-import controller.MainScreenController;
-import eu.hansolo.enzo.notification.Notification;
-import javafx.application.Platform;
 import misc.Job;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Formatter;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.Consumer;
 
 public class ArchiveHandler {
     /**
@@ -23,42 +23,32 @@ public class ArchiveHandler {
      * as an example.
      * @param job The Job being run.
      * @param selectedFile The file to compress.
-     * @param controller The controller for the view in which the output text area resides.
+     * @param jobListener The listener which is told of the Job's output.
      * @param configHandler The object that handles settings for encoding, decoding, compression, and a number of other features.
-     * @return The compressed archive.
+     * @return The compressed archive, or null if the archiver failed.
      */
-    public File packFile(final Job job, final File selectedFile, final MainScreenController controller, final ConfigHandler configHandler) {
-        // Basic command settings ripped from http://superuser.com/a/742034
-        final StringBuilder stringBuilder = new StringBuilder();
-        final Formatter formatter = new Formatter(stringBuilder, Locale.US);
+    public File packFile(final Job job, final File selectedFile, final JobListener jobListener, final ConfigHandler configHandler) {
+        final String command = createPackFileCommand(configHandler, job, selectedFile);
 
-        formatter.format("\"%s\" %s \"%s.%s\" \"%s%s.%s\"",
-                        configHandler.getCompressionProgramPath(),
-                        configHandler.getCompressionCommands(),
-                        selectedFile.getAbsolutePath(),
-                        configHandler.getDecodeFormat(),
-                        job.getOutputDirectory(),
-                        job.getName(),
-                        configHandler.getDecodeFormat());
-
-        Platform.runLater(() -> controller.getView()
-                                          .getTextArea_output()
-                                          .appendText(stringBuilder.toString() + System.lineSeparator() +
-                                                      System.lineSeparator() + System.lineSeparator()));
+        jobListener.appendOutput(command + System.lineSeparator() + System.lineSeparator(), job);
 
-        CommandHandler.runProgram(stringBuilder.toString(), controller);
+        final boolean wasPacked = CommandHandler.runProgram(command, line -> jobListener.appendOutput(line, job));
 
         // Return a File pointing to the newly created archive:
         final File file = new File(selectedFile.getAbsoluteFile() + "." + configHandler.getDecodeFormat());
 
 
-        if(! file.exists()) {
+        if(! wasPacked || ! file.exists()) {
             final String error = "Could not create " + file.getAbsolutePath() + ".";
 
             final Logger logger = LogManager.getLogger();
             logger.error(error);
 
-            Notification.Notifier.INSTANCE.notifyError("Error", error);
+            NotificationHandler.notifyError("Error", error);
+
+            // A failed archiver may leave a partial archive behind:
+            file.delete();
+            return null;
         }
         return file;
     }
@@ -70,11 +60,192 @@ public class ArchiveHandler {
      * The resulting archive will bear the specified name.
      * @param job The Job being run.
      * @param selectedFiles The file(s) to compress.
-     * @param controller The controller for the view in which the output text area resides.
+     * @param jobListener The listener which is told of the Job's output.
      * @param configHandler The object that handles settings for encoding, decoding, compression, and a number of other features.
-     * @return The compressed archive.
+     * @return The compressed archive, or null if the archiver failed.
+     */
+    public File packFiles(final Job job, final List<File> selectedFiles, final JobListener jobListener, final ConfigHandler configHandler) {
+        final String command = createPackFilesCommand(configHandler, job, selectedFiles);
+
+        jobListener.appendOutput(command + System.lineSeparator() + System.lineSeparator(), job);
+
+        final boolean wasPacked = CommandHandler.runProgram(command, line -> jobListener.appendOutput(line, job));
+
+        // Return a File int to the newly created archive:
+        final File file = new File(job.getOutputDirectory() + job.getName() + "." + configHandler.getCompressionOutputExtension());
+
+        if (! wasPacked || ! file.exists()) {
+            final String error = "The file " + file.toString() + " could not be created. The most-likely causes are incorrect " +
+                                 "commandline arguments or invalid characters in the file name.";
+
+            final Logger logger = LogManager.getLogger();
+            logger.error(error);
+
+            NotificationHandler.notifyError("Error", error);
+
+            // A failed archiver may leave a partial archive behind:
+            file.delete();
+            return null;
+        }
+
+        return file;
+    }
+
+    /**
+     * Starts packing the specified file(s) into an archive which is written
+     * to standard output, rather than to disk, while passing the output of
+     * the archiver to the specified consumer.
+     *
+     * The files are first packed into a tar stream, which is then piped
+     * through a second archiver process using the compression stream
+     * commands. If no compression stream commands are set, then the tar
+     * stream is used as-is.
+     *
+     * @param selectedFiles
+     *         The file(s) to pack.
+     *
+     * @param configHandler
+     *         The object that handles settings for encoding, decoding, compression, and a number of other features.
+     *
+     * @param outputConsumer
+     *         The consumer of each command that's run and of each line that the archiver outputs.
+     *
+     * @return
+     *         The process whose standard output is the archive.
+     *
+     * @throws IOException
+     *         If the archiver cannot be started.
+     */
+    public Process packFilesToStream(final List<File> selectedFiles, final ConfigHandler configHandler, final Consumer<String> outputConsumer) throws IOException {
+        final String packingCommand = createPackStreamCommand(configHandler, selectedFiles);
+        outputConsumer.accept(packingCommand);
+
+        final Process packingProcess = CommandHandler.startProgram(packingCommand, outputConsumer);
+        packingProcess.getOutputStream().close();
+
+        if(configHandler.getCompressionStreamCommands().isEmpty()) {
+            return packingProcess;
+        }
+
+        // Compress the tar stream:
+        final String command = "\"" + configHandler.getCompressionProgramPath() + "\" " + configHandler.getCompressionStreamCommands();
+        outputConsumer.accept(command);
+
+        final Process compressionProcess = CommandHandler.startProgram(command, outputConsumer);
+        StreamHandler.startPump(packingProcess.getInputStream(), compressionProcess.getOutputStream(), "Archive Pump");
+
+        return compressionProcess;
+    }
+
+    /**
+     * Starts extracting an archive, which is to be written to the standard
+     * input of the first returned process, into the specified directory,
+     * while passing the output of the archiver to the specified consumer.
+     *
+     * This is the reverse of packFilesToStream. A compressed archive is
+     * decompressed using the extraction stream commands, then the resulting
+     * tar stream is extracted. An uncompressed archive is extracted as a tar
+     * stream.
+     *
+     * @param outputDirectory
+     *         The directory in which to place the extracted file(s).
+     *
+     * @param configHandler
+     *         The object that handles settings for encoding, decoding, compression, and a number of other features.
+     *
+     * @param isCompressed
+     *         Whether the archive must be decompressed with the extraction
+     *         stream commands before it's extracted.
+     *
+     * @param outputConsumer
+     *         The consumer of each command that's run and of each line that the archiver outputs.
+     *
+     * @return
+     *         The processes of the extraction, in order. The archive is written
+     *         to the first, and the standard output of the last must be read
+     *         by the caller.
+     *
+     * @throws IOException
+     *         If the archiver cannot be started.
+     */
+    public List<Process> unpackStream(final String outputDirectory, final ConfigHandler configHandler, final boolean isCompressed, final Consumer<String> outputConsumer) throws IOException {
+        final List<Process> processes = new ArrayList<>(2);
+
+        final StringBuilder stringBuilder = new StringBuilder();
+        final Formatter formatter = new Formatter(stringBuilder, Locale.US);
+
+        formatter.format("\"%s\" x -ttar -si -y -o\"%s\"", configHandler.getCompressionProgramPath(), outputDirectory);
+
+        if(isCompressed) {
+            // Decompress the archive into a tar stream:
+            final String command = "\"" + configHandler.getCompressionProgramPath() + "\" " + configHandler.getExtractionStreamCommands();
+            outputConsumer.accept(command);
+
+            processes.add(CommandHandler.startProgram(command, outputConsumer));
+        }
+
+        outputConsumer.accept(stringBuilder.toString());
+
+        final Process extractionProcess = CommandHandler.startProgram(stringBuilder.toString(), outputConsumer);
+
+        if(! processes.isEmpty()) {
+            StreamHandler.startPump(processes.get(0).getInputStream(), extractionProcess.getOutputStream(), "Archive Pump");
+        }
+
+        processes.add(extractionProcess);
+        return processes;
+    }
+
+    /**
+     * Constructs the command which compresses the specified file into an
+     * archive bearing the name of the file.
+     *
+     * @param configHandler
+     *         The object that handles settings for encoding, decoding, compression, and a number of other features.
+     *
+     * @param job
+     *         The Job being run.
+     *
+     * @param selectedFile
+     *         The file to compress.
+     *
+     * @return
+     *         The command.
+     */
+    public static String createPackFileCommand(final ConfigHandler configHandler, final Job job, final File selectedFile) {
+        // Basic command settings ripped from http://superuser.com/a/742034
+        final StringBuilder stringBuilder = new StringBuilder();
+        final Formatter formatter = new Formatter(stringBuilder, Locale.US);
+
+        formatter.format("\"%s\" %s \"%s.%s\" \"%s%s.%s\"",
+                        configHandler.getCompressionProgramPath(),
+                        configHandler.getCompressionCommands(),
+                        selectedFile.getAbsolutePath(),
+                        configHandler.getDecodeFormat(),
+                        job.getOutputDirectory(),
+                        job.getName(),
+                        configHandler.getDecodeFormat());
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Constructs the command which compresses the specified file(s) into a
+     * single archive bearing the name of the Job.
+     *
+     * @param configHandler
+     *         The object that handles settings for encoding, decoding, compression, and a number of other features.
+     *
+     * @param job
+     *         The Job being run.
+     *
+     * @param selectedFiles
+     *         The file(s) to compress.
+     *
+     * @return
+     *         The command.
      */
-    public File packFiles(final Job job, final List<File> selectedFiles, final MainScreenController controller, final ConfigHandler configHandler) {
+    public static String createPackFilesCommand(final ConfigHandler configHandler, final Job job, final List<File> selectedFiles) {
         // Basic command settings ripped from http://superuser.com/a/742034
         final StringBuilder stringBuilder = new StringBuilder();
         final Formatter formatter = new Formatter(stringBuilder, Locale.US);
@@ -86,33 +257,48 @@ public class ArchiveHandler {
                         job.getName(),
                         configHandler.getCompressionOutputExtension());
 
-        selectedFiles.parallelStream()
-                     .forEach(file -> {
-                         // todo If it's possible to do the below to lines with the formatter, then do so.
-                         stringBuilder.append(" ");
-                         stringBuilder.append("\"" + file.getAbsolutePath() + "\"");
-                     });
+        appendQuotedPaths(stringBuilder, selectedFiles);
 
-        Platform.runLater(() -> controller.getView()
-                                          .getTextArea_output()
-                                          .appendText(stringBuilder.toString() + System.lineSeparator() +
-                                                      System.lineSeparator() + System.lineSeparator()));
+        return stringBuilder.toString();
+    }
 
-        CommandHandler.runProgram(stringBuilder.toString(), controller);
+    /**
+     * Constructs the command which packs the specified file(s) into a tar
+     * stream, written to standard output.
+     *
+     * @param configHandler
+     *         The object that handles settings for encoding, decoding, compression, and a number of other features.
+     *
+     * @param selectedFiles
+     *         The file(s) to pack.
+     *
+     * @return
+     *         The command.
+     */
+    public static String createPackStreamCommand(final ConfigHandler configHandler, final List<File> selectedFiles) {
+        final StringBuilder stringBuilder = new StringBuilder();
+        final Formatter formatter = new Formatter(stringBuilder, Locale.US);
 
-        // Return a File int to the newly created archive:
-        final File file = new File(job.getOutputDirectory() + job.getName() + "." + configHandler.getCompressionOutputExtension());
+        formatter.format("\"%s\" a -ttar -so -an", configHandler.getCompressionProgramPath());
 
-        if (! file.exists()) {
-            final String error = "The file " + file.toString() + " does not exist. The most-likely causes are incorrect " +
-                                 "commandline arguments or invalid characters in the file name.";
+        appendQuotedPaths(stringBuilder, selectedFiles);
 
-            final Logger logger = LogManager.getLogger();
-            logger.error(error);
+        return stringBuilder.toString();
+    }
 
-            Notification.Notifier.INSTANCE.notifyError("Error", error);
+    /**
+     * Appends the quoted absolute path of each of the specified files, in
+     * order, to the specified command.
+     *
+     * @param stringBuilder
+     *         The command.
+     *
+     * @param files
+     *         The files.
+     */
+    private static void appendQuotedPaths(final StringBuilder stringBuilder, final List<File> files) {
+        for(final File file : files) {
+            stringBuilder.append(" \"").append(file.getAbsolutePath()).append('"');
         }
-
-        return file;
     }
 }
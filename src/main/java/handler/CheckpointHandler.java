@@ -0,0 +1,357 @@
+package handler;
+
+import misc.Segment;
+import module.ContentHashModule;
+import module.PipeStatisticsModule;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+public class CheckpointHandler {
+    /**
+     * Encodes the specified file as a series of fixed-size, frame-aligned
+     * chunks, recording each chunk in a checkpoint manifest once it's
+     * durably on disk, then losslessly joins the chunks.
+     *
+     * If the encode is interrupted, then the chunks and manifest are left
+     * behind, so the next encode of the same file, with the same settings,
+     * skips the chunks which were completed. At most one chunk of work is
+     * lost for each chunk which was being encoded at the time.
+     *
+     * Up to the configured number of encode Segments are encoded at once.
+     *
+     * @param configHandler
+     *         The settings to use when encoding the file.
+     *
+     * @param file
+     *         The unpadded file to stream into ffmpeg.
+     *
+     * @param outputDirectory
+     *         The directory in which to place the encoded file.
+     *
+     * @param outputConsumer
+     *         The consumer of each command that's run and of each line that
+     *         the commands output.
+     *
+     * @param contentHash
+     *         The content hash to update with the blocks read from the file,
+     *         or null to skip hashing. The chunks which are skipped, as
+     *         they were already encoded, aren't read or hashed.
+     *
+     * @return
+     *         Whether or not the file was encoded.
+     */
+    public static boolean encode(final ConfigHandler configHandler, final File file, final String outputDirectory, final Consumer<String> outputConsumer, final ContentHashModule contentHash) {
+        final int frameSize = configHandler.getFrameSize();
+        final String baseName = outputDirectory + FilenameUtils.getBaseName(file.getName());
+        final long paddedLength = StreamHandler.calculatePaddedLength(file.length(), frameSize);
+
+        final List<Segment> chunks = SegmentHandler.splitFramesBySize(paddedLength / frameSize, configHandler.getCheckpointChunkFrames());
+        final List<File> chunkFiles = new ArrayList<>(chunks.size());
+
+        for(final Segment chunk : chunks) {
+            chunkFiles.add(createChunkFile(configHandler, baseName, chunk.getIndex()));
+        }
+
+        // Only trust the chunks of a manifest made from the same file and settings:
+        final File manifestFile = createManifestFile(baseName);
+        final String signature = createSignature(configHandler, file);
+
+        final Set<Integer> completedChunks = readManifest(manifestFile, signature);
+        completedChunks.removeIf(index -> index >= chunks.size() || chunkFiles.get(index).length() == 0);
+
+        if(! completedChunks.isEmpty()) {
+            outputConsumer.accept(String.format(Locale.US, "Resuming the encode of %s from its checkpoint, with %d of %d chunks already encoded.",
+                                                file.getName(), completedChunks.size(), chunks.size()));
+        }
+
+        final int concurrentChunks = Math.max(1, configHandler.getEncodeSegments());
+        final int threadsPerChunk = Math.max(1, configHandler.getFfmpegThreadsPerJob() / concurrentChunks);
+
+        boolean wereChunksEncoded = true;
+
+        try {
+            writeManifest(manifestFile, signature, completedChunks);
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+            return false;
+        }
+
+        try (
+            final FileOutputStream manifestStream = new FileOutputStream(manifestFile, true);
+        ) {
+            final ExecutorService executor = Executors.newFixedThreadPool(concurrentChunks, runnable -> {
+                final Thread thread = new Thread(runnable, "Chunk Runner - " + file.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            final List<Future<Boolean>> futures = new ArrayList<>(chunks.size());
+
+            for(final Segment chunk : chunks) {
+                if(completedChunks.contains(chunk.getIndex())) {
+                    continue;
+                }
+
+                final File chunkFile = chunkFiles.get(chunk.getIndex());
+                final String command = SegmentHandler.createSegmentEncodeCommand(configHandler, file, chunk, chunkFile, threadsPerChunk, true);
+
+                futures.add(executor.submit(() -> {
+                    outputConsumer.accept(command);
+
+                    final PipeStatisticsModule statisticsModule = new PipeStatisticsModule();
+
+                    if(! StreamHandler.streamFileToProgram(configHandler, command, file, chunk.getByteOffset(frameSize), chunk.getByteLength(frameSize), statisticsModule, outputConsumer, contentHash)) {
+                        return false;
+                    }
+
+                    // The chunk must be on disk before the manifest claims that it's complete:
+                    forceToDisk(chunkFile);
+
+                    synchronized(manifestStream) {
+                        manifestStream.write((chunk.getIndex() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                        manifestStream.getChannel().force(false);
+                    }
+
+                    return true;
+                }));
+            }
+
+            executor.shutdown();
+
+            // A failed chunk doesn't stop the others, as every completed chunk is progress:
+            for(final Future<Boolean> future : futures) {
+                try {
+                    wereChunksEncoded &= future.get();
+                } catch(final InterruptedException e) {
+                    executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                    return false;
+                } catch(final ExecutionException e) {
+                    final Logger logger = LogManager.getLogger();
+                    logger.error(e.getCause());
+
+                    wereChunksEncoded = false;
+                }
+            }
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+            return false;
+        }
+
+        if(! wereChunksEncoded) {
+            final Logger logger = LogManager.getLogger();
+            logger.error("Unable to encode every chunk of " + file.getAbsolutePath() + ". The encode will resume from its checkpoint.");
+            return false;
+        }
+
+        // Join the chunks:
+        final File listFile = new File(baseName + ".chunks.txt");
+        final File outputFile = new File(baseName + "." + configHandler.getEncodeFormat());
+
+        boolean wasFileEncoded = false;
+
+        try {
+            SegmentHandler.writeConcatList(chunkFiles, listFile);
+
+            final String command = SegmentHandler.createConcatCommand(configHandler, listFile, outputFile);
+            outputConsumer.accept(command);
+            wasFileEncoded = SegmentHandler.runProgram(command, outputConsumer);
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+        }
+
+        listFile.delete();
+
+        // The chunks are kept until they've been joined, so a failed join can be retried:
+        if(wasFileEncoded) {
+            chunkFiles.forEach(File::delete);
+            manifestFile.delete();
+        }
+
+        return wasFileEncoded;
+    }
+
+    /**
+     * Constructs the signature of an encode, which changes whenever the file
+     * or any setting that affects the encoded chunks changes.
+     *
+     * @param configHandler
+     *         The settings to use when encoding the file.
+     *
+     * @param file
+     *         The file to encode.
+     *
+     * @return
+     *         The signature.
+     */
+    private static String createSignature(final ConfigHandler configHandler, final File file) {
+        return String.format(Locale.US, "%s|%d|%d|%d|%dx%d|%d|%d|%s|%b",
+                             file.getAbsolutePath(),
+                             file.length(),
+                             file.lastModified(),
+                             configHandler.getCheckpointChunkFrames(),
+                             configHandler.getEncodedVideoWidth(),
+                             configHandler.getEncodedVideoHeight(),
+                             configHandler.getEncodedFramerate(),
+                             configHandler.getMacroBlockDimensions(),
+                             configHandler.getEncodingLibrary(),
+                             configHandler.isRasterizeFrames());
+    }
+
+    /**
+     * Reads the indices of the completed chunks from the specified manifest.
+     *
+     * A line which can't be parsed, such as one which was only partly
+     * written when the program closed, is skipped.
+     *
+     * @param manifestFile
+     *         The manifest.
+     *
+     * @param signature
+     *         The signature of the encode.
+     *
+     * @return
+     *         The indices of the completed chunks, or an empty set if there's
+     *         no manifest or if it belongs to a different encode.
+     */
+    private static Set<Integer> readManifest(final File manifestFile, final String signature) {
+        final Set<Integer> completedChunks = new HashSet<>();
+
+        if(! manifestFile.exists()) {
+            return completedChunks;
+        }
+
+        try (
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), StandardCharsets.UTF_8));
+        ) {
+            if(! signature.equals(reader.readLine())) {
+                return completedChunks;
+            }
+
+            String line;
+
+            while((line = reader.readLine()) != null) {
+                try {
+                    completedChunks.add(Integer.valueOf(line.trim()));
+                } catch(final NumberFormatException e) {
+                    // The line was only partly written.
+                }
+            }
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+        }
+
+        return completedChunks;
+    }
+
+    /**
+     * Replaces the specified manifest with one that contains only the
+     * signature and the specified completed chunks.
+     *
+     * The new manifest is written beside the old one, then moved over it, so
+     * a crash while writing leaves one manifest or the other intact.
+     *
+     * @param manifestFile
+     *         The manifest.
+     *
+     * @param signature
+     *         The signature of the encode.
+     *
+     * @param completedChunks
+     *         The indices of the completed chunks.
+     *
+     * @throws IOException
+     *         If the manifest cannot be written.
+     */
+    private static void writeManifest(final File manifestFile, final String signature, final Set<Integer> completedChunks) throws IOException {
+        final File tempFile = new File(manifestFile.getAbsolutePath() + ".tmp");
+
+        try (
+            final FileOutputStream outputStream = new FileOutputStream(tempFile);
+        ) {
+            final StringBuilder stringBuilder = new StringBuilder(signature).append(System.lineSeparator());
+            completedChunks.forEach(index -> stringBuilder.append(index).append(System.lineSeparator()));
+
+            outputStream.write(stringBuilder.toString().getBytes(StandardCharsets.UTF_8));
+            outputStream.getChannel().force(false);
+        }
+
+        Files.move(tempFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Forces the contents of the specified file to disk.
+     *
+     * @param file
+     *         The file.
+     *
+     * @throws IOException
+     *         If the file cannot be opened, or forced to disk.
+     */
+    private static void forceToDisk(final File file) throws IOException {
+        try (
+            final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        ) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Constructs the file to encode a chunk to.
+     *
+     * @param configHandler
+     *         The settings to use when encoding.
+     *
+     * @param baseName
+     *         The path, without an extension, of the encoded file.
+     *
+     * @param index
+     *         The index of the chunk.
+     *
+     * @return
+     *         The file.
+     */
+    private static File createChunkFile(final ConfigHandler configHandler, final String baseName, final int index) {
+        return new File(baseName + ".chunk" + index + "." + configHandler.getEncodeFormat());
+    }
+
+    /**
+     * Constructs the checkpoint manifest of an encode.
+     *
+     * @param baseName
+     *         The path, without an extension, of the encoded file.
+     *
+     * @return
+     *         The file.
+     */
+    private static File createManifestFile(final String baseName) {
+        return new File(baseName + ".checkpoint");
+    }
+}
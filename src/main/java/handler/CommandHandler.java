@@ -1,8 +1,6 @@
 package handler;
 
-import controller.MainScreenController;
-import eu.hansolo.enzo.notification.Notification;
-import javafx.application.Platform;
+import misc.Job;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -10,50 +8,266 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public class CommandHandler {
+    /** The Job on whose behalf the current thread, and any thread that it starts, runs programs, or null if there is none. */
+    private static final InheritableThreadLocal<Job> currentJob = new InheritableThreadLocal<>();
+    /** The running processes of each Job. */
+    private static final Map<Job, Set<Process>> jobProcesses = new ConcurrentHashMap<>();
+    /** Every running process, whether or not it belongs to a Job. */
+    private static final Set<Process> runningProcesses = ConcurrentHashMap.newKeySet();
+
+    static {
+        // Ensure the running processes shut down if the program exits. One
+        // hook covers every process, as a hook per process would never be
+        // removed, and would pile up over a long session:
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> runningProcesses.forEach(Process::destroy), "Process Destroyer"));
+    }
+
     /**
-     * Executes the specified command on the commandline.
+     * Executes the specified command on the commandline, and waits for it to
+     * exit.
      *
      * @param command
      *         The command to execute.
      *
-     * @param controller
-     *         The controller for the main screen.
+     * @param outputConsumer
+     *         The consumer of each line that the program outputs.
      *
      * @return
-     *         True if the job completed, else false.
+     *         True if the program exited normally, else false, such as when
+     *         it failed, crashed, or was destroyed because its Job was
+     *         cancelled.
      */
-    public static boolean runProgram(final String command, final MainScreenController controller) {
+    public static boolean runProgram(final String command, final Consumer<String> outputConsumer) {
+        final long startTime = System.nanoTime();
+
+        final Process process;
+
         try {
-            final ProcessBuilder builder = new ProcessBuilder(command);
+            final ProcessBuilder builder = new ProcessBuilder(splitCommand(command));
             builder.redirectErrorStream(true);
-            final Process process = builder.start();
-            final InputStream is = process.getInputStream();
-            final BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+            process = builder.start();
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
 
-            // Ensure the process shuts down if the program exits:
-            Runtime.getRuntime().addShutdownHook(new Thread(process::destroy));
+            NotificationHandler.notifyError("IOException", "Please view the log file.");
+            return false;
+        }
 
+        MetricsHandler.recordProcessStarted();
+        final Job job = trackProcess(process);
 
+        try (
+            final InputStream is = process.getInputStream();
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+        ) {
             String line;
             while((line = reader.readLine()) != null) {
-                final String temp = line;
-
-                Platform.runLater(() -> controller.getView()
-                                                  .getTextArea_output()
-                                                  .appendText(temp + System.lineSeparator()));
+                outputConsumer.accept(line);
             }
 
-            is.close();
+            final int exitValue = process.waitFor();
+
+            if(exitValue != 0) {
+                final Logger logger = LogManager.getLogger();
+                logger.error("The command " + command + " exited with " + exitValue + ".");
+            }
 
-            return true;
+            return exitValue == 0;
         } catch(final IOException e) {
             final Logger logger = LogManager.getLogger();
             logger.error(e);
 
-            Notification.Notifier.INSTANCE.notifyError("IOException", "Please view the log file.");
+            NotificationHandler.notifyError("IOException", "Please view the log file.");
+            process.destroy();
+            return false;
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroy();
             return false;
+        } finally {
+            untrackProcess(job, process);
+            MetricsHandler.recordStageDuration("process", System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Starts the specified command on the commandline, leaving its standard
+     * input and output to be used by the caller.
+     *
+     * Anything that the program writes to its standard error is passed, line
+     * by line, to the specified consumer on a separate thread.
+     *
+     * @param command
+     *         The command to execute.
+     *
+     * @param errorConsumer
+     *         The consumer of each line written to standard error.
+     *
+     * @return
+     *         The started process.
+     *
+     * @throws IOException
+     *         If the process cannot be started.
+     */
+    public static Process startProgram(final String command, final Consumer<String> errorConsumer) throws IOException {
+        final long startTime = System.nanoTime();
+
+        final ProcessBuilder builder = new ProcessBuilder(splitCommand(command));
+        final Process process = builder.start();
+        MetricsHandler.recordProcessStarted();
+        final Job job = trackProcess(process);
+
+        final Thread thread = new Thread(() -> {
+            try (
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+            ) {
+                String line;
+                while((line = reader.readLine()) != null) {
+                    errorConsumer.accept(line);
+                }
+            } catch(final IOException e) {
+                final Logger logger = LogManager.getLogger();
+                logger.error(e);
+            } finally {
+                // Standard error is closed when the process exits:
+                untrackProcess(job, process);
+                MetricsHandler.recordStageDuration("process", System.nanoTime() - startTime);
+            }
+        }, "Process Error Reader");
+        thread.setDaemon(true);
+        thread.start();
+
+        return process;
+    }
+
+    /**
+     * Sets the Job on whose behalf the current thread, and any thread that
+     * it starts from now on, runs programs, so that they can be destroyed
+     * if the Job is cancelled.
+     *
+     * @param job
+     *         The Job, or null if there is none.
+     */
+    public static void setCurrentJob(final Job job) {
+        if(job == null) {
+            currentJob.remove();
+        } else {
+            currentJob.set(job);
         }
     }
+
+    /**
+     * Destroys every running process of the specified Job.
+     *
+     * @param job
+     *         The Job.
+     */
+    public static void destroyProcesses(final Job job) {
+        final Set<Process> processes = jobProcesses.remove(job);
+
+        if(processes != null) {
+            processes.forEach(Process::destroy);
+        }
+    }
+
+    /**
+     * Records that the specified process is running, on behalf of the
+     * current thread's Job, if it has one.
+     *
+     * @param process
+     *         The process.
+     *
+     * @return
+     *         The Job, or null if there is none.
+     */
+    private static Job trackProcess(final Process process) {
+        runningProcesses.add(process);
+
+        final Job job = currentJob.get();
+
+        if(job != null) {
+            jobProcesses.compute(job, (key, processes) -> {
+                final Set<Process> trackedProcesses = (processes == null ? ConcurrentHashMap.newKeySet() : processes);
+                trackedProcesses.add(process);
+                return trackedProcesses;
+            });
+        }
+
+        return job;
+    }
+
+    /**
+     * Records that the specified process, of the specified Job, has exited,
+     * forgetting the Job once none of its processes are running.
+     *
+     * @param job
+     *         The Job, or null if there is none.
+     *
+     * @param process
+     *         The process.
+     */
+    private static void untrackProcess(final Job job, final Process process) {
+        runningProcesses.remove(process);
+
+        if(job == null) {
+            return;
+        }
+
+        jobProcesses.computeIfPresent(job, (key, processes) -> {
+            processes.remove(process);
+            return (processes.isEmpty() ? null : processes);
+        });
+    }
+
+    /**
+     * Splits the specified command into the program and its arguments.
+     *
+     * Arguments are separated by whitespace, unless the whitespace is within
+     * a pair of double quotes. The quotes themselves are removed, so that the
+     * same command strings can be run on both Windows and Linux.
+     *
+     * @param command
+     *         The command to split.
+     *
+     * @return
+     *         The program, followed by each of its arguments.
+     */
+    public static List<String> splitCommand(final String command) {
+        final List<String> arguments = new ArrayList<>();
+        final StringBuilder argument = new StringBuilder();
+
+        boolean isInQuotes = false;
+        boolean isArgumentStarted = false;
+
+        for(final char c : command.toCharArray()) {
+            if(c == '"') {
+                isInQuotes = ! isInQuotes;
+                isArgumentStarted = true;
+            } else if(Character.isWhitespace(c) && ! isInQuotes) {
+                if(isArgumentStarted) {
+                    arguments.add(argument.toString());
+                    argument.setLength(0);
+                    isArgumentStarted = false;
+                }
+            } else {
+                argument.append(c);
+                isArgumentStarted = true;
+            }
+        }
+
+        if(isArgumentStarted) {
+            arguments.add(argument.toString());
+        }
+
+        return arguments;
+    }
 }
@@ -42,6 +42,38 @@ public class ConfigHandler {
     @Getter @Setter private String encodingLibrary = "libvpx";
     /** The level of information that should be given by ffmpeg while ffmpeg is running. */
     @Getter @Setter private String ffmpegLogLevel = "info";
+    /** The number of threads that each ffmpeg process should use. */
+    @Getter @Setter private int ffmpegThreadsPerJob = 8;
+    /** The maximum number of Jobs to run at once. If less than 1, then the limit is determined from the available cores. */
+    @Getter @Setter private int maxConcurrentJobs = 0;
+    /** The maximum number of files to en/decode at once within a single Job. If less than 1, then the limit is determined from the available cores. */
+    @Getter @Setter private int maxConcurrentFilesPerJob = 0;
+    /** The number of segments to split each file into, and encode concurrently, when encoding. */
+    @Getter @Setter private int encodeSegments = 1;
+    /** The number of segments to split each file into, and decode concurrently, when decoding. */
+    @Getter @Setter private int decodeSegments = 1;
+    /** Whether or not to stream files into ffmpeg, rather than padding them on disk, when encoding. */
+    @Getter @Setter private boolean streamEncodeInput = true;
+    /** The number of frames in each checkpointed chunk of a streamed encode. If less than 1, then encodes aren't checkpointed. */
+    @Getter @Setter private int checkpointChunkFrames = 0;
+    /** Whether or not to rasterize full-resolution frames in Java, rather than having ffmpeg scale them up, when streaming files into ffmpeg. */
+    @Getter @Setter private boolean rasterizeFrames = false;
+    /** Whether or not to demodulate full-resolution frames in Java, rather than having ffmpeg scale them down, when decoding. */
+    @Getter @Setter private boolean demodulateFrames = false;
+    /** The maximum size, in megabytes, of the cache of previously encoded files. If less than 1, then encodes aren't cached. */
+    @Getter @Setter private int encodeCacheSizeMegabytes = 0;
+    /** The directory in which to cache previously encoded files. */
+    @Getter @Setter private String encodeCacheDirectory = "encode_cache";
+    /** The name of the policy which decides the order in which Jobs are run. Either SHORTEST_FIRST, FIFO, or LARGEST_FIRST. */
+    @Getter @Setter private String schedulingPolicy = "SHORTEST_FIRST";
+    /** The maximum number of output lines to buffer between updates of the output screen. Any further lines are dropped. */
+    @Getter @Setter private int outputBufferLines = 65536;
+    /** The directory in which to keep the log of the output screen. */
+    @Getter @Setter private String outputLogDirectory = "output_log";
+    /** The port on which to serve metrics at http://localhost:port/metrics, or 0 to not serve them. */
+    @Getter @Setter private int metricsPort = 0;
+    /** The port on which to accept Jobs at http://localhost:port/jobs, or 0 to not accept them. */
+    @Getter @Setter private int daemonPort = 0;
 
     /** Whether or not to ignore all other ffmpeg options and to use the fullyCustomFfmpegEncodingOptions and fullyCustomFfmpegDecodingOptions instead. */
     @Getter @Setter private boolean useFullyCustomFfmpegOptions;
@@ -54,10 +86,36 @@ public class ConfigHandler {
     @Getter @Setter private String compressionCommands;
     /** The extension to use when outputting an archive. */
     @Getter @Setter private String compressionOutputExtension;
+    /** Whether or not to stream archives straight into ffmpeg, rather than writing them to disk, when encoding. */
+    @Getter @Setter private boolean streamArchives = false;
+    /** The commands used to compress the tar stream when streaming archives. If empty, then the tar stream isn't compressed. */
+    @Getter @Setter private String compressionStreamCommands = "a -txz -mx=9 -si -so -an";
+    /** Whether or not to pipe decoded xz or tar archives straight into the archiver for extraction, rather than writing them to disk. Any other file is decoded normally. */
+    @Getter @Setter private boolean streamArchiveExtraction = false;
+    /** The commands used to decompress a streamed xz archive into a tar stream. If empty, then xz archives are decoded normally, while tar archives never need them. */
+    @Getter @Setter private String extractionStreamCommands = "x -txz -si -so";
 
     /** Whether or not to warn the user if their settings may not work with YouTube. */
     @Getter @Setter private boolean warnUserIfSettingsMayNotWorkForYouTube = true;
 
+    /** The configuration file. */
+    private final File settingsFile;
+
+    /** Constructs a new ConfigHandler for the configuration file in the working directory. */
+    public ConfigHandler() {
+        this(new File(FILENAME_CONFIG));
+    }
+
+    /**
+     * Constructs a new ConfigHandler.
+     *
+     * @param settingsFile
+     *         The configuration file.
+     */
+    public ConfigHandler(final File settingsFile) {
+        this.settingsFile = settingsFile;
+    }
+
     /**
      * Reads in each line from the configuration handler and attempts to parse
      * the specified parameters of the program.
@@ -66,7 +124,7 @@ public class ConfigHandler {
      */
     public void loadConfigSettings() {
         try (
-            final InputStream inputStream = new FileInputStream("config.json");
+            final InputStream inputStream = new FileInputStream(settingsFile);
             final JsonReader reader = Json.createReader(inputStream);
         ) {
             final JsonObject configFile = reader.readObject();
@@ -84,6 +142,22 @@ public class ConfigHandler {
             encodingLibrary = configFile.getString("Enc Library");
 
             ffmpegLogLevel = configFile.getString("FFMPEG Log Level");
+            ffmpegThreadsPerJob = configFile.getInt("FFMPEG Threads Per Job", 8);
+            maxConcurrentJobs = configFile.getInt("Max Concurrent Jobs", 0);
+            maxConcurrentFilesPerJob = configFile.getInt("Max Concurrent Files Per Job", 0);
+            encodeSegments = configFile.getInt("Encode Segments", 1);
+            decodeSegments = configFile.getInt("Decode Segments", 1);
+            streamEncodeInput = configFile.getBoolean("Stream Encode Input", true);
+            checkpointChunkFrames = configFile.getInt("Checkpoint Chunk Frames", 0);
+            rasterizeFrames = configFile.getBoolean("Rasterize Frames", false);
+            demodulateFrames = configFile.getBoolean("Demodulate Frames", false);
+            encodeCacheSizeMegabytes = configFile.getInt("Encode Cache Size MB", 0);
+            encodeCacheDirectory = configFile.getString("Encode Cache Directory", "encode_cache");
+            schedulingPolicy = configFile.getString("Scheduling Policy", "SHORTEST_FIRST");
+            outputBufferLines = configFile.getInt("Output Buffer Lines", 65536);
+            outputLogDirectory = configFile.getString("Output Log Directory", "output_log");
+            metricsPort = configFile.getInt("Metrics Port", 0);
+            daemonPort = configFile.getInt("Daemon Port", 0);
 
             useFullyCustomFfmpegOptions = configFile.getBoolean("Use Custom FFMPEG Options");
             fullyCustomFfmpegEncodingOptions = configFile.getString("Custom FFMPEG Enc Options");
@@ -91,6 +165,10 @@ public class ConfigHandler {
 
             compressionCommands = configFile.getString("Compression Commands");
             compressionOutputExtension = configFile.getString("Compression Output Extension");
+            streamArchives = configFile.getBoolean("Stream Archives", false);
+            compressionStreamCommands = configFile.getString("Compression Stream Commands", "a -txz -mx=9 -si -so -an");
+            streamArchiveExtraction = configFile.getBoolean("Stream Archive Extraction", false);
+            extractionStreamCommands = configFile.getString("Extraction Stream Commands", "x -txz -si -so");
 
             warnUserIfSettingsMayNotWorkForYouTube = configFile.getBoolean("Warn If Settings Possibly Incompatible With YouTube");
         } catch(final IOException e) {
@@ -107,33 +185,58 @@ public class ConfigHandler {
             setDefaultSettings();
         }
 
-        // Check if all options have been loaded correctly:
-        final Logger logger = LogManager.getLogger();
-
+        // Check if all options have been loaded correctly. The logger is
+        // only looked up when there's a warning, as initializing it takes
+        // longer than the rest of the start up of the command line:
         if(encodedVideoWidth < 1) {
+            final Logger logger = LogManager.getLogger();
             logger.warn("Encoded Video Width option is less than 1. Ensure the value is 1 or greater. " +
                         "Defaulting to 1280.");
             encodedVideoWidth = 1280;
         }
 
         if(encodedVideoHeight < 1) {
+            final Logger logger = LogManager.getLogger();
             logger.warn("Encoded Video Height option is less than 1. Ensure the value is 1 or greater. " +
                         "Defaulting to 720.");
             encodedVideoWidth = 720;
         }
 
         if(encodedFramerate < 1) {
+            final Logger logger = LogManager.getLogger();
             logger.warn("Encoded Video Framerate option is less than 1. Ensure the value is 1 or greater. " +
                         "Defaulting to 30.");
             encodedFramerate = 30;
         }
 
         if(macroBlockDimensions < 1) {
+            final Logger logger = LogManager.getLogger();
             logger.warn("Encoded Video Macro Block Dimensions is less than 1. Ensure the value is 1 or greater. " +
                         "Defaulting to 8.");
             macroBlockDimensions = 8;
         }
 
+        if(ffmpegThreadsPerJob < 1) {
+            final Logger logger = LogManager.getLogger();
+            logger.warn("FFMPEG Threads Per Job option is less than 1. Ensure the value is 1 or greater. " +
+                        "Defaulting to 8.");
+            ffmpegThreadsPerJob = 8;
+        }
+
+        if(encodeSegments < 1) {
+            final Logger logger = LogManager.getLogger();
+            logger.warn("Encode Segments option is less than 1. Ensure the value is 1 or greater. " +
+                        "Defaulting to 1.");
+            encodeSegments = 1;
+        }
+
+        if(decodeSegments < 1) {
+            final Logger logger = LogManager.getLogger();
+            logger.warn("Decode Segments option is less than 1. Ensure the value is 1 or greater. " +
+                        "Defaulting to 1.");
+            decodeSegments = 1;
+        }
+
         // Calculate Frame Size:
         frameSize = calculateFrameSize();
     }
@@ -157,6 +260,22 @@ public class ConfigHandler {
         configFile.put("Enc Library", encodingLibrary);
 
         configFile.put("FFMPEG Log Level", ffmpegLogLevel);
+        configFile.put("FFMPEG Threads Per Job", ffmpegThreadsPerJob);
+        configFile.put("Max Concurrent Jobs", maxConcurrentJobs);
+        configFile.put("Max Concurrent Files Per Job", maxConcurrentFilesPerJob);
+        configFile.put("Encode Segments", encodeSegments);
+        configFile.put("Decode Segments", decodeSegments);
+        configFile.put("Stream Encode Input", streamEncodeInput);
+        configFile.put("Checkpoint Chunk Frames", checkpointChunkFrames);
+        configFile.put("Rasterize Frames", rasterizeFrames);
+        configFile.put("Demodulate Frames", demodulateFrames);
+        configFile.put("Encode Cache Size MB", encodeCacheSizeMegabytes);
+        configFile.put("Encode Cache Directory", encodeCacheDirectory);
+        configFile.put("Scheduling Policy", schedulingPolicy);
+        configFile.put("Output Buffer Lines", outputBufferLines);
+        configFile.put("Output Log Directory", outputLogDirectory);
+        configFile.put("Metrics Port", metricsPort);
+        configFile.put("Daemon Port", daemonPort);
 
         configFile.put("Use Custom FFMPEG Options", useFullyCustomFfmpegOptions);
         configFile.put("Custom FFMPEG Enc Options", fullyCustomFfmpegEncodingOptions);
@@ -164,12 +283,16 @@ public class ConfigHandler {
 
         configFile.put("Compression Commands", compressionCommands);
         configFile.put("Compression Output Extension", compressionOutputExtension);
+        configFile.put("Stream Archives", streamArchives);
+        configFile.put("Compression Stream Commands", compressionStreamCommands);
+        configFile.put("Stream Archive Extraction", streamArchiveExtraction);
+        configFile.put("Extraction Stream Commands", extractionStreamCommands);
 
         configFile.put("Warn If Settings Possibly Incompatible With YouTube", warnUserIfSettingsMayNotWorkForYouTube);
 
 
         try (
-                final FileWriter fileWriter = new FileWriter(FILENAME_CONFIG);
+                final FileWriter fileWriter = new FileWriter(settingsFile);
         ) {
             fileWriter.write(configFile.toJSONString());
             fileWriter.flush();
@@ -200,6 +323,22 @@ public class ConfigHandler {
         configFile.put("Enc Library", "libvpx");
 
         configFile.put("FFMPEG Log Level", "info");
+        configFile.put("FFMPEG Threads Per Job", 8);
+        configFile.put("Max Concurrent Jobs", 0);
+        configFile.put("Max Concurrent Files Per Job", 0);
+        configFile.put("Encode Segments", 1);
+        configFile.put("Decode Segments", 1);
+        configFile.put("Stream Encode Input", true);
+        configFile.put("Checkpoint Chunk Frames", 0);
+        configFile.put("Rasterize Frames", false);
+        configFile.put("Demodulate Frames", false);
+        configFile.put("Encode Cache Size MB", 0);
+        configFile.put("Encode Cache Directory", "encode_cache");
+        configFile.put("Scheduling Policy", "SHORTEST_FIRST");
+        configFile.put("Output Buffer Lines", 65536);
+        configFile.put("Output Log Directory", "output_log");
+        configFile.put("Metrics Port", 0);
+        configFile.put("Daemon Port", 0);
 
         configFile.put("Use Custom FFMPEG Options", false);
         configFile.put("Custom FFMPEG Enc Options", "");
@@ -210,6 +349,10 @@ public class ConfigHandler {
 
         configFile.put("Compression Commands", "a -m0=lzma -mx=9 -mfb=64 -md=32m -ms=on");
         configFile.put("Compression Output Extension", "7z");
+        configFile.put("Stream Archives", false);
+        configFile.put("Compression Stream Commands", "a -txz -mx=9 -si -so -an");
+        configFile.put("Stream Archive Extraction", false);
+        configFile.put("Extraction Stream Commands", "x -txz -si -so");
 
         configFile.put("Check For Updates", true);
 
@@ -217,7 +360,7 @@ public class ConfigHandler {
 
 
         try (
-            final FileWriter fileWriter = new FileWriter(FILENAME_CONFIG);
+            final FileWriter fileWriter = new FileWriter(settingsFile);
         ) {
             fileWriter.write(configFile.toJSONString());
             fileWriter.flush();
@@ -249,6 +392,22 @@ public class ConfigHandler {
         encodingLibrary = "libvpx";
 
         ffmpegLogLevel = "info";
+        ffmpegThreadsPerJob = 8;
+        maxConcurrentJobs = 0;
+        maxConcurrentFilesPerJob = 0;
+        encodeSegments = 1;
+        decodeSegments = 1;
+        streamEncodeInput = true;
+        checkpointChunkFrames = 0;
+        rasterizeFrames = false;
+        demodulateFrames = false;
+        encodeCacheSizeMegabytes = 0;
+        encodeCacheDirectory = "encode_cache";
+        schedulingPolicy = "SHORTEST_FIRST";
+        outputBufferLines = 65536;
+        outputLogDirectory = "output_log";
+        metricsPort = 0;
+        daemonPort = 0;
 
         useFullyCustomFfmpegOptions = false;
 
@@ -257,6 +416,10 @@ public class ConfigHandler {
 
         compressionCommands = "a -m0=lzma -mx=9 -mfb=64 -md=32m -ms=on";
         compressionOutputExtension = "7z";
+        streamArchives = false;
+        compressionStreamCommands = "a -txz -mx=9 -si -so -an";
+        streamArchiveExtraction = false;
+        extractionStreamCommands = "x -txz -si -so";
 
         warnUserIfSettingsMayNotWorkForYouTube = true;
     }
@@ -289,6 +452,48 @@ public class ConfigHandler {
         return frameSize;
     }
 
+    /**
+     * Determines the number of Jobs that can be run at once.
+     *
+     * If the maximum number of concurrent Jobs hasn't been set, then the
+     * available cores are divided between Jobs based on the number of
+     * threads used by each ffmpeg process.
+     *
+     * @return
+     *         The number of Jobs that can be run at once.
+     */
+    public int calculateMaxConcurrentJobs() {
+        if(maxConcurrentJobs >= 1) {
+            return maxConcurrentJobs;
+        }
+
+        final int availableCores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, availableCores / Math.max(1, ffmpegThreadsPerJob));
+    }
+
+    /**
+     * Determines the number of files, within a single Job, that can be
+     * en/decoded at once.
+     *
+     * If the maximum number of concurrent files hasn't been set, then the
+     * cores left over after dividing them between the concurrently running
+     * Jobs are used.
+     *
+     * @param concurrentJobs
+     *         The number of Jobs that are running at the same time.
+     *
+     * @return
+     *         The number of files that can be en/decoded at once.
+     */
+    public int calculateMaxConcurrentFilesPerJob(final int concurrentJobs) {
+        if(maxConcurrentFilesPerJob >= 1) {
+            return maxConcurrentFilesPerJob;
+        }
+
+        final int availableCores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, availableCores / (Math.max(1, ffmpegThreadsPerJob) * Math.max(1, concurrentJobs)));
+    }
+
     /**
      * Sets the new Encoded Video Width, then recalculates the Frame Size.
      *
@@ -0,0 +1,590 @@
+package handler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import misc.Job;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonStructure;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accepts Jobs from other processes on this machine, over HTTP on the
+ * loopback address, and runs them on the same executor as the Jobs of the
+ * main screen.
+ *
+ * POST /jobs
+ *     Queues the Job, or array of Jobs, in the body. Each Job is an object of
+ *     "files", "outputDirectory", and optionally "name", "description",
+ *     "encode" (true by default) and "archive" (false by default). Responds
+ *     with the id of each queued Job.
+ *
+ * GET /jobs
+ *     Responds with the state of every queued and running Job, including the
+ *     Jobs of the main screen.
+ *
+ * DELETE /jobs/id
+ *     Cancels the Job.
+ *
+ * GET /events
+ *     Streams an event, as a line of JSON, when a Job is queued, outputs a
+ *     line, or finishes.
+ *
+ * Requests from web pages are refused, so that a page open in a browser on
+ * this machine can't queue, cancel, or list Jobs. Browsers name the page in
+ * the Origin header of every request that could change something, and in
+ * the Host header of a request sent through a domain which resolves to the
+ * loopback address, and they can't send a JSON body to another site without
+ * first asking permission, which is never given.
+ */
+public class DaemonHandler implements JobListener {
+    /** The path at which Jobs are queued, inspected, and cancelled. */
+    private static final String PATH_JOBS = "/jobs";
+    /** The path at which events are streamed. */
+    private static final String PATH_EVENTS = "/events";
+    /** The number of events which can be waiting to be sent to a client before further events are dropped for it. */
+    private static final int EVENT_BACKLOG = 4096;
+    /** The number of seconds, without events, after which an empty line is sent to each client, to find out whether it's still connected. */
+    private static final int HEARTBEAT_SECONDS = 15;
+    /** The media type which the body of every request to queue Jobs must have. */
+    private static final String MEDIA_TYPE_JSON = "application/json";
+    /** The names by which the loopback address can be reached, which are the only names accepted in the Host header. */
+    private static final Set<String> LOOPBACK_HOSTS = new HashSet<>(Arrays.asList("localhost", "127.0.0.1", "[::1]"));
+
+    /** The settings used to en/decode. */
+    private final ConfigHandler configHandler;
+    /** The statistics shared with the main screen. */
+    private final StatisticsHandler statisticsHandler;
+    /** The journal shared with the main screen. */
+    private final JournalHandler journalHandler;
+    /** The encode cache shared with the main screen. */
+    private final EncodeCacheHandler encodeCacheHandler;
+    /** The handler which owns the executor, and through which Jobs are inspected and cancelled. */
+    private final ManagementHandler managementHandler;
+
+    /** The events waiting to be sent to each connected client. */
+    private final Set<BlockingQueue<String>> subscribers = ConcurrentHashMap.newKeySet();
+
+    /** The server, or null if it isn't running. */
+    private HttpServer server;
+    /** The executor of the server, which needs a thread for each client streaming events. */
+    private ExecutorService serverExecutor;
+
+    /**
+     * Constructs a new DaemonHandler.
+     *
+     * @param configHandler
+     *         The settings used to en/decode.
+     *
+     * @param statisticsHandler
+     *         The statistics shared with the main screen.
+     *
+     * @param journalHandler
+     *         The journal shared with the main screen.
+     *
+     * @param encodeCacheHandler
+     *         The encode cache shared with the main screen.
+     *
+     * @param managementHandler
+     *         The handler which owns the executor, and through which Jobs are inspected and cancelled.
+     */
+    public DaemonHandler(final ConfigHandler configHandler, final StatisticsHandler statisticsHandler, final JournalHandler journalHandler,
+                         final EncodeCacheHandler encodeCacheHandler, final ManagementHandler managementHandler) {
+        this.configHandler = configHandler;
+        this.statisticsHandler = statisticsHandler;
+        this.journalHandler = journalHandler;
+        this.encodeCacheHandler = encodeCacheHandler;
+        this.managementHandler = managementHandler;
+    }
+
+    /**
+     * Starts accepting Jobs at http://localhost:port/jobs.
+     *
+     * The server is bound to the loopback address, so Jobs can't be queued
+     * from other machines.
+     *
+     * @param port
+     *         The port to accept Jobs on.
+     *
+     * @return
+     *         Whether the server was started.
+     */
+    public synchronized boolean startServer(final int port) {
+        if(server != null) {
+            return true;
+        }
+
+        try {
+            serverExecutor = Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = new Thread(runnable, "Daemon Server");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext(PATH_JOBS, this::serveJobs);
+            server.createContext(PATH_EVENTS, this::serveEvents);
+            server.setExecutor(serverExecutor);
+            server.start();
+            return true;
+        } catch(final IOException e) {
+            server = null;
+            serverExecutor.shutdown();
+
+            final Logger logger = LogManager.getLogger();
+            logger.error("Unable to accept Jobs on port " + port + ".", e);
+            return false;
+        }
+    }
+
+    /** Stops accepting Jobs, and disconnects every client, if the server is running. */
+    public synchronized void stopServer() {
+        if(server != null) {
+            server.stop(0);
+            serverExecutor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * Responds to a request to queue, inspect, or cancel Jobs.
+     *
+     * @param exchange
+     *         The request and its response.
+     *
+     * @throws IOException
+     *         If the response cannot be sent.
+     */
+    private void serveJobs(final HttpExchange exchange) throws IOException {
+        final String method = exchange.getRequestMethod();
+        final String path = exchange.getRequestURI().getPath();
+
+        if(isFromWebPage(exchange)) {
+            respond(exchange, 403, error("Requests from web pages aren't accepted."));
+            return;
+        }
+
+        try {
+            if(path.equals(PATH_JOBS) || path.equals(PATH_JOBS + "/")) {
+                if(method.equals("POST") && ! isJson(exchange)) {
+                    respond(exchange, 415, error("Jobs must be sent with the Content-Type " + MEDIA_TYPE_JSON + "."));
+                } else if(method.equals("POST")) {
+                    respond(exchange, 202, queueJobs(exchange));
+                } else if(method.equals("GET")) {
+                    respond(exchange, 200, describeJobs());
+                } else {
+                    respond(exchange, 405, error("Only GET and POST are allowed on " + PATH_JOBS + "."));
+                }
+            } else if(method.equals("DELETE")) {
+                final String journalId = path.substring(PATH_JOBS.length() + 1);
+
+                if(managementHandler.cancelJob(journalId)) {
+                    respond(exchange, 200, Json.createObjectBuilder().add("id", journalId).add("state", "Cancelled").build());
+                } else {
+                    respond(exchange, 404, error("There's no queued or running Job with the id " + journalId + "."));
+                }
+            } else {
+                respond(exchange, 405, error("Only DELETE is allowed on " + PATH_JOBS + "/id."));
+            }
+        } catch(final IllegalArgumentException | JsonException e) {
+            respond(exchange, 400, error(e.getMessage()));
+        } catch(final ClassCastException e) {
+            respond(exchange, 400, error("Each Job must be an object, with an array of strings as its files."));
+        }
+    }
+
+    /**
+     * Queues the Job, or array of Jobs, in the body of a request, and runs
+     * them on a new JobHandler.
+     *
+     * Every Job is checked before any is queued, so either all or none of
+     * them are queued.
+     *
+     * @param exchange
+     *         The request.
+     *
+     * @return
+     *         The ids and names of the queued Jobs.
+     *
+     * @throws IllegalArgumentException
+     *         If a Job is invalid, or ffmpeg can't be found.
+     *
+     * @throws JsonException
+     *         If the body isn't JSON.
+     */
+    private JsonObject queueJobs(final HttpExchange exchange) {
+        final JsonStructure body;
+
+        try (
+            final JsonReader reader = Json.createReader(exchange.getRequestBody());
+        ) {
+            body = reader.read();
+        }
+
+        final List<JsonObject> specs = new ArrayList<>();
+
+        if(body instanceof JsonArray) {
+            ((JsonArray) body).forEach(spec -> specs.add((JsonObject) spec));
+        } else {
+            specs.add((JsonObject) body);
+        }
+
+        if(specs.isEmpty()) {
+            throw new IllegalArgumentException("No Jobs were given.");
+        }
+
+        if(! new File(configHandler.getFfmpegPath()).exists()) {
+            throw new IllegalArgumentException("The FFMPEG path, " + configHandler.getFfmpegPath() + ", doesn't exist.");
+        }
+
+        final List<Job> jobs = new ArrayList<>(specs.size());
+
+        for(final JsonObject spec : specs) {
+            jobs.add(createJob(spec));
+        }
+
+        final List<FFMPEGHandler> preparedTasks = new ArrayList<>(jobs.size());
+        final JsonArrayBuilder queuedJobs = Json.createArrayBuilder();
+
+        for(final Job job : jobs) {
+            job.setId(preparedTasks.size());
+            journalHandler.recordQueued(job);
+
+            preparedTasks.add(new FFMPEGHandler(job, this, configHandler, statisticsHandler, journalHandler, encodeCacheHandler));
+
+            queuedJobs.add(Json.createObjectBuilder().add("id", job.getJournalId()).add("name", job.getName()));
+            publish(event("queued", job).build());
+        }
+
+        // The JobHandler only waits on the shared executor, so it's run
+        // on its own thread, as the main screen runs its JobHandlers:
+        final Thread thread = new Thread(new JobHandler(this, configHandler, managementHandler, preparedTasks), "Daemon Job Handler");
+        thread.setDaemon(true);
+        thread.start();
+
+        return Json.createObjectBuilder().add("jobs", queuedJobs).build();
+    }
+
+    /**
+     * Creates a Job from its description in a request.
+     *
+     * @param spec
+     *         The description.
+     *
+     * @return
+     *         The Job.
+     *
+     * @throws IllegalArgumentException
+     *         If the Job has no files, a file doesn't exist, or the output
+     *         directory doesn't exist.
+     *
+     * @throws ClassCastException
+     *         If a file isn't a string.
+     */
+    private static Job createJob(final JsonObject spec) {
+        final JsonArray fileNames = spec.getJsonArray("files");
+        final String outputDirectory = spec.getString("outputDirectory", null);
+
+        if(fileNames == null || outputDirectory == null) {
+            throw new IllegalArgumentException("Every Job needs its files and outputDirectory.");
+        }
+
+        final List<File> files = new ArrayList<>();
+
+        for(final JsonString fileName : fileNames.getValuesAs(JsonString.class)) {
+            final File file = new File(fileName.getString());
+
+            if(! file.isFile()) {
+                throw new IllegalArgumentException("The file " + file.getPath() + " doesn't exist.");
+            }
+
+            files.add(file);
+        }
+
+        if(files.isEmpty()) {
+            throw new IllegalArgumentException("Every Job needs at least one file.");
+        }
+
+        if(! new File(outputDirectory).isDirectory()) {
+            throw new IllegalArgumentException("The output directory " + outputDirectory + " doesn't exist.");
+        }
+
+        final boolean isEncodeJob = spec.getBoolean("encode", true);
+        final boolean isArchiveFiles = spec.getBoolean("archive", false);
+
+        if(isArchiveFiles && ! isEncodeJob) {
+            throw new IllegalArgumentException("Only Encode Jobs can archive their files.");
+        }
+
+        final String name = spec.getString("name", FilenameUtils.getBaseName(files.get(0).getName()));
+        return new Job(name, spec.getString("description", ""), outputDirectory, files, isEncodeJob, isArchiveFiles);
+    }
+
+    /**
+     * Describes every queued and running Job.
+     *
+     * @return
+     *         The description.
+     */
+    private JsonObject describeJobs() {
+        final JsonArrayBuilder jobs = Json.createArrayBuilder();
+
+        for(final FFMPEGHandler task : managementHandler.getTasks()) {
+            final String state;
+
+            if(task.isJobCompleted()) {
+                state = "Completed";
+            } else {
+                state = managementHandler.describeState(task);
+            }
+
+            jobs.add(Json.createObjectBuilder().add("id", task.getJob().getJournalId())
+                                               .add("name", task.getJob().getName())
+                                               .add("encode", task.getJob().isEncodeJob())
+                                               .add("state", state));
+        }
+
+        return Json.createObjectBuilder().add("queuePaused", managementHandler.isQueuePaused())
+                                         .add("concurrencyLimit", managementHandler.getConcurrencyLimit())
+                                         .add("jobs", jobs)
+                                         .build();
+    }
+
+    /**
+     * Streams events to a client, until the client disconnects or the server
+     * stops.
+     *
+     * @param exchange
+     *         The request and its response.
+     *
+     * @throws IOException
+     *         If the response cannot be sent.
+     */
+    private void serveEvents(final HttpExchange exchange) throws IOException {
+        if(isFromWebPage(exchange)) {
+            respond(exchange, 403, error("Requests from web pages aren't accepted."));
+            return;
+        }
+
+        if(! exchange.getRequestMethod().equals("GET")) {
+            respond(exchange, 405, error("Only GET is allowed on " + PATH_EVENTS + "."));
+            return;
+        }
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>(EVENT_BACKLOG);
+        subscribers.add(events);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+
+        try (final OutputStream outputStream = exchange.getResponseBody()) {
+            while(true) {
+                final String event = events.poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+                outputStream.write(((event == null ? "" : event) + "\n").getBytes(StandardCharsets.UTF_8));
+
+                // Send every event that's waiting before flushing:
+                if(events.isEmpty()) {
+                    outputStream.flush();
+                }
+            }
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(final IOException ignored) {
+            // The client has disconnected.
+        } finally {
+            subscribers.remove(events);
+            exchange.close();
+        }
+    }
+
+    /**
+     * Determines whether a request was sent by a web page, rather than by a
+     * program on this machine.
+     *
+     * @param exchange
+     *         The request.
+     *
+     * @return
+     *         Whether the request has an Origin header, or a Host header
+     *         which doesn't name the loopback address.
+     */
+    private static boolean isFromWebPage(final HttpExchange exchange) {
+        if(exchange.getRequestHeaders().containsKey("Origin")) {
+            return true;
+        }
+
+        final String host = exchange.getRequestHeaders().getFirst("Host");
+
+        if(host == null) {
+            return false;
+        }
+
+        // Remove the port:
+        final int portIndex = host.lastIndexOf(':');
+        final String hostName = (portIndex > host.lastIndexOf(']') ? host.substring(0, portIndex) : host);
+
+        return ! LOOPBACK_HOSTS.contains(hostName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Determines whether the body of a request is JSON.
+     *
+     * @param exchange
+     *         The request.
+     *
+     * @return
+     *         Whether the Content-Type of the request is application/json,
+     *         with or without parameters.
+     */
+    private static boolean isJson(final HttpExchange exchange) {
+        final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+
+        if(contentType == null) {
+            return false;
+        }
+
+        final int parametersIndex = contentType.indexOf(';');
+        final String mediaType = (parametersIndex == -1 ? contentType : contentType.substring(0, parametersIndex));
+
+        return mediaType.trim().equalsIgnoreCase(MEDIA_TYPE_JSON);
+    }
+
+    /**
+     * Sends an event to every connected client.
+     *
+     * This never blocks, as it's called from the threads which run the Jobs,
+     * so a client which has fallen too far behind misses events.
+     *
+     * @param event
+     *         The event.
+     */
+    private void publish(final JsonObject event) {
+        if(subscribers.isEmpty()) {
+            return;
+        }
+
+        final String line = event.toString();
+        subscribers.forEach(events -> events.offer(line));
+    }
+
+    @Override
+    public void jobsStarted() {}
+
+    @Override
+    public void jobsFinished() {}
+
+    @Override
+    public void jobFinished(final Job job) {
+        // The Job's JobHandler is still running, so its task can be found:
+        final FFMPEGHandler task = managementHandler.getTasks()
+                                                    .stream()
+                                                    .filter(candidate -> candidate.getJob() == job)
+                                                    .findFirst()
+                                                    .orElse(null);
+
+        publish(event("finished", job).add("completed", task != null && task.isJobCompleted())
+                                      .add("cancelled", task != null && task.isJobCancelled())
+                                      .build());
+    }
+
+    @Override
+    public void appendOutput(final String line, final Job job) {
+        if(subscribers.isEmpty()) {
+            return;
+        }
+
+        int end = line.length();
+
+        while(end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+
+        if(end > 0) {
+            publish(event("output", job).add("line", line.substring(0, end)).build());
+        }
+    }
+
+    /**
+     * Starts an event about the specified Job.
+     *
+     * @param type
+     *         The type of the event.
+     *
+     * @param job
+     *         The Job.
+     *
+     * @return
+     *         The event, to which further values can be added.
+     */
+    private static JsonObjectBuilder event(final String type, final Job job) {
+        return Json.createObjectBuilder().add("event", type)
+                                         .add("id", job.getJournalId())
+                                         .add("name", job.getName());
+    }
+
+    /**
+     * Creates the body of an error response.
+     *
+     * @param message
+     *         The message of the error.
+     *
+     * @return
+     *         The body.
+     */
+    private static JsonObject error(final String message) {
+        return Json.createObjectBuilder().add("error", message).build();
+    }
+
+    /**
+     * Sends a JSON response.
+     *
+     * @param exchange
+     *         The request and its response.
+     *
+     * @param status
+     *         The status code.
+     *
+     * @param body
+     *         The body.
+     *
+     * @throws IOException
+     *         If the response cannot be sent.
+     */
+    private static void respond(final HttpExchange exchange, final int status, final JsonObject body) throws IOException {
+        final byte[] bytes = (body.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (final OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
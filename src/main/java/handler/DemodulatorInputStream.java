@@ -0,0 +1,291 @@
+package handler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class DemodulatorInputStream extends InputStream {
+    /** The number of threads used to demodulate frames, shared by every stream. */
+    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    /** The number of frames that each stream reads ahead of the frame being returned. */
+    private static final int READ_AHEAD_FRAMES = THREAD_COUNT * 2;
+
+    /** The pool which demodulates the frames of every stream. */
+    private static ExecutorService executor;
+
+    /** The stream of full-resolution gray frames to demodulate. */
+    private final InputStream inputStream;
+
+    /** The width, in pixels, of each frame. */
+    private final int width;
+    /** The height, in pixels, of each frame. */
+    private final int height;
+    /** The width/height, in pixels, of each macroblock. */
+    private final int macroBlockDimensions;
+    /** The number of macroblocks in each row of a frame. */
+    private final int blocksPerRow;
+    /** The number of pixels skipped at each edge of a macroblock when sampling it. */
+    private final int sampleInset;
+    /** The size, in bytes, of the payload held by each frame. */
+    private final int frameSize;
+
+    /** The frames which have been read and are being, or have been, demodulated, in order. */
+    private final Deque<Future<Slot>> pendingSlots = new ArrayDeque<>();
+    /** The slots which can be reused for the next frames. */
+    private final Deque<Slot> freeSlots = new ArrayDeque<>();
+
+    /** The slot whose payload is currently being returned. */
+    private Slot currentSlot;
+    /** The position, within the payload of the current slot, of the next byte to return. */
+    private int currentPosition;
+    /** Whether or not the end of the stream of frames has been reached. */
+    private boolean isEndOfFrames = false;
+
+    /**
+     * Constructs a new DemodulatorInputStream.
+     *
+     * @param inputStream
+     *         The stream of full-resolution gray frames to demodulate.
+     *
+     * @param configHandler
+     *         The settings containing the resolution, macroblock size and frame size.
+     */
+    public DemodulatorInputStream(final InputStream inputStream, final ConfigHandler configHandler) {
+        this.inputStream = inputStream;
+
+        width = configHandler.getEncodedVideoWidth();
+        height = configHandler.getEncodedVideoHeight();
+        macroBlockDimensions = configHandler.getMacroBlockDimensions();
+        blocksPerRow = width / macroBlockDimensions;
+        sampleInset = macroBlockDimensions / 4;
+        frameSize = configHandler.getFrameSize();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(! fillCurrentSlot()) {
+            return -1;
+        }
+
+        return currentSlot.payload[currentPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+
+        if(! fillCurrentSlot()) {
+            return -1;
+        }
+
+        final int count = Math.min(len, frameSize - currentPosition);
+        System.arraycopy(currentSlot.payload, currentPosition, b, off, count);
+        currentPosition += count;
+
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return (currentSlot == null ? 0 : frameSize - currentPosition);
+    }
+
+    /**
+     * Cancels any frames which are still being demodulated, then closes the
+     * stream of frames.
+     *
+     * @throws IOException
+     *         If the stream of frames cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        pendingSlots.forEach(future -> future.cancel(false));
+        pendingSlots.clear();
+
+        inputStream.close();
+    }
+
+    /**
+     * Ensures that the current slot has payload left to return, by moving on
+     * to the next demodulated frame if necessary.
+     *
+     * Before waiting on the next frame, as many frames as the read-ahead
+     * allows are read and handed to the pool, so the frames are demodulated
+     * in parallel while still being returned in order.
+     *
+     * @return
+     *         Whether or not there is payload left to return.
+     *
+     * @throws IOException
+     *         If the frames cannot be read, or a frame cannot be demodulated.
+     */
+    private boolean fillCurrentSlot() throws IOException {
+        if(currentSlot != null && currentPosition < frameSize) {
+            return true;
+        }
+
+        if(currentSlot != null) {
+            freeSlots.add(currentSlot);
+            currentSlot = null;
+        }
+
+        while(! isEndOfFrames && pendingSlots.size() < READ_AHEAD_FRAMES) {
+            final Slot slot = (freeSlots.isEmpty() ? new Slot() : freeSlots.poll());
+
+            if(! readFrame(slot.frame)) {
+                isEndOfFrames = true;
+                freeSlots.add(slot);
+                break;
+            }
+
+            pendingSlots.add(getExecutor().submit(() -> {
+                demodulate(slot);
+                return slot;
+            }));
+        }
+
+        if(pendingSlots.isEmpty()) {
+            return false;
+        }
+
+        try {
+            currentSlot = pendingSlots.poll().get();
+            currentPosition = 0;
+            return true;
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while demodulating a frame.");
+        } catch(final ExecutionException e) {
+            throw new IOException("Unable to demodulate a frame.", e.getCause());
+        }
+    }
+
+    /**
+     * Reads a whole frame from the stream of frames.
+     *
+     * @param frame
+     *         The buffer to read the frame into.
+     *
+     * @return
+     *         False if the stream of frames ended before the frame began,
+     *         else true.
+     *
+     * @throws IOException
+     *         If the frame cannot be read, or the stream of frames ends
+     *         part-way through the frame.
+     */
+    private boolean readFrame(final byte[] frame) throws IOException {
+        int position = 0;
+
+        while(position < frame.length) {
+            final int count = inputStream.read(frame, position, frame.length - position);
+
+            if(count == -1) {
+                if(position == 0) {
+                    return false;
+                }
+
+                throw new EOFException("The stream of frames ended part-way through a frame.");
+            }
+
+            position += count;
+        }
+
+        return true;
+    }
+
+    /**
+     * Demodulates the frame of the specified slot into its payload.
+     *
+     * Each macroblock is sampled by averaging the pixels of its center
+     * region, as the edges of a macroblock are where the codec's noise and
+     * ringing are worst, then the average is thresholded to a single bit.
+     *
+     * The bits are packed most-significant first, left-to-right,
+     * top-to-bottom, matching the layout of RasterOutputStream and of
+     * ffmpeg's monob pixel format.
+     *
+     * @param slot
+     *         The slot.
+     */
+    private void demodulate(final Slot slot) {
+        final byte[] frame = slot.frame;
+        final byte[] payload = slot.payload;
+        final int[] sums = slot.sums;
+
+        final int sampleStart = sampleInset;
+        final int sampleEnd = macroBlockDimensions - sampleInset;
+        final int threshold = 128 * (sampleEnd - sampleStart) * (sampleEnd - sampleStart);
+        final int bitsPerFrame = frameSize * Byte.SIZE;
+
+        Arrays.fill(payload, (byte) 0);
+
+        int bitIndex = 0;
+
+        for(int blockRow = 0 ; blockRow < height / macroBlockDimensions && bitIndex < bitsPerFrame ; blockRow++) {
+            Arrays.fill(sums, 0);
+
+            // Sum the center region of each macroblock in the row, one pixel row at a time:
+            for(int y = sampleStart ; y < sampleEnd ; y++) {
+                final int rowOffset = ((blockRow * macroBlockDimensions) + y) * width;
+
+                for(int blockColumn = 0 ; blockColumn < blocksPerRow ; blockColumn++) {
+                    final int blockOffset = rowOffset + (blockColumn * macroBlockDimensions);
+
+                    int sum = 0;
+
+                    for(int x = sampleStart ; x < sampleEnd ; x++) {
+                        sum += frame[blockOffset + x] & 0xFF;
+                    }
+
+                    sums[blockColumn] += sum;
+                }
+            }
+
+            for(int blockColumn = 0 ; blockColumn < blocksPerRow && bitIndex < bitsPerFrame ; blockColumn++, bitIndex++) {
+                if(sums[blockColumn] >= threshold) {
+                    payload[bitIndex >>> 3] |= (byte) (0x80 >>> (bitIndex & 7));
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the pool which demodulates the frames of every stream,
+     * creating it if necessary.
+     *
+     * @return
+     *         The pool.
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if(executor == null) {
+            executor = Executors.newFixedThreadPool(THREAD_COUNT, runnable -> {
+                final Thread thread = new Thread(runnable, "Frame Demodulator");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return executor;
+    }
+
+    /** The buffers used to demodulate a single frame, which are reused for later frames. */
+    private class Slot {
+        /** The full-resolution gray frame. */
+        private final byte[] frame = new byte[width * height];
+        /** The demodulated payload of the frame. */
+        private final byte[] payload = new byte[frameSize];
+        /** The sum of the sampled pixels of each macroblock in the current row of macroblocks. */
+        private final int[] sums = new int[blocksPerRow];
+    }
+}
@@ -0,0 +1,395 @@
+package handler;
+
+import lombok.Getter;
+import module.ContentHashModule;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class EncodeCacheHandler {
+    /** The name of the index of known source files, within the cache directory. */
+    private static final String FILENAME_SOURCES = "sources.txt";
+
+    /** The settings to use when encoding. */
+    private final ConfigHandler configHandler;
+
+    /** The content hash of each known source file, by its path, length and last-modified time. */
+    private final Map<String, String> sourceHashes = new HashMap<>();
+    /** The lengths of the known source files. */
+    private final Set<Long> sourceLengths = new HashSet<>();
+    /** Whether or not the index of known sources has been loaded. */
+    private boolean isSourcesLoaded = false;
+
+    /** The number of encodes which were served from the cache. */
+    @Getter private final AtomicLong hits = new AtomicLong();
+    /** The number of encodes which couldn't be served from the cache. */
+    @Getter private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs a new EncodeCacheHandler.
+     *
+     * The index of known sources is loaded when it's first needed, as the
+     * cache can be enabled after the program has started.
+     *
+     * @param configHandler
+     *         The settings to use when encoding.
+     */
+    public EncodeCacheHandler(final ConfigHandler configHandler) {
+        this.configHandler = configHandler;
+    }
+
+    /** @return Whether or not the cache has been given any space. */
+    public boolean isEnabled() {
+        return configHandler.getEncodeCacheSizeMegabytes() > 0;
+    }
+
+    /**
+     * Determines the content hash of the specified source file without
+     * encoding it.
+     *
+     * A source which hasn't changed since it was last cached is looked up
+     * in the index of known sources, without being read. Otherwise the
+     * source is only read and hashed if a known source has the same length,
+     * as no other source can have the same content. The source is read
+     * outside of the lock, so other lookups aren't held up, and the content
+     * hash keeps the digest of every block, so the encode doesn't hash the
+     * source again.
+     *
+     * @param file
+     *         The source file.
+     *
+     * @param contentHash
+     *         The content hash of the source, which is completed if the
+     *         source needs to be read.
+     *
+     * @return
+     *         The content hash, or null if the source can't be in the cache.
+     */
+    public String lookUpHash(final File file, final ContentHashModule contentHash) {
+        if(! isEnabled()) {
+            return null;
+        }
+
+        synchronized(this) {
+            loadSources();
+
+            final String hash = sourceHashes.get(createSourceKey(file));
+
+            if(hash != null || ! sourceLengths.contains(file.length())) {
+                return hash;
+            }
+        }
+
+        try {
+            return contentHash.complete();
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+            return null;
+        }
+    }
+
+    /**
+     * Places the cached encode of the specified content at the specified
+     * output, as a hard link if possible or as a copy if not, and counts
+     * the lookup as a hit or a miss.
+     *
+     * @param hash
+     *         The content hash of the source, or null if it's unknown.
+     *
+     * @param outputFile
+     *         The file that the encode would have written.
+     *
+     * @return
+     *         Whether or not the cached encode was placed at the output.
+     */
+    public boolean restore(final String hash, final File outputFile) {
+        if(! isEnabled()) {
+            return false;
+        }
+
+        final File entryFile = (hash == null ? null : createEntryFile(hash));
+
+        synchronized(this) {
+            if(entryFile == null || ! entryFile.exists()) {
+                misses.incrementAndGet();
+                return false;
+            }
+
+            try {
+                linkOrCopy(entryFile, outputFile);
+
+                // Mark the entry as the most recently used:
+                entryFile.setLastModified(System.currentTimeMillis());
+
+                hits.incrementAndGet();
+                return true;
+            } catch(final IOException e) {
+                final Logger logger = LogManager.getLogger();
+                logger.error(e);
+
+                misses.incrementAndGet();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Stores the encode of the specified source in the cache, then evicts the
+     * least recently used entries until the cache fits within its size.
+     *
+     * Only the blocks of the source which the encode didn't read, such as
+     * those of chunks skipped by a resumed checkpoint, or those split
+     * between two Segments, are read to complete the content hash.
+     *
+     * @param file
+     *         The source file.
+     *
+     * @param contentHash
+     *         The content hash of the source, updated as the encode read it.
+     *
+     * @param outputFile
+     *         The encode of the source.
+     */
+    public void store(final File file, final ContentHashModule contentHash, final File outputFile) {
+        if(! isEnabled() || ! outputFile.exists()) {
+            return;
+        }
+
+        try {
+            String hash;
+
+            synchronized(this) {
+                loadSources();
+                hash = sourceHashes.get(createSourceKey(file));
+            }
+
+            if(hash == null) {
+                hash = contentHash.complete();
+            }
+
+            final File entryFile = createEntryFile(hash);
+
+            synchronized(this) {
+                if(! entryFile.exists()) {
+                    linkOrCopy(outputFile, entryFile);
+                }
+
+                recordSource(file, hash);
+                evict();
+            }
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "Encode cache: %d hit(s), %d miss(es).", hits.get(), misses.get());
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits within
+     * its size.
+     */
+    private void evict() {
+        final long maxSize = configHandler.getEncodeCacheSizeMegabytes() * 1024L * 1024L;
+        final File[] entryFiles = getCacheDirectory().listFiles((directory, name) -> ! name.equals(FILENAME_SOURCES));
+
+        if(entryFiles == null) {
+            return;
+        }
+
+        long totalSize = Arrays.stream(entryFiles).mapToLong(File::length).sum();
+
+        Arrays.sort(entryFiles, Comparator.comparingLong(File::lastModified));
+
+        for(final File entryFile : entryFiles) {
+            if(totalSize <= maxSize) {
+                break;
+            }
+
+            final long length = entryFile.length();
+
+            if(entryFile.delete()) {
+                totalSize -= length;
+            }
+        }
+    }
+
+    /**
+     * Records the content hash of the specified source in the index of
+     * known sources.
+     *
+     * @param file
+     *         The source file.
+     *
+     * @param hash
+     *         The content hash.
+     *
+     * @throws IOException
+     *         If the index cannot be written.
+     */
+    private void recordSource(final File file, final String hash) throws IOException {
+        loadSources();
+
+        final String sourceKey = createSourceKey(file);
+
+        if(hash.equals(sourceHashes.put(sourceKey, hash))) {
+            return;
+        }
+
+        sourceLengths.add(file.length());
+
+        try (
+            final PrintWriter printWriter = new PrintWriter(new FileOutputStream(new File(getCacheDirectory(), FILENAME_SOURCES), true));
+        ) {
+            printWriter.append(sourceKey).append('\t').append(String.valueOf(file.length())).append('\t').append(hash).append(System.lineSeparator());
+        }
+    }
+
+    /** Loads the index of known sources, if it hasn't been loaded, skipping any lines which can't be parsed. */
+    private void loadSources() {
+        final File sourcesFile = new File(getCacheDirectory(), FILENAME_SOURCES);
+
+        if(isSourcesLoaded) {
+            return;
+        }
+
+        isSourcesLoaded = true;
+
+        if(! sourcesFile.exists()) {
+            return;
+        }
+
+        try (
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(sourcesFile), StandardCharsets.UTF_8));
+        ) {
+            String line;
+
+            while((line = reader.readLine()) != null) {
+                final String[] fields = line.split("\t");
+
+                if(fields.length != 3) {
+                    continue;
+                }
+
+                try {
+                    sourceLengths.add(Long.parseLong(fields[1]));
+                    sourceHashes.put(fields[0], fields[2]);
+                } catch(final NumberFormatException e) {
+                    // The line was only partly written.
+                }
+            }
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+        }
+    }
+
+    /**
+     * Places the source at the destination, as a hard link if possible or as
+     * a copy if not, replacing anything already at the destination.
+     *
+     * @param source
+     *         The source.
+     *
+     * @param destination
+     *         The destination.
+     *
+     * @throws IOException
+     *         If the source cannot be linked or copied.
+     */
+    private static void linkOrCopy(final File source, final File destination) throws IOException {
+        Files.deleteIfExists(destination.toPath());
+
+        try {
+            Files.createLink(destination.toPath(), source.toPath());
+        } catch(final IOException | UnsupportedOperationException e) {
+            // Hard links can't cross file systems, and aren't supported everywhere:
+            Files.copy(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Constructs the cache entry for the encode of the specified content with
+     * the current settings.
+     *
+     * @param hash
+     *         The content hash.
+     *
+     * @return
+     *         The entry.
+     */
+    private File createEntryFile(final String hash) {
+        return new File(getCacheDirectory(), hash + "-" + createParameterHash() + "." + configHandler.getEncodeFormat());
+    }
+
+    /**
+     * Hashes every setting that affects the encoded video, so that changing
+     * a setting misses the entries made with the old setting.
+     *
+     * The settings are hashed with the same digest as the content, as a
+     * collision would restore an encode made with different settings.
+     *
+     * @return
+     *         The hash of the settings.
+     */
+    private String createParameterHash() {
+        final String parameters = String.format(Locale.US, "%dx%d|%d|%d|%s|%s|%b",
+                                                configHandler.getEncodedVideoWidth(),
+                                                configHandler.getEncodedVideoHeight(),
+                                                configHandler.getEncodedFramerate(),
+                                                configHandler.getMacroBlockDimensions(),
+                                                configHandler.getEncodingLibrary(),
+                                                configHandler.getEncodeFormat(),
+                                                configHandler.isRasterizeFrames());
+
+        return ContentHashModule.toHex(ContentHashModule.createDigest().digest(parameters.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Constructs the key under which a source is known, which changes
+     * whenever the source is modified.
+     *
+     * @param file
+     *         The source file.
+     *
+     * @return
+     *         The key.
+     */
+    private static String createSourceKey(final File file) {
+        return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+    }
+
+    /** @return The cache directory, which is created if it doesn't exist. */
+    private File getCacheDirectory() {
+        final File directory = new File(configHandler.getEncodeCacheDirectory());
+
+        if(! directory.exists() && ! directory.mkdirs()) {
+            final Logger logger = LogManager.getLogger();
+            logger.error("Unable to create the encode cache directory " + directory.getAbsolutePath() + ".");
+        }
+
+        return directory;
+    }
+}
@@ -1,29 +1,70 @@
 package handler;
 
-import controller.MainScreenController;
-import javafx.application.Platform;
-import javafx.concurrent.Task;
-import javafx.concurrent.WorkerStateEvent;
-import javafx.event.EventHandler;
+import lombok.Getter;
+import lombok.Setter;
+import misc.FileTable;
 import misc.Job;
+import misc.StreamArchiveFormat;
+import module.ContentHashModule;
+import module.PipeStatisticsModule;
+import module.ProgressStatisticsModule;
 import module.RuntimeStatisticsModule;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Formatter;
+import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
 
-public class FFMPEGHandler extends Task implements EventHandler<WorkerStateEvent> {
+public class FFMPEGHandler implements Runnable {
     /** The Job being run. */
-    private final Job job;
-    /** The controller for the main screen. */
-    private final MainScreenController controller;
+    @Getter private final Job job;
+    /** The listener which is told of the Job's output, and of when it finishes. */
+    private final JobListener jobListener;
     /** The settings to use when encoding the file(s). */
     private final ConfigHandler configHandler;
 
     // todo JavaDoc
     final StatisticsHandler statisticsHandler;
+    /** The journal in which to record the progress of the Job. */
+    private final JournalHandler journalHandler;
+    /** The cache of previously encoded files. */
+    private final EncodeCacheHandler encodeCacheHandler;
+
+    /** The file(s) of the Job, as they were queued, before any archiving replaces them. */
+    private final FileTable queuedFiles;
+    /** The positions, within the queued file(s), of the file(s) which have been en/decoded. */
+    private final BitSet completedFiles = new BitSet();
+
+    /** The maximum number of the Job's files to en/decode at once. */
+    @Setter private int maxConcurrentFiles;
+
+    /** The live progress and throughput of the Job. */
+    @Getter private final ProgressStatisticsModule progressModule = new ProgressStatisticsModule();
+    /** The consumer of ffmpeg's output, which records its progress and passes every other line on to the output. */
+    private final ProgressHandler progressHandler;
+
+    /** Whether or not the Job has been cancelled. */
+    private volatile boolean isJobCancelled = false;
+    /** Whether or not every file of the Job was en/decoded, once the Job has finished. */
+    @Getter private volatile boolean isJobCompleted = false;
 
     /**
      * Creates a new FFMPEGHandler with the specified parameters.
@@ -31,40 +72,93 @@ public class FFMPEGHandler extends Task implements EventHandler<WorkerStateEvent
      * @param job
      *         The Job being run.
      *
-     * @param controller
-     *         The controller for the main screen.
+     * @param jobListener
+     *         The listener which is told of the Job's output, and of when it finishes.
      *
      * @param configHandler
      *         The settings to use when encoding the file(s).
      *
      * @param statisticsHandler
      *         todo JavaDoc
+     *
+     * @param journalHandler
+     *         The journal in which to record the progress of the Job.
+     *
+     * @param encodeCacheHandler
+     *         The cache of previously encoded files.
      */
-    public FFMPEGHandler(final Job job, final MainScreenController controller, final ConfigHandler configHandler, final StatisticsHandler statisticsHandler) {
+    public FFMPEGHandler(final Job job, final JobListener jobListener, final ConfigHandler configHandler, final StatisticsHandler statisticsHandler, final JournalHandler journalHandler, final EncodeCacheHandler encodeCacheHandler) {
         this.job = job;
-        this.controller = controller;
+        this.jobListener = jobListener;
         this.configHandler = configHandler;
         this.statisticsHandler = statisticsHandler;
+        this.journalHandler = journalHandler;
+        this.encodeCacheHandler = encodeCacheHandler;
+
+        // Archiving gives the Job a new table, so this one is never changed:
+        queuedFiles = job.getFiles();
+
+        maxConcurrentFiles = configHandler.calculateMaxConcurrentFilesPerJob(1);
+
+        progressHandler = new ProgressHandler(configHandler, progressModule, statisticsHandler, job.isEncodeJob(), this::appendOutput);
     }
 
     @Override
-    public Object call() {
+    public void run() {
+        final long startTime = System.nanoTime();
+        journalHandler.recordJobStarted(job);
+
+        // Every process started on behalf of the Job is tracked, so that the Job can be cancelled:
+        CommandHandler.setCurrentJob(job);
+
         if(job.isEncodeJob()) {
             encode();
         } else {
             decode();
         }
 
-        return null;
-    }
+        // Record the throughput since the last sample:
+        final ProgressStatisticsModule.Sample sample = progressModule.pollSample(true);
 
-    @Override
-    public void handle(WorkerStateEvent event) {
-        if(event.getEventType().equals(WorkerStateEvent.WORKER_STATE_SUCCEEDED)) {
-            controller.getModel().getList_jobs().remove(job);
-            controller.getView().getListView_jobs().getItems().remove(job.getFullDesignation());
-            controller.getView().getListView_jobs().getSelectionModel().clearSelection();
+        if(sample != null) {
+            statisticsHandler.recordData(job.isEncodeJob(), sample.getBytes(), sample.getDurationNanos(), true);
+        }
+
+        progressModule.recordFinished();
+
+        // Jobs with files that failed are left in the journal, to be retried:
+        final boolean wasCompleted = countCompletedFiles() == queuedFiles.size();
+        isJobCompleted = wasCompleted;
+
+        if(wasCompleted) {
+            journalHandler.recordJobCompleted(job);
+        }
+
+        MetricsHandler.recordJobFinished(wasCompleted, System.nanoTime() - startTime);
+
+        if(isJobCancelled) {
+            appendOutput("JOB CANCELLED - " + job.getName());
         }
+
+        CommandHandler.setCurrentJob(null);
+
+        jobListener.jobFinished(job);
+    }
+
+    /**
+     * Cancels the Job, by destroying every process it has started, and
+     * skipping any of its files which haven't been started.
+     *
+     * The Job is left in the journal, so its remaining files can be retried.
+     */
+    public void cancelJob() {
+        isJobCancelled = true;
+        CommandHandler.destroyProcesses(job);
+    }
+
+    /** @return Whether or not the Job has been cancelled. */
+    public boolean isJobCancelled() {
+        return isJobCancelled;
     }
 
     /**
@@ -74,77 +168,228 @@ public class FFMPEGHandler extends Task implements EventHandler<WorkerStateEvent
     private void encode() {
         final ArchiveHandler archiveHandler = new ArchiveHandler();
 
+        // Stream the archive straight into ffmpeg, rather than writing it to disk:
+        if(job.isArchiveFiles() && configHandler.isStreamArchives() && ! configHandler.isUseFullyCustomFfmpegOptions()) {
+            journalHandler.recordFilesStarted(job, queuedFiles, listEncodeOutputs(job.getName()));
+
+            if(encodeArchiveStream(archiveHandler)) {
+                recordFilesCompleted(0, queuedFiles.size());
+            }
+
+            return;
+        }
+
+        // The whole archive is one unit of progress, from packing through to encoding:
         if(job.isArchiveFiles()) {
-            final File temp = archiveHandler.packFiles(job, job.getFiles(), controller, configHandler);
-            job.getFiles().clear();
-            job.getFiles().add(temp);
+            final List<File> outputs = new ArrayList<>();
+            outputs.add(new File(job.getOutputDirectory() + job.getName() + "." + configHandler.getCompressionOutputExtension()));
+            outputs.addAll(listEncodeOutputs(job.getName()));
+
+            journalHandler.recordFilesStarted(job, queuedFiles, outputs);
+
+            final File temp = archiveHandler.packFiles(job, job.getFiles(), jobListener, configHandler);
+
+            // The encode is skipped if the archive couldn't be packed, so the Job is left in the journal:
+            if(temp == null) {
+                appendOutput("ENCODING FAILED - The files couldn't be archived." + System.lineSeparator() + System.lineSeparator());
+                return;
+            }
+
+            job.setFiles(Collections.singletonList(temp));
         }
 
-        for(File f : job.getFiles()) {
-            final RuntimeStatisticsModule statisticsModule = new RuntimeStatisticsModule();
-            statisticsModule.recordStart();
+        processFiles(job.getFiles(), this::encodeFile);
+    }
 
-            // Pad the file:
-            FileHandler.padFile(f, configHandler);
+    /**
+     * Packs the Job's file(s) into an archive which is piped directly into
+     * ffmpeg, with the padding synthesized at the end of the stream, so that
+     * the archive never touches the disk and the archiving and encoding
+     * happen at the same time.
+     *
+     * @param archiveHandler
+     *         The handler to pack the files with.
+     *
+     * @return
+     *         Whether or not the archive was encoded.
+     */
+    private boolean encodeArchiveStream(final ArchiveHandler archiveHandler) {
+        final RuntimeStatisticsModule statisticsModule = new RuntimeStatisticsModule();
+        statisticsModule.recordStart();
+
+        final PipeStatisticsModule pipeStatisticsModule = new PipeStatisticsModule();
+        final String command = createEncodeCommand(configHandler, "-", job.getOutputDirectory() + job.getName());
+
+        boolean wasEncoded = false;
+
+        // The archive's size isn't known until it's packed, but it's close to the total size of its files:
+        progressModule.addExpectedBytes(StreamHandler.calculatePaddedLength(job.getFiles().getTotalLength(), configHandler.getFrameSize()));
 
-            // Construct FFMPEG string:
-            final StringBuilder stringBuilder = new StringBuilder();
-            final Formatter formatter = new Formatter(stringBuilder, Locale.US);
-
-            // Use the fully custom settings if they're enabled:
-            if(configHandler.isUseFullyCustomFfmpegOptions() && !configHandler.getFullyCustomFfmpegEncodingOptions().isEmpty()) {
-                formatter.format("\"%s\" %s",
-                        configHandler.getFfmpegPath(),
-                        configHandler.getFullyCustomFfmpegEncodingOptions());
-
-                // Insert the input filename:
-                final String inputFilename = "\"" + f.getAbsolutePath() + "\"";
-                stringBuilder.replace(0, stringBuilder.length(), stringBuilder.toString().replace("FILE_INPUT", inputFilename));
-
-                // Insert the output filename:
-                final String outputFilename = "\"" + FilenameUtils.getFullPath(f.getAbsolutePath()) + FilenameUtils.getBaseName(f.getName()) + "." + configHandler.getEncodeFormat() + "\"";
-                stringBuilder.replace(0, stringBuilder.length(), stringBuilder.toString().replace("FILE_OUTPUT", outputFilename));
-            } else if (!configHandler.isUseFullyCustomFfmpegOptions()) {
-                formatter.format("\"%s\" -f rawvideo -pix_fmt monob -s %dx%d -r %d -i \"%s\" -vf \"scale=iw*%d:-1\" -sws_flags neighbor -c:v %s -threads 8 -loglevel %s -y \"%s%s.%s\"",
-                        configHandler.getFfmpegPath(),
-                        (configHandler.getEncodedVideoWidth() / configHandler.getMacroBlockDimensions()),
-                        (configHandler.getEncodedVideoHeight() / configHandler.getMacroBlockDimensions()),
-                        configHandler.getEncodedFramerate(),
-                        f.getAbsolutePath(),
-                        configHandler.getMacroBlockDimensions(),
-                        configHandler.getEncodingLibrary(),
-                        configHandler.getFfmpegLogLevel(),
-                        job.getOutputDirectory(),
-                        FilenameUtils.getBaseName(f.getName()),
-                        configHandler.getEncodeFormat());
+        try {
+            final Process archiveProcess = archiveHandler.packFilesToStream(job.getFiles(), configHandler, this::appendOutput);
+
+            appendOutput(command + System.lineSeparator() + System.lineSeparator());
+            final Process ffmpegProcess = CommandHandler.startProgram(command, progressHandler);
+
+            try (
+                final InputStream inputStream = archiveProcess.getInputStream();
+                final OutputStream outputStream = StreamHandler.createEncoderInput(configHandler, ffmpegProcess.getOutputStream());
+            ) {
+                StreamHandler.pipe(inputStream, outputStream, -1, configHandler.getFrameSize(), pipeStatisticsModule);
             }
 
-            Platform.runLater(() -> controller.getView()
-                                              .getTextArea_output()
-                                              .appendText(stringBuilder.toString() + System.lineSeparator() +
-                                                          System.lineSeparator() + System.lineSeparator()));
+            StreamHandler.drainOutput(ffmpegProcess, progressHandler);
+            wasEncoded = archiveProcess.waitFor() == 0;
+            wasEncoded &= ffmpegProcess.waitFor() == 0;
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+
+            NotificationHandler.notifyError("IOException", "Please view the log file.");
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
 
-            CommandHandler.runProgram(stringBuilder.toString(), controller);
+        appendOutput(pipeStatisticsModule.toString());
 
-            Platform.runLater(() -> {
-                controller.getView()
-                          .getTextArea_output()
-                          .appendText("ENCODING COMPLETED");
+        appendOutput((wasEncoded ? "ENCODING COMPLETED" : "ENCODING FAILED") + System.lineSeparator() + System.lineSeparator());
 
-                controller.getView()
-                          .getTextArea_output()
-                          .appendText(System.lineSeparator() + System.lineSeparator() + System.lineSeparator());
-            });
+        // Finish statistics estimation, unless ffmpeg's progress has already been sampled:
+        statisticsModule.recordEnd();
 
-            // Finish statistics estimation:
-            statisticsModule.recordEnd();
-            statisticsHandler.recordData(true, statisticsHandler.calculateProcessingSpeed(f, statisticsModule));
+        if(! progressModule.isReceivingProgress()) {
+            statisticsHandler.recordData(true, pipeStatisticsModule.getBytesTransferred(), statisticsModule.getElapsedNanos(), false);
+            MetricsHandler.recordBytesProcessed(true, pipeStatisticsModule.getBytesTransferred());
+        }
+
+        MetricsHandler.recordStageDuration("encode_file", statisticsModule.getElapsedNanos());
+
+        return wasEncoded;
+    }
+
+    /**
+     * Encodes the specified file using the settings in the configuration
+     * handler.
+     *
+     * The file is either streamed into ffmpeg, with the padding synthesized
+     * at the end of the stream, or padded on disk before ffmpeg reads it.
+     *
+     * @param index
+     *         The position, within the Job's files, of the file to encode.
+     */
+    private void encodeFile(final int index) {
+        final File f = job.getFiles().get(index);
+
+        final RuntimeStatisticsModule statisticsModule = new RuntimeStatisticsModule();
+        statisticsModule.recordStart();
+
+        // Archives were recorded as started before they were packed:
+        if(! job.isArchiveFiles()) {
+            journalHandler.recordFilesStarted(job, Collections.singletonList(f), listEncodeOutputs(FilenameUtils.getBaseName(f.getName())));
+        }
+
+        // Streaming isn't possible when ffmpeg is told which file to read by the custom options:
+        final boolean isStreamed = configHandler.isStreamEncodeInput() && ! configHandler.isUseFullyCustomFfmpegOptions();
+
+        // Pad the file:
+        if(! isStreamed) {
+            FileHandler.padFile(f, configHandler);
+        }
+
+        final long paddedLength = (isStreamed ? StreamHandler.calculatePaddedLength(f.length(), configHandler.getFrameSize()) : f.length());
+
+        // Only streamed encodes are cached, as padding a file on disk changes its content:
+        final boolean isCached = isStreamed && encodeCacheHandler.isEnabled();
+        final File outputFile = new File(job.getOutputDirectory() + FilenameUtils.getBaseName(f.getName()) + "." + configHandler.getEncodeFormat());
+
+        // The file is hashed as the encode reads it, so it never needs to be read a second time:
+        final ContentHashModule contentHash = (isCached ? new ContentHashModule(f) : null);
+
+        if(isCached && encodeCacheHandler.restore(encodeCacheHandler.lookUpHash(f, contentHash), outputFile)) {
+            appendOutput("Reused the cached encode of " + f.getName() + "." + System.lineSeparator() + encodeCacheHandler + System.lineSeparator() + System.lineSeparator());
+            recordEncodedFileCompleted(index);
 
-            // Delete leftovers:
             if(job.isArchiveFiles()) {
-                f.delete(); // This is just the archive, not the original handler.
+                f.delete();
+            }
+
+            return;
+        }
+
+        progressModule.addExpectedBytes(paddedLength);
+
+        // An old output may be a hard link to a cache entry, which ffmpeg would overwrite in place:
+        if(isCached) {
+            outputFile.delete();
+        }
+
+        // Construct FFMPEG string:
+        final StringBuilder stringBuilder = new StringBuilder();
+        final Formatter formatter = new Formatter(stringBuilder, Locale.US);
+
+        // Use the fully custom settings if they're enabled:
+        if(configHandler.isUseFullyCustomFfmpegOptions() && !configHandler.getFullyCustomFfmpegEncodingOptions().isEmpty()) {
+            formatter.format("\"%s\" %s",
+                    configHandler.getFfmpegPath(),
+                    configHandler.getFullyCustomFfmpegEncodingOptions());
+
+            // Insert the input filename:
+            final String inputFilename = "\"" + f.getAbsolutePath() + "\"";
+            stringBuilder.replace(0, stringBuilder.length(), stringBuilder.toString().replace("FILE_INPUT", inputFilename));
+
+            // Insert the output filename:
+            final String outputFilename = "\"" + FilenameUtils.getFullPath(f.getAbsolutePath()) + FilenameUtils.getBaseName(f.getName()) + "." + configHandler.getEncodeFormat() + "\"";
+            stringBuilder.replace(0, stringBuilder.length(), stringBuilder.toString().replace("FILE_OUTPUT", outputFilename));
+        } else if (!configHandler.isUseFullyCustomFfmpegOptions()) {
+            stringBuilder.append(createEncodeCommand(configHandler, (isStreamed ? "-" : f.getAbsolutePath()), job.getOutputDirectory() + FilenameUtils.getBaseName(f.getName())));
+        }
+
+        // Checkpointed encodes are split into fixed-size chunks, otherwise large
+        // files are split into segments which are encoded concurrently:
+        final int segmentCount = (configHandler.isUseFullyCustomFfmpegOptions() ? 1 : SegmentHandler.calculateSegmentCount(configHandler, paddedLength));
+
+        final boolean wasEncoded;
+
+        if(isStreamed && configHandler.getCheckpointChunkFrames() > 0) {
+            wasEncoded = CheckpointHandler.encode(configHandler, f, job.getOutputDirectory(), progressHandler, contentHash);
+        } else if(segmentCount > 1) {
+            wasEncoded = SegmentHandler.encode(configHandler, f, job.getOutputDirectory(), segmentCount, isStreamed, progressHandler, contentHash);
+        } else if(isStreamed) {
+            final PipeStatisticsModule pipeStatisticsModule = new PipeStatisticsModule();
+
+            appendOutput(stringBuilder.toString() + System.lineSeparator() + System.lineSeparator());
+            wasEncoded = StreamHandler.streamFileToProgram(configHandler, stringBuilder.toString(), f, 0, paddedLength, pipeStatisticsModule, progressHandler, contentHash);
+            appendOutput(pipeStatisticsModule.toString());
+        } else {
+            wasEncoded = runCommand(stringBuilder.toString());
+        }
+
+        if(wasEncoded) {
+            recordEncodedFileCompleted(index);
+
+            if(isCached) {
+                encodeCacheHandler.store(f, contentHash, outputFile);
+                appendOutput(encodeCacheHandler + System.lineSeparator());
             }
         }
+
+        appendOutput((wasEncoded ? "ENCODING COMPLETED" : "ENCODING FAILED") + System.lineSeparator() + System.lineSeparator());
+
+        // Finish statistics estimation, unless ffmpeg's progress has already been sampled:
+        statisticsModule.recordEnd();
+
+        if(! progressModule.isReceivingProgress()) {
+            statisticsHandler.recordData(true, f.length(), statisticsModule.getElapsedNanos(), false);
+            MetricsHandler.recordBytesProcessed(true, f.length());
+        }
+
+        MetricsHandler.recordStageDuration("encode_file", statisticsModule.getElapsedNanos());
+
+        // Delete leftovers:
+        if(job.isArchiveFiles()) {
+            f.delete(); // This is just the archive, not the original handler.
+        }
     }
 
     /**
@@ -153,61 +398,579 @@ public class FFMPEGHandler extends Task implements EventHandler<WorkerStateEvent
      */
     private void decode() {
         try {
-            for(final File f : job.getFiles()) {
-                final RuntimeStatisticsModule statisticsModule = new RuntimeStatisticsModule();
-                statisticsModule.recordStart();
-
-                // Construct FFMPEG string:
-                final StringBuilder stringBuilder = new StringBuilder();
-                final Formatter formatter = new Formatter(stringBuilder, Locale.US);
-
-                // Use the fully custom settings if they're enabled:
-                if(configHandler.isUseFullyCustomFfmpegOptions() && ! configHandler.getFullyCustomFfmpegDecodingOptions().isEmpty()) {
-                    formatter.format("\"%s\" %s",
-                            configHandler.getFfmpegPath(),
-                            configHandler.getFullyCustomFfmpegEncodingOptions());
-
-                    // Insert the input filename:
-                    final String inputFilename = "\"" + f.getAbsolutePath() + "\"";
-                    stringBuilder.replace(0, stringBuilder.length(), stringBuilder.toString().replace("FILE_INPUT", inputFilename));
-
-                    // Insert the output filename:
-                    final String outputFilename = "\"" + FilenameUtils.getFullPath(f.getAbsolutePath()) + FilenameUtils.getBaseName(f.getName()) + "." + configHandler.getEncodeFormat() + "\"";
-                    stringBuilder.replace(0, stringBuilder.length(), stringBuilder.toString().replace("FILE_OUTPUT", outputFilename));
-                } else if(! configHandler.isUseFullyCustomFfmpegOptions()) {
-                    formatter.format("\"%s\" -i \"%s\" -vf \"format=pix_fmts=monob,scale=iw*%f:-1\" -sws_flags area -loglevel %s -f rawvideo \"%s%s.%s\"",
-                            configHandler.getFfmpegPath(),
-                            f.getAbsolutePath(),
-                            (1.0 / configHandler.getMacroBlockDimensions()),
-                            configHandler.getFfmpegLogLevel(),
-                            job.getOutputDirectory(),
-                            FilenameUtils.getBaseName(f.getName()),
-                            configHandler.getDecodeFormat());
+            processFiles(job.getFiles(), this::decodeFile);
+        } catch(Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Decodes the specified file using the settings in the configuration
+     * handler.
+     *
+     * @param index
+     *         The position, within the Job's files, of the file to decode.
+     */
+    private void decodeFile(final int index) {
+        final File f = job.getFiles().get(index);
+
+        final RuntimeStatisticsModule statisticsModule = new RuntimeStatisticsModule();
+        statisticsModule.recordStart();
+
+        journalHandler.recordFilesStarted(job, Collections.singletonList(f), listDecodeOutputs(f));
+
+        // Construct FFMPEG string:
+        final StringBuilder stringBuilder = new StringBuilder();
+        final Formatter formatter = new Formatter(stringBuilder, Locale.US);
+
+        // Use the fully custom settings if they're enabled:
+        if(configHandler.isUseFullyCustomFfmpegOptions() && ! configHandler.getFullyCustomFfmpegDecodingOptions().isEmpty()) {
+            formatter.format("\"%s\" %s",
+                    configHandler.getFfmpegPath(),
+                    configHandler.getFullyCustomFfmpegEncodingOptions());
+
+            // Insert the input filename:
+            final String inputFilename = "\"" + f.getAbsolutePath() + "\"";
+            stringBuilder.replace(0, stringBuilder.length(), stringBuilder.toString().replace("FILE_INPUT", inputFilename));
+
+            // Insert the output filename:
+            final String outputFilename = "\"" + FilenameUtils.getFullPath(f.getAbsolutePath()) + FilenameUtils.getBaseName(f.getName()) + "." + configHandler.getEncodeFormat() + "\"";
+            stringBuilder.replace(0, stringBuilder.length(), stringBuilder.toString().replace("FILE_OUTPUT", outputFilename));
+        } else if(! configHandler.isUseFullyCustomFfmpegOptions()) {
+            stringBuilder.append(createDecodeCommand(configHandler, f, job.getOutputDirectory()));
+        }
+
+        // An xz or tar archive is extracted as it's decoded. Otherwise, long
+        // videos are split into segments which are decoded concurrently, or
+        // else the frames are demodulated as they're decoded:
+        final Boolean wasExtracted = (! configHandler.isUseFullyCustomFfmpegOptions() && configHandler.isStreamArchiveExtraction() ? decodeArchiveStream(f) : null);
+        final boolean wasDecoded;
+
+        if(wasExtracted != null) {
+            wasDecoded = wasExtracted;
+        } else if(! configHandler.isUseFullyCustomFfmpegOptions() && configHandler.getDecodeSegments() > 1) {
+            wasDecoded = SegmentHandler.decode(configHandler, f, job.getOutputDirectory(), configHandler.getDecodeSegments(), progressHandler);
+        } else if(! configHandler.isUseFullyCustomFfmpegOptions() && configHandler.isDemodulateFrames()) {
+            wasDecoded = decodeDemodulated(f);
+        } else {
+            wasDecoded = runCommand(stringBuilder.toString());
+        }
+
+        if(wasDecoded) {
+            recordFilesCompleted(index, index + 1);
+        }
+
+        appendOutput((wasDecoded ? "DECODING COMPLETED" : "DECODING FAILED") + System.lineSeparator() + System.lineSeparator());
+
+        // Finish statistics estimation, unless ffmpeg's progress has already been sampled:
+        statisticsModule.recordEnd();
+
+        if(! progressModule.isReceivingProgress()) {
+            statisticsHandler.recordData(false, f.length(), statisticsModule.getElapsedNanos(), false);
+            MetricsHandler.recordBytesProcessed(false, f.length());
+        }
+
+        MetricsHandler.recordStageDuration("decode_file", statisticsModule.getElapsedNanos());
+    }
+
+    /**
+     * Decodes the specified file while piping the decoded archive, minus its
+     * padding, directly into the archiver for extraction, so that the archive
+     * never touches the disk.
+     *
+     * The format of the archive is detected from the first decoded bytes, as
+     * the padding can only be told apart from the end of an xz or tar
+     * stream. An xz stream is only extracted if the extraction stream
+     * commands are set, to decompress it. Anything else, such as a plain
+     * file, or a 7z archive that wasn't streamed when it was encoded, is left
+     * to be decoded normally.
+     *
+     * @param f
+     *         The file to decode.
+     *
+     * @return
+     *         Whether or not the file was decoded and extracted, or null if
+     *         the file isn't an archive which can be extracted as it's decoded.
+     */
+    private Boolean decodeArchiveStream(final File f) {
+        final PipeStatisticsModule pipeStatisticsModule = new PipeStatisticsModule();
+        final String command = createStreamedDecodeCommand(configHandler, f);
+
+        boolean wasDecoded = false;
+
+        try {
+            appendOutput(command + System.lineSeparator() + System.lineSeparator());
+            final Process ffmpegProcess = CommandHandler.startProgram(command, progressHandler);
+            ffmpegProcess.getOutputStream().close();
+
+            try (
+                final InputStream inputStream = StreamHandler.createDecoderOutput(configHandler, ffmpegProcess.getInputStream());
+            ) {
+                final byte[] header = new byte[StreamArchiveFormat.HEADER_LENGTH];
+                final int headerLength = IOUtils.read(inputStream, header);
+                final StreamArchiveFormat format = StreamArchiveFormat.detect(header, headerLength);
+
+                if(format == null || (format == StreamArchiveFormat.XZ && configHandler.getExtractionStreamCommands().isEmpty())) {
+                    ffmpegProcess.destroy();
+                    ffmpegProcess.waitFor();
+
+                    appendOutput("The decoded file isn't an archive which can be extracted as it's decoded, so it will be decoded normally." + System.lineSeparator() + System.lineSeparator());
+                    return null;
                 }
 
-                Platform.runLater(() -> controller.getView()
-                                                  .getTextArea_output()
-                                                  .appendText(stringBuilder.toString() + System.lineSeparator() +
-                                                              System.lineSeparator() + System.lineSeparator()));
+                final List<Process> extractionProcesses = new ArchiveHandler().unpackStream(job.getOutputDirectory(), configHandler, format == StreamArchiveFormat.XZ, this::appendOutput);
+
+                try (
+                    final InputStream archiveStream = new SequenceInputStream(new ByteArrayInputStream(header, 0, headerLength), inputStream);
+                    final OutputStream outputStream = extractionProcesses.get(0).getOutputStream();
+                ) {
+                    if(format == StreamArchiveFormat.XZ) {
+                        StreamHandler.pipeTrimmingZeros(archiveStream, outputStream, pipeStatisticsModule);
+                    } else {
+                        StreamHandler.pipeWholeBlocks(archiveStream, outputStream, StreamArchiveFormat.TAR_BLOCK_SIZE, pipeStatisticsModule);
+                    }
+                }
 
-                CommandHandler.runProgram(stringBuilder.toString(), controller);
+                wasDecoded = ffmpegProcess.waitFor() == 0;
 
-                Platform.runLater(() -> {
-                    controller.getView()
-                              .getTextArea_output()
-                              .appendText("DECODING COMPLETED");
+                StreamHandler.drainOutput(extractionProcesses.get(extractionProcesses.size() - 1), this::appendOutput);
 
-                    controller.getView()
-                              .getTextArea_output()
-                              .appendText(System.lineSeparator() + System.lineSeparator() + System.lineSeparator());
-                });
+                for(final Process process : extractionProcesses) {
+                    wasDecoded &= process.waitFor() == 0;
+                }
+            }
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+
+            NotificationHandler.notifyError("IOException", "Please view the log file.");
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        appendOutput(pipeStatisticsModule.toString());
+        return wasDecoded;
+    }
+
+    /**
+     * Decodes the specified file while demodulating the full-resolution
+     * frames that ffmpeg outputs into the decoded file.
+     *
+     * @param f
+     *         The file to decode.
+     *
+     * @return
+     *         Whether or not the file was decoded.
+     */
+    private boolean decodeDemodulated(final File f) {
+        final String command = createStreamedDecodeCommand(configHandler, f);
+        final File outputFile = new File(job.getOutputDirectory() + FilenameUtils.getBaseName(f.getName()) + "." + configHandler.getDecodeFormat());
 
-                // Finish statistics estimation:
-                statisticsModule.recordEnd();
-                statisticsHandler.recordData(false, statisticsHandler.calculateProcessingSpeed(f, statisticsModule));
+        try {
+            appendOutput(command + System.lineSeparator() + System.lineSeparator());
+            final Process ffmpegProcess = CommandHandler.startProgram(command, progressHandler);
+            ffmpegProcess.getOutputStream().close();
+
+            try (
+                final InputStream inputStream = StreamHandler.createDecoderOutput(configHandler, ffmpegProcess.getInputStream());
+                final OutputStream outputStream = new FileOutputStream(outputFile);
+            ) {
+                IOUtils.copyLarge(inputStream, outputStream, new byte[StreamHandler.BUFFER_SIZE]);
+            }
+
+            return ffmpegProcess.waitFor() == 0;
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+
+            NotificationHandler.notifyError("IOException", "Please view the log file.");
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return false;
+    }
+
+    /**
+     * Records that the queued file(s), from the specified position to just
+     * before the other specified position, have been en/decoded.
+     *
+     * @param fromIndex
+     *         The position of the first file.
+     *
+     * @param toIndex
+     *         The position after the last file.
+     */
+    private void recordFilesCompleted(final int fromIndex, final int toIndex) {
+        synchronized(completedFiles) {
+            completedFiles.set(fromIndex, toIndex);
+        }
+
+        journalHandler.recordFilesCompleted(job, queuedFiles.subList(fromIndex, toIndex));
+    }
+
+    /**
+     * Records that the file at the specified position, within the Job's
+     * files, has been encoded.
+     *
+     * An archive is the Job's only file, and encoding it completes every
+     * queued file.
+     *
+     * @param index
+     *         The position of the file.
+     */
+    private void recordEncodedFileCompleted(final int index) {
+        if(job.isArchiveFiles()) {
+            recordFilesCompleted(0, queuedFiles.size());
+        } else {
+            recordFilesCompleted(index, index + 1);
+        }
+    }
+
+    /** @return The number of the queued file(s) which have been en/decoded. */
+    private int countCompletedFiles() {
+        synchronized(completedFiles) {
+            return completedFiles.cardinality();
+        }
+    }
+
+    /**
+     * Lists every file that encoding may write for the specified output name,
+     * so they can be cleaned up if the encode is interrupted.
+     *
+     * Nothing is listed when the fully custom options are used, as only the
+     * options know what they write.
+     *
+     * @param baseName
+     *         The name, without an extension, of the encoded file.
+     *
+     * @return
+     *         The files.
+     */
+    private List<File> listEncodeOutputs(final String baseName) {
+        if(configHandler.isUseFullyCustomFfmpegOptions()) {
+            return Collections.emptyList();
+        }
+
+        final String outputPath = job.getOutputDirectory() + baseName;
+
+        final List<File> outputs = new ArrayList<>();
+        outputs.add(new File(outputPath + "." + configHandler.getEncodeFormat()));
+        outputs.addAll(SegmentHandler.listTemporaryFiles(configHandler, outputPath));
+        return outputs;
+    }
+
+    /**
+     * Lists every file that decoding the specified file may write, so they
+     * can be cleaned up if the decode is interrupted.
+     *
+     * Nothing is listed when the fully custom options are used, as only the
+     * options know what they write. When archives are extracted as they're
+     * decoded, only the decoded file is listed, in case the file turns out
+     * not to be an archive, as only an archive knows what it contains.
+     *
+     * @param f
+     *         The file to decode.
+     *
+     * @return
+     *         The files.
+     */
+    private List<File> listDecodeOutputs(final File f) {
+        if(configHandler.isUseFullyCustomFfmpegOptions()) {
+            return Collections.emptyList();
+        }
+
+        return Collections.singletonList(new File(job.getOutputDirectory() + FilenameUtils.getBaseName(f.getName()) + "." + configHandler.getDecodeFormat()));
+    }
+
+    /**
+     * Displays the specified command on the output screen, then runs it.
+     *
+     * @param command
+     *         The command to run.
+     *
+     * @return
+     *         True if the command completed, else false.
+     */
+    private boolean runCommand(final String command) {
+        appendOutput(command + System.lineSeparator() + System.lineSeparator());
+        return CommandHandler.runProgram(command, progressHandler);
+    }
+
+    /**
+     * Appends the specified line to the output screen.
+     *
+     * @param line
+     *         The line to append.
+     */
+    private void appendOutput(final String line) {
+        jobListener.appendOutput(line, job);
+    }
+
+    /**
+     * Constructs the default command to encode the specified padded file.
+     *
+     * @param configHandler
+     *         The settings to use when encoding the file.
+     *
+     * @param file
+     *         The padded file to encode.
+     *
+     * @param outputDirectory
+     *         The directory in which to place the encoded file.
+     *
+     * @return
+     *         The command.
+     */
+    public static String createEncodeCommand(final ConfigHandler configHandler, final File file, final String outputDirectory) {
+        return createEncodeCommand(configHandler, file.getAbsolutePath(), outputDirectory + FilenameUtils.getBaseName(file.getName()));
+    }
+
+    /**
+     * Constructs the default command to encode the specified padded input.
+     *
+     * If the input is read from standard input and frame rasterization is
+     * enabled, then ffmpeg expects full-resolution frames from a
+     * RasterOutputStream rather than scaling up the payload itself.
+     *
+     * @param configHandler
+     *         The settings to use when encoding the input.
+     *
+     * @param input
+     *         The path of the padded file to encode, or "-" to read the
+     *         padded data from standard input.
+     *
+     * @param outputPath
+     *         The path, without an extension, of the encoded file.
+     *
+     * @return
+     *         The command.
+     */
+    public static String createEncodeCommand(final ConfigHandler configHandler, final String input, final String outputPath) {
+        final StringBuilder stringBuilder = new StringBuilder();
+        final Formatter formatter = new Formatter(stringBuilder, Locale.US);
+
+        final boolean isRasterized = "-".equals(input) && configHandler.isRasterizeFrames();
+
+        formatter.format("\"%s\" %s %s -i \"%s\" %s -c:v %s -threads %d -loglevel %s -y \"%s.%s\"",
+                configHandler.getFfmpegPath(),
+                ProgressHandler.PROGRESS_OPTIONS,
+                createRawInputOptions(configHandler, isRasterized),
+                input,
+                createScaleOptions(configHandler, isRasterized),
+                configHandler.getEncodingLibrary(),
+                configHandler.getFfmpegThreadsPerJob(),
+                configHandler.getFfmpegLogLevel(),
+                outputPath,
+                configHandler.getEncodeFormat());
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Constructs the options which describe the raw frames that ffmpeg reads
+     * when encoding.
+     *
+     * @param configHandler
+     *         The settings to use when encoding.
+     *
+     * @param isRasterized
+     *         Whether the frames are full-resolution yuv420p frames from a
+     *         RasterOutputStream, or the unscaled monob payload.
+     *
+     * @return
+     *         The options.
+     */
+    public static String createRawInputOptions(final ConfigHandler configHandler, final boolean isRasterized) {
+        if(isRasterized) {
+            return String.format(Locale.US, "-f rawvideo -pix_fmt yuv420p -s %dx%d -r %d",
+                                 configHandler.getEncodedVideoWidth(),
+                                 configHandler.getEncodedVideoHeight(),
+                                 configHandler.getEncodedFramerate());
+        }
+
+        return String.format(Locale.US, "-f rawvideo -pix_fmt monob -s %dx%d -r %d",
+                             (configHandler.getEncodedVideoWidth() / configHandler.getMacroBlockDimensions()),
+                             (configHandler.getEncodedVideoHeight() / configHandler.getMacroBlockDimensions()),
+                             configHandler.getEncodedFramerate());
+    }
+
+    /**
+     * Constructs the options which scale the raw frames up to the encoded
+     * resolution.
+     *
+     * @param configHandler
+     *         The settings to use when encoding.
+     *
+     * @param isRasterized
+     *         Whether the frames are already at the encoded resolution.
+     *
+     * @return
+     *         The options, or an empty string if no scaling is needed.
+     */
+    public static String createScaleOptions(final ConfigHandler configHandler, final boolean isRasterized) {
+        if(isRasterized) {
+            return "";
+        }
+
+        return String.format(Locale.US, "-vf \"scale=iw*%d:-1\" -sws_flags neighbor", configHandler.getMacroBlockDimensions());
+    }
+
+    /**
+     * Constructs the default command to decode the specified file.
+     *
+     * @param configHandler
+     *         The settings to use when decoding the file.
+     *
+     * @param file
+     *         The file to decode.
+     *
+     * @param outputDirectory
+     *         The directory in which to place the decoded file.
+     *
+     * @return
+     *         The command.
+     */
+    public static String createDecodeCommand(final ConfigHandler configHandler, final File file, final String outputDirectory) {
+        return formatDecodeCommand(configHandler, file, outputDirectory + FilenameUtils.getBaseName(file.getName()) + "." + configHandler.getDecodeFormat());
+    }
+
+    /**
+     * Constructs the default command to decode the specified file to ffmpeg's
+     * standard output.
+     *
+     * @param configHandler
+     *         The settings to use when decoding the file.
+     *
+     * @param file
+     *         The file to decode.
+     *
+     * @return
+     *         The command.
+     */
+    public static String createStreamedDecodeCommand(final ConfigHandler configHandler, final File file) {
+        return formatDecodeCommand(configHandler, file, "-");
+    }
+
+    /**
+     * Constructs the default command to decode the specified file.
+     *
+     * If the decoded data is written to standard output and frame
+     * demodulation is enabled, then ffmpeg writes full-resolution gray frames
+     * for a DemodulatorInputStream rather than scaling the frames down itself.
+     *
+     * @param configHandler
+     *         The settings to use when decoding the file.
+     *
+     * @param file
+     *         The file to decode.
+     *
+     * @param output
+     *         The path of the decoded file, or "-" to write the decoded data
+     *         to standard output.
+     *
+     * @return
+     *         The command.
+     */
+    private static String formatDecodeCommand(final ConfigHandler configHandler, final File file, final String output) {
+        final StringBuilder stringBuilder = new StringBuilder();
+        final Formatter formatter = new Formatter(stringBuilder, Locale.US);
+
+        final boolean isDemodulated = "-".equals(output) && configHandler.isDemodulateFrames();
+
+        formatter.format("\"%s\" %s -i \"%s\" %s -loglevel %s -f rawvideo \"%s\"",
+                configHandler.getFfmpegPath(),
+                ProgressHandler.PROGRESS_OPTIONS,
+                file.getAbsolutePath(),
+                createDecodeFilterOptions(configHandler, isDemodulated),
+                configHandler.getFfmpegLogLevel(),
+                output);
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Constructs the options which convert the decoded frames into the
+     * frames that ffmpeg outputs.
+     *
+     * @param configHandler
+     *         The settings to use when decoding.
+     *
+     * @param isDemodulated
+     *         Whether the frames are output as full-resolution gray frames for
+     *         a DemodulatorInputStream, or scaled down to the monob payload.
+     *
+     * @return
+     *         The options.
+     */
+    public static String createDecodeFilterOptions(final ConfigHandler configHandler, final boolean isDemodulated) {
+        if(isDemodulated) {
+            return "-pix_fmt gray";
+        }
+
+        return String.format(Locale.US, "-vf \"format=pix_fmts=monob,scale=iw*%f:-1\" -sws_flags area", (1.0 / configHandler.getMacroBlockDimensions()));
+    }
+
+    /**
+     * Runs the specified operation on each of the specified files, with up to
+     * the maximum number of concurrent files running at once, then waits for
+     * every file to finish.
+     *
+     * Each file is an independent unit of work, so a failure while processing
+     * one file doesn't prevent the others from being processed.
+     *
+     * @param files
+     *         The files to process.
+     *
+     * @param operation
+     *         The operation to run on the position, within the files, of
+     *         each file.
+     */
+    private void processFiles(final FileTable files, final IntConsumer operation) {
+        final int concurrentFiles = Math.min(maxConcurrentFiles, files.size());
+
+        if(concurrentFiles <= 1) {
+            for(int i = 0 ; i < files.size() ; i++) {
+                if(! isJobCancelled) {
+                    operation.accept(i);
+                }
+            }
+
+            return;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrentFiles, runnable -> {
+            final Thread thread = new Thread(runnable, "File Runner - " + job.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final List<Future<?>> futures = new ArrayList<>(files.size());
+
+        for(int i = 0 ; i < files.size() ; i++) {
+            final int index = i;
+
+            futures.add(executor.submit(() -> {
+                if(! isJobCancelled) {
+                    operation.accept(index);
+                }
+            }));
+        }
+
+        executor.shutdown();
+
+        for(final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch(final InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                return;
+            } catch(final ExecutionException e) {
+                final Logger logger = LogManager.getLogger();
+                logger.error(e.getCause());
             }
-        } catch(Exception e) {
-            e.printStackTrace();
         }
     }
 
@@ -216,11 +979,11 @@ public class FFMPEGHandler extends Task implements EventHandler<WorkerStateEvent
 
     /** @return The total combined file-size of all file(s) to be en/decoded. */
     public long getTotalFilesize() {
-        final AtomicLong temp = new AtomicLong(0);
-
-        job.getFiles().parallelStream()
-                     .forEach(file -> temp.addAndGet(file.length()));
+        return job.getFiles().getTotalLength();
+    }
 
-        return temp.get();
+    /** @return The estimated time, in seconds, that the Job will take to en/decode. */
+    public double estimateDuration() {
+        return statisticsHandler.estimateProcessingDuration(job.isEncodeJob(), getTotalFilesize());
     }
 }
@@ -1,6 +1,5 @@
 package handler;
 
-import eu.hansolo.enzo.notification.Notification;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -27,7 +26,7 @@ public class FileHandler {
             final Logger logger = LogManager.getLogger();
             logger.error(e);
 
-            Notification.Notifier.INSTANCE.notifyError("IOException", "Please view the log file.");
+            NotificationHandler.notifyError("IOException", "Please view the log file.");
         }
     }
 }
@@ -0,0 +1,77 @@
+package handler;
+
+import java.util.Map;
+
+public interface JobEngineMXBean {
+    /** @return The number of Jobs waiting to run. */
+    long getQueuedJobs();
+
+    /** @return The number of Jobs running. */
+    long getRunningJobs();
+
+    /** @return The number of Jobs which finished with every file en/decoded. */
+    long getCompletedJobs();
+
+    /** @return The number of Jobs which finished with file(s) left to en/decode. */
+    long getFailedJobs();
+
+    /** @return The state and progress of each Job which is queued, or running, by its journal id. */
+    Map<String, String> getJobProgress();
+
+    /** @return The maximum number of Jobs to run at once. */
+    int getConcurrencyLimit();
+
+    /**
+     * Sets the maximum number of Jobs to run at once, both for the Jobs
+     * being run and for any Jobs run later.
+     *
+     * @param concurrencyLimit
+     *         The maximum number of Jobs.
+     */
+    void setConcurrencyLimit(final int concurrencyLimit);
+
+    /** @return Whether or not queued Jobs are being held, rather than started. */
+    boolean isQueuePaused();
+
+    /** Holds every queued Job, rather than starting it, until the queue is resumed. Running Jobs are unaffected. */
+    void pauseQueue();
+
+    /** Resumes starting queued Jobs. */
+    void resumeQueue();
+
+    /**
+     * Holds the specified queued Job, rather than starting it, until it's
+     * resumed.
+     *
+     * @param journalId
+     *         The journal id of the Job.
+     *
+     * @return
+     *         Whether or not the Job was found.
+     */
+    boolean pauseJob(final String journalId);
+
+    /**
+     * Resumes the specified Job, so it can be started.
+     *
+     * @param journalId
+     *         The journal id of the Job.
+     *
+     * @return
+     *         Whether or not the Job was found.
+     */
+    boolean resumeJob(final String journalId);
+
+    /**
+     * Cancels the specified Job, destroying its running processes, or
+     * skipping it if it hasn't started. The Job is left in the journal, so
+     * it can be run again.
+     *
+     * @param journalId
+     *         The journal id of the Job.
+     *
+     * @return
+     *         Whether or not the Job was found.
+     */
+    boolean cancelJob(final String journalId);
+}
@@ -1,130 +1,87 @@
 package handler;
 
-import controller.MainScreenController;
-import javafx.application.Platform;
-import javafx.concurrent.Task;
+import lombok.Getter;
+import misc.SchedulingPolicy;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
-public class JobHandler extends Task {
-    // todo JavaDoc
-    final MainScreenController controller;
+public class JobHandler implements Runnable {
+    /** The listener which is told of when the Jobs start, and finish, running. */
+    private final JobListener jobListener;
+
+    /** The handler through which the Jobs can be inspected and steered while they run. */
+    private final ManagementHandler managementHandler;
 
     /** The tasks that are ready to run. */
-    private final List<FFMPEGHandler> preparedTasks;
+    @Getter private final List<FFMPEGHandler> preparedTasks;
+
+    /** The maximum number of tasks to run at once. */
+    private final int maxConcurrentJobs;
 
     /**
      * Constructs a new JobHandler.
-     * @param controller todo JavaDoc
+     * @param jobListener The listener which is told of when the Jobs start, and finish, running.
+     * @param configHandler The object that handles settings for encoding, decoding, compression, and a number of other features.
+     * @param managementHandler The handler through which the Jobs can be inspected and steered while they run.
      * @param preparedTasks The tasks that are ready to run.
      */
-    public JobHandler(final MainScreenController controller, final List<FFMPEGHandler> preparedTasks) {
-        this.controller = controller;
-        this.preparedTasks = preparedTasks;
-
-
-        // Sort the Jobs from smalles to largest:
-        greedySort(this.preparedTasks);
+    public JobHandler(final JobListener jobListener, final ConfigHandler configHandler, final ManagementHandler managementHandler, final List<FFMPEGHandler> preparedTasks) {
+        this.jobListener = jobListener;
+        this.managementHandler = managementHandler;
+        maxConcurrentJobs = managementHandler.getConcurrencyLimit();
+
+        // Order the Jobs by their estimated durations, each of which is only estimated once:
+        final SchedulingPolicy schedulingPolicy = SchedulingPolicy.fromName(configHandler.getSchedulingPolicy());
+        this.preparedTasks = schedulingPolicy.order(preparedTasks, FFMPEGHandler::estimateDuration);
+
+        // Share whatever cores the concurrently running Jobs leave over
+        // between the files of each Job:
+        final int concurrentJobs = Math.min(maxConcurrentJobs, preparedTasks.size());
+        final int maxConcurrentFiles = configHandler.calculateMaxConcurrentFilesPerJob(concurrentJobs);
+        this.preparedTasks.forEach(task -> task.setMaxConcurrentFiles(maxConcurrentFiles));
     }
 
     @Override
-    protected Object call() throws Exception {
-        // Disable interface components:
-        Platform.runLater(() -> {
-            controller.getView().getButton_createJob().setDisable(true);
-            controller.getView().getButton_deleteSelectedJobs().setDisable(true);
-            controller.getView().getButton_deleteAllJobs().setDisable(true);
-            controller.getView().getButton_clearOutput().setDisable(true);
-            controller.getView().getButton_editSettings().setDisable(true);
-            controller.getView().getButton_encode().setDisable(true);
-            controller.getView().getButton_decode().setDisable(true);
-        });
-
-        // Run Jobs one-by-one:
-        for(final FFMPEGHandler task : preparedTasks) {
-            final Thread thread = new Thread(task);
-            thread.setDaemon(true);
-            thread.start();
-            thread.join();
-        }
+    public void run() {
+        jobListener.jobsStarted();
 
-        // Enable interface components:
-        Platform.runLater(() -> {
-            controller.getView().getButton_createJob().setDisable(false);
-            controller.getView().getButton_deleteSelectedJobs().setDisable(false);
-            controller.getView().getButton_deleteAllJobs().setDisable(false);
-            controller.getView().getButton_clearOutput().setDisable(false);
-            controller.getView().getButton_editSettings().setDisable(false);
-            controller.getView().getButton_encode().setDisable(false);
-            controller.getView().getButton_decode().setDisable(false);
-        });
-
-        return null;
-    }
-
-    /**
-     * To ensure that the smallest Jobs are run first, the greedy
-     * algorithm sorts the array by smallest total filesize using
-     * mergesort.
-     *
-     * @param arr The Job(s) to sort.
-     * @return A sorted list of Job(s) from smallest to largest filesize.
-     */
-    private List<FFMPEGHandler> greedySort(final List<FFMPEGHandler> arr) {
-        // If the array has zero, or one, element, then it is already sorted.
-        if(arr.size() == 0 || arr.size() == 1) {
-            return arr;
-        }
+        final CountDownLatch remainingJobs = new CountDownLatch(preparedTasks.size());
 
-        // Split the array into two halves.
-        int half = arr.size()/2;
-        List<FFMPEGHandler> arrA = new ArrayList<>();
-        List<FFMPEGHandler> arrB = new ArrayList<>();
+        final long queuedTime = System.nanoTime();
+        MetricsHandler.recordJobsQueued(preparedTasks.size());
+        managementHandler.addJobHandler(this);
 
-        // Fill both halves with the values from arr.
-        for(int i=0;i<half;i++) {
-            arrA.add(arr.get(i));
-        }
-
-        for(int i=half;i<arr.size();i++) {
-            arrB.add(i - half, arr.get(i));
-        }
-
-        // Recursively call the sort() method on both halves.
-        arrA = greedySort(arrA);
-        arrB = greedySort(arrB);
-
-        // Combine the two sorted arrays while sorting.
-        List<FFMPEGHandler> arrC = new ArrayList<>();
-
-        int arrAIndex = 0, arrBIndex = 0, arrCIndex = 0;
-
-        while(arrAIndex < arrA.size() && arrBIndex < arrB.size()) {
-            if(arrA.get(arrAIndex).getTotalFilesize() < arrB.get(arrBIndex).getTotalFilesize()) {
-                arrC.add(arrCIndex, arrA.get(arrAIndex));
-                arrAIndex++;
-            } else {
-                arrC.add(arrCIndex, arrB.get(arrBIndex));
-                arrBIndex++;
-            }
-            arrCIndex++;
-        }
-
-        // Because the above loop doesn't work for all elements we must
-        // copy whatever elements remain into arrC.
-        while(arrAIndex < arrA.size()) {
-            arrC.add(arrCIndex, arrA.get(arrAIndex));
-            arrCIndex++;
-            arrAIndex++;
+        // Run Jobs, in the order chosen by the scheduling policy, on the
+        // executor shared by every JobHandler, so they queue behind the Jobs
+        // that were queued before them, up to the concurrency limit. Held
+        // Jobs wait outside of the executor, and cancelled Jobs are skipped:
+        for(final FFMPEGHandler task : preparedTasks) {
+            managementHandler.execute(task, () -> {
+                MetricsHandler.recordJobStarted(System.nanoTime() - queuedTime);
+
+                try {
+                    task.run();
+                } finally {
+                    MetricsHandler.recordJobStopped();
+                    remainingJobs.countDown();
+                }
+            }, () -> {
+                MetricsHandler.recordJobsQueued(-1);
+                jobListener.jobFinished(task.getJob());
+                remainingJobs.countDown();
+            });
         }
 
-        while(arrBIndex < arrB.size()) {
-            arrC.add(arrCIndex, arrB.get(arrBIndex));
-            arrCIndex++;
-            arrBIndex++;
+        // Wait until every Job has finished:
+        try {
+            remainingJobs.await();
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            managementHandler.removeJobHandler(this);
         }
 
-        return arrC;
+        jobListener.jobsFinished();
     }
 }
@@ -0,0 +1,34 @@
+package handler;
+
+import misc.Job;
+
+public interface JobListener {
+    /** Called when a JobHandler starts running its Jobs. */
+    void jobsStarted();
+
+    /** Called when a JobHandler has finished running all of its Jobs. */
+    void jobsFinished();
+
+    /**
+     * Called when the specified Job has finished running, whether or not
+     * each of its files was en/decoded, or was cancelled before it started.
+     *
+     * @param job
+     *         The Job.
+     */
+    void jobFinished(final Job job);
+
+    /**
+     * Called with each line that a Job outputs.
+     *
+     * This is called from the threads which run the Job, and must never
+     * block.
+     *
+     * @param line
+     *         The line.
+     *
+     * @param job
+     *         The Job that output the line.
+     */
+    void appendOutput(final String line, final Job job);
+}
@@ -0,0 +1,711 @@
+package handler;
+
+import misc.Job;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public class JournalHandler {
+    /** The name of the journal file. */
+    private static final String FILENAME_JOURNAL = "jobs.journal";
+    /** The suffix of the file, beside each journal, which the instance writing the journal holds a lock on. */
+    private static final String SUFFIX_LOCK = ".lock";
+    /** The suffix of the file to which a journal is compacted. */
+    private static final String SUFFIX_TEMP = ".tmp";
+
+    /** The event recorded when a Job is added to the queue. */
+    private static final String EVENT_QUEUED = "Queued";
+    /** The event recorded when a Job is removed from the queue without being run. */
+    private static final String EVENT_REMOVED = "Removed";
+    /** The event recorded when a Job begins running. */
+    private static final String EVENT_JOB_STARTED = "Job Started";
+    /** The event recorded when every file of a Job has been processed. */
+    private static final String EVENT_JOB_COMPLETED = "Job Completed";
+    /** The event recorded when file(s) of a Job begin being processed. */
+    private static final String EVENT_FILES_STARTED = "Files Started";
+    /** The event recorded when file(s) of a Job have been processed. */
+    private static final String EVENT_FILES_COMPLETED = "Files Completed";
+
+    /** The journal file shared by every instance, which only the instance holding its lock recovers. */
+    private final File sharedJournalFile;
+    /** The journal file which records are appended to, which is the shared journal unless another running instance holds its lock. */
+    private File journalFile;
+
+    /** The stream which records are appended to, or null if it hasn't been opened yet. */
+    private FileOutputStream outputStream;
+
+    /** The channel which holds the lock of the journal that records are appended to, or null if it isn't locked. */
+    private FileChannel lockChannel;
+    /** Whether another running instance holds the lock of the shared journal, so this instance appends to a journal of its own. */
+    private boolean isShared = false;
+
+    /** Constructs a new JournalHandler for the journal in the working directory. */
+    public JournalHandler() {
+        this(new File(FILENAME_JOURNAL));
+    }
+
+    /**
+     * Constructs a new JournalHandler.
+     *
+     * @param journalFile
+     *         The journal file.
+     */
+    public JournalHandler(final File journalFile) {
+        this.sharedJournalFile = journalFile;
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Locks the journal until this instance closes, so that no other
+     * instance recovers the Jobs which this instance is running, and
+     * deletes their outputs.
+     *
+     * If another running instance holds the lock, then this instance records
+     * its Jobs in a journal of its own, beside the shared journal, which the
+     * instance holding the lock recovers once this instance has closed.
+     *
+     * @return
+     *         Whether this instance holds the lock of the shared journal.
+     */
+    public synchronized boolean lock() {
+        if(lockChannel != null) {
+            return ! isShared;
+        }
+
+        try {
+            lockChannel = tryLock(sharedJournalFile);
+
+            if(lockChannel == null) {
+                closeOutputStream();
+
+                isShared = true;
+                journalFile = new File(sharedJournalFile.getPath() + "." + UUID.randomUUID());
+                lockChannel = tryLock(journalFile);
+            }
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+        }
+
+        return ! isShared;
+    }
+
+    /**
+     * Closes the journal, and releases its lock.
+     *
+     * A journal of this instance's own is deleted if every Job that it
+     * records has finished, as there's nothing in it to recover.
+     */
+    public synchronized void close() {
+        closeOutputStream();
+
+        final boolean isDeleted = isShared && journalFile.exists()
+                                  && readEntries(journalFile).values().stream().allMatch(entry -> entry.isFinished)
+                                  && journalFile.delete();
+
+        if(lockChannel != null) {
+            try {
+                lockChannel.close();
+            } catch(final IOException e) {
+                final Logger logger = LogManager.getLogger();
+                logger.error(e);
+            }
+
+            lockChannel = null;
+        }
+
+        if(isDeleted) {
+            new File(journalFile.getPath() + SUFFIX_LOCK).delete();
+        }
+    }
+
+    /**
+     * Records that the specified Job has been added to the queue.
+     *
+     * @param job
+     *         The Job.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void recordQueued(final Job job) {
+        if(job.getJournalId() == null) {
+            job.setJournalId(UUID.randomUUID().toString());
+        }
+
+        final JSONArray files = new JSONArray();
+        job.getFiles().forEach(file -> files.add(file.getAbsolutePath()));
+
+        final JSONObject record = createRecord(EVENT_QUEUED, job);
+        record.put("Name", job.getName());
+        record.put("Description", job.getDescription());
+        record.put("Output Directory", job.getOutputDirectory());
+        record.put("Files", files);
+        record.put("Encode Job", job.isEncodeJob());
+        record.put("Archive Files", job.isArchiveFiles());
+
+        appendRecord(record);
+    }
+
+    /**
+     * Records that the specified Job has been removed from the queue, so it
+     * won't be recovered.
+     *
+     * @param job
+     *         The Job.
+     */
+    public synchronized void recordRemoved(final Job job) {
+        appendRecord(createRecord(EVENT_REMOVED, job));
+    }
+
+    /**
+     * Records that the specified Job has begun running.
+     *
+     * @param job
+     *         The Job.
+     */
+    public synchronized void recordJobStarted(final Job job) {
+        appendRecord(createRecord(EVENT_JOB_STARTED, job));
+    }
+
+    /**
+     * Records that every file of the specified Job has been processed, so
+     * it won't be recovered.
+     *
+     * @param job
+     *         The Job.
+     */
+    public synchronized void recordJobCompleted(final Job job) {
+        appendRecord(createRecord(EVENT_JOB_COMPLETED, job));
+    }
+
+    /**
+     * Records that the specified file(s) of a Job have begun being processed,
+     * along with every output that processing them may leave behind.
+     *
+     * @param job
+     *         The Job.
+     *
+     * @param files
+     *         The file(s), as they were queued.
+     *
+     * @param outputs
+     *         The files which are written while processing the file(s), and
+     *         which are orphaned if processing never completes.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void recordFilesStarted(final Job job, final List<File> files, final List<File> outputs) {
+        final JSONArray outputPaths = new JSONArray();
+        outputs.forEach(file -> outputPaths.add(file.getAbsolutePath()));
+
+        final JSONObject record = createFilesRecord(EVENT_FILES_STARTED, job, files);
+        record.put("Outputs", outputPaths);
+
+        appendRecord(record);
+    }
+
+    /**
+     * Records that the specified file(s) of a Job have been processed.
+     *
+     * @param job
+     *         The Job.
+     *
+     * @param files
+     *         The file(s), as they were queued.
+     */
+    public synchronized void recordFilesCompleted(final Job job, final List<File> files) {
+        appendRecord(createFilesRecord(EVENT_FILES_COMPLETED, job, files));
+    }
+
+    /**
+     * Replays the journal to find every Job that was queued, or running, when
+     * the program last closed, then deletes the orphaned outputs of any files
+     * which were being processed.
+     *
+     * Each recovered Job only contains the files which haven't been
+     * processed, so it resumes from its first incomplete file. The journal
+     * is then compacted, so it only describes the recovered Jobs.
+     *
+     * The journals of other instances, which couldn't lock the shared
+     * journal, are recovered as well once those instances have closed, then
+     * deleted. Nothing is recovered if another running instance holds the
+     * lock of the shared journal, as its Jobs may still be running.
+     *
+     * @param outputConsumer
+     *         The consumer of a line describing each recovered Job and each
+     *         deleted output.
+     *
+     * @return
+     *         The recovered Jobs, in the order they were queued.
+     */
+    public synchronized List<Job> recoverJobs(final Consumer<String> outputConsumer) {
+        if(isShared) {
+            outputConsumer.accept("No Jobs were recovered, as another running instance is using " + sharedJournalFile.getAbsolutePath() + ".");
+            return Collections.emptyList();
+        }
+
+        final Map<File, FileChannel> closedJournals = lockClosedJournals();
+
+        if(! journalFile.exists() && closedJournals.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final Map<String, JournalEntry> entries = (journalFile.exists() ? readEntries(journalFile) : new LinkedHashMap<>());
+        closedJournals.keySet().forEach(closedJournal -> readEntries(closedJournal).forEach(entries::putIfAbsent));
+
+        final List<Job> jobs = new ArrayList<>();
+
+        for(final JournalEntry entry : entries.values()) {
+            if(entry.isFinished) {
+                continue;
+            }
+
+            // Delete whatever the interrupted files left behind:
+            final Set<File> orphanedOutputs = new LinkedHashSet<>();
+            entry.startedOutputs.values().forEach(orphanedOutputs::addAll);
+
+            for(final File output : orphanedOutputs) {
+                // Never delete one of the Job's own files, even if an output was going to overwrite it:
+                if(entry.files.contains(output)) {
+                    continue;
+                }
+
+                if(output.exists()) {
+                    if(output.delete()) {
+                        outputConsumer.accept("Deleted the orphaned output " + output.getAbsolutePath() + ".");
+                    } else {
+                        final Logger logger = LogManager.getLogger();
+                        logger.error("Unable to delete the orphaned output " + output.getAbsolutePath() + ".");
+                    }
+                }
+            }
+
+            // Resume from the first incomplete file:
+            final List<File> remainingFiles = new ArrayList<>();
+
+            for(final File file : entry.files) {
+                if(entry.completedFiles.contains(file.getAbsolutePath())) {
+                    continue;
+                }
+
+                if(file.exists()) {
+                    remainingFiles.add(file);
+                } else {
+                    outputConsumer.accept("Unable to recover " + file.getAbsolutePath() + " of " + entry.name + ", as it no longer exists.");
+                }
+            }
+
+            if(remainingFiles.isEmpty()) {
+                continue;
+            }
+
+            final Job job = new Job(entry.name, entry.description, entry.outputDirectory, remainingFiles, entry.isEncodeJob, entry.archiveFiles);
+            job.setJournalId(entry.journalId);
+            jobs.add(job);
+
+            outputConsumer.accept("Recovered " + (entry.wasRunning ? "the interrupted" : "the queued") + " Job " + entry.name
+                                  + " with " + remainingFiles.size() + " of " + entry.files.size() + " file(s) remaining.");
+        }
+
+        compact(jobs);
+
+        // The Jobs of the closed journals are now in the shared journal:
+        closedJournals.forEach((closedJournal, closedLockChannel) -> {
+            try {
+                closedLockChannel.close();
+                Files.deleteIfExists(closedJournal.toPath());
+                Files.deleteIfExists(new File(closedJournal.getPath() + SUFFIX_LOCK).toPath());
+            } catch(final IOException e) {
+                final Logger logger = LogManager.getLogger();
+                logger.error(e);
+            }
+        });
+
+        return jobs;
+    }
+
+    /**
+     * Locks the journal of every other instance which couldn't lock the
+     * shared journal, and has since closed.
+     *
+     * @return
+     *         The channel holding the lock of each journal, by journal, from
+     *         the least to the most recently written.
+     */
+    private Map<File, FileChannel> lockClosedJournals() {
+        final Map<File, FileChannel> closedJournals = new LinkedHashMap<>();
+
+        final String prefix = sharedJournalFile.getName() + ".";
+        final File[] journals = sharedJournalFile.getAbsoluteFile().getParentFile().listFiles((directory, name) -> name.startsWith(prefix) && ! name.endsWith(SUFFIX_LOCK) && ! name.endsWith(SUFFIX_TEMP));
+
+        if(journals == null) {
+            return closedJournals;
+        }
+
+        Arrays.sort(journals, Comparator.comparingLong(File::lastModified));
+
+        for(final File journal : journals) {
+            try {
+                final FileChannel channel = tryLock(journal);
+
+                // The lock is held while the instance writing the journal is still running:
+                if(channel != null) {
+                    closedJournals.put(journal, channel);
+                }
+            } catch(final IOException e) {
+                final Logger logger = LogManager.getLogger();
+                logger.error(e);
+            }
+        }
+
+        return closedJournals;
+    }
+
+    /**
+     * Locks the lock file beside the specified journal, unless another
+     * instance holds its lock.
+     *
+     * @param journal
+     *         The journal.
+     *
+     * @return
+     *         The channel which holds the lock, or null if another instance
+     *         holds the lock.
+     *
+     * @throws IOException
+     *         If the lock file cannot be opened or locked.
+     */
+    private static FileChannel tryLock(final File journal) throws IOException {
+        final FileChannel channel = FileChannel.open(new File(journal.getPath() + SUFFIX_LOCK).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+        try {
+            if(channel.tryLock() != null) {
+                return channel;
+            }
+        } catch(final OverlappingFileLockException e) {
+            // Another handler, within this process, holds the lock.
+        } catch(final IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        channel.close();
+        return null;
+    }
+
+    /**
+     * Reads every record of the journal and folds them into the state of
+     * each Job.
+     *
+     * A record which can't be parsed, such as one which was only partly
+     * written when the program closed, is skipped.
+     *
+     * @param journal
+     *         The journal.
+     *
+     * @return
+     *         The state of each Job, by journal id, in the order they were queued.
+     */
+    private static Map<String, JournalEntry> readEntries(final File journal) {
+        final Map<String, JournalEntry> entries = new LinkedHashMap<>();
+
+        try (
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), StandardCharsets.UTF_8));
+        ) {
+            String line;
+
+            while((line = reader.readLine()) != null) {
+                if(line.trim().isEmpty()) {
+                    continue;
+                }
+
+                try (
+                    final JsonReader jsonReader = Json.createReader(new StringReader(line));
+                ) {
+                    applyRecord(entries, jsonReader.readObject());
+                } catch(final JsonException | ClassCastException | NullPointerException e) {
+                    final Logger logger = LogManager.getLogger();
+                    logger.error("Skipping the unreadable journal record: " + line, e);
+                }
+            }
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+
+            NotificationHandler.notifyError("IOException", "Please view the log file.");
+        }
+
+        return entries;
+    }
+
+    /**
+     * Applies a single record to the state of its Job.
+     *
+     * @param entries
+     *         The state of each Job, by journal id.
+     *
+     * @param record
+     *         The record.
+     */
+    private static void applyRecord(final Map<String, JournalEntry> entries, final JsonObject record) {
+        final String event = record.getString("Event");
+        final String journalId = record.getString("Job");
+
+        if(EVENT_QUEUED.equals(event)) {
+            final JournalEntry entry = new JournalEntry();
+            entry.journalId = journalId;
+            entry.name = record.getString("Name");
+            entry.description = record.getString("Description", "");
+            entry.outputDirectory = record.getString("Output Directory");
+            entry.files = toFiles(record.getJsonArray("Files"));
+            entry.isEncodeJob = record.getBoolean("Encode Job");
+            entry.archiveFiles = record.getBoolean("Archive Files");
+
+            entries.put(journalId, entry);
+            return;
+        }
+
+        final JournalEntry entry = entries.get(journalId);
+
+        if(entry == null) {
+            return;
+        }
+
+        switch(event) {
+            case EVENT_REMOVED:
+            case EVENT_JOB_COMPLETED: {
+                entry.isFinished = true;
+                break;
+            }
+            case EVENT_JOB_STARTED: {
+                entry.wasRunning = true;
+                break;
+            }
+            case EVENT_FILES_STARTED: {
+                final List<File> outputs = toFiles(record.getJsonArray("Outputs"));
+
+                for(final File file : toFiles(record.getJsonArray("Files"))) {
+                    entry.startedOutputs.put(file.getAbsolutePath(), outputs);
+                }
+
+                break;
+            }
+            case EVENT_FILES_COMPLETED: {
+                for(final File file : toFiles(record.getJsonArray("Files"))) {
+                    entry.completedFiles.add(file.getAbsolutePath());
+                    entry.startedOutputs.remove(file.getAbsolutePath());
+                }
+
+                break;
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal so that it only contains the Queued records of
+     * the specified Jobs.
+     *
+     * The new journal is written beside the old one, then moved over it, so
+     * a crash while compacting leaves one journal or the other intact.
+     *
+     * @param jobs
+     *         The Jobs to keep.
+     */
+    private void compact(final List<Job> jobs) {
+        closeOutputStream();
+
+        final File tempFile = new File(journalFile.getAbsolutePath() + SUFFIX_TEMP);
+
+        try {
+            if(tempFile.exists() && ! tempFile.delete()) {
+                throw new IOException("Unable to delete " + tempFile.getAbsolutePath() + ".");
+            }
+
+            final JournalHandler tempHandler = new JournalHandler(tempFile);
+            jobs.forEach(tempHandler::recordQueued);
+            tempHandler.closeOutputStream();
+
+            if(! tempFile.exists()) {
+                Files.deleteIfExists(journalFile.toPath());
+                return;
+            }
+
+            Files.move(tempFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+        }
+    }
+
+    /**
+     * Constructs a record of the specified event.
+     *
+     * @param event
+     *         The event.
+     *
+     * @param job
+     *         The Job that the event happened to.
+     *
+     * @return
+     *         The record.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject createRecord(final String event, final Job job) {
+        final JSONObject record = new JSONObject();
+        record.put("Event", event);
+        record.put("Job", job.getJournalId());
+        record.put("Time", System.currentTimeMillis());
+        return record;
+    }
+
+    /**
+     * Constructs a record of the specified event, which happened to file(s)
+     * of a Job.
+     *
+     * @param event
+     *         The event.
+     *
+     * @param job
+     *         The Job that the file(s) belong to.
+     *
+     * @param files
+     *         The file(s).
+     *
+     * @return
+     *         The record.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject createFilesRecord(final String event, final Job job, final List<File> files) {
+        final JSONArray filePaths = new JSONArray();
+        files.forEach(file -> filePaths.add(file.getAbsolutePath()));
+
+        final JSONObject record = createRecord(event, job);
+        record.put("Files", filePaths);
+        return record;
+    }
+
+    /**
+     * Appends the specified record to the journal, then forces it to disk so
+     * that it survives a crash, or a loss of power.
+     *
+     * Jobs without a journal id were never queued, so nothing is recorded
+     * for them.
+     *
+     * @param record
+     *         The record.
+     */
+    private void appendRecord(final JSONObject record) {
+        if(record.get("Job") == null) {
+            return;
+        }
+
+        try {
+            if(outputStream == null) {
+                outputStream = new FileOutputStream(journalFile, true);
+            }
+
+            outputStream.write((record.toJSONString() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            outputStream.getChannel().force(false);
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+
+            NotificationHandler.notifyError("IOException", "Please view the log file.");
+        }
+    }
+
+    /** Closes the stream which records are appended to, if it's open. */
+    private void closeOutputStream() {
+        if(outputStream == null) {
+            return;
+        }
+
+        try {
+            outputStream.close();
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+        }
+
+        outputStream = null;
+    }
+
+    /**
+     * Converts an array of paths into files.
+     *
+     * @param paths
+     *         The paths.
+     *
+     * @return
+     *         The files.
+     */
+    private static List<File> toFiles(final JsonArray paths) {
+        final List<File> files = new ArrayList<>(paths.size());
+
+        for(final JsonString path : paths.getValuesAs(JsonString.class)) {
+            files.add(new File(path.getString()));
+        }
+
+        return files;
+    }
+
+    /** The state of a single Job, as recorded by the journal. */
+    private static class JournalEntry {
+        /** The journal id of the Job. */
+        private String journalId;
+        /** The name of the Job. */
+        private String name;
+        /** A rough description of the Job. */
+        private String description;
+        /** The directory in which to place the output file(s). */
+        private String outputDirectory;
+        /** The file(s) belonging to the Job, as they were queued. */
+        private List<File> files;
+        /** Whether or not the Job is an Encode Job. If not, then it's a Decode Job. */
+        private boolean isEncodeJob;
+        /** Whether or not to pack all of the files into a single archive before encoding. */
+        private boolean archiveFiles;
+
+        /** Whether or not the Job began running. */
+        private boolean wasRunning = false;
+        /** Whether or not the Job was completed, or removed from the queue. */
+        private boolean isFinished = false;
+
+        /** The paths of the files which have been processed. */
+        private final Set<String> completedFiles = new HashSet<>();
+        /** The outputs of each file which began being processed, but wasn't completed, by path. */
+        private final Map<String, List<File>> startedOutputs = new HashMap<>();
+    }
+}
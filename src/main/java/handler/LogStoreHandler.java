@@ -0,0 +1,507 @@
+package handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BooleanSupplier;
+
+public class LogStoreHandler {
+    /** The name of the index file, within the log directory. */
+    private static final String FILENAME_INDEX = "output.index";
+    /** The size, in bytes, of each line's record in the index. */
+    private static final int RECORD_SIZE = 16;
+    /** The number of index records read at once when scanning the index. */
+    private static final int RECORDS_PER_SCAN = 4096;
+
+    /** The directory in which the log is kept. */
+    private final File directory;
+    /** The maximum size, in bytes, of each segment of the log. */
+    private final int segmentSize;
+
+    /**
+     * The index of the log, holding one fixed-size record per line.
+     *
+     * Each record holds the line's segment, its offset within the segment,
+     * its length in bytes, and the tag of the Job that output it.
+     */
+    private FileChannel indexChannel;
+    /** The segments of the log, which hold the text of each line one after another. */
+    private final List<FileChannel> segmentChannels = new ArrayList<>();
+
+    /** The number of lines in the log, including those which haven't been flushed. */
+    private int lineCount = 0;
+    /** The number of bytes written to the newest segment, including those which haven't been flushed. */
+    private int segmentLength = 0;
+
+    /** The text of the lines which haven't been flushed to the newest segment. */
+    private final ByteArrayOutputStream pendingText = new ByteArrayOutputStream();
+    /** The index records of the lines which haven't been flushed. */
+    private final ByteArrayOutputStream pendingRecords = new ByteArrayOutputStream();
+
+    /**
+     * Constructs a new LogStoreHandler, deleting any log left in the
+     * specified directory by an earlier run.
+     *
+     * @param directory
+     *         The directory in which to keep the log.
+     *
+     * @param segmentSize
+     *         The maximum size, in bytes, of each segment of the log.
+     *
+     * @throws IOException
+     *         If the log cannot be created.
+     */
+    public LogStoreHandler(final File directory, final int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        if(! directory.exists() && ! directory.mkdirs()) {
+            throw new IOException("Unable to create the log directory " + directory.getAbsolutePath() + ".");
+        }
+
+        open();
+    }
+
+    /**
+     * Appends the specified text to the log, as one line for each line of
+     * the text. A line separator at the end of the text ends its last line,
+     * rather than starting another.
+     *
+     * The lines are only written to disk when the log is flushed. If a new
+     * segment is needed, but can't be started, then the line is dropped and
+     * the error is logged, and the next line tries again.
+     *
+     * @param text
+     *         The text.
+     *
+     * @param jobTag
+     *         The tag of the Job that output the text, or -1 if no Job did.
+     */
+    public synchronized void append(final String text, final int jobTag) {
+        final String[] lines = text.split("\\R", -1);
+        final int count = (lines.length > 1 && lines[lines.length - 1].isEmpty() ? lines.length - 1 : lines.length);
+
+        for(int i = 0 ; i < count ; i++) {
+            final byte[] bytes = lines[i].getBytes(StandardCharsets.UTF_8);
+
+            if(segmentLength > 0 && segmentLength + bytes.length > segmentSize) {
+                try {
+                    flush();
+                    segmentChannels.add(openSegment(segmentChannels.size()));
+                    segmentLength = 0;
+                } catch(final IOException e) {
+                    // This is called on the JavaFX thread, so the error mustn't be thrown:
+                    final Logger logger = LogManager.getLogger();
+                    logger.error("Unable to start a new log segment, so a line of output was dropped.", e);
+                    continue;
+                }
+            }
+
+            final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            record.putInt(segmentChannels.size() - 1).putInt(segmentLength).putInt(bytes.length).putInt(jobTag);
+
+            pendingRecords.write(record.array(), 0, RECORD_SIZE);
+            pendingText.write(bytes, 0, bytes.length);
+
+            segmentLength += bytes.length;
+            lineCount++;
+        }
+    }
+
+    /**
+     * Writes every appended line to disk.
+     *
+     * @throws IOException
+     *         If the lines cannot be written.
+     */
+    public synchronized void flush() throws IOException {
+        if(pendingRecords.size() == 0) {
+            return;
+        }
+
+        final FileChannel segmentChannel = segmentChannels.get(segmentChannels.size() - 1);
+        writeFully(segmentChannel, ByteBuffer.wrap(pendingText.toByteArray()), segmentChannel.size());
+        writeFully(indexChannel, ByteBuffer.wrap(pendingRecords.toByteArray()), indexChannel.size());
+
+        pendingText.reset();
+        pendingRecords.reset();
+    }
+
+    /**
+     * Reads the specified line of the log.
+     *
+     * @param lineIndex
+     *         The position of the line.
+     *
+     * @return
+     *         The line.
+     *
+     * @throws IOException
+     *         If the line cannot be read.
+     */
+    public synchronized String readLine(final int lineIndex) throws IOException {
+        flush();
+
+        final ByteBuffer record = readRecords(lineIndex, 1);
+        final ByteBuffer text = ByteBuffer.allocate(record.getInt(8));
+        readFully(segmentChannels.get(record.getInt(0)), text, record.getInt(4));
+
+        return new String(text.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the positions of every line, at or after the specified position,
+     * that was output by the specified Job.
+     *
+     * Only the index is read, not the text of the lines.
+     *
+     * @param jobTag
+     *         The tag of the Job.
+     *
+     * @param fromLine
+     *         The position of the first line to consider.
+     *
+     * @return
+     *         The positions of the lines, in order.
+     *
+     * @throws IOException
+     *         If the index cannot be read.
+     */
+    public synchronized int[] filterByJob(final int jobTag, final int fromLine) throws IOException {
+        return filterByJob(jobTag, fromLine, lineCount, () -> false);
+    }
+
+    /**
+     * Finds the positions of every line, between the specified positions,
+     * that was output by the specified Job.
+     *
+     * The log is only locked while each batch of the index is read, so
+     * lines can be appended while a long scan runs on another thread.
+     *
+     * @param jobTag
+     *         The tag of the Job.
+     *
+     * @param fromLine
+     *         The position of the first line to consider.
+     *
+     * @param toLine
+     *         The position after the last line to consider.
+     *
+     * @param isCancelled
+     *         Whether to stop scanning. It's checked before each batch, and
+     *         the lines found so far are returned once it's true.
+     *
+     * @return
+     *         The positions of the lines, in order.
+     *
+     * @throws IOException
+     *         If the index cannot be read.
+     */
+    public int[] filterByJob(final int jobTag, final int fromLine, final int toLine, final BooleanSupplier isCancelled) throws IOException {
+        int[] lineIndices = new int[64];
+        int matchCount = 0;
+
+        for(int firstLine = Math.max(0, fromLine) ; firstLine < toLine && ! isCancelled.getAsBoolean() ; firstLine += RECORDS_PER_SCAN) {
+            final int recordCount;
+            final ByteBuffer records;
+
+            synchronized(this) {
+                // The log may have been cleared since the scan began:
+                if(firstLine >= lineCount) {
+                    break;
+                }
+
+                flush();
+
+                recordCount = Math.min(RECORDS_PER_SCAN, Math.min(toLine, lineCount) - firstLine);
+                records = readRecords(firstLine, recordCount);
+            }
+
+            for(int i = 0 ; i < recordCount ; i++) {
+                if(records.getInt((i * RECORD_SIZE) + 12) == jobTag) {
+                    if(matchCount == lineIndices.length) {
+                        lineIndices = Arrays.copyOf(lineIndices, lineIndices.length * 2);
+                    }
+
+                    lineIndices[matchCount++] = firstLine + i;
+                }
+            }
+        }
+
+        return Arrays.copyOf(lineIndices, matchCount);
+    }
+
+    /**
+     * Finds the first line, at or after the specified position, which
+     * contains the specified text, ignoring case.
+     *
+     * The lines are read in batches, with each batch's text read from its
+     * segment in a single read. The log is only locked while each batch is
+     * searched, so lines can be appended while a long search runs on
+     * another thread.
+     *
+     * @param text
+     *         The text to find.
+     *
+     * @param fromLine
+     *         The position of the first line to search.
+     *
+     * @param jobTag
+     *         The tag of the Job whose lines to search, or -1 to search
+     *         every line.
+     *
+     * @param isCancelled
+     *         Whether to stop searching. It's checked before each batch, and
+     *         the search gives up once it's true.
+     *
+     * @return
+     *         The position of the line, or -1 if no line contains the text,
+     *         or if the search was cancelled.
+     *
+     * @throws IOException
+     *         If the log cannot be read.
+     */
+    public int search(final String text, final int fromLine, final int jobTag, final BooleanSupplier isCancelled) throws IOException {
+        final String lowerCaseText = text.toLowerCase(Locale.ROOT);
+
+        for(int firstLine = Math.max(0, fromLine) ; ! isCancelled.getAsBoolean() ; firstLine += RECORDS_PER_SCAN) {
+            final int lineIndex = searchLines(lowerCaseText, firstLine, jobTag);
+
+            if(lineIndex != -2) {
+                return lineIndex;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Searches the lines of one scan of the index for the specified text,
+     * ignoring case.
+     *
+     * @param lowerCaseText
+     *         The text to find, in lower case.
+     *
+     * @param firstLine
+     *         The position of the first line of the scan.
+     *
+     * @param jobTag
+     *         The tag of the Job whose lines to search, or -1 to search
+     *         every line.
+     *
+     * @return
+     *         The position of the line, -1 if there are no lines at or after
+     *         the first line, or -2 if no line of the scan contains the text.
+     *
+     * @throws IOException
+     *         If the log cannot be read.
+     */
+    private synchronized int searchLines(final String lowerCaseText, final int firstLine, final int jobTag) throws IOException {
+        if(firstLine >= lineCount) {
+            return -1;
+        }
+
+        flush();
+
+        final int recordCount = Math.min(RECORDS_PER_SCAN, lineCount - firstLine);
+        final ByteBuffer records = readRecords(firstLine, recordCount);
+
+        int batchStart = 0;
+
+        // Each batch is the run of records which lie in the same segment:
+        while(batchStart < recordCount) {
+            final int segment = records.getInt(batchStart * RECORD_SIZE);
+
+            int batchEnd = batchStart + 1;
+            while(batchEnd < recordCount && records.getInt(batchEnd * RECORD_SIZE) == segment) {
+                batchEnd++;
+            }
+
+            final int startOffset = records.getInt((batchStart * RECORD_SIZE) + 4);
+            final int endOffset = records.getInt(((batchEnd - 1) * RECORD_SIZE) + 4) + records.getInt(((batchEnd - 1) * RECORD_SIZE) + 8);
+
+            final ByteBuffer batchText = ByteBuffer.allocate(endOffset - startOffset);
+            readFully(segmentChannels.get(segment), batchText, startOffset);
+
+            for(int i = batchStart ; i < batchEnd ; i++) {
+                final int position = i * RECORD_SIZE;
+
+                if(jobTag != -1 && records.getInt(position + 12) != jobTag) {
+                    continue;
+                }
+
+                final String line = new String(batchText.array(), records.getInt(position + 4) - startOffset, records.getInt(position + 8), StandardCharsets.UTF_8);
+
+                if(line.toLowerCase(Locale.ROOT).contains(lowerCaseText)) {
+                    return firstLine + i;
+                }
+            }
+
+            batchStart = batchEnd;
+        }
+
+        return -2;
+    }
+
+    /**
+     * Deletes every line of the log.
+     *
+     * @throws IOException
+     *         If the log cannot be deleted, or recreated.
+     */
+    public synchronized void clear() throws IOException {
+        close();
+        open();
+    }
+
+    /**
+     * Closes the log's files.
+     *
+     * @throws IOException
+     *         If a file cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        if(indexChannel != null) {
+            indexChannel.close();
+        }
+
+        for(final FileChannel segmentChannel : segmentChannels) {
+            segmentChannel.close();
+        }
+
+        segmentChannels.clear();
+    }
+
+    /** @return The number of lines in the log. */
+    public synchronized int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Deletes any existing log, then opens an empty index and first segment.
+     *
+     * @throws IOException
+     *         If the log cannot be deleted, or created.
+     */
+    private void open() throws IOException {
+        final File[] oldFiles = directory.listFiles((dir, name) -> name.startsWith("output."));
+
+        if(oldFiles != null) {
+            for(final File oldFile : oldFiles) {
+                if(! oldFile.delete()) {
+                    throw new IOException("Unable to delete the old log file " + oldFile.getAbsolutePath() + ".");
+                }
+            }
+        }
+
+        indexChannel = FileChannel.open(new File(directory, FILENAME_INDEX).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segmentChannels.add(openSegment(0));
+
+        lineCount = 0;
+        segmentLength = 0;
+        pendingText.reset();
+        pendingRecords.reset();
+    }
+
+    /**
+     * Opens the specified segment of the log.
+     *
+     * @param segment
+     *         The number of the segment.
+     *
+     * @return
+     *         The channel of the segment.
+     *
+     * @throws IOException
+     *         If the segment cannot be opened.
+     */
+    private FileChannel openSegment(final int segment) throws IOException {
+        final File file = new File(directory, "output." + segment + ".log");
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Reads the index records of the specified lines.
+     *
+     * @param firstLine
+     *         The position of the first line.
+     *
+     * @param recordCount
+     *         The number of lines.
+     *
+     * @return
+     *         The records.
+     *
+     * @throws IOException
+     *         If the index cannot be read.
+     */
+    private ByteBuffer readRecords(final int firstLine, final int recordCount) throws IOException {
+        final ByteBuffer records = ByteBuffer.allocate(recordCount * RECORD_SIZE);
+        readFully(indexChannel, records, (long) firstLine * RECORD_SIZE);
+        return records;
+    }
+
+    /**
+     * Fills the specified buffer from the specified position of a channel.
+     *
+     * @param channel
+     *         The channel.
+     *
+     * @param buffer
+     *         The buffer.
+     *
+     * @param position
+     *         The position.
+     *
+     * @throws IOException
+     *         If the channel cannot be read, or ends before the buffer is full.
+     */
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long currentPosition = position;
+
+        while(buffer.hasRemaining()) {
+            final int count = channel.read(buffer, currentPosition);
+
+            if(count == -1) {
+                throw new IOException("The log ended before the line could be read.");
+            }
+
+            currentPosition += count;
+        }
+    }
+
+    /**
+     * Writes the whole of the specified buffer at the specified position of a
+     * channel.
+     *
+     * @param channel
+     *         The channel.
+     *
+     * @param buffer
+     *         The buffer.
+     *
+     * @param position
+     *         The position.
+     *
+     * @throws IOException
+     *         If the channel cannot be written to.
+     */
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long currentPosition = position;
+
+        while(buffer.hasRemaining()) {
+            currentPosition += channel.write(buffer, currentPosition);
+        }
+    }
+}
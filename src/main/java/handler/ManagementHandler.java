@@ -0,0 +1,428 @@
+package handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class ManagementHandler implements JobEngineMXBean {
+    /** The name under which the job engine is registered. */
+    private static final String NAME_JOB_ENGINE = "Schillsaver:type=JobEngine";
+    /** The name under which the statistics are registered. */
+    private static final String NAME_STATISTICS = "Schillsaver:type=Statistics";
+
+    /** The settings from which the default concurrency limit is found. */
+    private final ConfigHandler configHandler;
+
+    /** The JobHandlers which are running. */
+    private final Set<JobHandler> jobHandlers = ConcurrentHashMap.newKeySet();
+    /** The journal ids of the Jobs which are being held. */
+    private final Set<String> pausedJobs = ConcurrentHashMap.newKeySet();
+    /** Whether or not every queued Job is being held. */
+    private boolean isQueuePaused = false;
+    /** The maximum number of Jobs to run at once, or 0 to use the limit found from the settings. */
+    private volatile int concurrencyLimit = 0;
+    /** The executor which runs the Jobs of every JobHandler, or null if it hasn't been created yet. */
+    private ThreadPoolExecutor executor;
+    /**
+     * The Jobs which are being held, in the order they were held. They're
+     * kept out of the executor, so they don't take up its threads, and are
+     * given to it once they're released.
+     */
+    private final List<QueuedTask> heldTasks = new ArrayList<>();
+
+    /**
+     * Constructs a new ManagementHandler.
+     *
+     * @param configHandler
+     *         The settings from which the default concurrency limit is found.
+     */
+    public ManagementHandler(final ConfigHandler configHandler) {
+        this.configHandler = configHandler;
+    }
+
+    /**
+     * Registers the job engine, and the specified statistics, with the
+     * platform MBean server, so they can be inspected and steered with
+     * JConsole or Mission Control.
+     *
+     * @param statisticsHandler
+     *         The statistics.
+     */
+    public void register(final StatisticsHandler statisticsHandler) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            server.registerMBean(this, new ObjectName(NAME_JOB_ENGINE));
+            server.registerMBean(statisticsHandler, new ObjectName(NAME_STATISTICS));
+        } catch(final JMException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+        }
+    }
+
+    /**
+     * Records that the specified JobHandler has started running its Jobs.
+     *
+     * @param jobHandler
+     *         The JobHandler.
+     */
+    public void addJobHandler(final JobHandler jobHandler) {
+        jobHandlers.add(jobHandler);
+    }
+
+    /**
+     * Records that the specified JobHandler has finished running its Jobs.
+     *
+     * @param jobHandler
+     *         The JobHandler.
+     */
+    public void removeJobHandler(final JobHandler jobHandler) {
+        jobHandlers.remove(jobHandler);
+
+        for(final FFMPEGHandler task : jobHandler.getPreparedTasks()) {
+            pausedJobs.remove(task.getJob().getJournalId());
+        }
+    }
+
+    /**
+     * Queues the specified Job, on the executor which runs the Jobs of
+     * every JobHandler.
+     *
+     * If the Job is being held, then it waits outside of the executor until
+     * it's released. If it's cancelled before it starts, then it's skipped.
+     *
+     * @param task
+     *         The Job's task.
+     *
+     * @param start
+     *         What to run when the Job starts.
+     *
+     * @param skip
+     *         What to run if the Job is cancelled before it starts.
+     */
+    public void execute(final FFMPEGHandler task, final Runnable start, final Runnable skip) {
+        dispatch(new QueuedTask(task, start, skip));
+    }
+
+    /**
+     * Gives the specified Job to the executor, holds it if it's being held,
+     * or skips it if it's been cancelled.
+     *
+     * @param queuedTask
+     *         The Job.
+     */
+    private void dispatch(final QueuedTask queuedTask) {
+        synchronized(this) {
+            if(! queuedTask.task.isJobCancelled()) {
+                if(isHeld(queuedTask.task)) {
+                    heldTasks.add(queuedTask);
+                } else {
+                    getExecutor().execute(() -> startOrHold(queuedTask));
+                }
+
+                return;
+            }
+        }
+
+        queuedTask.skip.run();
+    }
+
+    /**
+     * Starts the specified Job, on one of the executor's threads, unless it
+     * was held or cancelled while it waited in the executor's queue.
+     *
+     * @param queuedTask
+     *         The Job.
+     */
+    private void startOrHold(final QueuedTask queuedTask) {
+        synchronized(this) {
+            // The thread is given back to the executor, rather than waiting:
+            if(! queuedTask.task.isJobCancelled() && isHeld(queuedTask.task)) {
+                heldTasks.add(queuedTask);
+                return;
+            }
+        }
+
+        if(queuedTask.task.isJobCancelled()) {
+            queuedTask.skip.run();
+        } else {
+            queuedTask.start.run();
+        }
+    }
+
+    /** Dispatches every held Job which has been released or cancelled. */
+    private void releaseTasks() {
+        final List<QueuedTask> releasedTasks = new ArrayList<>();
+
+        synchronized(this) {
+            final Iterator<QueuedTask> iterator = heldTasks.iterator();
+
+            while(iterator.hasNext()) {
+                final QueuedTask queuedTask = iterator.next();
+
+                if(queuedTask.task.isJobCancelled() || ! isHeld(queuedTask.task)) {
+                    iterator.remove();
+                    releasedTasks.add(queuedTask);
+                }
+            }
+        }
+
+        releasedTasks.forEach(this::dispatch);
+    }
+
+    /**
+     * Determines whether the specified Job is being held, either by itself
+     * or with the rest of the queue.
+     *
+     * @param task
+     *         The Job's task.
+     *
+     * @return
+     *         Whether the Job is being held.
+     */
+    private synchronized boolean isHeld(final FFMPEGHandler task) {
+        return isQueuePaused || pausedJobs.contains(task.getJob().getJournalId());
+    }
+
+    /**
+     * Retrieves the executor which runs the Jobs of every JobHandler, so the
+     * Jobs queued from the main screen, and from the daemon's clients, share
+     * one queue and one concurrency limit.
+     *
+     * The executor is resized to the current concurrency limit, as the
+     * settings may have changed since it was last retrieved.
+     *
+     * @return
+     *         The executor.
+     */
+    private synchronized ThreadPoolExecutor getExecutor() {
+        final int limit = getConcurrencyLimit();
+
+        if(executor == null) {
+            executor = new ThreadPoolExecutor(limit, limit,
+                                              0L, TimeUnit.MILLISECONDS,
+                                              new LinkedBlockingQueue<>(),
+                                              runnable -> {
+                                                  final Thread thread = new Thread(runnable, "Job Runner");
+                                                  thread.setDaemon(true);
+                                                  return thread;
+                                              });
+        } else {
+            resizeExecutor(limit);
+        }
+
+        return executor;
+    }
+
+    /**
+     * Determines the maximum number of Jobs to run at once.
+     *
+     * @return
+     *         The limit set at runtime, or the limit found from the settings
+     *         if none has been set.
+     */
+    @Override
+    public int getConcurrencyLimit() {
+        final int limit = concurrencyLimit;
+        return (limit > 0 ? limit : configHandler.calculateMaxConcurrentJobs());
+    }
+
+    @Override
+    public void setConcurrencyLimit(final int concurrencyLimit) {
+        if(concurrencyLimit < 1) {
+            throw new IllegalArgumentException("The concurrency limit must be at least 1.");
+        }
+
+        this.concurrencyLimit = concurrencyLimit;
+
+        synchronized(this) {
+            if(executor != null) {
+                resizeExecutor(concurrencyLimit);
+            }
+        }
+    }
+
+    /**
+     * Sets the maximum number of Jobs that the executor runs at once, which
+     * takes effect as soon as a running Job finishes, or immediately when
+     * it's raised.
+     *
+     * @param maxConcurrentJobs
+     *         The maximum number of Jobs.
+     */
+    private void resizeExecutor(final int maxConcurrentJobs) {
+        // The maximum pool size can never be below the core pool size:
+        if(maxConcurrentJobs > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(maxConcurrentJobs);
+            executor.setCorePoolSize(maxConcurrentJobs);
+        } else {
+            executor.setCorePoolSize(maxConcurrentJobs);
+            executor.setMaximumPoolSize(maxConcurrentJobs);
+        }
+    }
+
+    @Override
+    public long getQueuedJobs() {
+        return MetricsHandler.getJobsQueued();
+    }
+
+    @Override
+    public long getRunningJobs() {
+        return MetricsHandler.getJobsRunning();
+    }
+
+    @Override
+    public long getCompletedJobs() {
+        return MetricsHandler.getJobsCompleted();
+    }
+
+    @Override
+    public long getFailedJobs() {
+        return MetricsHandler.getJobsFailed();
+    }
+
+    @Override
+    public Map<String, String> getJobProgress() {
+        final Map<String, String> jobProgress = new TreeMap<>();
+
+        for(final FFMPEGHandler task : getTasks()) {
+            jobProgress.put(task.getJob().getJournalId(), task.getJob().getName() + " - " + describeState(task));
+        }
+
+        return jobProgress;
+    }
+
+    /**
+     * Retrieves the tasks of every running JobHandler, whether they're
+     * waiting, running, or finished.
+     *
+     * @return
+     *         The tasks.
+     */
+    public List<FFMPEGHandler> getTasks() {
+        final List<FFMPEGHandler> tasks = new ArrayList<>();
+        jobHandlers.forEach(jobHandler -> tasks.addAll(jobHandler.getPreparedTasks()));
+        return tasks;
+    }
+
+    /**
+     * Describes the state of the specified task.
+     *
+     * @param task
+     *         The task.
+     *
+     * @return
+     *         Whether the task is cancelled or paused, or else its progress.
+     */
+    public String describeState(final FFMPEGHandler task) {
+        if(task.isJobCancelled()) {
+            return "Cancelled";
+        } else if(pausedJobs.contains(task.getJob().getJournalId()) && ! task.getProgressModule().isReceivingProgress()) {
+            return "Paused";
+        } else {
+            return task.getProgressModule().toString();
+        }
+    }
+
+    @Override
+    public synchronized boolean isQueuePaused() {
+        return isQueuePaused;
+    }
+
+    @Override
+    public synchronized void pauseQueue() {
+        isQueuePaused = true;
+    }
+
+    @Override
+    public void resumeQueue() {
+        synchronized(this) {
+            isQueuePaused = false;
+        }
+
+        releaseTasks();
+    }
+
+    @Override
+    public synchronized boolean pauseJob(final String journalId) {
+        if(findTask(journalId) == null) {
+            return false;
+        }
+
+        pausedJobs.add(journalId);
+        return true;
+    }
+
+    @Override
+    public boolean resumeJob(final String journalId) {
+        if(findTask(journalId) == null) {
+            return false;
+        }
+
+        pausedJobs.remove(journalId);
+        releaseTasks();
+        return true;
+    }
+
+    @Override
+    public boolean cancelJob(final String journalId) {
+        final FFMPEGHandler task = findTask(journalId);
+
+        if(task == null) {
+            return false;
+        }
+
+        task.cancelJob();
+        releaseTasks();
+        return true;
+    }
+
+    /**
+     * Finds the task of the specified Job, among the running JobHandlers.
+     *
+     * @param journalId
+     *         The journal id of the Job.
+     *
+     * @return
+     *         The task, or null if it wasn't found.
+     */
+    private FFMPEGHandler findTask(final String journalId) {
+        for(final FFMPEGHandler task : getTasks()) {
+            if(journalId.equals(task.getJob().getJournalId())) {
+                return task;
+            }
+        }
+
+        return null;
+    }
+
+    /** A queued Job, with what to run when it starts, or is skipped. */
+    private static class QueuedTask {
+        /** The Job's task. */
+        private final FFMPEGHandler task;
+        /** What to run when the Job starts. */
+        private final Runnable start;
+        /** What to run if the Job is cancelled before it starts. */
+        private final Runnable skip;
+
+        private QueuedTask(final FFMPEGHandler task, final Runnable start, final Runnable skip) {
+            this.task = task;
+            this.start = start;
+            this.skip = skip;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package handler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import module.HistogramModule;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+public class MetricsHandler {
+    /** The prefix of every metric's name. */
+    private static final String PREFIX = "schillsaver_";
+    /** The path at which the metrics are served. */
+    private static final String PATH = "/metrics";
+    /** The upper bound, in seconds, of each bucket of the stage duration histograms. */
+    private static final double[] DURATION_BUCKETS = {0.1, 0.5, 1, 5, 15, 60, 300, 900, 3600, 14400};
+    /** The number of clock ticks per second in which Linux reports CPU time. */
+    private static final double CLOCK_TICKS_PER_SECOND = 100;
+
+    /** The number of Jobs waiting to run. */
+    private static final AtomicLong jobsQueued = new AtomicLong();
+    /** The number of Jobs running. */
+    private static final AtomicLong jobsRunning = new AtomicLong();
+    /** The number of Jobs which finished with every file en/decoded. */
+    private static final LongAdder jobsCompleted = new LongAdder();
+    /** The number of Jobs which finished with file(s) left to en/decode. */
+    private static final LongAdder jobsFailed = new LongAdder();
+    /** The number of payload bytes encoded. */
+    private static final LongAdder bytesEncoded = new LongAdder();
+    /** The number of payload bytes decoded. */
+    private static final LongAdder bytesDecoded = new LongAdder();
+    /** The number of child processes started. */
+    private static final LongAdder processesStarted = new LongAdder();
+    /** The time, in milliseconds since the epoch, at which the first child process was started, or 0 if none has been. */
+    private static final AtomicLong firstProcessStartTime = new AtomicLong();
+
+    /** The histogram of the duration of each stage, by the stage's name. */
+    private static final Map<String, HistogramModule> stageDurations = new ConcurrentSkipListMap<>();
+    /** The metrics whose values are read when the metrics are served, by their names. */
+    private static final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    /** The server of the metrics, or null if it isn't running. */
+    private static HttpServer server;
+
+    /**
+     * Records that the specified number of Jobs have been queued to run.
+     *
+     * @param count
+     *         The number of Jobs.
+     */
+    public static void recordJobsQueued(final int count) {
+        jobsQueued.addAndGet(count);
+    }
+
+    /**
+     * Records that a queued Job has started running.
+     *
+     * @param queuedNanos
+     *         The time, in nanoseconds, that the Job waited in the queue.
+     */
+    public static void recordJobStarted(final long queuedNanos) {
+        jobsQueued.decrementAndGet();
+        jobsRunning.incrementAndGet();
+        recordStageDuration("queue_wait", queuedNanos);
+    }
+
+    /** Records that a running Job has stopped running. */
+    public static void recordJobStopped() {
+        jobsRunning.decrementAndGet();
+    }
+
+    /**
+     * Records that a Job has finished.
+     *
+     * @param wasCompleted
+     *         Whether every file of the Job was en/decoded.
+     *
+     * @param durationNanos
+     *         The time, in nanoseconds, that the Job ran for.
+     */
+    public static void recordJobFinished(final boolean wasCompleted, final long durationNanos) {
+        (wasCompleted ? jobsCompleted : jobsFailed).increment();
+        recordStageDuration("job", durationNanos);
+    }
+
+    /**
+     * Records that the specified number of payload bytes have been
+     * en/decoded.
+     *
+     * @param isEncode
+     *         Whether the bytes were encoded, or decoded.
+     *
+     * @param bytes
+     *         The number of bytes.
+     */
+    public static void recordBytesProcessed(final boolean isEncode, final long bytes) {
+        (isEncode ? bytesEncoded : bytesDecoded).add(bytes);
+    }
+
+    /** Records that a child process has been started. */
+    public static void recordProcessStarted() {
+        processesStarted.increment();
+        firstProcessStartTime.compareAndSet(0, System.currentTimeMillis());
+    }
+
+    /**
+     * Records the duration of a stage.
+     *
+     * @param stage
+     *         The name of the stage.
+     *
+     * @param durationNanos
+     *         The time, in nanoseconds, that the stage took.
+     */
+    public static void recordStageDuration(final String stage, final long durationNanos) {
+        stageDurations.computeIfAbsent(stage, key -> new HistogramModule(DURATION_BUCKETS))
+                      .observe(durationNanos / 1_000_000_000.0);
+    }
+
+    /** @return The number of Jobs waiting to run. */
+    public static long getJobsQueued() {
+        return jobsQueued.get();
+    }
+
+    /** @return The number of Jobs running. */
+    public static long getJobsRunning() {
+        return jobsRunning.get();
+    }
+
+    /** @return The number of Jobs which finished with every file en/decoded. */
+    public static long getJobsCompleted() {
+        return jobsCompleted.sum();
+    }
+
+    /** @return The number of Jobs which finished with file(s) left to en/decode. */
+    public static long getJobsFailed() {
+        return jobsFailed.sum();
+    }
+
+    /** @return The number of child processes which have been started. */
+    public static long getProcessesStarted() {
+        return processesStarted.sum();
+    }
+
+    /** @return The time, in milliseconds since the epoch, at which the first child process was started, or 0 if none has been. */
+    public static long getFirstProcessStartTime() {
+        return firstProcessStartTime.get();
+    }
+
+    /**
+     * Registers a metric whose value is read each time the metrics are
+     * served, replacing any metric with the same name.
+     *
+     * @param name
+     *         The name of the metric, without the prefix.
+     *
+     * @param type
+     *         The type of the metric, either "gauge" or "counter".
+     *
+     * @param help
+     *         The description of the metric.
+     *
+     * @param valueSupplier
+     *         The supplier of the metric's value.
+     */
+    public static void registerGauge(final String name, final String type, final String help, final DoubleSupplier valueSupplier) {
+        gauges.put(name, new Gauge(type, help, valueSupplier));
+    }
+
+    /**
+     * Starts serving the metrics, in Prometheus' text format, at
+     * http://localhost:port/metrics.
+     *
+     * The server is bound to the loopback address, so the metrics can't be
+     * read from other machines.
+     *
+     * @param port
+     *         The port to serve the metrics on, or 0 to not serve them.
+     */
+    public static synchronized void startServer(final int port) {
+        if(port <= 0 || server != null) {
+            return;
+        }
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext(PATH, MetricsHandler::serve);
+            server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "Metrics Server");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.start();
+        } catch(final IOException e) {
+            server = null;
+
+            final Logger logger = LogManager.getLogger();
+            logger.error("Unable to serve the metrics on port " + port + ".", e);
+        }
+    }
+
+    /** Stops serving the metrics, if they're being served. */
+    public static synchronized void stopServer() {
+        if(server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * Responds to a request for the metrics.
+     *
+     * @param exchange
+     *         The request and its response.
+     *
+     * @throws IOException
+     *         If the response cannot be sent.
+     */
+    private static void serve(final HttpExchange exchange) throws IOException {
+        final byte[] body = formatMetrics().getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+
+        try (final OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    /**
+     * Formats every metric in Prometheus' text format.
+     *
+     * Each value is read from a counter, or from a supplier which reads it
+     * without blocking, so this is cheap enough to be called every second.
+     *
+     * @return
+     *         The metrics.
+     */
+    public static String formatMetrics() {
+        final StringBuilder stringBuilder = new StringBuilder();
+
+        appendMetric(stringBuilder, "jobs_queued", "gauge", "The number of Jobs waiting to run.", jobsQueued.get());
+        appendMetric(stringBuilder, "jobs_running", "gauge", "The number of Jobs running.", jobsRunning.get());
+        appendMetric(stringBuilder, "jobs_completed_total", "counter", "The number of Jobs which finished with every file en/decoded.", jobsCompleted.sum());
+        appendMetric(stringBuilder, "jobs_failed_total", "counter", "The number of Jobs which finished with file(s) left to en/decode.", jobsFailed.sum());
+        appendMetric(stringBuilder, "bytes_encoded_total", "counter", "The number of payload bytes encoded.", bytesEncoded.sum());
+        appendMetric(stringBuilder, "bytes_decoded_total", "counter", "The number of payload bytes decoded.", bytesDecoded.sum());
+        appendMetric(stringBuilder, "child_processes_started_total", "counter", "The number of child processes started.", processesStarted.sum());
+
+        final double childCpuSeconds = readChildCpuSeconds();
+
+        if(childCpuSeconds >= 0) {
+            appendMetric(stringBuilder, "child_process_cpu_seconds_total", "counter", "The CPU time used by the child processes which have exited.", childCpuSeconds);
+        }
+
+        for(final Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            final Gauge gauge = entry.getValue();
+            appendMetric(stringBuilder, entry.getKey(), gauge.type, gauge.help, gauge.valueSupplier.getAsDouble());
+        }
+
+        final String name = PREFIX + "stage_duration_seconds";
+        stringBuilder.append("# HELP ").append(name).append(" The time taken by each stage of en/decoding.\n");
+        stringBuilder.append("# TYPE ").append(name).append(" histogram\n");
+
+        for(final Map.Entry<String, HistogramModule> entry : stageDurations.entrySet()) {
+            final HistogramModule histogram = entry.getValue();
+            final double[] bucketBounds = histogram.getBucketBounds();
+            final long[] cumulativeCounts = histogram.getCumulativeCounts();
+            final String stage = "stage=\"" + entry.getKey() + "\"";
+
+            for(int i = 0 ; i < cumulativeCounts.length ; i++) {
+                final String bound = (i < bucketBounds.length ? formatValue(bucketBounds[i]) : "+Inf");
+                stringBuilder.append(name).append("_bucket{").append(stage).append(",le=\"").append(bound).append("\"} ").append(cumulativeCounts[i]).append('\n');
+            }
+
+            stringBuilder.append(name).append("_sum{").append(stage).append("} ").append(formatValue(histogram.getSum())).append('\n');
+            stringBuilder.append(name).append("_count{").append(stage).append("} ").append(cumulativeCounts[cumulativeCounts.length - 1]).append('\n');
+        }
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Appends a metric, with its description and type, in Prometheus' text
+     * format.
+     *
+     * @param stringBuilder
+     *         The builder to append to.
+     *
+     * @param name
+     *         The name of the metric, without the prefix.
+     *
+     * @param type
+     *         The type of the metric.
+     *
+     * @param help
+     *         The description of the metric.
+     *
+     * @param value
+     *         The value of the metric.
+     */
+    private static void appendMetric(final StringBuilder stringBuilder, final String name, final String type, final String help, final double value) {
+        stringBuilder.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        stringBuilder.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+        stringBuilder.append(PREFIX).append(name).append(' ').append(formatValue(value)).append('\n');
+    }
+
+    /**
+     * Formats a value, without a fraction when it's a whole number.
+     *
+     * @param value
+     *         The value.
+     *
+     * @return
+     *         The formatted value.
+     */
+    private static String formatValue(final double value) {
+        if(value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+
+        return Double.toString(value);
+    }
+
+    /**
+     * Reads the CPU time used by this program's child processes which have
+     * exited, from Linux's record of this process.
+     *
+     * @return
+     *         The CPU time, in seconds, or -1 if it's unavailable.
+     */
+    private static double readChildCpuSeconds() {
+        final File file = new File("/proc/self/stat");
+
+        if(! file.exists()) {
+            return -1;
+        }
+
+        try {
+            final String stat = new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII);
+
+            // The fields after the program's name, which may contain spaces, begin with the state, the 3rd field:
+            final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            final long childUserTicks = Long.parseLong(fields[16 - 3]);
+            final long childSystemTicks = Long.parseLong(fields[17 - 3]);
+
+            return (childUserTicks + childSystemTicks) / CLOCK_TICKS_PER_SECOND;
+        } catch(final IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /** A metric whose value is read when the metrics are served. */
+    private static class Gauge {
+        /** The type of the metric. */
+        private final String type;
+        /** The description of the metric. */
+        private final String help;
+        /** The supplier of the metric's value. */
+        private final DoubleSupplier valueSupplier;
+
+        /**
+         * Constructs a new Gauge.
+         *
+         * @param type
+         *         The type of the metric.
+         *
+         * @param help
+         *         The description of the metric.
+         *
+         * @param valueSupplier
+         *         The supplier of the metric's value.
+         */
+        private Gauge(final String type, final String help, final DoubleSupplier valueSupplier) {
+            this.type = type;
+            this.help = help;
+            this.valueSupplier = valueSupplier;
+        }
+    }
+}
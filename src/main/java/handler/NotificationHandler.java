@@ -0,0 +1,37 @@
+package handler;
+
+import eu.hansolo.enzo.notification.Notification;
+
+import java.util.function.BiConsumer;
+
+public class NotificationHandler {
+    /**
+     * The consumer of the title and message of each error, which shows them
+     * as a notification on the screen, unless it has been replaced.
+     */
+    private static volatile BiConsumer<String, String> errorConsumer = (title, message) -> Notification.Notifier.INSTANCE.notifyError(title, message);
+
+    /**
+     * Notifies the user of an error.
+     *
+     * @param title
+     *         The title of the error.
+     *
+     * @param message
+     *         The message of the error.
+     */
+    public static void notifyError(final String title, final String message) {
+        errorConsumer.accept(title, message);
+    }
+
+    /**
+     * Sets the consumer of the title and message of each error, such as when
+     * there's no screen to show the errors on.
+     *
+     * @param errorConsumer
+     *         The consumer.
+     */
+    public static void setErrorConsumer(final BiConsumer<String, String> errorConsumer) {
+        NotificationHandler.errorConsumer = errorConsumer;
+    }
+}
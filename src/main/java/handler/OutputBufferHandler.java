@@ -0,0 +1,153 @@
+package handler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ObjIntConsumer;
+
+public class OutputBufferHandler {
+    /** The lines which have been appended, but not yet drained. */
+    private final AtomicReferenceArray<String> lines;
+    /** The tag of the Job that output each line, which is published along with the line by its sequence number. */
+    private final int[] jobTags;
+    /**
+     * The sequence number of each slot of the buffer.
+     *
+     * A slot can be written when its sequence number equals the position of
+     * the writer, and can be drained when it's one past the position of the
+     * drainer, so that writers and the drainer never need to lock.
+     */
+    private final AtomicLongArray sequences;
+    /** The mask which converts a position into the index of a slot. */
+    private final int mask;
+
+    /** The position at which the next line will be written. */
+    private final AtomicLong writePosition = new AtomicLong();
+    /** The position from which the next line will be drained. Only changed by the drainer. */
+    private volatile long drainPosition = 0;
+
+    /** The number of lines which were dropped, as the buffer was full, since the last drain. */
+    private final AtomicLong recentlyDroppedLines = new AtomicLong();
+    /** The number of lines which have been dropped, as the buffer was full, since the buffer was made. */
+    private final AtomicLong totalDroppedLines = new AtomicLong();
+
+    /**
+     * Constructs a new OutputBufferHandler.
+     *
+     * @param capacity
+     *         The maximum number of lines to hold between drains. This is
+     *         rounded up to the next power of two.
+     */
+    public OutputBufferHandler(final int capacity) {
+        final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        lines = new AtomicReferenceArray<>(size);
+        jobTags = new int[size];
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+
+        for(int i = 0 ; i < size ; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Appends the specified line to the buffer, without blocking.
+     *
+     * Any number of threads may append at once. If the buffer is full, then
+     * the line is dropped and counted, so a program that outputs faster than
+     * the lines can be displayed is never slowed down.
+     *
+     * @param line
+     *         The line.
+     *
+     * @param jobTag
+     *         The tag of the Job that output the line, or -1 if no Job did.
+     *
+     * @return
+     *         Whether or not the line was appended.
+     */
+    public boolean append(final String line, final int jobTag) {
+        long position = writePosition.get();
+
+        while(true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - position;
+
+            if(difference == 0) {
+                if(writePosition.compareAndSet(position, position + 1)) {
+                    lines.set(index, line);
+                    jobTags[index] = jobTag;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+
+                position = writePosition.get();
+            } else if(difference < 0) {
+                recentlyDroppedLines.incrementAndGet();
+                totalDroppedLines.incrementAndGet();
+                return false;
+            } else {
+                position = writePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Drains up to the specified number of lines from the buffer into the
+     * specified consumer, along with the tag of the Job that output each
+     * line.
+     *
+     * If any lines were dropped since the last drain, then a line noting how
+     * many were dropped is drained first, without a Job.
+     *
+     * Only one thread may drain at a time.
+     *
+     * @param lineConsumer
+     *         The consumer of each line and its Job's tag.
+     *
+     * @param maxLines
+     *         The maximum number of lines to drain.
+     *
+     * @return
+     *         The number of lines that were drained.
+     */
+    public int drainTo(final ObjIntConsumer<String> lineConsumer, final int maxLines) {
+        final long droppedLines = recentlyDroppedLines.getAndSet(0);
+
+        if(droppedLines > 0) {
+            lineConsumer.accept("[" + droppedLines + " line(s) of output were dropped, as they were output faster than they could be displayed.]", -1);
+        }
+
+        int drainedLines = 0;
+
+        while(drainedLines < maxLines) {
+            final int index = (int) (drainPosition & mask);
+
+            // The slot hasn't been written yet:
+            if(sequences.get(index) != drainPosition + 1) {
+                break;
+            }
+
+            lineConsumer.accept(lines.get(index), jobTags[index]);
+
+            lines.set(index, null);
+            sequences.set(index, drainPosition + mask + 1);
+
+            drainPosition++;
+            drainedLines++;
+        }
+
+        return drainedLines;
+    }
+
+    /** @return The number of lines which have been appended, but not yet drained. */
+    public long getBacklog() {
+        return Math.max(0, writePosition.get() - drainPosition);
+    }
+
+    /** @return The number of lines which have been dropped, as the buffer was full, since the buffer was made. */
+    public long getTotalDroppedLines() {
+        return totalDroppedLines.get();
+    }
+}
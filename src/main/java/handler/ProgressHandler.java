@@ -0,0 +1,189 @@
+package handler;
+
+import module.ProgressStatisticsModule;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ProgressHandler implements Consumer<String> {
+    /** The options which tell ffmpeg to write its machine-readable progress to its standard error, in place of its human-readable statistics. */
+    public static final String PROGRESS_OPTIONS = "-progress pipe:2 -nostats";
+
+    /** Matches each key=value line of ffmpeg's progress output. */
+    private static final Pattern PATTERN_PROGRESS = Pattern.compile("^(frame|fps|stream_\\d+_\\d+_q|bitrate|total_size|out_time|out_time_us|out_time_ms|dup_frames|drop_frames|speed|progress)=(.*)$");
+    /** Matches the line which names each of ffmpeg's input files. */
+    private static final Pattern PATTERN_INPUT = Pattern.compile("^Input #\\d+, .*, from '(.*)':$");
+    /** Matches the line which gives the duration of ffmpeg's current input file. */
+    private static final Pattern PATTERN_DURATION = Pattern.compile("^\\s*Duration: (\\d+):(\\d+):(\\d+(?:\\.\\d+)?),");
+
+    /** The module in which to record the progress of the Job. */
+    private final ProgressStatisticsModule progressModule;
+    /** The handler to give throughput samples to. */
+    private final StatisticsHandler statisticsHandler;
+    /** Whether or not the Job is an Encode Job. */
+    private final boolean isEncodeJob;
+    /** The consumer of each line which isn't part of ffmpeg's progress output. */
+    private final Consumer<String> outputConsumer;
+
+    /** The size, in bytes, of the payload held by each frame. */
+    private final int frameSize;
+    /** The number of frames per second of the encoded videos. */
+    private final int framerate;
+
+    /**
+     * The state of each ffmpeg process being read, by the thread reading it.
+     *
+     * Each process is read by a single thread, so the lines of concurrent
+     * processes can be told apart without changing how they're read.
+     */
+    private final Map<Thread, ProcessState> processStates = new ConcurrentHashMap<>();
+    /** The input files whose durations have been counted, so a file read by many Segments is only counted once. */
+    private final Set<String> countedInputs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructs a new ProgressHandler.
+     *
+     * @param configHandler
+     *         The settings containing the frame size and framerate.
+     *
+     * @param progressModule
+     *         The module in which to record the progress of the Job.
+     *
+     * @param statisticsHandler
+     *         The handler to give throughput samples to.
+     *
+     * @param isEncodeJob
+     *         Whether or not the Job is an Encode Job. If not, then the
+     *         expected size of the Job is found from the durations of the
+     *         videos being decoded.
+     *
+     * @param outputConsumer
+     *         The consumer of each line which isn't part of ffmpeg's progress
+     *         output.
+     */
+    public ProgressHandler(final ConfigHandler configHandler, final ProgressStatisticsModule progressModule, final StatisticsHandler statisticsHandler, final boolean isEncodeJob, final Consumer<String> outputConsumer) {
+        this.progressModule = progressModule;
+        this.statisticsHandler = statisticsHandler;
+        this.isEncodeJob = isEncodeJob;
+        this.outputConsumer = outputConsumer;
+
+        frameSize = configHandler.getFrameSize();
+        framerate = configHandler.getEncodedFramerate();
+    }
+
+    /**
+     * Parses the specified line of ffmpeg's output.
+     *
+     * Progress lines are recorded and dropped, while every other line is
+     * passed on to the output consumer.
+     *
+     * @param line
+     *         The line.
+     */
+    @Override
+    public void accept(final String line) {
+        final Matcher progressMatcher = PATTERN_PROGRESS.matcher(line);
+
+        if(progressMatcher.matches()) {
+            parseProgress(progressMatcher.group(1), progressMatcher.group(2).trim());
+            return;
+        }
+
+        if(! isEncodeJob) {
+            parseInput(line);
+        }
+
+        outputConsumer.accept(line);
+    }
+
+    /**
+     * Parses a key=value line of ffmpeg's progress output.
+     *
+     * ffmpeg writes its progress as blocks of key=value lines, each ending
+     * with a progress line, so the frames are only recorded once the block
+     * is complete.
+     *
+     * @param key
+     *         The key.
+     *
+     * @param value
+     *         The value.
+     */
+    private void parseProgress(final String key, final String value) {
+        final ProcessState state = processStates.computeIfAbsent(Thread.currentThread(), thread -> new ProcessState());
+
+        switch(key) {
+            case "frame": {
+                try {
+                    state.frame = Long.parseLong(value);
+                } catch(final NumberFormatException e) {
+                    // The value is unknown, so the last known frame is kept.
+                }
+                break;
+            }
+            case "progress": {
+                // A lower frame than last time means that a new process is being read by the same thread:
+                final long newFrames = (state.frame < state.reportedFrame ? state.frame : state.frame - state.reportedFrame);
+                state.reportedFrame = state.frame;
+
+                progressModule.recordProcessedBytes(newFrames * frameSize);
+                MetricsHandler.recordBytesProcessed(isEncodeJob, newFrames * frameSize);
+
+                final ProgressStatisticsModule.Sample sample = progressModule.pollSample(false);
+
+                if(sample != null) {
+                    statisticsHandler.recordData(isEncodeJob, sample.getBytes(), sample.getDurationNanos(), true);
+                }
+
+                if("end".equals(value)) {
+                    processStates.remove(Thread.currentThread());
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Parses a line that may name one of ffmpeg's input files, or give the
+     * duration of the current input file, so that the expected size of a
+     * decode can be found.
+     *
+     * @param line
+     *         The line.
+     */
+    private void parseInput(final String line) {
+        final Matcher inputMatcher = PATTERN_INPUT.matcher(line);
+
+        if(inputMatcher.matches()) {
+            processStates.computeIfAbsent(Thread.currentThread(), thread -> new ProcessState()).input = inputMatcher.group(1);
+            return;
+        }
+
+        final Matcher durationMatcher = PATTERN_DURATION.matcher(line);
+
+        if(durationMatcher.find()) {
+            final ProcessState state = processStates.get(Thread.currentThread());
+
+            if(state == null || state.input == null || ! countedInputs.add(state.input)) {
+                return;
+            }
+
+            final double seconds = (Long.parseLong(durationMatcher.group(1)) * 3600) + (Long.parseLong(durationMatcher.group(2)) * 60) + Double.parseDouble(durationMatcher.group(3));
+            progressModule.addExpectedBytes(Math.round(seconds * framerate) * frameSize);
+        }
+    }
+
+    /** The state of a single ffmpeg process. */
+    private static class ProcessState {
+        /** The input file that the process is reading, if it has been named. */
+        private String input;
+        /** The number of frames that the process has output, as of the current block of progress. */
+        private long frame = 0;
+        /** The number of frames that the process had output, as of the last recorded block of progress. */
+        private long reportedFrame = 0;
+    }
+}
@@ -0,0 +1,154 @@
+package handler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+public class RasterOutputStream extends OutputStream {
+    /** The value of a luma sample for a set bit. */
+    private static final byte VALUE_SET = (byte) 255;
+    /** The value of a luma sample for an unset bit. */
+    private static final byte VALUE_UNSET = (byte) 0;
+    /** The value of every chroma sample, so that each frame is gray. */
+    private static final byte VALUE_CHROMA = (byte) 128;
+
+    /** The stream to write the rasterized frames to. */
+    private final OutputStream outputStream;
+
+    /** The width, in pixels, of each frame. */
+    private final int width;
+    /** The height, in pixels, of each frame. */
+    private final int height;
+    /** The width/height, in pixels, of each macroblock. */
+    private final int macroBlockDimensions;
+    /** The number of macroblocks in each row of a frame. */
+    private final int blocksPerRow;
+    /** The number of payload bits held by each frame. */
+    private final int bitsPerFrame;
+
+    /** The payload of the frame currently being filled. */
+    private final byte[] payload;
+    /** The number of payload bytes of the current frame that have been filled. */
+    private int payloadLength = 0;
+
+    /** The yuv420p frame, which is reused for every frame. */
+    private final byte[] frame;
+    /** A single row of luma samples, which is reused for every row of macroblocks. */
+    private final byte[] row;
+
+    /**
+     * Constructs a new RasterOutputStream.
+     *
+     * @param outputStream
+     *         The stream to write the rasterized frames to.
+     *
+     * @param configHandler
+     *         The settings containing the resolution, macroblock size and frame size.
+     */
+    public RasterOutputStream(final OutputStream outputStream, final ConfigHandler configHandler) {
+        this.outputStream = outputStream;
+
+        width = configHandler.getEncodedVideoWidth();
+        height = configHandler.getEncodedVideoHeight();
+        macroBlockDimensions = configHandler.getMacroBlockDimensions();
+        blocksPerRow = width / macroBlockDimensions;
+
+        payload = new byte[configHandler.getFrameSize()];
+        bitsPerFrame = payload.length * Byte.SIZE;
+
+        // The chroma planes never change, so they're only filled once:
+        final int lumaSize = width * height;
+        final int chromaSize = ((width + 1) / 2) * ((height + 1) / 2);
+
+        frame = new byte[lumaSize + (2 * chromaSize)];
+        Arrays.fill(frame, lumaSize, frame.length, VALUE_CHROMA);
+
+        row = new byte[width];
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        payload[payloadLength++] = (byte) b;
+
+        if(payloadLength == payload.length) {
+            writeFrame();
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        while(len > 0) {
+            final int count = Math.min(len, payload.length - payloadLength);
+            System.arraycopy(b, off, payload, payloadLength, count);
+
+            payloadLength += count;
+            off += count;
+            len -= count;
+
+            if(payloadLength == payload.length) {
+                writeFrame();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        outputStream.flush();
+    }
+
+    /**
+     * Writes any partially filled frame, padded with zeros, then closes the
+     * underlying stream.
+     *
+     * @throws IOException
+     *         If the frame cannot be written, or the stream cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if(payloadLength > 0) {
+                Arrays.fill(payload, payloadLength, payload.length, (byte) 0);
+                writeFrame();
+            }
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Rasterizes the current payload into the frame, with each bit becoming
+     * one macroblock, then writes the frame to the underlying stream.
+     *
+     * The bits are read most-significant first and placed left-to-right,
+     * top-to-bottom, matching the layout of ffmpeg's monob pixel format.
+     *
+     * @throws IOException
+     *         If the frame cannot be written.
+     */
+    private void writeFrame() throws IOException {
+        int bitIndex = 0;
+        int lumaOffset = 0;
+
+        for(int blockRow = 0 ; blockRow < height / macroBlockDimensions ; blockRow++) {
+            Arrays.fill(row, VALUE_UNSET);
+
+            for(int blockColumn = 0 ; blockColumn < blocksPerRow && bitIndex < bitsPerFrame ; blockColumn++, bitIndex++) {
+                if(((payload[bitIndex >>> 3] >>> (7 - (bitIndex & 7))) & 1) == 1) {
+                    final int start = blockColumn * macroBlockDimensions;
+                    Arrays.fill(row, start, start + macroBlockDimensions, VALUE_SET);
+                }
+            }
+
+            for(int i = 0 ; i < macroBlockDimensions ; i++) {
+                System.arraycopy(row, 0, frame, lumaOffset, width);
+                lumaOffset += width;
+            }
+        }
+
+        // Any rows left over beneath the last full row of macroblocks are unset:
+        Arrays.fill(frame, lumaOffset, width * height, VALUE_UNSET);
+
+        outputStream.write(frame);
+        payloadLength = 0;
+    }
+}
@@ -0,0 +1,703 @@
+package handler;
+
+import misc.Segment;
+import module.ContentHashModule;
+import module.PipeStatisticsModule;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SegmentHandler {
+    /** The fewest frames that a Segment can contain. Anything smaller costs more in process startup than it saves. */
+    public static final long MINIMUM_FRAMES_PER_SEGMENT = 300;
+
+    /** The size of the buffer used to move decoded bytes from each ffmpeg process to the output file. */
+    private static final int DECODE_BUFFER_SIZE = 1 << 20;
+
+    /** The pattern used to find the frame count within ffmpeg's progress output. */
+    private static final Pattern PATTERN_FRAME_COUNT = Pattern.compile("frame=\\s*(\\d+)");
+
+    /**
+     * Determines the number of Segments to split the specified file into
+     * when encoding.
+     *
+     * @param configHandler
+     *         The settings to use when encoding the file.
+     *
+     * @param fileSize
+     *         The size, in bytes, of the padded file.
+     *
+     * @return
+     *         The number of Segments to split the file into.
+     */
+    public static int calculateSegmentCount(final ConfigHandler configHandler, final long fileSize) {
+        final long totalFrames = fileSize / configHandler.getFrameSize();
+        final long maxSegments = Math.max(1, totalFrames / MINIMUM_FRAMES_PER_SEGMENT);
+        return (int) Math.max(1, Math.min(configHandler.getEncodeSegments(), maxSegments));
+    }
+
+    /**
+     * Splits the specified number of frames into a number of Segments of
+     * near-equal length.
+     *
+     * @param totalFrames
+     *         The total number of frames.
+     *
+     * @param segmentCount
+     *         The number of Segments to split the frames into.
+     *
+     * @return
+     *         The Segments, in order.
+     */
+    public static List<Segment> splitFrames(final long totalFrames, final int segmentCount) {
+        final List<Segment> segments = new ArrayList<>(segmentCount);
+
+        final long framesPerSegment = totalFrames / segmentCount;
+        final long leftoverFrames = totalFrames % segmentCount;
+
+        long firstFrame = 0;
+
+        for(int i = 0 ; i < segmentCount ; i++) {
+            // Spread the leftover frames across the first few Segments:
+            final long frameCount = framesPerSegment + (i < leftoverFrames ? 1 : 0);
+
+            if(frameCount > 0) {
+                segments.add(new Segment(i, firstFrame, frameCount));
+            }
+
+            firstFrame += frameCount;
+        }
+
+        return segments;
+    }
+
+    /**
+     * Splits the specified number of frames into Segments of a fixed length,
+     * with the last Segment holding whatever frames are left over.
+     *
+     * @param totalFrames
+     *         The total number of frames.
+     *
+     * @param framesPerSegment
+     *         The number of frames in each Segment.
+     *
+     * @return
+     *         The Segments, in order.
+     */
+    public static List<Segment> splitFramesBySize(final long totalFrames, final long framesPerSegment) {
+        final List<Segment> segments = new ArrayList<>();
+
+        for(long firstFrame = 0 ; firstFrame < totalFrames ; firstFrame += framesPerSegment) {
+            segments.add(new Segment(segments.size(), firstFrame, Math.min(framesPerSegment, totalFrames - firstFrame)));
+        }
+
+        return segments;
+    }
+
+    /**
+     * Encodes the specified file by splitting it, at exact frame boundaries,
+     * into a number of Segments, encoding each Segment with its own ffmpeg
+     * process, then losslessly joining the encoded Segments with ffmpeg's
+     * concat demuxer.
+     *
+     * @param configHandler
+     *         The settings to use when encoding the file.
+     *
+     * @param file
+     *         The file to encode.
+     *
+     * @param outputDirectory
+     *         The directory in which to place the encoded file.
+     *
+     * @param segmentCount
+     *         The number of Segments to split the file into.
+     *
+     * @param isStreamed
+     *         Whether each Segment should be streamed into ffmpeg, with the
+     *         padding synthesized, or whether ffmpeg should read the Segment
+     *         from the already padded file.
+     *
+     * @param outputConsumer
+     *         The consumer of each command that's run and of each line that
+     *         the commands output.
+     *
+     * @return
+     *         Whether or not the file was encoded.
+     */
+    public static boolean encode(final ConfigHandler configHandler, final File file, final String outputDirectory, final int segmentCount, final boolean isStreamed, final Consumer<String> outputConsumer) {
+        return encode(configHandler, file, outputDirectory, segmentCount, isStreamed, outputConsumer, null);
+    }
+
+    /**
+     * Encodes the specified file by splitting it into a number of Segments,
+     * as above, while hashing the blocks of the file that each streamed
+     * Segment reads.
+     *
+     * @param configHandler
+     *         The settings to use when encoding the file.
+     *
+     * @param file
+     *         The file to encode.
+     *
+     * @param outputDirectory
+     *         The directory in which to place the encoded file.
+     *
+     * @param segmentCount
+     *         The number of Segments to split the file into.
+     *
+     * @param isStreamed
+     *         Whether each Segment should be streamed into ffmpeg, with the
+     *         padding synthesized, or whether ffmpeg should read the Segment
+     *         from the already padded file.
+     *
+     * @param outputConsumer
+     *         The consumer of each command that's run and of each line that
+     *         the commands output.
+     *
+     * @param contentHash
+     *         The content hash to update with the blocks read from the file,
+     *         or null to skip hashing. Nothing is hashed unless the Segments
+     *         are streamed.
+     *
+     * @return
+     *         Whether or not the file was encoded.
+     */
+    public static boolean encode(final ConfigHandler configHandler, final File file, final String outputDirectory, final int segmentCount, final boolean isStreamed, final Consumer<String> outputConsumer, final ContentHashModule contentHash) {
+        final String baseName = outputDirectory + FilenameUtils.getBaseName(file.getName());
+        final long paddedLength = (isStreamed ? StreamHandler.calculatePaddedLength(file.length(), configHandler.getFrameSize()) : file.length());
+        final List<Segment> segments = splitFrames(paddedLength / configHandler.getFrameSize(), segmentCount);
+
+        final List<File> segmentFiles = new ArrayList<>(segments.size());
+
+        for(final Segment segment : segments) {
+            segmentFiles.add(createSegmentFile(configHandler, baseName, segment.getIndex()));
+        }
+
+        // Share the ffmpeg threads of the Job between the Segments:
+        final int threadsPerSegment = Math.max(1, configHandler.getFfmpegThreadsPerJob() / segments.size());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(segments.size(), runnable -> {
+            final Thread thread = new Thread(runnable, "Segment Runner - " + file.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final List<Future<Boolean>> futures = new ArrayList<>(segments.size());
+
+        for(int i = 0 ; i < segments.size() ; i++) {
+            final Segment segment = segments.get(i);
+            final String command = createSegmentEncodeCommand(configHandler, file, segment, segmentFiles.get(i), threadsPerSegment, isStreamed);
+            outputConsumer.accept(command);
+
+            if(isStreamed) {
+                futures.add(executor.submit(() -> {
+                    final PipeStatisticsModule statisticsModule = new PipeStatisticsModule();
+                    final long frameSize = configHandler.getFrameSize();
+
+                    final boolean wasSegmentEncoded = StreamHandler.streamFileToProgram(configHandler, command, file, segment.getByteOffset(frameSize), segment.getByteLength(frameSize), statisticsModule, outputConsumer, contentHash);
+                    outputConsumer.accept(statisticsModule.toString());
+                    return wasSegmentEncoded;
+                }));
+            } else {
+                futures.add(executor.submit(() -> runProgram(command, outputConsumer)));
+            }
+        }
+
+        executor.shutdown();
+
+        boolean wereSegmentsEncoded = true;
+
+        for(final Future<Boolean> future : futures) {
+            try {
+                wereSegmentsEncoded &= future.get();
+            } catch(final InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                wereSegmentsEncoded = false;
+                break;
+            } catch(final ExecutionException e) {
+                final Logger logger = LogManager.getLogger();
+                logger.error(e.getCause());
+
+                wereSegmentsEncoded = false;
+            }
+        }
+
+        for(final File segmentFile : segmentFiles) {
+            wereSegmentsEncoded &= segmentFile.length() > 0;
+        }
+
+        // Join the Segments:
+        final File listFile = createListFile(baseName);
+        final File outputFile = new File(baseName + "." + configHandler.getEncodeFormat());
+
+        boolean wasFileEncoded = false;
+
+        if(wereSegmentsEncoded) {
+            try {
+                writeConcatList(segmentFiles, listFile);
+
+                final String command = createConcatCommand(configHandler, listFile, outputFile);
+                outputConsumer.accept(command);
+                wasFileEncoded = runProgram(command, outputConsumer);
+            } catch(final IOException e) {
+                final Logger logger = LogManager.getLogger();
+                logger.error(e);
+            }
+        } else {
+            final Logger logger = LogManager.getLogger();
+            logger.error("Unable to encode every segment of " + file.getAbsolutePath() + ".");
+        }
+
+        // Delete leftovers:
+        segmentFiles.forEach(File::delete);
+        listFile.delete();
+
+        return wasFileEncoded;
+    }
+
+    /**
+     * Lists every temporary file that encoding the specified output in
+     * Segments may write.
+     *
+     * @param configHandler
+     *         The settings to use when encoding.
+     *
+     * @param baseName
+     *         The path, without an extension, of the encoded file.
+     *
+     * @return
+     *         The temporary files.
+     */
+    public static List<File> listTemporaryFiles(final ConfigHandler configHandler, final String baseName) {
+        final List<File> files = new ArrayList<>();
+
+        for(int i = 0 ; i < configHandler.getEncodeSegments() ; i++) {
+            files.add(createSegmentFile(configHandler, baseName, i));
+        }
+
+        files.add(createListFile(baseName));
+        return files;
+    }
+
+    /**
+     * Constructs the file to encode a Segment to.
+     *
+     * @param configHandler
+     *         The settings to use when encoding.
+     *
+     * @param baseName
+     *         The path, without an extension, of the encoded file.
+     *
+     * @param index
+     *         The index of the Segment.
+     *
+     * @return
+     *         The file.
+     */
+    private static File createSegmentFile(final ConfigHandler configHandler, final String baseName, final int index) {
+        return new File(baseName + ".segment" + index + "." + configHandler.getEncodeFormat());
+    }
+
+    /**
+     * Constructs the file which lists the encoded Segments for the concat demuxer.
+     *
+     * @param baseName
+     *         The path, without an extension, of the encoded file.
+     *
+     * @return
+     *         The file.
+     */
+    private static File createListFile(final String baseName) {
+        return new File(baseName + ".segments.txt");
+    }
+
+    /**
+     * Runs the specified command, waiting for it to exit.
+     *
+     * @param command
+     *         The command to execute.
+     *
+     * @param outputConsumer
+     *         The consumer of each line that the program outputs.
+     *
+     * @return
+     *         Whether or not the program exited normally.
+     */
+    static boolean runProgram(final String command, final Consumer<String> outputConsumer) {
+        try {
+            final Process process = CommandHandler.startProgram(command, outputConsumer);
+            process.getOutputStream().close();
+
+            StreamHandler.drainOutput(process, outputConsumer);
+            return process.waitFor() == 0;
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+            return false;
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Constructs the command to encode a single Segment of a file.
+     *
+     * @param configHandler
+     *         The settings to use when encoding the Segment.
+     *
+     * @param file
+     *         The file that the Segment belongs to.
+     *
+     * @param segment
+     *         The Segment to encode.
+     *
+     * @param outputFile
+     *         The file to encode the Segment to.
+     *
+     * @param threads
+     *         The number of threads that ffmpeg should use.
+     *
+     * @param isStreamed
+     *         Whether ffmpeg should read the Segment from its standard input,
+     *         or from its offset within the padded file.
+     *
+     * @return
+     *         The command.
+     */
+    public static String createSegmentEncodeCommand(final ConfigHandler configHandler, final File file, final Segment segment, final File outputFile, final int threads, final boolean isStreamed) {
+        final StringBuilder stringBuilder = new StringBuilder();
+        final Formatter formatter = new Formatter(stringBuilder, Locale.US);
+
+        final boolean isRasterized = isStreamed && configHandler.isRasterizeFrames();
+
+        formatter.format("\"%s\" %s -skip_initial_bytes %d %s -i \"%s\" -frames:v %d %s -c:v %s -threads %d -loglevel %s -y \"%s\"",
+                configHandler.getFfmpegPath(),
+                ProgressHandler.PROGRESS_OPTIONS,
+                (isStreamed ? 0 : segment.getByteOffset(configHandler.getFrameSize())),
+                FFMPEGHandler.createRawInputOptions(configHandler, isRasterized),
+                (isStreamed ? "-" : file.getAbsolutePath()),
+                segment.getFrameCount(),
+                FFMPEGHandler.createScaleOptions(configHandler, isRasterized),
+                configHandler.getEncodingLibrary(),
+                threads,
+                configHandler.getFfmpegLogLevel(),
+                outputFile.getAbsolutePath());
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Constructs the command to losslessly join a number of encoded Segments
+     * using ffmpeg's concat demuxer.
+     *
+     * @param configHandler
+     *         The settings that the Segments were encoded with.
+     *
+     * @param listFile
+     *         The file listing each encoded Segment, in order.
+     *
+     * @param outputFile
+     *         The file to write the joined Segments to.
+     *
+     * @return
+     *         The command.
+     */
+    public static String createConcatCommand(final ConfigHandler configHandler, final File listFile, final File outputFile) {
+        final StringBuilder stringBuilder = new StringBuilder();
+        final Formatter formatter = new Formatter(stringBuilder, Locale.US);
+
+        formatter.format("\"%s\" -f concat -safe 0 -i \"%s\" -c copy -loglevel %s -y \"%s\"",
+                configHandler.getFfmpegPath(),
+                listFile.getAbsolutePath(),
+                configHandler.getFfmpegLogLevel(),
+                outputFile.getAbsolutePath());
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Writes the list of files to be read by ffmpeg's concat demuxer.
+     *
+     * @param files
+     *         The files to list, in order.
+     *
+     * @param listFile
+     *         The file to write the list to.
+     *
+     * @throws IOException
+     *         If the list cannot be written.
+     */
+    public static void writeConcatList(final List<File> files, final File listFile) throws IOException {
+        try (
+            final PrintWriter printWriter = new PrintWriter(listFile, StandardCharsets.UTF_8.name());
+        ) {
+            for(final File file : files) {
+                // Single quotes within the path must be escaped for the concat demuxer:
+                final String path = file.getAbsolutePath().replace("'", "'\\''");
+                printWriter.append("file '").append(path).append("'").append(System.lineSeparator());
+            }
+
+            if(printWriter.checkError()) {
+                throw new IOException("Unable to write " + listFile.getAbsolutePath() + ".");
+            }
+        }
+    }
+
+    /**
+     * Decodes the specified file by splitting it, by frame index, into a
+     * number of Segments, decoding each Segment with its own ffmpeg process,
+     * and writing the output of each process directly to its offset within
+     * the decoded file.
+     *
+     * @param configHandler
+     *         The settings to use when decoding the file.
+     *
+     * @param file
+     *         The file to decode.
+     *
+     * @param outputDirectory
+     *         The directory in which to place the decoded file.
+     *
+     * @param segmentCount
+     *         The number of Segments to split the file into.
+     *
+     * @param outputConsumer
+     *         The consumer of each command that's run and of each line that
+     *         the commands output.
+     *
+     * @return
+     *         Whether or not the file was decoded.
+     */
+    public static boolean decode(final ConfigHandler configHandler, final File file, final String outputDirectory, final int segmentCount, final Consumer<String> outputConsumer) {
+        final long totalFrames = countFrames(configHandler, file);
+
+        if(totalFrames < 1) {
+            final Logger logger = LogManager.getLogger();
+            logger.error("Unable to count the frames of " + file.getAbsolutePath() + ".");
+            return false;
+        }
+
+        final int usableSegments = (int) Math.max(1, Math.min(segmentCount, totalFrames / MINIMUM_FRAMES_PER_SEGMENT));
+        final List<Segment> segments = splitFrames(totalFrames, usableSegments);
+
+        final File outputFile = new File(outputDirectory + FilenameUtils.getBaseName(file.getName()) + "." + configHandler.getDecodeFormat());
+
+        try (
+            final FileChannel channel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ) {
+            final ExecutorService executor = Executors.newFixedThreadPool(segments.size(), runnable -> {
+                final Thread thread = new Thread(runnable, "Segment Runner - " + file.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            final List<Future<Boolean>> futures = new ArrayList<>(segments.size());
+
+            for(final Segment segment : segments) {
+                futures.add(executor.submit(() -> decodeSegment(configHandler, file, segment, channel, outputConsumer)));
+            }
+
+            executor.shutdown();
+
+            boolean wasFileDecoded = true;
+
+            for(final Future<Boolean> future : futures) {
+                try {
+                    wasFileDecoded &= future.get();
+                } catch(final InterruptedException e) {
+                    executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                    return false;
+                } catch(final ExecutionException e) {
+                    final Logger logger = LogManager.getLogger();
+                    logger.error(e.getCause());
+
+                    wasFileDecoded = false;
+                }
+            }
+
+            return wasFileDecoded;
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+            return false;
+        }
+    }
+
+    /**
+     * Decodes a single Segment of the specified file, writing the decoded
+     * bytes to the Segment's offset within the output channel.
+     *
+     * @param configHandler
+     *         The settings to use when decoding the Segment.
+     *
+     * @param file
+     *         The file that the Segment belongs to.
+     *
+     * @param segment
+     *         The Segment to decode.
+     *
+     * @param channel
+     *         The channel of the decoded file.
+     *
+     * @param outputConsumer
+     *         The consumer of the command that's run and of each line that
+     *         the command outputs.
+     *
+     * @return
+     *         Whether or not the Segment was fully decoded.
+     *
+     * @throws IOException
+     *         If the process cannot be started, or the output cannot be written.
+     *
+     * @throws InterruptedException
+     *         If the thread is interrupted while waiting for the process to exit.
+     */
+    private static boolean decodeSegment(final ConfigHandler configHandler, final File file, final Segment segment, final FileChannel channel, final Consumer<String> outputConsumer) throws IOException, InterruptedException {
+        final String command = createSegmentDecodeCommand(configHandler, file, segment);
+        outputConsumer.accept(command);
+
+        final Process process = CommandHandler.startProgram(command, outputConsumer);
+
+        long position = segment.getByteOffset(configHandler.getFrameSize());
+        final long endPosition = position + segment.getByteLength(configHandler.getFrameSize());
+
+        try (
+            final ReadableByteChannel inputChannel = Channels.newChannel(StreamHandler.createDecoderOutput(configHandler, process.getInputStream()));
+        ) {
+            final ByteBuffer buffer = ByteBuffer.allocate(DECODE_BUFFER_SIZE);
+
+            while(inputChannel.read(buffer) != -1) {
+                buffer.flip();
+
+                // Never write beyond the end of the Segment:
+                buffer.limit((int) Math.min(buffer.limit(), endPosition - position));
+
+                while(buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+
+                buffer.clear();
+            }
+        }
+
+        return process.waitFor() == 0 && position == endPosition;
+    }
+
+    /**
+     * Constructs the command to decode a single Segment of a file to ffmpeg's
+     * standard output.
+     *
+     * The seek position is placed half of a frame before the first frame of
+     * the Segment, so that rounding of the container's timestamps can't cause
+     * ffmpeg to skip the first frame.
+     *
+     * @param configHandler
+     *         The settings to use when decoding the Segment.
+     *
+     * @param file
+     *         The file that the Segment belongs to.
+     *
+     * @param segment
+     *         The Segment to decode.
+     *
+     * @return
+     *         The command.
+     */
+    public static String createSegmentDecodeCommand(final ConfigHandler configHandler, final File file, final Segment segment) {
+        final StringBuilder stringBuilder = new StringBuilder();
+        final Formatter formatter = new Formatter(stringBuilder, Locale.US);
+
+        final double seekPosition = Math.max(0, (segment.getFirstFrame() - 0.5) / configHandler.getEncodedFramerate());
+
+        formatter.format("\"%s\" %s -nostdin -ss %.6f -i \"%s\" -frames:v %d %s -loglevel %s -f rawvideo -",
+                configHandler.getFfmpegPath(),
+                ProgressHandler.PROGRESS_OPTIONS,
+                seekPosition,
+                file.getAbsolutePath(),
+                segment.getFrameCount(),
+                FFMPEGHandler.createDecodeFilterOptions(configHandler, configHandler.isDemodulateFrames()),
+                configHandler.getFfmpegLogLevel());
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Counts the video frames of the specified file, by having ffmpeg copy the
+     * video stream to nowhere, which reads the container without decoding any
+     * frames.
+     *
+     * @param configHandler
+     *         The settings containing the path to ffmpeg.
+     *
+     * @param file
+     *         The file whose frames are to be counted.
+     *
+     * @return
+     *         The number of frames, or 0 if they couldn't be counted.
+     */
+    public static long countFrames(final ConfigHandler configHandler, final File file) {
+        final StringBuilder stringBuilder = new StringBuilder();
+        final Formatter formatter = new Formatter(stringBuilder, Locale.US);
+
+        formatter.format("\"%s\" -nostdin -i \"%s\" -map 0:v:0 -c copy -loglevel info -stats -f null -",
+                configHandler.getFfmpegPath(),
+                file.getAbsolutePath());
+
+        long frameCount = 0;
+
+        try {
+            final ProcessBuilder builder = new ProcessBuilder(CommandHandler.splitCommand(stringBuilder.toString()));
+            builder.redirectErrorStream(true);
+            final Process process = builder.start();
+
+            try (
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            ) {
+                String line;
+                while((line = reader.readLine()) != null) {
+                    final Matcher matcher = PATTERN_FRAME_COUNT.matcher(line);
+
+                    // The final progress line holds the total:
+                    while(matcher.find()) {
+                        frameCount = Long.parseLong(matcher.group(1));
+                    }
+                }
+            }
+
+            process.waitFor();
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return frameCount;
+    }
+}
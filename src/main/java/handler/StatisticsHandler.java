@@ -1,197 +1,382 @@
 package handler;
 
-import eu.hansolo.enzo.notification.Notification;
-import lombok.Getter;
-import module.RuntimeStatisticsModule;
+import misc.DurationEstimate;
+import misc.StatisticsRecord;
+import module.ThroughputModelModule;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
 
-public class StatisticsHandler {
-    /** The number of bytes encoded, per second, across all recorded encode Jobs. */
-    @Getter private long bytesEncodedPerSecond;
-    /** The number of bytes decoded, per second, across all recorded decode Jobs. */
-    @Getter private long bytesDecodedPerSecond;
+public class StatisticsHandler implements StatisticsHandlerMXBean {
+    /** The name of the statistics store. */
+    private static final String FILENAME_STORE = "statistics.dat";
+
+    /** The settings that each record's codec, and resolution, are taken from. */
+    private final ConfigHandler configHandler;
+    /** The store in which the statistics are kept, or null if it couldn't be opened or has been closed. */
+    private volatile StatisticsStoreHandler storeHandler;
+    /** The model of the records of each profile, and of each direction, by their keys, or null if they haven't been built yet. */
+    private Map<String, ThroughputModelModule> models;
 
     /**
-     * Constructs a new StatisticsHandler and processes all of the
-     * existing statistics records.
+     * Constructs a new StatisticsHandler, opening the statistics store and
+     * importing the records of any older statistics files, within the
+     * working directory.
+     *
+     * @param configHandler
+     *         The settings that each record's codec, and resolution, are
+     *         taken from.
      */
-    public StatisticsHandler() {
-        processStatistcsFiles();
+    public StatisticsHandler(final ConfigHandler configHandler) {
+        this(configHandler, new File("."));
     }
 
     /**
-     * Reads in all existing en/decode data from the respective
-     * statistics files, averages the data, then sets the bytes
-     * en/decoded per second variables.
+     * Constructs a new StatisticsHandler, opening the statistics store and
+     * importing the records of any older statistics files, within the
+     * specified directory.
+     *
+     * Only the store's header is read, so this takes the same time however
+     * many records there are.
+     *
+     * @param configHandler
+     *         The settings that each record's codec, and resolution, are
+     *         taken from.
+     *
+     * @param directory
+     *         The directory in which the statistics are kept.
      */
-    private void processStatistcsFiles() {
-        final File file_encode = new File("statistics_encode.txt");
-        final File file_dedode = new File("statistics_decode.txt");
+    public StatisticsHandler(final ConfigHandler configHandler, final File directory) {
+        this.configHandler = configHandler;
 
-        long bytesEncodedPerSecondTotal = 0;
-        long bytesDecodedPerSecondTotal = 0;
+        try {
+            storeHandler = new StatisticsStoreHandler(new File(directory, FILENAME_STORE));
 
-        long totalEncodeRecords = 0;
-        long totalDecodeRecords = 0;
+            importTextStatistics(new File(directory, "statistics_encode.txt"), true);
+            importTextStatistics(new File(directory, "statistics_decode.txt"), false);
 
-        // Load the total amount of bytes encoded per second from all
-        // records of the statistics_encode.txt file.
-        if(file_encode.exists()) {
-            try {
-                final Scanner sc = new Scanner(new FileInputStream(file_encode));
+            MetricsHandler.registerGauge("statistics_store_records", "gauge", "The number of records in the statistics store.", storeHandler::getRecordCount);
+            MetricsHandler.registerGauge("statistics_store_bytes", "gauge", "The size of the statistics store.", this::getStoreSize);
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
 
-                while(sc.hasNextLong()) {
-                    bytesEncodedPerSecondTotal += sc.nextLong();
-                    totalEncodeRecords++;
-                }
-            } catch(final FileNotFoundException e) {
-                final String error = "Could not locate the statistics_encode.txt file.";
+            NotificationHandler.notifyError("IOException", "Please view the log file.");
+        }
+    }
 
-                final Logger logger = LogManager.getLogger();
-                logger.error(error);
+    /**
+     * Imports the records of a statistics file from an older version, which
+     * held one number of bytes per second per line, then renames the file
+     * so it isn't imported again.
+     *
+     * Each number is imported as a record of that many bytes taking one
+     * second, so the averages are unchanged. Records of 0, which were made
+     * when a file was processed in under a second, are skipped.
+     *
+     * @param file
+     *         The statistics file.
+     *
+     * @param isEncode
+     *         Whether the file holds encode, or decode, records.
+     *
+     * @throws IOException
+     *         If the file cannot be read, or the records cannot be written.
+     */
+    private void importTextStatistics(final File file, final boolean isEncode) throws IOException {
+        if(! file.exists()) {
+            return;
+        }
 
-                Notification.Notifier.INSTANCE.notifyError("Error", error);
+        final List<StatisticsRecord> records = new ArrayList<>();
+
+        try (final Scanner scanner = new Scanner(new FileInputStream(file))) {
+            while(scanner.hasNextLong()) {
+                final long bytesPerSecond = scanner.nextLong();
+
+                if(bytesPerSecond > 0) {
+                    records.add(new StatisticsRecord(file.lastModified(), isEncode, bytesPerSecond, TimeUnit.SECONDS.toNanos(1), true, "", 0, 0, 0));
+                }
             }
         }
 
-        // Load the total amount of bytes decoded per second from all
-        // records of the statistics_decode.txt file.
-        if(file_dedode.exists()) {
-            try {
-                final Scanner sc = new Scanner(new FileInputStream(file_dedode));
+        // The records are written at once, so the store is only flushed to disk once:
+        storeHandler.appendAll(records);
 
-                while(sc.hasNextLong()) {
-                    bytesDecodedPerSecondTotal += sc.nextLong();
-                    totalDecodeRecords++;
-                }
-            } catch(final FileNotFoundException e) {
-                final String error = "Could not locate the statistics_decode.txt file.";
+        if(! file.renameTo(new File(file.getPath() + ".imported"))) {
+            throw new IOException("Unable to rename " + file.getAbsolutePath() + " after importing it.");
+        }
+    }
+
+    /**
+     * Writes a record, of the specified number of bytes being en/decoded in
+     * the specified time, to the statistics store.
+     *
+     * The record also holds the codec, resolution, and macro block size of
+     * the current settings.
+     *
+     * @param isEncodeJob
+     *         Whether or not the data is from an encode or decode Job.
+     *
+     * @param bytes
+     *         The number of bytes that were en/decoded.
+     *
+     * @param durationNanos
+     *         The time, in nanoseconds, that the bytes took to en/decode.
+     *
+     * @param isWindow
+     *         Whether the data is of a window of a running en/decode, rather
+     *         than of a whole file or Job.
+     */
+    public void recordData(final boolean isEncodeJob, final long bytes, final long durationNanos, final boolean isWindow) {
+        if(storeHandler == null || bytes <= 0 || durationNanos <= 0) {
+            return;
+        }
+
+        final StatisticsRecord record = new StatisticsRecord(System.currentTimeMillis(),
+                                                             isEncodeJob,
+                                                             bytes,
+                                                             durationNanos,
+                                                             isWindow,
+                                                             configHandler.getEncodingLibrary(),
+                                                             configHandler.getEncodedVideoWidth(),
+                                                             configHandler.getEncodedVideoHeight(),
+                                                             configHandler.getMacroBlockDimensions());
+
+        try {
+            storeHandler.append(record);
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
 
-                final Logger logger = LogManager.getLogger();
-                logger.error(error);
+            NotificationHandler.notifyError("IOException", "Please view the log file.");
+            return;
+        }
 
-                Notification.Notifier.INSTANCE.notifyError("Error", error);
+        synchronized(this) {
+            if(models != null) {
+                addToModels(record);
             }
         }
+    }
+
+    @Override
+    public long getBytesEncodedPerSecond() {
+        return (storeHandler == null ? 0 : storeHandler.getBytesPerSecond(true));
+    }
 
-        // Calculate the average bytes en/decoded per second
-        // from all acquired data.
-        if(totalEncodeRecords > 0) {
-            bytesEncodedPerSecond = (bytesEncodedPerSecondTotal / totalEncodeRecords);
+    @Override
+    public long getBytesDecodedPerSecond() {
+        return (storeHandler == null ? 0 : storeHandler.getBytesPerSecond(false));
+    }
+
+    @Override
+    public long getEncodeRecordCount() {
+        return (storeHandler == null ? 0 : storeHandler.getRecordCount(true));
+    }
+
+    @Override
+    public long getDecodeRecordCount() {
+        return (storeHandler == null ? 0 : storeHandler.getRecordCount(false));
+    }
+
+    @Override
+    public long getStoreSize() {
+        try {
+            return (storeHandler == null ? 0 : storeHandler.getSize());
+        } catch(final IOException e) {
+            return -1;
+        }
+    }
+
+    /** Closes the statistics store, after which no more records are written. */
+    public synchronized void close() {
+        if(storeHandler == null) {
+            return;
         }
 
-        if(totalDecodeRecords > 0 ) {
-            bytesDecodedPerSecond = (bytesDecodedPerSecondTotal / totalDecodeRecords);
+        try {
+            storeHandler.close();
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
         }
+
+        storeHandler = null;
     }
 
     /**
-     * Calculates the amount of bytes, per second, that the specified file was processed
-     * at.
-     *
-     * If the processing speed was too fast, then 0 is returned.
+     * Estimates the time it will take for a Job, with the specified files, to
+     * either encode, or decode, based on previous data.
      *
-     * @param file
-     *         The file that was processed.
+     * @param isEncodeJob
+     *         Whether of not the Job to be run is an encode, or decode, Job.
      *
-     * @param statisticsModule
-     *         todo JavaDoc
+     * @param files
+     *         The files to be processed.
      *
      * @return
-     *         The amount of bytes, per second, that the specified file was processed at.
+     *         The estimate, which is only known if there's previous data.
      */
-    public long calculateProcessingSpeed(final File file, final RuntimeStatisticsModule statisticsModule) {
-        try {
-            long duration = statisticsModule.getElapsedTime(); // The total time that the Job ran for, in milliseconds.
-            duration /= 1000; // The total time that the Job ran for, in seconds.
+    public DurationEstimate estimateProcessingDuration(final boolean isEncodeJob, final List<File> files) {
+        long bytes = 0;
 
-            long speed = file.length() / duration; // The bytes per millisecond that were en/decoded.
-            return speed;
-        } catch(final ArithmeticException e) {
-            return 0;
+        for(final File file : files) {
+            bytes += file.length();
         }
+
+        return estimate(isEncodeJob, bytes);
     }
 
     /**
-     * Writes the specified data to either the encode, or decode, statistics
-     * file.
+     * Estimates the time it will take for a Job, with the specified number of
+     * bytes, to either encode, or decode, based on previous data.
+     *
+     * This always gives an estimate that can be compared with the estimates
+     * of other Jobs, even when there's no previous data.
      *
      * @param isEncodeJob
-     *         Whether or not the data is from an encode or decode Job.
+     *         Whether of not the Job to be run is an encode, or decode, Job.
      *
-     * @param bytesPerSecond
-     *         The bytes per second to write to the file.
+     * @param bytes
+     *         The number of bytes to be processed.
+     *
+     * @return
+     *         The amount of time, in seconds, that the Job may take.
      */
-    public void recordData(final boolean isEncodeJob, final long bytesPerSecond) {
-        // Prepare the output file:
-        final File outputFile;
-
-        if(isEncodeJob) {
-            outputFile = new File("statistics_encode.txt");
-        } else {
-            outputFile = new File("statistics_decode.txt");
-        }
+    @Override
+    public double estimateProcessingDuration(final boolean isEncodeJob, final long bytes) {
+        return estimate(isEncodeJob, bytes).getSeconds();
+    }
 
-        // Create the file if it does not exist.
-        if(! outputFile.exists()) {
-            try {
-                if(! outputFile.createNewFile()) {
-                    final String error = "Unable to create " + outputFile.getAbsolutePath() + ".";
+    /**
+     * Estimates the time it will take to either encode, or decode, the
+     * specified number of bytes with the current settings.
+     *
+     * The estimate comes from the model of previous records with the same
+     * profile as the current settings. If there are no such records, then
+     * the model of every record of the same direction is used, then the
+     * model of every record of the other direction. If there are no records
+     * at all, then the estimate is proportional to the number of bytes.
+     *
+     * @param isEncodeJob
+     *         Whether of not the bytes are to be encoded, or decoded.
+     *
+     * @param bytes
+     *         The number of bytes to be processed.
+     *
+     * @return
+     *         The estimate.
+     */
+    public synchronized DurationEstimate estimate(final boolean isEncodeJob, final long bytes) {
+        loadModels();
 
-                    final Logger logger = LogManager.getLogger();
-                    logger.error(error);
+        final String[] modelKeys = {
+            createProfileKey(isEncodeJob, configHandler.getEncodingLibrary(), configHandler.getEncodedVideoWidth(), configHandler.getEncodedVideoHeight(), configHandler.getMacroBlockDimensions()),
+            createDirectionKey(isEncodeJob),
+            createDirectionKey(! isEncodeJob)
+        };
 
-                    Notification.Notifier.INSTANCE.notifyError("Error", error);
-                }
-            } catch(final IOException e) {
-                final Logger logger = LogManager.getLogger();
-                logger.error(e);
+        for(final String modelKey : modelKeys) {
+            final ThroughputModelModule model = models.get(modelKey);
+            final DurationEstimate estimate = (model == null ? null : model.estimate(bytes));
 
-                Notification.Notifier.INSTANCE.notifyError("IOException", "Please view the log file.");
+            if(estimate != null) {
+                return estimate;
             }
         }
 
-        // Append data to the output file.
+        return new DurationEstimate(bytes, bytes, bytes, 0);
+    }
+
+    /**
+     * Builds the model of each profile, and of each direction, from every
+     * record in the statistics store, unless they've already been built.
+     *
+     * This is only done when the first estimate is made, so that starting up
+     * never reads the records.
+     */
+    private void loadModels() {
+        if(models != null) {
+            return;
+        }
+
+        models = new HashMap<>();
+
+        if(storeHandler == null) {
+            return;
+        }
+
         try {
-            final PrintWriter printWriter = new PrintWriter(new BufferedWriter(new FileWriter(outputFile, true)));
-            printWriter.append(String.valueOf(bytesPerSecond));
-            printWriter.append(System.lineSeparator());
-            printWriter.close();
+            storeHandler.forEachRecord(this::addToModels);
         } catch(final IOException e) {
             final Logger logger = LogManager.getLogger();
             logger.error(e);
 
-            Notification.Notifier.INSTANCE.notifyError("IOException", "Please view the log file.");
+            NotificationHandler.notifyError("IOException", "Please view the log file.");
         }
     }
 
     /**
-     * Estimates the time it will take for a Job, with the specified files, to
-     * either encode, or decode, based on previous data.
+     * Adds the specified record to the model of its profile, and to the
+     * model of its direction.
      *
-     * @param isEncodeJob
-     *         Whether of not the Job to be run is an encode, or decode, Job.
+     * @param record
+     *         The record.
+     */
+    private void addToModels(final StatisticsRecord record) {
+        final double seconds = record.getDurationNanos() / 1_000_000_000.0;
+        final String profileKey = createProfileKey(record.isEncode(), record.getCodec(), record.getWidth(), record.getHeight(), record.getMacroBlockDimensions());
+
+        models.computeIfAbsent(profileKey, key -> new ThroughputModelModule()).addRecord(record.getBytes(), seconds, record.isWindow());
+        models.computeIfAbsent(createDirectionKey(record.isEncode()), key -> new ThroughputModelModule()).addRecord(record.getBytes(), seconds, record.isWindow());
+    }
+
+    /**
+     * Constructs the key of the model of the specified profile.
      *
-     * @param files
-     *         The files to be processed.
+     * @param isEncode
+     *         Whether the profile is of encodes, or decodes.
+     *
+     * @param codec
+     *         The encoding library of the profile.
+     *
+     * @param width
+     *         The width of the encoded video of the profile.
+     *
+     * @param height
+     *         The height of the encoded video of the profile.
+     *
+     * @param macroBlockDimensions
+     *         The macro block size of the profile.
      *
      * @return
-     *         The amount of time, in seconds, that the Job may take.
+     *         The key.
      */
-    public long estimateProcessingDuration(final boolean isEncodeJob, final List<File> files) {
-        final AtomicLong estimationAtm = new AtomicLong(0);
-
-        files.parallelStream()
-             .forEach(file -> estimationAtm.addAndGet(file.length()));
+    private static String createProfileKey(final boolean isEncode, final String codec, final int width, final int height, final int macroBlockDimensions) {
+        return createDirectionKey(isEncode) + "|" + codec + "|" + width + "x" + height + "|" + macroBlockDimensions;
+    }
 
-        long estimation = estimationAtm.longValue();
-        estimation /= (isEncodeJob ? bytesEncodedPerSecond : bytesDecodedPerSecond);
-        return estimation;
+    /**
+     * Constructs the key of the model of every record of the specified
+     * direction.
+     *
+     * @param isEncode
+     *         Whether the model is of encodes, or decodes.
+     *
+     * @return
+     *         The key.
+     */
+    private static String createDirectionKey(final boolean isEncode) {
+        return (isEncode ? "Encode" : "Decode");
     }
 }
@@ -0,0 +1,33 @@
+package handler;
+
+public interface StatisticsHandlerMXBean {
+    /** @return The number of bytes encoded, per second, across all recorded encodes. */
+    long getBytesEncodedPerSecond();
+
+    /** @return The number of bytes decoded, per second, across all recorded decodes. */
+    long getBytesDecodedPerSecond();
+
+    /** @return The number of encode records in the statistics store. */
+    long getEncodeRecordCount();
+
+    /** @return The number of decode records in the statistics store. */
+    long getDecodeRecordCount();
+
+    /** @return The size, in bytes, of the statistics store. */
+    long getStoreSize();
+
+    /**
+     * Estimates the time it will take for a Job, with the specified number of
+     * bytes, to either encode, or decode, based on previous data.
+     *
+     * @param isEncodeJob
+     *         Whether of not the Job to be run is an encode, or decode, Job.
+     *
+     * @param bytes
+     *         The number of bytes to be processed.
+     *
+     * @return
+     *         The amount of time, in seconds, that the Job may take.
+     */
+    double estimateProcessingDuration(final boolean isEncodeJob, final long bytes);
+}
@@ -0,0 +1,279 @@
+package handler;
+
+import misc.StatisticsRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class StatisticsStoreHandler {
+    /** The value which begins every store, so that other files aren't mistaken for one. */
+    private static final int MAGIC = 0x53535453;
+    /** The version of the store's layout. */
+    private static final int VERSION = 1;
+
+    /** The size, in bytes, of the header which begins the store. */
+    private static final int HEADER_SIZE = 128;
+    /** The size, in bytes, of each record. */
+    private static final int RECORD_SIZE = 64;
+    /** The maximum length, in bytes, of each record's codec. */
+    private static final int CODEC_SIZE = 26;
+    /** The flag, of each record, which is set if the record is of an encode. */
+    private static final int FLAG_ENCODE = 1;
+    /**
+     * The flag, of each record, which is set if the record is of a window of
+     * a running en/decode. Stores written before the flag existed never set
+     * it, so they can still be read.
+     */
+    private static final int FLAG_WINDOW = 2;
+    /** The number of records mapped at once when reading the records. */
+    private static final int RECORDS_PER_MAP = 1 << 16;
+
+    /** The position, within the header, of the number of records. */
+    private static final int POSITION_RECORD_COUNT = 16;
+    /** The position, within the header, of the encode aggregates. */
+    private static final int POSITION_ENCODE_AGGREGATES = 24;
+    /** The position, within the header, of the decode aggregates. */
+    private static final int POSITION_DECODE_AGGREGATES = 48;
+
+    /** The store's file. */
+    private final FileChannel channel;
+    /**
+     * The header of the store, mapped into memory.
+     *
+     * The header holds the number of records, along with the number of
+     * records, bytes, and nanoseconds of each direction, so that the
+     * averages are known without reading any records.
+     */
+    private final MappedByteBuffer header;
+
+    /**
+     * Opens the specified store, creating it if it doesn't exist.
+     *
+     * @param file
+     *         The store's file.
+     *
+     * @throws IOException
+     *         If the store cannot be opened, or the file isn't a store.
+     */
+    public StatisticsStoreHandler(final File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        final FileLock lock = channel.lock();
+
+        try {
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+
+            if(header.getInt(0) == 0) {
+                header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_SIZE);
+                header.force();
+            } else if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != RECORD_SIZE) {
+                channel.close();
+                throw new IOException("The file " + file.getAbsolutePath() + " isn't a statistics store, or is from a different version.");
+            }
+        } finally {
+            // Closing the channel has already released the lock:
+            if(lock.isValid()) {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Appends the specified record to the store, and updates the header's
+     * aggregates.
+     *
+     * The file is locked while it's written, so any number of threads, or
+     * programs, may append to the same store at once.
+     *
+     * @param record
+     *         The record.
+     *
+     * @throws IOException
+     *         If the record cannot be written.
+     */
+    public void append(final StatisticsRecord record) throws IOException {
+        appendAll(Collections.singletonList(record));
+    }
+
+    /**
+     * Appends the specified records to the store, and updates the header's
+     * aggregates, with a single write and a single flush to disk.
+     *
+     * The file is locked while it's written, so any number of threads, or
+     * programs, may append to the same store at once.
+     *
+     * @param records
+     *         The records.
+     *
+     * @throws IOException
+     *         If the records cannot be written.
+     */
+    public synchronized void appendAll(final List<StatisticsRecord> records) throws IOException {
+        if(records.isEmpty()) {
+            return;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(records.size() * RECORD_SIZE);
+
+        // The count, bytes, and nanoseconds of the encode records, then of the decode records:
+        final long[] aggregateDeltas = new long[6];
+
+        for(final StatisticsRecord record : records) {
+            final int start = buffer.position();
+
+            buffer.putLong(record.getTimestamp());
+            buffer.putLong(record.getBytes());
+            buffer.putLong(record.getDurationNanos());
+            buffer.putInt(record.getWidth());
+            buffer.putInt(record.getHeight());
+            buffer.putInt(record.getMacroBlockDimensions());
+            buffer.put((byte) ((record.isEncode() ? FLAG_ENCODE : 0) | (record.isWindow() ? FLAG_WINDOW : 0)));
+
+            final byte[] codec = record.getCodec().getBytes(StandardCharsets.US_ASCII);
+            buffer.put((byte) Math.min(CODEC_SIZE, codec.length));
+            buffer.put(codec, 0, Math.min(CODEC_SIZE, codec.length));
+            buffer.position(start + RECORD_SIZE);
+
+            final int delta = (record.isEncode() ? 0 : 3);
+            aggregateDeltas[delta]++;
+            aggregateDeltas[delta + 1] += record.getBytes();
+            aggregateDeltas[delta + 2] += record.getDurationNanos();
+        }
+
+        buffer.flip();
+
+        final FileLock lock = channel.lock();
+
+        try {
+            final long recordCount = header.getLong(POSITION_RECORD_COUNT);
+
+            // The records are written before the header counts them, so a crash can't leave a counted, partial record:
+            long position = HEADER_SIZE + (recordCount * RECORD_SIZE);
+
+            while(buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+
+            channel.force(false);
+
+            for(int i = 0 ; i < 2 ; i++) {
+                final int aggregates = (i == 0 ? POSITION_ENCODE_AGGREGATES : POSITION_DECODE_AGGREGATES);
+                header.putLong(aggregates, header.getLong(aggregates) + aggregateDeltas[i * 3]);
+                header.putLong(aggregates + 8, header.getLong(aggregates + 8) + aggregateDeltas[(i * 3) + 1]);
+                header.putLong(aggregates + 16, header.getLong(aggregates + 16) + aggregateDeltas[(i * 3) + 2]);
+            }
+
+            header.putLong(POSITION_RECORD_COUNT, recordCount + records.size());
+            header.force();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Reads every record of the store, oldest first.
+     *
+     * @param recordConsumer
+     *         The consumer of each record.
+     *
+     * @throws IOException
+     *         If the records cannot be read.
+     */
+    public void forEachRecord(final Consumer<StatisticsRecord> recordConsumer) throws IOException {
+        final long recordCount = getRecordCount();
+
+        for(long firstRecord = 0 ; firstRecord < recordCount ; firstRecord += RECORDS_PER_MAP) {
+            final int count = (int) Math.min(RECORDS_PER_MAP, recordCount - firstRecord);
+            final MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + (firstRecord * RECORD_SIZE), (long) count * RECORD_SIZE);
+
+            for(int i = 0 ; i < count ; i++) {
+                final int position = i * RECORD_SIZE;
+                final byte[] codec = new byte[records.get(position + 37)];
+
+                records.position(position + 38);
+                records.get(codec);
+
+                final byte flags = records.get(position + 36);
+
+                recordConsumer.accept(new StatisticsRecord(records.getLong(position),
+                                                           (flags & FLAG_ENCODE) != 0,
+                                                           records.getLong(position + 8),
+                                                           records.getLong(position + 16),
+                                                           (flags & FLAG_WINDOW) != 0,
+                                                           new String(codec, StandardCharsets.US_ASCII),
+                                                           records.getInt(position + 24),
+                                                           records.getInt(position + 28),
+                                                           records.getInt(position + 32)));
+            }
+        }
+    }
+
+    /** @return The number of records in the store. */
+    public synchronized long getRecordCount() {
+        return header.getLong(POSITION_RECORD_COUNT);
+    }
+
+    /**
+     * Determines the number of records of the specified direction.
+     *
+     * @param isEncode
+     *         Whether to count the encode, or decode, records.
+     *
+     * @return
+     *         The number of records.
+     */
+    public synchronized long getRecordCount(final boolean isEncode) {
+        return header.getLong(isEncode ? POSITION_ENCODE_AGGREGATES : POSITION_DECODE_AGGREGATES);
+    }
+
+    /**
+     * Determines the average number of bytes en/decoded per second, across
+     * every record of the specified direction, from the header alone.
+     *
+     * @param isEncode
+     *         Whether to average the encode, or decode, records.
+     *
+     * @return
+     *         The average number of bytes per second, or 0 if there are no
+     *         records.
+     */
+    public synchronized long getBytesPerSecond(final boolean isEncode) {
+        final int aggregates = (isEncode ? POSITION_ENCODE_AGGREGATES : POSITION_DECODE_AGGREGATES);
+        final long bytes = header.getLong(aggregates + 8);
+        final long nanos = header.getLong(aggregates + 16);
+
+        return (nanos <= 0 ? 0 : (long) (bytes / (nanos / 1_000_000_000.0)));
+    }
+
+    /**
+     * Determines the size of the store's file.
+     *
+     * @return
+     *         The size, in bytes.
+     *
+     * @throws IOException
+     *         If the size cannot be read.
+     */
+    public long getSize() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Closes the store.
+     *
+     * @throws IOException
+     *         If the store cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
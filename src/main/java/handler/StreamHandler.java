@@ -0,0 +1,475 @@
+package handler;
+
+import module.ContentHashModule;
+import module.PipeStatisticsModule;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+public class StreamHandler {
+    /** The size of the buffer used when streaming data into a program. */
+    public static final int BUFFER_SIZE = 1 << 22;
+
+    /**
+     * Determines the length of the specified amount of data once it has been
+     * padded to contain an exact number of frames.
+     *
+     * The padding matches that of FileHandler.padFile, so streamed and padded
+     * files encode to the same frames.
+     *
+     * @param length
+     *         The length, in bytes, of the unpadded data.
+     *
+     * @param frameSize
+     *         The size of each frame in bytes.
+     *
+     * @return
+     *         The length, in bytes, of the padded data.
+     */
+    public static long calculatePaddedLength(final long length, final int frameSize) {
+        return length + (frameSize - (length % frameSize));
+    }
+
+    /**
+     * Runs the specified command while streaming a range of the specified file
+     * into the program's standard input.
+     *
+     * Any part of the range that lies beyond the end of the file is streamed
+     * as zeros, so the file itself never needs to be padded.
+     *
+     * @param configHandler
+     *         The settings which determine whether the range is rasterized
+     *         into frames before it reaches the program.
+     *
+     * @param command
+     *         The command to execute.
+     *
+     * @param file
+     *         The file to stream.
+     *
+     * @param offset
+     *         The offset, in bytes, of the start of the range.
+     *
+     * @param length
+     *         The length, in bytes, of the range.
+     *
+     * @param statisticsModule
+     *         The module in which to record the statistics of the transfer.
+     *
+     * @param outputConsumer
+     *         The consumer of each line that the program outputs.
+     *
+     * @return
+     *         True if the whole range was streamed and the program exited
+     *         normally, else false.
+     */
+    public static boolean streamFileToProgram(final ConfigHandler configHandler, final String command, final File file, final long offset, final long length, final PipeStatisticsModule statisticsModule, final Consumer<String> outputConsumer) {
+        return streamFileToProgram(configHandler, command, file, offset, length, statisticsModule, outputConsumer, null);
+    }
+
+    /**
+     * Runs the specified command while streaming a range of the specified file
+     * into the program's standard input, and hashes the blocks of the range
+     * as they're read.
+     *
+     * @param configHandler
+     *         The settings which determine whether the range is rasterized
+     *         into frames before it reaches the program.
+     *
+     * @param command
+     *         The command to execute.
+     *
+     * @param file
+     *         The file to stream.
+     *
+     * @param offset
+     *         The offset, in bytes, of the start of the range.
+     *
+     * @param length
+     *         The length, in bytes, of the range.
+     *
+     * @param statisticsModule
+     *         The module in which to record the statistics of the transfer.
+     *
+     * @param outputConsumer
+     *         The consumer of each line that the program outputs.
+     *
+     * @param contentHash
+     *         The content hash to update with the blocks read from the file,
+     *         or null to skip hashing. The synthesized padding isn't hashed.
+     *
+     * @return
+     *         True if the whole range was streamed and the program exited
+     *         normally, else false.
+     */
+    public static boolean streamFileToProgram(final ConfigHandler configHandler, final String command, final File file, final long offset, final long length, final PipeStatisticsModule statisticsModule, final Consumer<String> outputConsumer, final ContentHashModule contentHash) {
+        try (
+            final InputStream fileStream = new FileInputStream(file);
+        ) {
+            long skipped = 0;
+
+            while(skipped < offset) {
+                final long count = fileStream.skip(offset - skipped);
+
+                if(count <= 0) {
+                    break;
+                }
+
+                skipped += count;
+            }
+
+            final InputStream inputStream = (contentHash == null ? fileStream : contentHash.createInputStream(fileStream, skipped));
+            final Process process = CommandHandler.startProgram(command, outputConsumer);
+
+            try (
+                final OutputStream outputStream = createEncoderInput(configHandler, process.getOutputStream());
+            ) {
+                pipe(inputStream, outputStream, length, 0, statisticsModule);
+            }
+
+            drainOutput(process, outputConsumer);
+            return process.waitFor() == 0;
+        } catch(final IOException e) {
+            final Logger logger = LogManager.getLogger();
+            logger.error(e);
+            return false;
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Wraps the standard input of an encoding ffmpeg process, so that the
+     * payload is rasterized into full-resolution frames if frame
+     * rasterization is enabled.
+     *
+     * The time spent rasterizing is counted as time spent writing to the
+     * pipe.
+     *
+     * @param configHandler
+     *         The settings to use when encoding.
+     *
+     * @param outputStream
+     *         The standard input of the ffmpeg process.
+     *
+     * @return
+     *         The stream to write the padded payload to.
+     */
+    public static OutputStream createEncoderInput(final ConfigHandler configHandler, final OutputStream outputStream) {
+        if(configHandler.isRasterizeFrames()) {
+            return new RasterOutputStream(outputStream, configHandler);
+        }
+
+        return outputStream;
+    }
+
+    /**
+     * Wraps the standard output of a decoding ffmpeg process, so that the
+     * full-resolution frames are demodulated into the payload if frame
+     * demodulation is enabled.
+     *
+     * @param configHandler
+     *         The settings to use when decoding.
+     *
+     * @param inputStream
+     *         The standard output of the ffmpeg process.
+     *
+     * @return
+     *         The stream to read the decoded payload from.
+     */
+    public static InputStream createDecoderOutput(final ConfigHandler configHandler, final InputStream inputStream) {
+        if(configHandler.isDemodulateFrames()) {
+            return new DemodulatorInputStream(inputStream, configHandler);
+        }
+
+        return inputStream;
+    }
+
+    /**
+     * Copies data from the source to the sink, then pads the data with zeros.
+     *
+     * If a length is given, then exactly that many bytes are written to the
+     * sink, with zeros making up for anything that the source is missing.
+     * Otherwise the source is read until it ends, then padded to contain an
+     * exact number of frames.
+     *
+     * @param source
+     *         The stream to read from.
+     *
+     * @param sink
+     *         The stream to write to.
+     *
+     * @param length
+     *         The number of bytes to write, or a negative number to write the
+     *         whole source with frame padding.
+     *
+     * @param frameSize
+     *         The size of each frame in bytes. Only used if no length is given.
+     *
+     * @param statisticsModule
+     *         The module in which to record the statistics of the transfer.
+     *
+     * @return
+     *         The number of bytes read from the source.
+     *
+     * @throws IOException
+     *         If the source cannot be read, or the sink cannot be written to.
+     */
+    public static long pipe(final InputStream source, final OutputStream sink, final long length, final int frameSize, final PipeStatisticsModule statisticsModule) throws IOException {
+        final long startTime = System.nanoTime();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+
+        long bytesRead = 0;
+
+        while(length < 0 || bytesRead < length) {
+            final int maxCount = (int) (length < 0 ? buffer.length : Math.min(buffer.length, length - bytesRead));
+
+            long time = System.nanoTime();
+            final int count = source.read(buffer, 0, maxCount);
+            statisticsModule.recordSourceWait(System.nanoTime() - time);
+
+            if(count == -1) {
+                break;
+            }
+
+            time = System.nanoTime();
+            sink.write(buffer, 0, count);
+            statisticsModule.recordPipeWrite(count, System.nanoTime() - time);
+
+            bytesRead += count;
+        }
+
+        // Synthesize the padding:
+        long paddingLength = (length < 0 ? calculatePaddedLength(bytesRead, frameSize) : length) - bytesRead;
+        Arrays.fill(buffer, (byte) 0);
+
+        while(paddingLength > 0) {
+            final int count = (int) Math.min(buffer.length, paddingLength);
+
+            final long time = System.nanoTime();
+            sink.write(buffer, 0, count);
+            statisticsModule.recordPipeWrite(count, System.nanoTime() - time);
+
+            paddingLength -= count;
+        }
+
+        sink.flush();
+
+        statisticsModule.recordElapsedTime(System.nanoTime() - startTime);
+        return bytesRead;
+    }
+
+    /**
+     * Copies data from the source to the sink, while dropping every zero byte
+     * from the end of the data.
+     *
+     * Runs of zeros are held back until a non-zero byte follows them, so any
+     * zeros that are still held back when the source ends are never written.
+     * This removes exactly the padding from data which can't end in a zero
+     * byte, such as an xz stream, whose footer ends in "YZ". It would also
+     * remove the end of a tar stream, so pipeWholeBlocks is used for that.
+     *
+     * @param source
+     *         The stream to read from.
+     *
+     * @param sink
+     *         The stream to write to.
+     *
+     * @param statisticsModule
+     *         The module in which to record the statistics of the transfer.
+     *
+     * @return
+     *         The number of padding bytes that were dropped.
+     *
+     * @throws IOException
+     *         If the source cannot be read, or the sink cannot be written to.
+     */
+    public static long pipeTrimmingZeros(final InputStream source, final OutputStream sink, final PipeStatisticsModule statisticsModule) throws IOException {
+        final long startTime = System.nanoTime();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        final byte[] zeros = new byte[BUFFER_SIZE];
+
+        long heldZeros = 0;
+
+        while(true) {
+            long time = System.nanoTime();
+            final int count = source.read(buffer);
+            statisticsModule.recordSourceWait(System.nanoTime() - time);
+
+            if(count == -1) {
+                break;
+            }
+
+            // Find the last non-zero byte:
+            int lastDataIndex = count - 1;
+
+            while(lastDataIndex >= 0 && buffer[lastDataIndex] == 0) {
+                lastDataIndex--;
+            }
+
+            if(lastDataIndex < 0) {
+                heldZeros += count;
+                continue;
+            }
+
+            time = System.nanoTime();
+
+            // The held zeros turned out to be data:
+            while(heldZeros > 0) {
+                final int zeroCount = (int) Math.min(zeros.length, heldZeros);
+                sink.write(zeros, 0, zeroCount);
+                statisticsModule.recordPipeWrite(zeroCount, 0);
+                heldZeros -= zeroCount;
+            }
+
+            sink.write(buffer, 0, lastDataIndex + 1);
+            statisticsModule.recordPipeWrite(lastDataIndex + 1, System.nanoTime() - time);
+
+            heldZeros = count - (lastDataIndex + 1);
+        }
+
+        sink.flush();
+
+        statisticsModule.recordElapsedTime(System.nanoTime() - startTime);
+        return heldZeros;
+    }
+
+    /**
+     * Copies data from the source to the sink, while dropping any partial
+     * block from the end of the data.
+     *
+     * Nothing else is dropped, as zeros within the blocks may be data. This
+     * removes the padding from data made of whole blocks, such as a tar
+     * stream, apart from any whole blocks of zeros in the padding, which are
+     * ignored after the end of a tar stream.
+     *
+     * @param source
+     *         The stream to read from.
+     *
+     * @param sink
+     *         The stream to write to.
+     *
+     * @param blockSize
+     *         The length, in bytes, of each block of the data.
+     *
+     * @param statisticsModule
+     *         The module in which to record the statistics of the transfer.
+     *
+     * @return
+     *         The number of padding bytes that were dropped.
+     *
+     * @throws IOException
+     *         If the source cannot be read, or the sink cannot be written to.
+     */
+    public static long pipeWholeBlocks(final InputStream source, final OutputStream sink, final int blockSize, final PipeStatisticsModule statisticsModule) throws IOException {
+        final long startTime = System.nanoTime();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+
+        // The bytes at the start of the buffer which don't yet fill a block:
+        int heldCount = 0;
+
+        while(true) {
+            long time = System.nanoTime();
+            final int count = source.read(buffer, heldCount, buffer.length - heldCount);
+            statisticsModule.recordSourceWait(System.nanoTime() - time);
+
+            if(count == -1) {
+                break;
+            }
+
+            heldCount += count;
+
+            final int blockBytes = heldCount - (heldCount % blockSize);
+
+            if(blockBytes > 0) {
+                time = System.nanoTime();
+                sink.write(buffer, 0, blockBytes);
+                statisticsModule.recordPipeWrite(blockBytes, System.nanoTime() - time);
+
+                System.arraycopy(buffer, blockBytes, buffer, 0, heldCount - blockBytes);
+                heldCount -= blockBytes;
+            }
+        }
+
+        sink.flush();
+
+        statisticsModule.recordElapsedTime(System.nanoTime() - startTime);
+        return heldCount;
+    }
+
+    /**
+     * Starts a thread which copies everything from the source to the sink,
+     * closing both once the source ends.
+     *
+     * This is used to connect the standard output of one process to the
+     * standard input of another.
+     *
+     * @param source
+     *         The stream to read from.
+     *
+     * @param sink
+     *         The stream to write to.
+     *
+     * @param name
+     *         The name of the thread.
+     *
+     * @return
+     *         The started thread.
+     */
+    public static Thread startPump(final InputStream source, final OutputStream sink, final String name) {
+        final Thread thread = new Thread(() -> {
+            try (
+                final InputStream inputStream = source;
+                final OutputStream outputStream = sink;
+            ) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+
+                int count;
+                while((count = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, count);
+                }
+            } catch(final IOException e) {
+                final Logger logger = LogManager.getLogger();
+                logger.error(e);
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+
+        return thread;
+    }
+
+    /**
+     * Reads the standard output of the specified process until it ends,
+     * passing each line to the specified consumer.
+     *
+     * @param process
+     *         The process.
+     *
+     * @param outputConsumer
+     *         The consumer of each line.
+     *
+     * @throws IOException
+     *         If the output cannot be read.
+     */
+    public static void drainOutput(final Process process, final Consumer<String> outputConsumer) throws IOException {
+        try (
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        ) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                outputConsumer.accept(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package misc;
+
+import lombok.Getter;
+
+public class DurationEstimate {
+    /** The estimated duration, in seconds. */
+    @Getter private final double seconds;
+    /** The lower bound, in seconds, of the estimate's confidence interval. */
+    @Getter private final double lowerSeconds;
+    /** The upper bound, in seconds, of the estimate's confidence interval. */
+    @Getter private final double upperSeconds;
+    /** The number of records that the estimate is based on, or 0 if it's a guess. */
+    @Getter private final long recordCount;
+
+    /**
+     * Constructs a new DurationEstimate.
+     *
+     * @param seconds
+     *         The estimated duration, in seconds.
+     *
+     * @param lowerSeconds
+     *         The lower bound, in seconds, of the estimate's confidence
+     *         interval.
+     *
+     * @param upperSeconds
+     *         The upper bound, in seconds, of the estimate's confidence
+     *         interval.
+     *
+     * @param recordCount
+     *         The number of records that the estimate is based on, or 0 if
+     *         it's a guess.
+     */
+    public DurationEstimate(final double seconds, final double lowerSeconds, final double upperSeconds, final long recordCount) {
+        this.seconds = seconds;
+        this.lowerSeconds = lowerSeconds;
+        this.upperSeconds = upperSeconds;
+        this.recordCount = recordCount;
+    }
+
+    /** @return Whether or not the estimate is based on any records. */
+    public boolean isKnown() {
+        return recordCount > 0;
+    }
+}
@@ -0,0 +1,166 @@
+package misc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class FileTable extends AbstractList<File> {
+    /** The distinct parent directories of the files, each of which is stored once. */
+    private final String[] directories;
+
+    /** The index, within the directories, of each file's parent directory, or -1 if it has none. */
+    private final int[] directoryIndices;
+    /** The names of the files, without their parent directories, encoded as UTF-8 one after another. */
+    private final byte[] nameBytes;
+    /** The position, within the name bytes, of the start of each file's name, followed by the end of the last name. */
+    private final int[] nameOffsets;
+    /** The length, in bytes, of each file when the table was made. */
+    private final long[] lengths;
+    /** The last-modified time of each file when the table was made. */
+    private final long[] lastModifiedTimes;
+
+    /** The combined length, in bytes, of all of the files. */
+    private final long totalLength;
+
+    /**
+     * Constructs a new FileTable by reading the length and last-modified time
+     * of each of the specified files, then sorting the files from smallest to
+     * largest.
+     *
+     * Each file is only read once, with a single call to the file system.
+     * Any file which cannot be read is given a length and last-modified time
+     * of 0.
+     *
+     * @param files
+     *         The files.
+     */
+    public FileTable(final List<File> files) {
+        final int size = files.size();
+
+        final Map<String, Integer> directoryIndexMap = new HashMap<>();
+        final int[] unsortedDirectoryIndices = new int[size];
+        final String[] unsortedNames = new String[size];
+        final long[] unsortedLengths = new long[size];
+        final long[] unsortedLastModifiedTimes = new long[size];
+
+        for(int i = 0 ; i < size ; i++) {
+            final File file = files.get(i);
+            final String parent = file.getParent();
+
+            unsortedDirectoryIndices[i] = (parent == null ? -1 : directoryIndexMap.computeIfAbsent(parent, key -> directoryIndexMap.size()));
+            unsortedNames[i] = file.getName();
+
+            try {
+                final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                unsortedLengths[i] = attributes.size();
+                unsortedLastModifiedTimes[i] = attributes.lastModifiedTime().toMillis();
+            } catch(final IOException e) {
+                // The file doesn't exist, or can't be read, so it has no length.
+            }
+        }
+
+        directories = new String[directoryIndexMap.size()];
+        directoryIndexMap.forEach((directory, index) -> directories[index] = directory);
+
+        // Sort the files from smallest to largest:
+        final Integer[] order = new Integer[size];
+
+        for(int i = 0 ; i < size ; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, Comparator.comparingLong(index -> unsortedLengths[index]));
+
+        directoryIndices = new int[size];
+        nameOffsets = new int[size + 1];
+        lengths = new long[size];
+        lastModifiedTimes = new long[size];
+
+        final ByteArrayOutputStream nameStream = new ByteArrayOutputStream();
+        long totalLength = 0;
+
+        for(int i = 0 ; i < size ; i++) {
+            final byte[] name = unsortedNames[order[i]].getBytes(StandardCharsets.UTF_8);
+            nameOffsets[i] = nameStream.size();
+            nameStream.write(name, 0, name.length);
+
+            directoryIndices[i] = unsortedDirectoryIndices[order[i]];
+            lengths[i] = unsortedLengths[order[i]];
+            lastModifiedTimes[i] = unsortedLastModifiedTimes[order[i]];
+
+            totalLength += lengths[i];
+        }
+
+        nameOffsets[size] = nameStream.size();
+        nameBytes = nameStream.toByteArray();
+
+        this.totalLength = totalLength;
+    }
+
+    /**
+     * Constructs the file at the specified position.
+     *
+     * A new File is made on each call, as the table only stores the encoded
+     * parts of each path.
+     *
+     * @param index
+     *         The position of the file.
+     *
+     * @return
+     *         The file.
+     */
+    @Override
+    public File get(final int index) {
+        final String name = new String(nameBytes, nameOffsets[index], nameOffsets[index + 1] - nameOffsets[index], StandardCharsets.UTF_8);
+        final int directoryIndex = directoryIndices[index];
+
+        return (directoryIndex == -1 ? new File(name) : new File(directories[directoryIndex], name));
+    }
+
+    @Override
+    public int size() {
+        return lengths.length;
+    }
+
+    /**
+     * Retrieves the length of the file at the specified position, as it was
+     * when the table was made.
+     *
+     * @param index
+     *         The position of the file.
+     *
+     * @return
+     *         The length, in bytes, of the file.
+     */
+    public long getLength(final int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Retrieves the last-modified time of the file at the specified position,
+     * as it was when the table was made.
+     *
+     * @param index
+     *         The position of the file.
+     *
+     * @return
+     *         The last-modified time, in milliseconds since the epoch, of the file.
+     */
+    public long getLastModified(final int index) {
+        return lastModifiedTimes[index];
+    }
+
+    /** @return The combined length, in bytes, of all of the files, as it was when the table was made. */
+    public long getTotalLength() {
+        return totalLength;
+    }
+}
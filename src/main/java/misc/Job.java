@@ -4,21 +4,21 @@ import lombok.Getter;
 import lombok.Setter;
 
 import java.io.File;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 public class Job {
     /** The unique id of the Job. */
     @Getter @Setter private int id;
+    /** The id of the Job within the job journal, which stays the same across restarts. */
+    @Getter @Setter private String journalId;
     /** The name of the Job. */
     @Getter private String name;
     /** A rough description of the Job. */
     @Getter private String description;
     /** The directory in which to place the output file(s). */
     @Getter private String outputDirectory;
-    /** The file(s) belonging to the Job.*/
-    @Getter private List<File> files;
+    /** The file(s) belonging to the Job, from smallest to largest, with their sizes as they were when the Job was made. */
+    @Getter private FileTable files;
     /** Whether or not the Job is an Encode Job. If not, then it's a Decode Job. */
     @Getter private boolean isEncodeJob;
 
@@ -56,14 +56,20 @@ public class Job {
             this.outputDirectory = outputDirectory + "/";
         }
 
-        this.files = files;
+        this.files = new FileTable(files);
         this.isEncodeJob = isEncodeJob;
         this.archiveFiles = archiveFiles;
+    }
 
-
-        // Sort the files from smallest to largest:
-        final Comparator<File> comparator = Comparator.comparing(File::length);
-        Collections.sort(this.files, comparator);
+    /**
+     * Replaces the file(s) belonging to the Job, such as when the file(s) have
+     * been packed into an archive.
+     *
+     * @param files
+     *         The new file(s) belonging to the Job.
+     */
+    public void setFiles(final List<File> files) {
+        this.files = new FileTable(files);
     }
 
     /** @return The full designation of the Job. This includes the unique ID, type, and name. */
@@ -0,0 +1,77 @@
+package misc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+public enum SchedulingPolicy {
+    /** Runs the Jobs with the shortest estimated durations first, which minimizes the average time that a Job waits to finish. */
+    SHORTEST_FIRST,
+    /** Runs the Jobs in the order in which they were queued. */
+    FIFO,
+    /** Runs the Jobs with the longest estimated durations first, so that the longest Job doesn't start last while the other runners sit idle. */
+    LARGEST_FIRST;
+
+    /**
+     * Orders the specified items by this policy.
+     *
+     * The cost of each item is computed exactly once, before sorting, as
+     * computing a cost may be expensive. Items with equal costs keep the
+     * order in which they were given.
+     *
+     * @param items
+     *         The items to order.
+     *
+     * @param costFunction
+     *         The function which estimates the cost of an item.
+     *
+     * @return
+     *         A new list of the items, in the order in which to run them.
+     */
+    public <T> List<T> order(final List<T> items, final ToDoubleFunction<T> costFunction) {
+        // A single item needs no costs, which saves reading the statistics before the first Job starts:
+        if(this == FIFO || items.size() < 2) {
+            return new ArrayList<>(items);
+        }
+
+        final double[] costs = new double[items.size()];
+        final Integer[] indices = new Integer[items.size()];
+
+        for(int i = 0 ; i < costs.length ; i++) {
+            costs[i] = costFunction.applyAsDouble(items.get(i));
+            indices[i] = i;
+        }
+
+        final Comparator<Integer> comparator = Comparator.comparingDouble(index -> costs[index]);
+        Arrays.sort(indices, (this == LARGEST_FIRST ? comparator.reversed() : comparator));
+
+        final List<T> orderedItems = new ArrayList<>(items.size());
+
+        for(final int index : indices) {
+            orderedItems.add(items.get(index));
+        }
+
+        return orderedItems;
+    }
+
+    /**
+     * Retrieves the policy with the specified name.
+     *
+     * @param name
+     *         The name of the policy.
+     *
+     * @return
+     *         The policy, or SHORTEST_FIRST if no policy has the name.
+     */
+    public static SchedulingPolicy fromName(final String name) {
+        for(final SchedulingPolicy policy : values()) {
+            if(policy.name().equalsIgnoreCase(name)) {
+                return policy;
+            }
+        }
+
+        return SHORTEST_FIRST;
+    }
+}
@@ -0,0 +1,56 @@
+package misc;
+
+import lombok.Getter;
+
+public class Segment {
+    /** The position of the Segment within the file it was split from. */
+    @Getter private final int index;
+    /** The index of the first frame of the Segment. */
+    @Getter private final long firstFrame;
+    /** The number of frames in the Segment. */
+    @Getter private final long frameCount;
+
+    /**
+     * Constructs a new Segment.
+     *
+     * @param index
+     *         The position of the Segment within the file it was split from.
+     *
+     * @param firstFrame
+     *         The index of the first frame of the Segment.
+     *
+     * @param frameCount
+     *         The number of frames in the Segment.
+     */
+    public Segment(final int index, final long firstFrame, final long frameCount) {
+        this.index = index;
+        this.firstFrame = firstFrame;
+        this.frameCount = frameCount;
+    }
+
+    /**
+     * Determines the offset, in bytes, of the first frame of the Segment.
+     *
+     * @param frameSize
+     *         The size of each frame in bytes.
+     *
+     * @return
+     *         The offset, in bytes, of the first frame of the Segment.
+     */
+    public long getByteOffset(final long frameSize) {
+        return firstFrame * frameSize;
+    }
+
+    /**
+     * Determines the length, in bytes, of all frames in the Segment.
+     *
+     * @param frameSize
+     *         The size of each frame in bytes.
+     *
+     * @return
+     *         The length, in bytes, of all frames in the Segment.
+     */
+    public long getByteLength(final long frameSize) {
+        return frameCount * frameSize;
+    }
+}
@@ -0,0 +1,78 @@
+package misc;
+
+import lombok.Getter;
+
+public class StatisticsRecord {
+    /** The time, in milliseconds since the epoch, at which the record was made. */
+    @Getter private final long timestamp;
+    /** Whether the record is of an encode, or a decode. */
+    @Getter private final boolean isEncode;
+    /** The number of bytes that were en/decoded. */
+    @Getter private final long bytes;
+    /** The time, in nanoseconds, that the bytes took to en/decode. */
+    @Getter private final long durationNanos;
+    /**
+     * Whether the record is of a window of a running en/decode, rather than
+     * of a whole file or Job, in which case its duration doesn't include the
+     * overhead of starting the en/decode.
+     */
+    @Getter private final boolean isWindow;
+    /** The encoding library that the video was, or is being, encoded with. */
+    @Getter private final String codec;
+    /** The width of the encoded video. */
+    @Getter private final int width;
+    /** The height of the encoded video. */
+    @Getter private final int height;
+    /** The width and height of each macro block of the encoded video. */
+    @Getter private final int macroBlockDimensions;
+
+    /**
+     * Constructs a new StatisticsRecord.
+     *
+     * @param timestamp
+     *         The time, in milliseconds since the epoch, at which the record
+     *         was made.
+     *
+     * @param isEncode
+     *         Whether the record is of an encode, or a decode.
+     *
+     * @param bytes
+     *         The number of bytes that were en/decoded.
+     *
+     * @param durationNanos
+     *         The time, in nanoseconds, that the bytes took to en/decode.
+     *
+     * @param isWindow
+     *         Whether the record is of a window of a running en/decode,
+     *         rather than of a whole file or Job.
+     *
+     * @param codec
+     *         The encoding library that the video was, or is being, encoded
+     *         with.
+     *
+     * @param width
+     *         The width of the encoded video.
+     *
+     * @param height
+     *         The height of the encoded video.
+     *
+     * @param macroBlockDimensions
+     *         The width and height of each macro block of the encoded video.
+     */
+    public StatisticsRecord(final long timestamp, final boolean isEncode, final long bytes, final long durationNanos, final boolean isWindow, final String codec, final int width, final int height, final int macroBlockDimensions) {
+        this.timestamp = timestamp;
+        this.isEncode = isEncode;
+        this.bytes = bytes;
+        this.durationNanos = durationNanos;
+        this.isWindow = isWindow;
+        this.codec = codec;
+        this.width = width;
+        this.height = height;
+        this.macroBlockDimensions = macroBlockDimensions;
+    }
+
+    /** @return The number of bytes en/decoded per second, or 0 if the duration is unknown. */
+    public double getBytesPerSecond() {
+        return (durationNanos <= 0 ? 0 : bytes / (durationNanos / 1_000_000_000.0));
+    }
+}
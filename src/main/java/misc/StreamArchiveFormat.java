@@ -0,0 +1,87 @@
+package misc;
+
+public enum StreamArchiveFormat {
+    /**
+     * An xz stream, which is decompressed by the extraction stream commands
+     * and then extracted as a tar stream. Its footer always ends in "YZ", so
+     * every zero byte after it is padding.
+     */
+    XZ,
+    /**
+     * A tar stream, which is extracted as-is. It's made of whole blocks and
+     * ends with blocks of zeros, so every block after the last whole block is
+     * padding, while any zeros within its blocks may be data.
+     */
+    TAR;
+
+    /** The number of bytes at the start of a stream which are needed to detect its format. */
+    public static final int HEADER_LENGTH = 512;
+    /** The length, in bytes, of each block of a tar stream. */
+    public static final int TAR_BLOCK_SIZE = 512;
+
+    /** The magic bytes at the start of an xz stream. */
+    private static final byte[] MAGIC_XZ = {(byte) 0xFD, '7', 'z', 'X', 'Z', 0};
+    /** The magic bytes of a POSIX or GNU tar header. */
+    private static final byte[] MAGIC_TAR = {'u', 's', 't', 'a', 'r'};
+    /** The offset, in bytes, of the magic bytes within a tar header. */
+    private static final int MAGIC_TAR_OFFSET = 257;
+
+    /**
+     * Detects the format of a stream from its first bytes.
+     *
+     * @param header
+     *         The first bytes of the stream.
+     *
+     * @param length
+     *         The number of bytes in the header, which is less than
+     *         HEADER_LENGTH if the stream is shorter.
+     *
+     * @return
+     *         The format, or null if the stream is in neither format, such as
+     *         a plain file or a 7z archive.
+     */
+    public static StreamArchiveFormat detect(final byte[] header, final int length) {
+        if(startsWith(header, length, 0, MAGIC_XZ)) {
+            return XZ;
+        }
+
+        if(startsWith(header, length, MAGIC_TAR_OFFSET, MAGIC_TAR)) {
+            return TAR;
+        }
+
+        return null;
+    }
+
+    /**
+     * Determines whether the specified bytes hold the specified magic bytes
+     * at the specified offset.
+     *
+     * @param bytes
+     *         The bytes.
+     *
+     * @param length
+     *         The number of bytes.
+     *
+     * @param offset
+     *         The offset of the magic bytes.
+     *
+     * @param magic
+     *         The magic bytes.
+     *
+     * @return
+     *         Whether the magic bytes are there.
+     */
+    private static boolean startsWith(final byte[] bytes, final int length, final int offset, final byte[] magic) {
+        if(length < offset + magic.length) {
+            return false;
+        }
+
+        for(int i = 0 ; i < magic.length ; i++) {
+            if(bytes[offset + i] != magic[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,182 @@
+package model;
+
+import handler.LogStoreHandler;
+import javafx.collections.ObservableListBase;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class OutputLinesModel extends ObservableListBase<String> {
+    /** The maximum number of lines to keep in memory after they've been read from the log. */
+    private static final int CACHED_LINES = 1024;
+
+    /** The log from which the lines are read. */
+    private final LogStoreHandler logStoreHandler;
+    /** The tag of the Job whose lines are shown, or -1 to show every line. */
+    private final int jobTag;
+
+    /** The positions, within the log, of the shown lines. Only used when showing the lines of one Job. */
+    private int[] lineIndices = new int[0];
+    /** The number of lines shown. */
+    private int size = 0;
+    /** The number of lines of the log which have been considered for showing. */
+    private int scannedLineCount = 0;
+
+    /** The most recently read lines, by their positions within this list. */
+    private final Map<Integer, String> cachedLines = new LinkedHashMap<Integer, String>(CACHED_LINES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, String> eldest) {
+            return size() > CACHED_LINES;
+        }
+    };
+
+    /**
+     * Constructs a new OutputLinesModel.
+     *
+     * The list only holds the positions of its lines. Each line's text is
+     * read from the log when it's first shown, so the list can be as long
+     * as the log without using more memory.
+     *
+     * @param logStoreHandler
+     *         The log from which the lines are read.
+     *
+     * @param jobTag
+     *         The tag of the Job whose lines to show, or -1 to show every line.
+     */
+    public OutputLinesModel(final LogStoreHandler logStoreHandler, final int jobTag) {
+        this(logStoreHandler, jobTag, new int[0], 0);
+    }
+
+    /**
+     * Constructs a new OutputLinesModel from the lines of a Job which have
+     * already been found, so that a long log can be scanned on another
+     * thread.
+     *
+     * @param logStoreHandler
+     *         The log from which the lines are read.
+     *
+     * @param jobTag
+     *         The tag of the Job whose lines to show, or -1 to show every line.
+     *
+     * @param lineIndices
+     *         The positions, within the log, of the Job's lines which have
+     *         already been found. Ignored when showing every line.
+     *
+     * @param scannedLineCount
+     *         The number of lines of the log which were scanned to find them.
+     */
+    public OutputLinesModel(final LogStoreHandler logStoreHandler, final int jobTag, final int[] lineIndices, final int scannedLineCount) {
+        this.logStoreHandler = logStoreHandler;
+        this.jobTag = jobTag;
+
+        if(jobTag != -1) {
+            this.lineIndices = lineIndices;
+            this.size = lineIndices.length;
+            this.scannedLineCount = scannedLineCount;
+        }
+
+        update();
+    }
+
+    /** Adds any lines which have been appended to the log since the last update. */
+    public void update() {
+        final int lineCount = logStoreHandler.getLineCount();
+
+        if(lineCount == scannedLineCount) {
+            return;
+        }
+
+        final int oldSize = size;
+
+        if(jobTag == -1) {
+            size = lineCount;
+        } else {
+            try {
+                final int[] newLineIndices = logStoreHandler.filterByJob(jobTag, scannedLineCount);
+
+                lineIndices = Arrays.copyOf(lineIndices, size + newLineIndices.length);
+                System.arraycopy(newLineIndices, 0, lineIndices, size, newLineIndices.length);
+                size = lineIndices.length;
+            } catch(final IOException e) {
+                final Logger logger = LogManager.getLogger();
+                logger.error(e);
+                return;
+            }
+        }
+
+        scannedLineCount = lineCount;
+
+        if(size > oldSize) {
+            beginChange();
+            nextAdd(oldSize, size);
+            endChange();
+        }
+    }
+
+    /**
+     * Determines where the specified line of the log is shown.
+     *
+     * @param lineIndex
+     *         The position of the line within the log.
+     *
+     * @return
+     *         The position of the line within this list, or -1 if it isn't shown.
+     */
+    public int indexOfLine(final int lineIndex) {
+        if(jobTag == -1) {
+            return (lineIndex < size ? lineIndex : -1);
+        }
+
+        final int index = Arrays.binarySearch(lineIndices, 0, size, lineIndex);
+        return (index < 0 ? -1 : index);
+    }
+
+    /**
+     * Determines which line of the log is shown at the specified position.
+     *
+     * @param index
+     *         The position within this list.
+     *
+     * @return
+     *         The position of the line within the log.
+     */
+    public int getLineIndex(final int index) {
+        return (jobTag == -1 ? index : lineIndices[index]);
+    }
+
+    @Override
+    public String get(final int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        return cachedLines.computeIfAbsent(index, key -> {
+            try {
+                return logStoreHandler.readLine(getLineIndex(key));
+            } catch(final IOException e) {
+                final Logger logger = LogManager.getLogger();
+                logger.error(e);
+                return "";
+            }
+        });
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** @return The number of lines of the log which have been considered for showing. */
+    public int getScannedLineCount() {
+        return scannedLineCount;
+    }
+
+    /** @return The tag of the Job whose lines are shown, or -1 if every line is shown. */
+    public int getJobTag() {
+        return jobTag;
+    }
+}
@@ -0,0 +1,282 @@
+package module;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+
+public class ContentHashModule {
+    /** The length, in bytes, of each block of the file, which is hashed on its own. */
+    public static final int BLOCK_SIZE = 1 << 20;
+    /** The length, in bytes, of the digest of each block. */
+    private static final int DIGEST_LENGTH = 32;
+
+    /** The file being hashed. */
+    private final File file;
+    /** The length, in bytes, of the file when the module was made. */
+    private final long fileLength;
+    /** The number of blocks in the file. */
+    private final int blockCount;
+
+    /** The digest of each block, one after another. */
+    private final byte[] blockDigests;
+    /** The blocks whose digests are known. */
+    private final BitSet hashedBlocks = new BitSet();
+
+    /**
+     * Constructs a new ContentHashModule.
+     *
+     * The content hash is the digest of the digests of every block of the
+     * file, so each block can be hashed by whichever reader of the file
+     * reads it whole, in any order and on any thread. Segmented and
+     * checkpointed encodes can then hash the file while they read it, even
+     * though they read it in concurrent ranges, or skip the ranges of
+     * resumed chunks.
+     *
+     * @param file
+     *         The file to hash.
+     */
+    public ContentHashModule(final File file) {
+        this.file = file;
+
+        fileLength = file.length();
+        blockCount = (int) ((fileLength + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        blockDigests = new byte[blockCount * DIGEST_LENGTH];
+    }
+
+    /**
+     * Wraps a stream of the file, so that each block which is read whole
+     * through the wrapper is hashed as it's read.
+     *
+     * @param inputStream
+     *         The stream of the file.
+     *
+     * @param offset
+     *         The offset, in bytes, within the file, of the next byte of the
+     *         stream.
+     *
+     * @return
+     *         The wrapped stream.
+     */
+    public InputStream createInputStream(final InputStream inputStream, final long offset) {
+        return new HashingInputStream(inputStream, offset);
+    }
+
+    /**
+     * Reads and hashes every block of the file which hasn't been hashed,
+     * then determines the content hash of the file.
+     *
+     * @return
+     *         The content hash.
+     *
+     * @throws IOException
+     *         If the file cannot be read, or if it changed since the module
+     *         was made.
+     */
+    public String complete() throws IOException {
+        if(file.length() != fileLength) {
+            throw new IOException("The file " + file.getAbsolutePath() + " changed while it was being hashed.");
+        }
+
+        final MessageDigest digest = createDigest();
+        final byte[] buffer = new byte[BLOCK_SIZE];
+
+        try (
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        ) {
+            int index;
+
+            while((index = findUnhashedBlock()) < blockCount) {
+                final long position = (long) index * BLOCK_SIZE;
+                final int length = (int) Math.min(BLOCK_SIZE, fileLength - position);
+
+                randomAccessFile.seek(position);
+                randomAccessFile.readFully(buffer, 0, length);
+
+                digest.update(buffer, 0, length);
+                recordBlock(index, digest.digest());
+            }
+        }
+
+        synchronized(this) {
+            return toHex(digest.digest(blockDigests));
+        }
+    }
+
+    /**
+     * Constructs a digest of the algorithm used for content hashes.
+     *
+     * @return
+     *         The digest.
+     */
+    public static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch(final NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256:
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Converts the specified bytes into a hexadecimal string.
+     *
+     * @param bytes
+     *         The bytes.
+     *
+     * @return
+     *         The string.
+     */
+    public static String toHex(final byte[] bytes) {
+        final StringBuilder stringBuilder = new StringBuilder(bytes.length * 2);
+
+        for(final byte b : bytes) {
+            stringBuilder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            stringBuilder.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Records the digest of the specified block.
+     *
+     * @param index
+     *         The position of the block.
+     *
+     * @param digest
+     *         The digest.
+     */
+    private synchronized void recordBlock(final int index, final byte[] digest) {
+        System.arraycopy(digest, 0, blockDigests, index * DIGEST_LENGTH, DIGEST_LENGTH);
+        hashedBlocks.set(index);
+    }
+
+    /**
+     * Determines whether the digest of the specified block is known.
+     *
+     * @param index
+     *         The position of the block.
+     *
+     * @return
+     *         Whether the digest is known.
+     */
+    private synchronized boolean isBlockHashed(final int index) {
+        return hashedBlocks.get(index);
+    }
+
+    /** @return The position of the first block whose digest isn't known, or the number of blocks if they're all known. */
+    private synchronized int findUnhashedBlock() {
+        return hashedBlocks.nextClearBit(0);
+    }
+
+    /** A stream which hashes each block of the file that's read whole through it. */
+    private class HashingInputStream extends FilterInputStream {
+        /** The digest of the block being read. */
+        private final MessageDigest digest = createDigest();
+
+        /** The offset, in bytes, within the file, of the next byte of the stream. */
+        private long position;
+        /** The position of the block being hashed, or -1 if the current block isn't being hashed. */
+        private int blockIndex = -1;
+
+        /**
+         * Constructs a new HashingInputStream.
+         *
+         * @param inputStream
+         *         The stream of the file.
+         *
+         * @param offset
+         *         The offset, in bytes, within the file, of the next byte
+         *         of the stream.
+         */
+        private HashingInputStream(final InputStream inputStream, final long offset) {
+            super(inputStream);
+            position = offset;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+
+            if(b != -1) {
+                update(new byte[] {(byte) b}, 0, 1);
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int count = super.read(buffer, offset, length);
+
+            if(count > 0) {
+                update(buffer, offset, count);
+            }
+
+            return count;
+        }
+
+        @Override
+        public long skip(final long count) throws IOException {
+            final long skipped = super.skip(count);
+
+            // The skipped bytes can't be hashed, so neither can their block:
+            if(skipped > 0) {
+                position += skipped;
+                blockIndex = -1;
+            }
+
+            return skipped;
+        }
+
+        /**
+         * Hashes bytes which have just been read.
+         *
+         * A block is only hashed if the stream reached its start, and it
+         * hasn't already been hashed.
+         *
+         * @param buffer
+         *         The buffer holding the bytes.
+         *
+         * @param offset
+         *         The position, within the buffer, of the first byte.
+         *
+         * @param count
+         *         The number of bytes.
+         */
+        private void update(final byte[] buffer, final int offset, final int count) {
+            int bufferOffset = offset;
+            int remaining = count;
+
+            // Anything beyond the length of the file when the module was made isn't part of the hash:
+            while(remaining > 0 && position < fileLength) {
+                if(position % BLOCK_SIZE == 0) {
+                    final int index = (int) (position / BLOCK_SIZE);
+                    blockIndex = (isBlockHashed(index) ? -1 : index);
+                    digest.reset();
+                }
+
+                final long blockEnd = Math.min(((position / BLOCK_SIZE) + 1) * BLOCK_SIZE, fileLength);
+                final int length = (int) Math.min(remaining, blockEnd - position);
+
+                if(blockIndex != -1) {
+                    digest.update(buffer, bufferOffset, length);
+                }
+
+                position += length;
+                bufferOffset += length;
+                remaining -= length;
+
+                if(position == blockEnd && blockIndex != -1) {
+                    recordBlock(blockIndex, digest.digest());
+                    blockIndex = -1;
+                }
+            }
+        }
+    }
+}
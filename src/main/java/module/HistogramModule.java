@@ -0,0 +1,78 @@
+package module;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+public class HistogramModule {
+    /** The upper bound, inclusive, of each bucket. */
+    private final double[] bucketBounds;
+    /** The number of observations which fell into each bucket, plus one for those above every bound. */
+    private final LongAdder[] bucketCounts;
+    /** The sum of every observation. */
+    private final DoubleAdder sum = new DoubleAdder();
+
+    /**
+     * Constructs a new HistogramModule.
+     *
+     * @param bucketBounds
+     *         The upper bound, inclusive, of each bucket, in ascending order.
+     */
+    public HistogramModule(final double[] bucketBounds) {
+        this.bucketBounds = bucketBounds.clone();
+
+        bucketCounts = new LongAdder[bucketBounds.length + 1];
+
+        for(int i = 0 ; i < bucketCounts.length ; i++) {
+            bucketCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records an observation.
+     *
+     * Any number of threads may record at once, without locking.
+     *
+     * @param value
+     *         The observed value.
+     */
+    public void observe(final double value) {
+        int bucket = 0;
+
+        while(bucket < bucketBounds.length && value > bucketBounds[bucket]) {
+            bucket++;
+        }
+
+        bucketCounts[bucket].increment();
+        sum.add(value);
+    }
+
+    /** @return The upper bound, inclusive, of each bucket. */
+    public double[] getBucketBounds() {
+        return bucketBounds.clone();
+    }
+
+    /**
+     * Determines the number of observations at or below the upper bound of
+     * each bucket.
+     *
+     * @return
+     *         The cumulative count of each bucket, followed by the total
+     *         number of observations.
+     */
+    public long[] getCumulativeCounts() {
+        final long[] counts = new long[bucketCounts.length];
+        long count = 0;
+
+        for(int i = 0 ; i < bucketCounts.length ; i++) {
+            count += bucketCounts[i].sum();
+            counts[i] = count;
+        }
+
+        return counts;
+    }
+
+    /** @return The sum of every observation. */
+    public double getSum() {
+        return sum.sum();
+    }
+}
@@ -0,0 +1,81 @@
+package module;
+
+import lombok.Getter;
+
+import java.util.Locale;
+
+public class PipeStatisticsModule {
+    /** The number of bytes, including padding, that were written to the pipe. */
+    @Getter private long bytesTransferred;
+    /** The time, in nanoseconds, spent waiting on the source to provide data. */
+    @Getter private long sourceWaitTime;
+    /** The time, in nanoseconds, spent blocked while writing to the pipe. */
+    @Getter private long pipeStallTime;
+    /** The time, in nanoseconds, between the start and end of the transfer. */
+    @Getter private long elapsedTime;
+
+    /**
+     * Records that data was read from the source.
+     *
+     * @param nanoseconds
+     *         The time, in nanoseconds, that the read took.
+     */
+    public void recordSourceWait(final long nanoseconds) {
+        sourceWaitTime += nanoseconds;
+    }
+
+    /**
+     * Records that data was written to the pipe.
+     *
+     * @param bytes
+     *         The number of bytes written.
+     *
+     * @param nanoseconds
+     *         The time, in nanoseconds, that the write took.
+     */
+    public void recordPipeWrite(final long bytes, final long nanoseconds) {
+        bytesTransferred += bytes;
+        pipeStallTime += nanoseconds;
+    }
+
+    /**
+     * Records the total duration of the transfer.
+     *
+     * @param nanoseconds
+     *         The time, in nanoseconds, between the start and end of the transfer.
+     */
+    public void recordElapsedTime(final long nanoseconds) {
+        elapsedTime = nanoseconds;
+    }
+
+    /** @return The average number of bytes written to the pipe, per second. */
+    public long getBytesPerSecond() {
+        if(elapsedTime <= 0) {
+            return 0;
+        }
+
+        return (long) (bytesTransferred / (elapsedTime / 1_000_000_000.0));
+    }
+
+    /**
+     * Determines whether the program reading from the pipe, or the source
+     * being read from, spent more time holding up the transfer.
+     *
+     * @return
+     *         The name of the slower side of the transfer.
+     */
+    public String getBottleneck() {
+        return (pipeStallTime >= sourceWaitTime ? "pipe reader" : "source");
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "Streamed %d bytes in %.3fs (%d bytes/s). Waited %.3fs on the source and %.3fs on the pipe; the bottleneck is the %s.",
+                             bytesTransferred,
+                             elapsedTime / 1_000_000_000.0,
+                             getBytesPerSecond(),
+                             sourceWaitTime / 1_000_000_000.0,
+                             pipeStallTime / 1_000_000_000.0,
+                             getBottleneck());
+    }
+}
@@ -0,0 +1,185 @@
+package module;
+
+import lombok.Getter;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+public class ProgressStatisticsModule {
+    /** The minimum time, in nanoseconds, between updates of the current throughput. */
+    private static final long RATE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+    /** The weight given to the newest throughput measurement when updating the current throughput. */
+    private static final double RATE_SMOOTHING = 0.3;
+    /** The minimum time, in nanoseconds, covered by each throughput sample. */
+    private static final long SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+    /** The minimum time, in nanoseconds, covered by the final throughput sample. */
+    private static final long MIN_SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    /** The number of payload bytes that the Job is expected to en/decode, or 0 if it's unknown. */
+    private long expectedBytes = 0;
+    /** The number of payload bytes that the Job has en/decoded. */
+    private long processedBytes = 0;
+    /** Whether or not any progress has been reported by ffmpeg. */
+    private boolean isReceivingProgress = false;
+    /** Whether or not the Job has finished. */
+    private boolean isFinished = false;
+
+    /** The smoothed number of payload bytes en/decoded per second, or 0 if it's unknown. */
+    private double bytesPerSecond = 0;
+    /** The time at which the throughput was last updated. */
+    private long rateTime = System.nanoTime();
+    /** The number of processed bytes when the throughput was last updated. */
+    private long rateBytes = 0;
+
+    /** The time at which the current throughput sample began. */
+    private long sampleTime = rateTime;
+    /** The number of processed bytes when the current throughput sample began. */
+    private long sampleBytes = 0;
+
+    /**
+     * Adds to the number of payload bytes that the Job is expected to
+     * en/decode.
+     *
+     * @param bytes
+     *         The number of bytes.
+     */
+    public synchronized void addExpectedBytes(final long bytes) {
+        expectedBytes += bytes;
+    }
+
+    /**
+     * Records that ffmpeg has en/decoded more of the Job's payload, and
+     * updates the current throughput.
+     *
+     * @param bytes
+     *         The number of payload bytes en/decoded since the last report.
+     */
+    public synchronized void recordProcessedBytes(final long bytes) {
+        processedBytes += bytes;
+        isReceivingProgress = true;
+
+        final long time = System.nanoTime();
+
+        if(time - rateTime >= RATE_INTERVAL) {
+            final double currentRate = (processedBytes - rateBytes) / ((time - rateTime) / 1_000_000_000.0);
+            bytesPerSecond = (bytesPerSecond == 0 ? currentRate : (RATE_SMOOTHING * currentRate) + ((1 - RATE_SMOOTHING) * bytesPerSecond));
+
+            rateTime = time;
+            rateBytes = processedBytes;
+        }
+    }
+
+    /**
+     * Takes a throughput sample covering the time since the last sample, if
+     * enough time has passed.
+     *
+     * @param isFinal
+     *         Whether or not this is the last sample of the Job, which may
+     *         cover a shorter time than the others.
+     *
+     * @return
+     *         The sample, or null if no sample was taken.
+     */
+    public synchronized Sample pollSample(final boolean isFinal) {
+        final long time = System.nanoTime();
+        final long elapsedTime = time - sampleTime;
+
+        if(elapsedTime < (isFinal ? MIN_SAMPLE_INTERVAL : SAMPLE_INTERVAL) || processedBytes == sampleBytes) {
+            return null;
+        }
+
+        final Sample sample = new Sample(processedBytes - sampleBytes, elapsedTime);
+
+        sampleTime = time;
+        sampleBytes = processedBytes;
+
+        return sample;
+    }
+
+    /** Records that the Job has finished. */
+    public synchronized void recordFinished() {
+        isFinished = true;
+    }
+
+    /** @return The fraction of the Job that has been en/decoded, or -1 if it's unknown. */
+    public synchronized double getProgress() {
+        if(expectedBytes <= 0) {
+            return -1;
+        }
+
+        return Math.min(1, (double) processedBytes / expectedBytes);
+    }
+
+    /** @return The estimated number of seconds until the Job finishes, or -1 if it's unknown. */
+    public synchronized long getEstimatedSecondsRemaining() {
+        if(expectedBytes <= 0 || bytesPerSecond <= 0) {
+            return -1;
+        }
+
+        return (long) (Math.max(0, expectedBytes - processedBytes) / bytesPerSecond);
+    }
+
+    /** @return The smoothed number of payload bytes en/decoded per second, or 0 if it's unknown. */
+    public synchronized long getBytesPerSecond() {
+        return (long) bytesPerSecond;
+    }
+
+    /** @return Whether or not any progress has been reported by ffmpeg. */
+    public synchronized boolean isReceivingProgress() {
+        return isReceivingProgress;
+    }
+
+    /** @return Whether or not the Job has finished. */
+    public synchronized boolean isFinished() {
+        return isFinished;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if(isFinished) {
+            return "Finished";
+        }
+
+        if(! isReceivingProgress) {
+            return "Starting";
+        }
+
+        final StringBuilder stringBuilder = new StringBuilder();
+        final double progress = getProgress();
+        final long secondsRemaining = getEstimatedSecondsRemaining();
+
+        if(progress >= 0) {
+            stringBuilder.append(String.format(Locale.US, "%.1f%% - ", progress * 100));
+        }
+
+        stringBuilder.append(String.format(Locale.US, "%.2f MB/s", bytesPerSecond / (1024 * 1024)));
+
+        if(secondsRemaining >= 0) {
+            stringBuilder.append(String.format(Locale.US, " - ETA %d:%02d:%02d", secondsRemaining / 3600, (secondsRemaining / 60) % 60, secondsRemaining % 60));
+        }
+
+        return stringBuilder.toString();
+    }
+
+    /** A measurement of the throughput over part of a Job. */
+    public static class Sample {
+        /** The number of payload bytes en/decoded during the sample. */
+        @Getter private final long bytes;
+        /** The time, in nanoseconds, covered by the sample. */
+        @Getter private final long durationNanos;
+
+        /**
+         * Constructs a new Sample.
+         *
+         * @param bytes
+         *         The number of payload bytes en/decoded during the sample.
+         *
+         * @param durationNanos
+         *         The time, in nanoseconds, covered by the sample.
+         */
+        private Sample(final long bytes, final long durationNanos) {
+            this.bytes = bytes;
+            this.durationNanos = durationNanos;
+        }
+    }
+}
@@ -1,19 +1,21 @@
 package module;
 
+import java.util.concurrent.TimeUnit;
+
 public class RuntimeStatisticsModule {
-    /** The time at which the start method was first called. */
+    /** The time, in nanoseconds, at which the start method was first called. */
     private long startTime;
-    /** The time at which the stop method was first called. */
+    /** The time, in nanoseconds, at which the stop method was first called. */
     private long endTime;
 
     /** Records the current time as the start time. */
     public void recordStart() {
-        startTime = System.currentTimeMillis();
+        startTime = System.nanoTime();
     }
 
     /** Records the current time as the end time. */
     public void recordEnd() {
-        endTime = System.currentTimeMillis();
+        endTime = System.nanoTime();
     }
 
     /**
@@ -21,9 +23,20 @@ public class RuntimeStatisticsModule {
      * the start and end times.
      *
      * @return
-     *         The elapsed time.
+     *         The elapsed time, in milliseconds.
      */
     public long getElapsedTime() {
+        return TimeUnit.NANOSECONDS.toMillis(getElapsedNanos());
+    }
+
+    /**
+     * Determines the amount of time that elapsed between
+     * the start and end times.
+     *
+     * @return
+     *         The elapsed time, in nanoseconds.
+     */
+    public long getElapsedNanos() {
         return endTime - startTime;
     }
 }
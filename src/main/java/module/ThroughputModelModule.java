@@ -0,0 +1,169 @@
+package module;
+
+import misc.DurationEstimate;
+
+public class ThroughputModelModule {
+    /** The factor by which the weight of every older record is reduced when a new record is added. */
+    private static final double DECAY = 0.95;
+    /** The number of standard deviations on either side of an estimate which its confidence interval covers, for roughly 95% confidence. */
+    private static final double CONFIDENCE_DEVIATIONS = 1.96;
+    /** The factor by which an estimate may be wrong, when there are too few records to measure its error. */
+    private static final double UNMEASURED_ERROR_FACTOR = 2;
+
+    /** The number of records added to the model. */
+    private long recordCount = 0;
+
+    /** The weighted sums of every record, which the time per byte is fitted to. */
+    private final WeightedSums allRecords = new WeightedSums();
+    /**
+     * The weighted sums of the records of whole files or Jobs, which the
+     * overhead is fitted to, as windows of a running en/decode don't include
+     * the overhead of starting it.
+     */
+    private final WeightedSums wholeRecords = new WeightedSums();
+
+    /**
+     * Adds a record, of the specified number of bytes being en/decoded in the
+     * specified number of seconds, to the model.
+     *
+     * The weight of every older record is reduced, so the model follows
+     * changes in throughput.
+     *
+     * @param bytes
+     *         The number of bytes.
+     *
+     * @param seconds
+     *         The number of seconds.
+     *
+     * @param isWindow
+     *         Whether the record is of a window of a running en/decode,
+     *         rather than of a whole file or Job.
+     */
+    public synchronized void addRecord(final double bytes, final double seconds, final boolean isWindow) {
+        allRecords.add(bytes, seconds);
+
+        if(! isWindow) {
+            wholeRecords.add(bytes, seconds);
+        }
+
+        recordCount++;
+    }
+
+    /**
+     * Estimates the time it will take to en/decode the specified number of
+     * bytes.
+     *
+     * The duration is modelled as a fixed overhead plus a time per byte,
+     * fitted by least squares to the weighted records of whole files or
+     * Jobs. When there are too few such records, when they're all of similar
+     * sizes, so that the overhead can't be told apart from the time per
+     * byte, or when the fit is implausible, then the duration is modelled as
+     * a time per byte alone, from every record.
+     *
+     * The confidence interval is found from how far the weighted records
+     * lie from the fitted model.
+     *
+     * @param bytes
+     *         The number of bytes.
+     *
+     * @return
+     *         The estimate, or null if there are no records.
+     */
+    public synchronized DurationEstimate estimate(final long bytes) {
+        if(recordCount == 0 || allRecords.sumX <= 0) {
+            return null;
+        }
+
+        double seconds = -1;
+        double variance = -1;
+
+        if(wholeRecords.sumX > 0) {
+            final WeightedSums sums = wholeRecords;
+
+            // The number of records that the weighted records are worth:
+            final double effectiveCount = sums.getEffectiveCount();
+
+            final double meanX = sums.sumX / sums.sumWeights;
+            final double meanY = sums.sumY / sums.sumWeights;
+            final double centeredXX = sums.sumXX - (sums.sumX * meanX);
+            final double centeredXY = sums.sumXY - (sums.sumX * meanY);
+            final double centeredYY = sums.sumYY - (sums.sumY * meanY);
+
+            final double slope = (centeredXX > sums.sumXX * 1e-9 ? centeredXY / centeredXX : 0);
+            final double intercept = meanY - (slope * meanX);
+
+            if(effectiveCount > 2 && slope > 0 && intercept >= 0) {
+                seconds = intercept + (slope * bytes);
+
+                final double residualVariance = Math.max(0, centeredYY - (slope * centeredXY)) / (effectiveCount - 2);
+                variance = residualVariance * (1 + (1 / effectiveCount) + (((bytes - meanX) * (bytes - meanX)) / centeredXX));
+            }
+        }
+
+        if(seconds < 0) {
+            final WeightedSums sums = allRecords;
+            final double effectiveCount = sums.getEffectiveCount();
+
+            final double secondsPerByte = sums.sumY / sums.sumX;
+            seconds = secondsPerByte * bytes;
+
+            if(effectiveCount > 1) {
+                final double residualSum = sums.sumYY - (2 * secondsPerByte * sums.sumXY) + (secondsPerByte * secondsPerByte * sums.sumXX);
+                variance = (Math.max(0, residualSum) / (effectiveCount - 1)) * (1 + (((double) bytes * bytes) / sums.sumXX));
+            }
+        }
+
+        seconds = Math.max(0, seconds);
+
+        if(variance < 0) {
+            return new DurationEstimate(seconds, seconds / UNMEASURED_ERROR_FACTOR, seconds * UNMEASURED_ERROR_FACTOR, recordCount);
+        }
+
+        final double margin = CONFIDENCE_DEVIATIONS * Math.sqrt(variance);
+        return new DurationEstimate(seconds, Math.max(0, seconds - margin), seconds + margin, recordCount);
+    }
+
+    /** @return The number of records added to the model. */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * The exponentially weighted sums of a set of records, where x is the
+     * number of bytes en/decoded and y is the number of seconds it took.
+     */
+    private static class WeightedSums {
+        private double sumWeights = 0;
+        private double sumSquaredWeights = 0;
+        private double sumX = 0;
+        private double sumY = 0;
+        private double sumXX = 0;
+        private double sumXY = 0;
+        private double sumYY = 0;
+
+        /**
+         * Adds a record to the sums, after reducing the weight of every older
+         * record.
+         *
+         * @param bytes
+         *         The number of bytes.
+         *
+         * @param seconds
+         *         The number of seconds.
+         */
+        private void add(final double bytes, final double seconds) {
+            sumWeights = (sumWeights * DECAY) + 1;
+            sumSquaredWeights = (sumSquaredWeights * DECAY * DECAY) + 1;
+            sumX = (sumX * DECAY) + bytes;
+            sumY = (sumY * DECAY) + seconds;
+            sumXX = (sumXX * DECAY) + (bytes * bytes);
+            sumXY = (sumXY * DECAY) + (bytes * seconds);
+            sumYY = (sumYY * DECAY) + (seconds * seconds);
+        }
+
+        /** @return The number of records that the weighted records are worth. */
+        private double getEffectiveCount() {
+            return (sumWeights * sumWeights) / sumSquaredWeights;
+        }
+    }
+}
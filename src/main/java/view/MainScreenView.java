@@ -21,8 +21,12 @@ public class MainScreenView extends HBox {
     /** The button to delete all Jobs from the list. */
     @Getter private final Button button_deleteAllJobs = new Button("Delete All Jobs");
 
-    /** The text area for the output of FFMPEG from the most recent encode or decode job. */
-    @Getter private TextArea textArea_output = new TextArea();
+    /** The list of output lines from the encode and decode jobs, which only renders the visible lines. */
+    @Getter private ListView<String> listView_output = new ListView<>();
+    /** The field in which to enter text to find within the output. */
+    @Getter private final TextField field_searchOutput = new TextField();
+    /** The checkbox to only show the output of the first of the currently selected Jobs. */
+    @Getter private final CheckBox checkBox_filterOutputBySelectedJob = new CheckBox("Selected Job Only");
 
     /** The button to clear the output screen. */
     @Getter private final Button button_clearOutput = new Button("Clear Output");
@@ -40,8 +44,8 @@ public class MainScreenView extends HBox {
         listView_jobs.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
 
         // Setup output area:
-        textArea_output.setEditable(false);
-        textArea_output.setFocusTraversable(false);
+        listView_output.setFocusTraversable(false);
+        field_searchOutput.setPromptText("Find in Output");
 
         setTooltips();
         setEventHandlers(controller);
@@ -57,6 +61,8 @@ public class MainScreenView extends HBox {
         button_deleteSelectedJobs.setTooltip(new Tooltip("Removes all Jobs that are currently selected on the list."));
         button_deleteAllJobs.setTooltip(new Tooltip("Clears the list of all Jobs."));
         button_clearOutput.setTooltip(new Tooltip("Clears the output screen."));
+        field_searchOutput.setTooltip(new Tooltip("Press enter to find the next line of output containing this text."));
+        checkBox_filterOutputBySelectedJob.setTooltip(new Tooltip("Only show the output of the first of the currently selected Jobs."));
         button_editSettings.setTooltip(new Tooltip("Open the settings menu."));
         button_encode.setTooltip(new Tooltip("Encodes the selected handler(s)."));
         button_decode.setTooltip(new Tooltip("Decodes the selected handler(s).\n\n" +
@@ -78,6 +84,8 @@ public class MainScreenView extends HBox {
         button_deleteSelectedJobs.setOnAction(controller);
         button_deleteAllJobs.setOnAction(controller);
         button_clearOutput.setOnAction(controller);
+        field_searchOutput.setOnAction(controller);
+        checkBox_filterOutputBySelectedJob.setOnAction(controller);
         button_editSettings.setOnAction(controller);
     }
 
@@ -113,18 +121,23 @@ public class MainScreenView extends HBox {
      *         The right panel.
      */
     private VBox setupRightPanel() {
+        final HBox top = new HBox();
         final HBox bottom = new HBox();
         final VBox panel = new VBox();
 
         HBox.setHgrow(panel, Priority.ALWAYS);
-        VBox.setVgrow(textArea_output, Priority.ALWAYS);
+        VBox.setVgrow(listView_output, Priority.ALWAYS);
+
+        // Top - Let the search field fill all available space:
+        HBox.setHgrow(field_searchOutput, Priority.ALWAYS);
 
         // Bottom - Set buttons to fill all available space:
         HBox.setHgrow(button_clearOutput, Priority.ALWAYS);
         HBox.setHgrow(button_editSettings, Priority.ALWAYS);
 
+        top.getChildren().addAll(field_searchOutput, checkBox_filterOutputBySelectedJob);
         bottom.getChildren().addAll(button_clearOutput, button_editSettings);
-        panel.getChildren().addAll(textArea_output, bottom);
+        panel.getChildren().addAll(top, listView_output, bottom);
 
         return panel;
     }